@@ -0,0 +1,38 @@
+package com.github.sajjaadalipour.ratelimit;
+
+import com.github.sajjaadalipour.ratelimit.conf.properties.RateLimitProperties.Policy;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * Contract to limit the number of in-flight requests of a key.
+ *
+ * @author Sajjad Alipour
+ */
+public interface ConcurrencyLimiter {
+
+    /**
+     * Acquires a permit of the key if it has less in-flight requests than the count of the policy.
+     *
+     * @param key    Unique key that identifies a request.
+     * @param policy Encapsulates the concurrency limit policy properties, the count is the max number of in-flight
+     *               requests and the duration is how long a permit may be held before it is released implicitly.
+     * @return The acquired permit, which should be released when the request is done, or {@code null} if the key
+     * already has the count of in-flight requests.
+     */
+    @Nullable
+    Permit tryAcquire(@Nonnull String key, @Nonnull Policy policy);
+
+    /**
+     * An acquired permit of an in-flight request.
+     */
+    @FunctionalInterface
+    interface Permit {
+
+        /**
+         * Releases the permit, it should be called exactly once.
+         */
+        void release();
+    }
+}
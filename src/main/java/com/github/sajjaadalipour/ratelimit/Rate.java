@@ -1,5 +1,7 @@
 package com.github.sajjaadalipour.ratelimit;
 
+import com.github.sajjaadalipour.ratelimit.clock.RateClock;
+
 import java.time.Instant;
 
 /**
@@ -46,15 +48,23 @@ public final class Rate {
     }
 
     public boolean isExpired() {
-        return Instant.now().isAfter(expiration);
+        return isExpired(RateClock.SYSTEM);
+    }
+
+    /**
+     * @param clock The source of the current time.
+     * @return {@code true} if the expiration is passed by the clock.
+     */
+    public boolean isExpired(RateClock clock) {
+        return clock.millis() > expiration.toEpochMilli();
     }
 
     public boolean isExceed() {
-        return remaining.equals(RATE_EXCEED_STATE);
+        return remaining.intValue() == RATE_EXCEED_STATE;
     }
 
     public boolean isBlocked() {
-        return remaining.equals(RATE_BLOCK_STATE);
+        return remaining.intValue() == RATE_BLOCK_STATE;
     }
 
     public static Rate blocked(String key, Instant expiration) {
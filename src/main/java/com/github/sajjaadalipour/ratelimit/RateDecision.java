@@ -0,0 +1,83 @@
+package com.github.sajjaadalipour.ratelimit;
+
+import java.time.Instant;
+
+import static com.github.sajjaadalipour.ratelimit.Rate.RATE_BLOCK_STATE;
+import static com.github.sajjaadalipour.ratelimit.Rate.RATE_EXCEED_STATE;
+
+/**
+ * Encodes the result of consuming a rate limit in a primitive {@code long}, so the hot path of
+ * {@link RateLimiter#tryConsume} does not need to allocate a {@link Rate} per request.
+ * <p>
+ * The lower 42 bits hold the reset time in epoch milliseconds, which lasts until the year 2109, and the upper
+ * 22 bits hold the remaining value shifted by 2, so the exceed and block states fit in as well. A remaining
+ * value greater than {@value #MAX_REMAINING} is saturated to it.
+ *
+ * @author Sajjad Alipour
+ */
+public final class RateDecision {
+
+    /**
+     * The max remaining value that can be encoded.
+     */
+    public static final int MAX_REMAINING = (1 << 22) - 3;
+
+    private static final int RESET_BITS = 42;
+    private static final long RESET_MASK = (1L << RESET_BITS) - 1;
+    private static final int REMAINING_SHIFT = 2;
+
+    private RateDecision() {
+    }
+
+    /**
+     * @param remaining   How many requests can still be executed, or one of the rate states.
+     * @param resetMillis When the rate limit resets, in epoch milliseconds.
+     * @return The encoded decision.
+     */
+    public static long of(int remaining, long resetMillis) {
+        long encodedRemaining = Math.min(remaining, MAX_REMAINING) + REMAINING_SHIFT;
+        return (encodedRemaining << RESET_BITS) | (resetMillis & RESET_MASK);
+    }
+
+    /**
+     * @param rate The rate to encode.
+     * @return The encoded decision of the given rate.
+     */
+    public static long of(Rate rate) {
+        return of(rate.getRemaining(), rate.getExpiration().toEpochMilli());
+    }
+
+    public static int remaining(long decision) {
+        return (int) (decision >>> RESET_BITS) - REMAINING_SHIFT;
+    }
+
+    public static long resetMillis(long decision) {
+        return decision & RESET_MASK;
+    }
+
+    /**
+     * @return {@code true} if the request is neither exceeded nor blocked.
+     */
+    public static boolean isAllowed(long decision) {
+        return remaining(decision) >= 0;
+    }
+
+    public static boolean isExceed(long decision) {
+        return remaining(decision) == RATE_EXCEED_STATE;
+    }
+
+    public static boolean isBlocked(long decision) {
+        return remaining(decision) == RATE_BLOCK_STATE;
+    }
+
+    /**
+     * Materializes the given decision, e.g. when it should be passed to the error handler.
+     *
+     * @param key      The key of the rate limit.
+     * @param decision The encoded decision.
+     * @return The equivalent {@link Rate}.
+     */
+    public static Rate toRate(String key, long decision) {
+        return new Rate(key, Instant.ofEpochMilli(resetMillis(decision)), remaining(decision));
+    }
+}
@@ -0,0 +1,110 @@
+package com.github.sajjaadalipour.ratelimit;
+
+import javax.servlet.http.HttpServletRequest;
+import java.util.Arrays;
+
+/**
+ * The state of a request which is shared by the key generators while the keys of its policies are generated, so
+ * the parts of a key which only depend on the request, e.g. the request URI or the header values, are read once per
+ * request instead of once per policy.
+ * <p>
+ * A context belongs to a single request at a time, so it is not thread safe. It can be reused for the next request
+ * of the same thread by {@link #reset}.
+ *
+ * @author Sajjad Alipour
+ */
+public final class RateLimitKeyContext {
+
+    private HttpServletRequest request;
+
+    private String requestUri;
+
+    private String method;
+
+    /**
+     * The generators which keep a value in this context, a request only has a few of them, so they are searched
+     * linearly by their identity.
+     */
+    private Object[] owners = new Object[2];
+
+    private Object[] values = new Object[2];
+
+    private int size;
+
+    public RateLimitKeyContext(HttpServletRequest request) {
+        this.request = request;
+    }
+
+    /**
+     * Reuses this context for the given request, the values of the previous request are dropped.
+     *
+     * @param request The request to generate the keys of, or {@code null} to only drop the previous request.
+     */
+    public void reset(HttpServletRequest request) {
+        this.request = request;
+        this.requestUri = null;
+        this.method = null;
+        Arrays.fill(owners, 0, size, null);
+        Arrays.fill(values, 0, size, null);
+        this.size = 0;
+    }
+
+    public HttpServletRequest getRequest() {
+        return request;
+    }
+
+    /**
+     * @return The request URI, which is only read once from the request.
+     */
+    public String getRequestUri() {
+        if (requestUri == null) {
+            requestUri = request.getRequestURI();
+        }
+        return requestUri;
+    }
+
+    /**
+     * @return The request method, which is only read once from the request.
+     */
+    public String getMethod() {
+        if (method == null) {
+            method = request.getMethod();
+        }
+        return method;
+    }
+
+    /**
+     * @param owner The generator which has kept the value, e.g. the part of its keys which only depends on the request.
+     * @return The value kept by the given generator, or {@code null} if it has not kept any.
+     */
+    public Object get(Object owner) {
+        for (int i = 0; i < size; i++) {
+            if (owners[i] == owner) {
+                return values[i];
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Keeps the given value of the given generator for the other policies of the request.
+     *
+     * @param owner The generator which keeps the value.
+     * @param value The value to keep.
+     */
+    public void put(Object owner, Object value) {
+        for (int i = 0; i < size; i++) {
+            if (owners[i] == owner) {
+                values[i] = value;
+                return;
+            }
+        }
+
+        if (size == owners.length) {
+            owners = Arrays.copyOf(owners, size * 2);
+            values = Arrays.copyOf(values, size * 2);
+        }
+        owners[size] = owner;
+        values[size++] = value;
+    }
+}
@@ -19,4 +19,17 @@ public interface RateLimitKeyGenerator {
      * @return Generated key.
      */
     String generateKey(HttpServletRequest servletRequest, Policy policy);
+
+    /**
+     * Returns the generated key by the context of the request, which is shared by all the policies of the request,
+     * so the parts of the key which only depend on the request can be read once. By default the key is generated by
+     * {@link #generateKey(HttpServletRequest, Policy)}.
+     *
+     * @param context Encapsulates the http servlet request and the state shared by its policies.
+     * @param policy  Encapsulates the rate limit policy properties.
+     * @return Generated key.
+     */
+    default String generateKey(RateLimitKeyContext context, Policy policy) {
+        return generateKey(context.getRequest(), policy);
+    }
 }
@@ -1,6 +1,11 @@
 package com.github.sajjaadalipour.ratelimit;
 
+import com.github.sajjaadalipour.ratelimit.conf.properties.RateLimitProperties.Policy;
+
 import javax.annotation.Nonnull;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
 
 /**
  * Contract to cache the rate limit detail.
@@ -14,4 +19,91 @@ public interface RateLimiter {
      * @return Details of a requester`s rate limit.
      */
     Rate consume(@Nonnull RatePolicy ratePolicy);
+
+    /**
+     * The hot path variant of {@link #consume(RatePolicy)} which returns the result encoded by {@link RateDecision},
+     * so the implementations can decide without allocating. The default implementation delegates to
+     * {@link #consume(RatePolicy)}.
+     *
+     * @param key    Unique key that identifies a request.
+     * @param policy Encapsulates the rate limit policy properties.
+     * @return The decision encoded by {@link RateDecision}.
+     */
+    default long tryConsume(@Nonnull String key, @Nonnull Policy policy) {
+        return RateDecision.of(consume(new RatePolicy(
+                key,
+                policy.getDuration(),
+                policy.getCount(),
+                (policy.getBlock() != null) ? policy.getBlock().getDuration() : null,
+                policy.getAlgorithm())));
+    }
+
+    /**
+     * Consumes all the rate policies of a request together. A request is only counted by the policies if all of
+     * them allow it, so a policy which rejects the request does not consume the others, e.g. the per second policy
+     * of a request which is rejected by its per hour policy. The default implementation consumes the policies one
+     * by one by {@link #tryConsume(String, Policy)} and stops at the first rejection, so the policies before it
+     * are consumed.
+     * <p>
+     * The caller may reuse the keys, the policies and the decisions for its next request once this method returns,
+     * so an implementation should not reference them after it.
+     *
+     * @param keys      The unique keys that identify the request, one per policy by the same order.
+     * @param policies  Encapsulates the rate limit policies properties.
+     * @param decisions Receives the decision of each consumed policy encoded by {@link RateDecision}, it should be
+     *                  at least as long as the policies.
+     * @return The index of the first policy which does not allow the request, or {@code -1} if all of them allow it.
+     */
+    default int tryConsumeAll(@Nonnull List<String> keys, @Nonnull List<Policy> policies, @Nonnull long[] decisions) {
+        for (int i = 0; i < policies.size(); i++) {
+            decisions[i] = tryConsume(keys.get(i), policies.get(i));
+            if (!RateDecision.isAllowed(decisions[i])) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * The asynchronous variant of {@link #consume(RatePolicy)}, which does not block the caller while the rate limit
+     * is consumed from a remote store. The default implementation decides synchronously by
+     * {@link #consume(RatePolicy)}.
+     *
+     * @param ratePolicy Encapsulates the rate limit policy details.
+     * @return A stage which is completed by the details of a requester`s rate limit, or exceptionally if the rate
+     * limit could not be consumed.
+     */
+    default CompletionStage<Rate> consumeAsync(@Nonnull RatePolicy ratePolicy) {
+        CompletableFuture<Rate> result = new CompletableFuture<>();
+        try {
+            result.complete(consume(ratePolicy));
+        } catch (RuntimeException e) {
+            result.completeExceptionally(e);
+        }
+        return result;
+    }
+
+    /**
+     * The asynchronous variant of {@link #tryConsumeAll(List, List, long[])}, the decisions are only filled when
+     * the returned stage is completed. The default implementation decides synchronously by
+     * {@link #tryConsumeAll(List, List, long[])}.
+     *
+     * @param keys      The unique keys that identify the request, one per policy by the same order.
+     * @param policies  Encapsulates the rate limit policies properties.
+     * @param decisions Receives the decision of each consumed policy encoded by {@link RateDecision}, it should be
+     *                  as long as the policies.
+     * @return A stage which is completed by the index of the first policy which does not allow the request,
+     * or {@code -1} if all of them allow it.
+     */
+    default CompletionStage<Integer> tryConsumeAllAsync(@Nonnull List<String> keys,
+                                                        @Nonnull List<Policy> policies,
+                                                        @Nonnull long[] decisions) {
+        CompletableFuture<Integer> result = new CompletableFuture<>();
+        try {
+            result.complete(tryConsumeAll(keys, policies, decisions));
+        } catch (RuntimeException e) {
+            result.completeExceptionally(e);
+        }
+        return result;
+    }
 }
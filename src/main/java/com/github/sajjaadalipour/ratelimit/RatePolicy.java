@@ -1,5 +1,7 @@
 package com.github.sajjaadalipour.ratelimit;
 
+import com.github.sajjaadalipour.ratelimit.conf.properties.RateLimitAlgorithm;
+
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import java.time.Duration;
@@ -31,11 +33,25 @@ public final class RatePolicy {
      */
     private final Duration blockDuration;
 
+    /**
+     * Represents the algorithm to limit the rate by.
+     */
+    private final RateLimitAlgorithm algorithm;
+
     public RatePolicy(@Nonnull String key, @Nonnull Duration duration, @Nonnull Integer count, @Nullable Duration blockDuration) {
+        this(key, duration, count, blockDuration, RateLimitAlgorithm.FIXED_WINDOW);
+    }
+
+    public RatePolicy(@Nonnull String key,
+                      @Nonnull Duration duration,
+                      @Nonnull Integer count,
+                      @Nullable Duration blockDuration,
+                      @Nonnull RateLimitAlgorithm algorithm) {
         this.key = key;
         this.duration = duration;
         this.count = count;
         this.blockDuration = blockDuration;
+        this.algorithm = algorithm;
     }
 
     public String getKey() {
@@ -53,4 +69,8 @@ public final class RatePolicy {
     public Duration getBlockDuration() {
         return blockDuration;
     }
+
+    public RateLimitAlgorithm getAlgorithm() {
+        return algorithm;
+    }
 }
@@ -0,0 +1,65 @@
+package com.github.sajjaadalipour.ratelimit.clock;
+
+import com.github.sajjaadalipour.ratelimit.conf.properties.RateLimitDefaults;
+
+import javax.annotation.Nonnull;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A {@link RateClock} which is updated by a background thread once per precision, so reading it on the hot path
+ * is just a volatile read. The time it returns may lag behind the system clock by up to the precision.
+ *
+ * @author Sajjad Alipour
+ */
+public class CachedRateClock implements RateClock, AutoCloseable {
+
+    private volatile long millis = System.currentTimeMillis();
+
+    private volatile boolean running = true;
+
+    private final Thread ticker;
+
+    public CachedRateClock() {
+        this(RateLimitDefaults.CLOCK_PRECISION);
+    }
+
+    /**
+     * @param precision Determines how often the time should be updated.
+     */
+    public CachedRateClock(@Nonnull Duration precision) {
+        if (precision.isNegative() || precision.isZero()) {
+            throw new IllegalArgumentException("The clock precision should be positive");
+        }
+
+        final long precisionNanos = precision.toNanos();
+        this.ticker = new Thread(() -> {
+            while (running) {
+                millis = System.currentTimeMillis();
+                LockSupport.parkNanos(this, precisionNanos);
+            }
+        }, "rate-limit-clock");
+        this.ticker.setDaemon(true);
+        this.ticker.start();
+    }
+
+    @Override
+    public long millis() {
+        return millis;
+    }
+
+    /**
+     * Stops the background thread, the time is not updated anymore.
+     */
+    @Override
+    public void close() {
+        running = false;
+        LockSupport.unpark(ticker);
+        try {
+            ticker.join(TimeUnit.SECONDS.toMillis(1));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package com.github.sajjaadalipour.ratelimit.clock;
+
+import javax.annotation.Nonnull;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A {@link RateClock} which is only moved by hand, to test the expiry behaviour deterministically.
+ *
+ * @author Sajjad Alipour
+ */
+public class ManualRateClock implements RateClock {
+
+    private final AtomicLong millis;
+
+    public ManualRateClock() {
+        this(System.currentTimeMillis());
+    }
+
+    /**
+     * @param millis The initial time in epoch milliseconds.
+     */
+    public ManualRateClock(long millis) {
+        this.millis = new AtomicLong(millis);
+    }
+
+    @Override
+    public long millis() {
+        return millis.get();
+    }
+
+    /**
+     * @param millis The new time in epoch milliseconds.
+     */
+    public void set(long millis) {
+        this.millis.set(millis);
+    }
+
+    /**
+     * Moves the time forward by the given duration.
+     */
+    public void advance(@Nonnull Duration duration) {
+        millis.addAndGet(duration.toMillis());
+    }
+}
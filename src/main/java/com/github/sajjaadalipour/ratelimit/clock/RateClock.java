@@ -0,0 +1,23 @@
+package com.github.sajjaadalipour.ratelimit.clock;
+
+/**
+ * The source of the current time for all rate limit computations, in epoch milliseconds, so the windows
+ * are computed from primitives and the time can be replaced in tests.
+ *
+ * @author Sajjad Alipour
+ * @see CachedRateClock
+ * @see ManualRateClock
+ */
+@FunctionalInterface
+public interface RateClock {
+
+    /**
+     * Reads the system clock on every call.
+     */
+    RateClock SYSTEM = System::currentTimeMillis;
+
+    /**
+     * @return The current time in epoch milliseconds.
+     */
+    long millis();
+}
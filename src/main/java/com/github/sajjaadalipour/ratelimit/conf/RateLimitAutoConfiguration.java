@@ -1,27 +1,61 @@
 package com.github.sajjaadalipour.ratelimit.conf;
 
+import com.github.sajjaadalipour.ratelimit.ConcurrencyLimiter;
 import com.github.sajjaadalipour.ratelimit.RateLimitKeyGenerator;
 import com.github.sajjaadalipour.ratelimit.RateLimiter;
+import com.github.sajjaadalipour.ratelimit.clock.CachedRateClock;
+import com.github.sajjaadalipour.ratelimit.clock.RateClock;
 import com.github.sajjaadalipour.ratelimit.conf.error.DefaultTooManyRequestErrorHandler;
 import com.github.sajjaadalipour.ratelimit.conf.error.TooManyRequestErrorHandler;
 import com.github.sajjaadalipour.ratelimit.conf.filter.RateLimitFilter;
 import com.github.sajjaadalipour.ratelimit.conf.properties.RateLimitProperties;
+import com.github.sajjaadalipour.ratelimit.generators.HashedKeyGenerator;
+import com.github.sajjaadalipour.ratelimit.repositories.CircuitBreakingRateLimiter;
+import com.github.sajjaadalipour.ratelimit.repositories.InMemoryConcurrencyLimiter;
 import com.github.sajjaadalipour.ratelimit.repositories.InMemoryRateCache;
+import com.github.sajjaadalipour.ratelimit.repositories.InMemoryRateSnapshot;
+import com.github.sajjaadalipour.ratelimit.repositories.OffHeapRateCache;
+import com.github.sajjaadalipour.ratelimit.repositories.redis.LettuceRedisShards;
+import com.github.sajjaadalipour.ratelimit.repositories.redis.RedisConcurrencyLimiter;
 import com.github.sajjaadalipour.ratelimit.repositories.redis.RedisRateCache;
+import com.github.sajjaadalipour.ratelimit.repositories.redis.ShardedRedisRateCache;
+import com.github.sajjaadalipour.ratelimit.shedding.LoadMonitor;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.support.BeanDefinitionBuilder;
 import org.springframework.beans.factory.support.BeanDefinitionRegistry;
+import org.springframework.boot.autoconfigure.condition.ConditionOutcome;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.boot.autoconfigure.condition.SpringBootCondition;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.boot.web.context.WebServerInitializedEvent;
+import org.springframework.boot.web.embedded.tomcat.TomcatWebServer;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
 import org.springframework.context.ApplicationContext;
 import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.ConditionContext;
+import org.springframework.context.annotation.Conditional;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.type.AnnotatedTypeMetadata;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
 import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
 import org.springframework.data.redis.repository.configuration.EnableRedisRepositories;
 
+import javax.servlet.DispatcherType;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
 import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.stream.Collectors;
 
 import static com.github.sajjaadalipour.ratelimit.conf.properties.RateLimitProperties.PREFIX;
 
@@ -54,16 +88,71 @@ public class RateLimitAutoConfiguration {
         registerKeyGeneratorsBeans(context, rateLimitProperties);
     }
 
+    /**
+     * Registers a bean of {@link RateClock} which all rate limiters compute the windows by.
+     *
+     * @param rateLimitProperties Used to get the clock precision.
+     * @return The expected {@link CachedRateClock}.
+     */
+    @Bean
+    @ConditionalOnMissingBean(RateClock.class)
+    public RateClock rateClock(RateLimitProperties rateLimitProperties) {
+        return new CachedRateClock(rateLimitProperties.getClock().getPrecision());
+    }
+
     /**
      * Registers a bean of {@link RateLimiter} if set `IN_MEMORY` value on `repository` property.
      *
+     * @param rateLimitProperties Used to get the in-memory repository properties.
+     * @param rateClock           The registered {@link RateClock} bean.
      * @return The expected {@link InMemoryRateCache}.
      */
     @Bean
     @ConditionalOnMissingBean(RateLimiter.class)
     @ConditionalOnProperty(prefix = PREFIX, name = "repository", havingValue = "IN_MEMORY")
-    public RateLimiter imMemoryRateLimiter() {
-        return new InMemoryRateCache();
+    public RateLimiter imMemoryRateLimiter(RateLimitProperties rateLimitProperties, RateClock rateClock) {
+        RateLimitProperties.InMemory inMemory = rateLimitProperties.getInMemory();
+        return new InMemoryRateCache(inMemory.getSweepInterval(), inMemory.getMaxEntries(), rateClock);
+    }
+
+    /**
+     * Registers a bean of {@link InMemoryRateSnapshot} if the `in-memory.snapshot.path` property is set,
+     * which restores the kept rate limits before taking the periodic snapshots.
+     *
+     * @param rateLimiter         The registered {@link InMemoryRateCache} bean.
+     * @param rateLimitProperties Used to get the snapshot properties.
+     * @return The expected {@link InMemoryRateSnapshot}.
+     */
+    @Bean
+    @ConditionalOnProperty(prefix = PREFIX, name = "in-memory.snapshot.path")
+    public InMemoryRateSnapshot inMemoryRateSnapshot(RateLimiter rateLimiter, RateLimitProperties rateLimitProperties) {
+        if (!(rateLimiter instanceof InMemoryRateCache)) {
+            throw new IllegalStateException("Rate limit snapshots are only supported by the IN_MEMORY repository");
+        }
+
+        RateLimitProperties.Snapshot snapshotProperties = rateLimitProperties.getInMemory().getSnapshot();
+        InMemoryRateSnapshot snapshot = new InMemoryRateSnapshot((InMemoryRateCache) rateLimiter, snapshotProperties.getPath());
+        try {
+            snapshot.restore();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not restore the rate limit snapshot", e);
+        }
+        snapshot.start(snapshotProperties.getInterval());
+        return snapshot;
+    }
+
+    /**
+     * Registers a bean of {@link RateLimiter} if set `OFF_HEAP` value on `repository` property.
+     *
+     * @param rateLimitProperties Used to get the off-heap repository properties.
+     * @param rateClock           The registered {@link RateClock} bean.
+     * @return The expected {@link OffHeapRateCache}.
+     */
+    @Bean
+    @ConditionalOnMissingBean(RateLimiter.class)
+    @ConditionalOnProperty(prefix = PREFIX, name = "repository", havingValue = "OFF_HEAP")
+    public RateLimiter offHeapRateLimiter(RateLimitProperties rateLimitProperties, RateClock rateClock) {
+        return new OffHeapRateCache(rateLimitProperties.getOffHeap().getCapacity(), rateClock);
     }
 
     /**
@@ -78,15 +167,192 @@ public class RateLimitAutoConfiguration {
     public static class RedisConfiguration {
 
         /**
-         * Registers a bean of {@link RateLimiter} to cache rate limit detail into Redis.
+         * Registers a bean of {@link RateLimiter} to cache rate limit detail into Redis, or into the Redis shards
+         * by a {@link ShardedRedisRateCache} if the `redis.shards` property is set.
          *
          * @param stringRedisTemplate Used to add rate limits items in redis.
+         * @param rateLimitProperties Used to get Redis keys prefix, the batching and the near-cache properties.
+         * @param rateClock           The registered {@link RateClock} bean.
+         * @param redisShards         The registered {@link LettuceRedisShards} bean, if Lettuce is present.
+         * @return Expected {@link RedisRateCache} or {@link ShardedRedisRateCache}, guarded by
+         * a {@link CircuitBreakingRateLimiter} if the `redis.circuit-breaker.enabled` property is true.
+         */
+        @Bean
+        public RateLimiter redisRateLimiter(StringRedisTemplate stringRedisTemplate,
+                                            RateLimitProperties rateLimitProperties,
+                                            RateClock rateClock,
+                                            ObjectProvider<LettuceRedisShards> redisShards) {
+            RateLimiter redisRateLimiter;
+            if (rateLimitProperties.getRedis().getShards().isEmpty()) {
+                redisRateLimiter = redisRateCacheOf(stringRedisTemplate, rateLimitProperties, rateClock);
+            } else {
+                LettuceRedisShards shards = redisShards.getIfAvailable();
+                if (shards == null) {
+                    throw new IllegalStateException("Rate limit redis shards are only supported by Lettuce");
+                }
+                redisRateLimiter = new ShardedRedisRateCache(shards.getTemplates().stream()
+                        .map(template -> redisRateCacheOf(template, rateLimitProperties, rateClock))
+                        .collect(Collectors.toList()));
+            }
+
+            RateLimitProperties.CircuitBreaker circuitBreaker = rateLimitProperties.getRedis().getCircuitBreaker();
+            if (!circuitBreaker.isEnabled()) {
+                return redisRateLimiter;
+            }
+
+            RateLimitProperties.InMemory inMemory = rateLimitProperties.getInMemory();
+            return new CircuitBreakingRateLimiter(redisRateLimiter,
+                    new InMemoryRateCache(inMemory.getSweepInterval(), inMemory.getMaxEntries(), rateClock),
+                    circuitBreaker.getTimeout(), circuitBreaker.getFailureThreshold(), circuitBreaker.getOpenDuration(),
+                    circuitBreaker.getNodes(), rateClock);
+        }
+
+        /**
+         * Registers the connections of the Redis URIs of the `redis.shards` property, if they are set and Lettuce
+         * is present.
+         *
+         * @param rateLimitProperties Used to get the Redis shards.
+         * @return The expected {@link LettuceRedisShards}.
+         */
+        @Bean
+        @ConditionalOnClass(name = "io.lettuce.core.RedisURI")
+        @Conditional(OnRedisShardsCondition.class)
+        public LettuceRedisShards rateLimitRedisShards(RateLimitProperties rateLimitProperties) {
+            return new LettuceRedisShards(rateLimitProperties.getRedis().getShards());
+        }
+
+        /**
+         * Matches if the `redis.shards` property has at least one Redis URI, by any of its forms, e.g.
+         * {@code redis.shards=uri1,uri2} or {@code redis.shards[0]=uri1}.
+         */
+        static final class OnRedisShardsCondition extends SpringBootCondition {
+
+            @Override
+            public ConditionOutcome getMatchOutcome(ConditionContext context, AnnotatedTypeMetadata metadata) {
+                boolean shards = Binder.get(context.getEnvironment())
+                        .bind(PREFIX + ".redis.shards", Bindable.listOf(String.class))
+                        .map(uris -> !uris.isEmpty())
+                        .orElse(false);
+                return shards ?
+                        ConditionOutcome.match("Rate limit redis shards are set") :
+                        ConditionOutcome.noMatch("Rate limit redis shards are not set");
+            }
+        }
+
+        private static RedisRateCache redisRateCacheOf(StringRedisTemplate stringRedisTemplate,
+                                                       RateLimitProperties rateLimitProperties,
+                                                       RateClock rateClock) {
+            RateLimitProperties.Batch batch = rateLimitProperties.getRedis().getBatch();
+            RateLimitProperties.NearCache nearCache = rateLimitProperties.getRedis().getNearCache();
+            RateLimitProperties.Lease lease = rateLimitProperties.getRedis().getLease();
+            RedisRateCache.Builder builder = RedisRateCache.builder(stringRedisTemplate, rateLimitProperties.getKeyPrefix())
+                    .clock(rateClock)
+                    .layout(rateLimitProperties.getRedis().getLayout());
+            if (batch.isEnabled()) {
+                builder.batch(batch.getMaxDelay(), batch.getMaxSize());
+            }
+            if (nearCache.isEnabled()) {
+                builder.nearCache(nearCache.getMaxEntries());
+            }
+            if (lease.isEnabled()) {
+                builder.lease(lease.getDuration(), lease.getMaxShare());
+            }
+            return builder.build();
+        }
+
+        /**
+         * Registers a listener container which evicts the keys published by {@link RedisRateCache#reset(String)}
+         * of any node from the near-cache of this node, if the `redis.near-cache.invalidation` property is true.
+         *
+         * @param redisConnectionFactory Used to subscribe to the invalidation channel.
+         * @param rateLimiter            The registered {@link RedisRateCache} bean.
+         * @return The expected {@link RedisMessageListenerContainer}.
+         */
+        @Bean
+        @ConditionalOnProperty(prefix = PREFIX, name = "redis.near-cache.invalidation", havingValue = "true")
+        public RedisMessageListenerContainer rateLimitInvalidationListenerContainer(
+                RedisConnectionFactory redisConnectionFactory,
+                RateLimiter rateLimiter) {
+            RedisRateCache redisRateCache = (RedisRateCache) (rateLimiter instanceof CircuitBreakingRateLimiter ?
+                    ((CircuitBreakingRateLimiter) rateLimiter).getDelegate() : rateLimiter);
+            RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+            container.setConnectionFactory(redisConnectionFactory);
+            container.addMessageListener(
+                    (message, pattern) -> redisRateCache.invalidate(new String(message.getBody(), StandardCharsets.UTF_8)),
+                    new ChannelTopic(redisRateCache.getInvalidationChannel()));
+            return container;
+        }
+
+        /**
+         * Registers a bean of {@link ConcurrencyLimiter} to keep the in-flight requests into Redis.
+         *
+         * @param stringRedisTemplate Used to add the permits in redis.
          * @param rateLimitProperties Used to get Redis keys prefix.
-         * @return Expected {@link RedisRateCache}.
+         * @return Expected {@link RedisConcurrencyLimiter}.
          */
         @Bean
-        public RateLimiter redisRateLimiter(StringRedisTemplate stringRedisTemplate, RateLimitProperties rateLimitProperties) {
-            return new RedisRateCache(stringRedisTemplate, rateLimitProperties.getKeyPrefix());
+        @ConditionalOnMissingBean(ConcurrencyLimiter.class)
+        public ConcurrencyLimiter redisConcurrencyLimiter(StringRedisTemplate stringRedisTemplate,
+                                                          RateLimitProperties rateLimitProperties) {
+            return new RedisConcurrencyLimiter(stringRedisTemplate, rateLimitProperties.getKeyPrefix());
+        }
+    }
+
+    /**
+     * Registers a bean of {@link ConcurrencyLimiter} to keep the in-flight requests in memory, unless the Redis
+     * one is registered.
+     *
+     * @return Expected {@link InMemoryConcurrencyLimiter}.
+     */
+    @Bean
+    @ConditionalOnMissingBean(ConcurrencyLimiter.class)
+    public ConcurrencyLimiter inMemoryConcurrencyLimiter() {
+        return new InMemoryConcurrencyLimiter();
+    }
+
+    /**
+     * Registers a bean of {@link LoadMonitor} if the `load-shedding.enabled` property is true.
+     *
+     * @param rateLimitProperties Used to get the load shedding properties.
+     * @return The expected {@link LoadMonitor}.
+     */
+    @Bean
+    @ConditionalOnMissingBean(LoadMonitor.class)
+    @ConditionalOnProperty(prefix = PREFIX, name = "load-shedding.enabled", havingValue = "true")
+    public LoadMonitor loadMonitor(RateLimitProperties rateLimitProperties) {
+        RateLimitProperties.LoadShedding loadShedding = rateLimitProperties.getLoadShedding();
+        return new LoadMonitor(loadShedding.getThreadPoolUsage(), loadShedding.getCpuLoad(), loadShedding.getInterval());
+    }
+
+    /**
+     * Encapsulates the load shedding auto-configuration for Tomcat, which gives the request thread pool of
+     * the started Tomcat to the {@link LoadMonitor}.
+     */
+    @Configuration
+    @ConditionalOnClass(TomcatWebServer.class)
+    @ConditionalOnProperty(prefix = PREFIX, name = "load-shedding.enabled", havingValue = "true")
+    public static class TomcatLoadSheddingConfiguration {
+
+        private final LoadMonitor loadMonitor;
+
+        public TomcatLoadSheddingConfiguration(LoadMonitor loadMonitor) {
+            this.loadMonitor = loadMonitor;
+        }
+
+        /**
+         * Gives the thread pool of the Tomcat connector to the {@link LoadMonitor}, if it is a {@link ThreadPoolExecutor}.
+         *
+         * @param event Encapsulates the started web server.
+         */
+        @EventListener
+        public void onWebServerInitialized(WebServerInitializedEvent event) {
+            if (event.getWebServer() instanceof TomcatWebServer) {
+                Executor executor = ((TomcatWebServer) event.getWebServer())
+                        .getTomcat().getConnector().getProtocolHandler().getExecutor();
+                if (executor instanceof ThreadPoolExecutor) {
+                    loadMonitor.setThreadPool((ThreadPoolExecutor) executor);
+                }
+            }
         }
     }
 
@@ -106,8 +372,11 @@ public class RateLimitAutoConfiguration {
      *
      * @param rateLimitProperties        Encapsulates the rate limit properties.
      * @param rateLimiter                The registered implemented {@link RateLimiter} bean.
+     * @param concurrencyLimiter         The registered implemented {@link ConcurrencyLimiter} bean.
      * @param keyGenerators              A map of {@link RateLimitKeyGenerator}s beans.
      * @param tooManyRequestErrorHandler The registered implemented {@link TooManyRequestErrorHandler} bean.
+     * @param rateClock                  The registered {@link RateClock} bean.
+     * @param loadMonitor                The registered {@link LoadMonitor} bean, if the load shedding is enabled.
      * @return Expected {@link RateLimitFilter}.
      */
     @Bean
@@ -115,14 +384,36 @@ public class RateLimitAutoConfiguration {
     public RateLimitFilter rateLimitFilter(
             RateLimitProperties rateLimitProperties,
             RateLimiter rateLimiter,
+            ConcurrencyLimiter concurrencyLimiter,
             Map<String, RateLimitKeyGenerator> keyGenerators,
-            TooManyRequestErrorHandler tooManyRequestErrorHandler
+            TooManyRequestErrorHandler tooManyRequestErrorHandler,
+            RateClock rateClock,
+            ObjectProvider<LoadMonitor> loadMonitor
     ) {
-        return new RateLimitFilter(rateLimitProperties, rateLimiter, keyGenerators, tooManyRequestErrorHandler);
+        return new RateLimitFilter(rateLimitProperties, rateLimiter, concurrencyLimiter, keyGenerators,
+                tooManyRequestErrorHandler, rateClock, loadMonitor.getIfAvailable());
+    }
+
+    /**
+     * Registers the {@link RateLimitFilter} for the asynchronous dispatches besides the requests, since the parked
+     * and the asynchronously consumed requests are dispatched again to apply their decision.
+     *
+     * @param rateLimitFilter The registered {@link RateLimitFilter} bean.
+     * @return Expected {@link FilterRegistrationBean} of the filter.
+     */
+    @Bean
+    @ConditionalOnMissingBean(name = "rateLimitFilterRegistration")
+    public FilterRegistrationBean<RateLimitFilter> rateLimitFilterRegistration(RateLimitFilter rateLimitFilter) {
+        FilterRegistrationBean<RateLimitFilter> registration = new FilterRegistrationBean<>(rateLimitFilter);
+        registration.setDispatcherTypes(DispatcherType.REQUEST, DispatcherType.ASYNC);
+        registration.setOrder(rateLimitFilter.getOrder());
+        return registration;
     }
 
     /**
-     * Registers all key generators that define in the configuration properties file to Spring context as a bean.
+     * Registers all key generators that define in the configuration properties file to Spring context as a bean,
+     * wrapped by a {@link HashedKeyGenerator} if its `hashed` property is true. The `hash-tag` property is passed
+     * after the params, which is validated by {@link RateLimitProperties.KeyGenerator#isValidHashTag()}.
      */
     private void registerKeyGeneratorsBeans(ApplicationContext context, RateLimitProperties rateLimitProperties) {
         BeanDefinitionRegistry registry = (BeanDefinitionRegistry) context.getAutowireCapableBeanFactory();
@@ -131,6 +422,14 @@ public class RateLimitAutoConfiguration {
             BeanDefinitionBuilder beanDefinitionBuilder = BeanDefinitionBuilder
                     .rootBeanDefinition(keyGenerator.getGenerator())
                     .addConstructorArgValue(keyGenerator.getParams());
+            if (keyGenerator.isHashTag()) {
+                beanDefinitionBuilder.addConstructorArgValue(true);
+            }
+            if (keyGenerator.isHashed()) {
+                beanDefinitionBuilder = BeanDefinitionBuilder
+                        .rootBeanDefinition(HashedKeyGenerator.class)
+                        .addConstructorArgValue(beanDefinitionBuilder.getBeanDefinition());
+            }
 
             registry.registerBeanDefinition(keyGenerator.getName(), beanDefinitionBuilder.getBeanDefinition());
         }
@@ -1,37 +1,98 @@
 package com.github.sajjaadalipour.ratelimit.conf.filter;
 
+import com.github.sajjaadalipour.ratelimit.ConcurrencyLimiter;
+import com.github.sajjaadalipour.ratelimit.ConcurrencyLimiter.Permit;
 import com.github.sajjaadalipour.ratelimit.Rate;
+import com.github.sajjaadalipour.ratelimit.RateDecision;
+import com.github.sajjaadalipour.ratelimit.RateLimitKeyContext;
 import com.github.sajjaadalipour.ratelimit.RateLimitKeyGenerator;
 import com.github.sajjaadalipour.ratelimit.RateLimiter;
-import com.github.sajjaadalipour.ratelimit.RatePolicy;
+import com.github.sajjaadalipour.ratelimit.clock.RateClock;
 import com.github.sajjaadalipour.ratelimit.conf.error.TooManyRequestErrorHandler;
+import com.github.sajjaadalipour.ratelimit.conf.properties.RateLimitMode;
+import com.github.sajjaadalipour.ratelimit.conf.properties.RateLimitPolicyType;
+import com.github.sajjaadalipour.ratelimit.conf.properties.RateLimitPriority;
 import com.github.sajjaadalipour.ratelimit.conf.properties.RateLimitProperties;
 import com.github.sajjaadalipour.ratelimit.conf.properties.RateLimitProperties.Policy;
 import com.github.sajjaadalipour.ratelimit.conf.properties.RateLimitProperties.Policy.Route;
+import com.github.sajjaadalipour.ratelimit.repositories.AdaptiveConcurrencyLimiter;
+import com.github.sajjaadalipour.ratelimit.repositories.InMemoryConcurrencyLimiter;
+import com.github.sajjaadalipour.ratelimit.shedding.LoadMonitor;
 import org.springframework.boot.web.servlet.filter.OrderedFilter;
 import org.springframework.util.AntPathMatcher;
 import org.springframework.util.PathMatcher;
 import org.springframework.web.filter.OncePerRequestFilter;
 
 import javax.annotation.Nonnull;
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.DispatcherType;
 import javax.servlet.FilterChain;
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
-import java.util.*;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import static com.github.sajjaadalipour.ratelimit.Rate.RATE_EXCEED_STATE;
 import static java.util.Comparator.comparing;
 import static java.util.stream.Collectors.groupingBy;
 import static java.util.stream.Collectors.toList;
 
 /**
  * A servlet filter to filtering requests to handle rate limiting.
+ * <p>
+ * The exceeded requests of a {@link RateLimitMode#THROTTLE} policy are parked by the Servlet 3 asynchronous
+ * processing, so they do not hold a container thread, and are resumed when the rate resets. A request is only
+ * parked if the rate resets within the max wait of the policy and the policy has less parked requests than its
+ * max queue depth, otherwise it is rejected like a {@link RateLimitMode#REJECT} policy.
+ * <p>
+ * The {@link RateLimitPolicyType#CONCURRENCY} policies are checked after all the rate policies allow the request,
+ * their permits are acquired before the rest of the chain and released after it, or after the asynchronous
+ * processing of the request if the rest of the chain has started it. The
+ * {@link RateLimitPolicyType#ADAPTIVE_CONCURRENCY} policies are the same, but each of them has an
+ * {@link AdaptiveConcurrencyLimiter} of this node, which adapts its limit by the latency of the requests, which
+ * lasts until the asynchronous processing of a request is over if the rest of the chain has started it.
+ * <p>
+ * If the asynchronous consumption is enabled, the rate policies of a request are consumed by
+ * {@link RateLimiter#tryConsumeAllAsync} while the request is in the Servlet 3 asynchronous mode, so no container
+ * thread waits for a remote repository, and the request is dispatched again to apply the decision.
+ * <p>
+ * If a {@link LoadMonitor} is given, the requests matching a {@link RateLimitPriority#LOW} policy are rejected
+ * before any policy is consumed while the process is overloaded.
  *
  * @author Sajjad Alipour
  */
 public class RateLimitFilter extends OncePerRequestFilter implements OrderedFilter {
 
+    /**
+     * Added to the max wait as the asynchronous timeout, which is only a safety net since the parked requests are
+     * resumed or rejected by the max wait.
+     */
+    private static final long THROTTLE_TIMEOUT_MARGIN_MILLIS = 1000;
+
+    /**
+     * Marks a throttled request which is dispatched after being resumed, so only its concurrency policies remain.
+     */
+    private static final String THROTTLE_RESUMED_ATTRIBUTE = RateLimitFilter.class.getName() + ".THROTTLE_RESUMED";
+
+    /**
+     * Holds the {@link RateConsumption} of a request which is dispatched after its rate policies are consumed
+     * asynchronously.
+     */
+    private static final String ASYNC_CONSUMPTION_ATTRIBUTE = RateLimitFilter.class.getName() + ".ASYNC_CONSUMPTION";
+
     /**
      * Encapsulates the rate limit properties.
      */
@@ -57,24 +118,97 @@ public class RateLimitFilter extends OncePerRequestFilter implements OrderedFilt
      */
     private final TooManyRequestErrorHandler tooManyRequestErrorHandler;
 
-    private final Map<String, List<Policy>> mapOfMatchedPolicies = new HashMap<>();
+    /**
+     * Caches the matched policies by request uri and method.
+     */
+    private final Map<String, Map<String, List<Policy>>> mapOfMatchedPolicies = new ConcurrentHashMap<>();
+
+    /**
+     * Used to limit the in-flight requests of the concurrency policies.
+     */
+    private final ConcurrencyLimiter concurrencyLimiter;
+
+    /**
+     * Decides whether the low priority requests should be shed, it is {@code null} if the load shedding is disabled.
+     */
+    private final LoadMonitor loadMonitor;
+
+    /**
+     * The source of the current time to compute how long a throttled request should be parked.
+     */
+    private final RateClock clock;
+
+    /**
+     * The limiters of the adaptive concurrency policies.
+     */
+    private final Map<Policy, AdaptiveConcurrencyLimiter> adaptiveLimiters = new ConcurrentHashMap<>();
+
+    /**
+     * The number of parked requests by the throttled policies.
+     */
+    private final Map<Policy, AtomicInteger> throttleQueues = new ConcurrentHashMap<>();
+
+    /**
+     * The consumption of the rate policies of the requests which are consumed synchronously on each thread, which is
+     * reused by the next requests of the thread since it is not referenced after the request is decided.
+     */
+    private final ThreadLocal<RateConsumption> reusableConsumptions = ThreadLocal.withInitial(RateConsumption::new);
+
+    /**
+     * Resumes the parked requests, it is created by the first parked request.
+     */
+    private volatile ScheduledExecutorService throttleScheduler;
 
     public RateLimitFilter(
             RateLimitProperties rateLimitProperties,
             RateLimiter rateLimiter,
             Map<String, RateLimitKeyGenerator> keyGenerators,
             TooManyRequestErrorHandler tooManyRequestErrorHandler) {
+        this(rateLimitProperties, rateLimiter, keyGenerators, tooManyRequestErrorHandler, RateClock.SYSTEM);
+    }
+
+    public RateLimitFilter(
+            RateLimitProperties rateLimitProperties,
+            RateLimiter rateLimiter,
+            Map<String, RateLimitKeyGenerator> keyGenerators,
+            TooManyRequestErrorHandler tooManyRequestErrorHandler,
+            RateClock clock) {
+        this(rateLimitProperties, rateLimiter, new InMemoryConcurrencyLimiter(), keyGenerators, tooManyRequestErrorHandler, clock);
+    }
+
+    public RateLimitFilter(
+            RateLimitProperties rateLimitProperties,
+            RateLimiter rateLimiter,
+            ConcurrencyLimiter concurrencyLimiter,
+            Map<String, RateLimitKeyGenerator> keyGenerators,
+            TooManyRequestErrorHandler tooManyRequestErrorHandler,
+            RateClock clock) {
+        this(rateLimitProperties, rateLimiter, concurrencyLimiter, keyGenerators, tooManyRequestErrorHandler, clock, null);
+    }
+
+    public RateLimitFilter(
+            RateLimitProperties rateLimitProperties,
+            RateLimiter rateLimiter,
+            ConcurrencyLimiter concurrencyLimiter,
+            Map<String, RateLimitKeyGenerator> keyGenerators,
+            TooManyRequestErrorHandler tooManyRequestErrorHandler,
+            RateClock clock,
+            LoadMonitor loadMonitor) {
+        this.loadMonitor = loadMonitor;
+        this.concurrencyLimiter = concurrencyLimiter;
         this.rateLimitProperties = rateLimitProperties;
         this.rateLimiter = rateLimiter;
         this.keyGenerators = keyGenerators;
         this.tooManyRequestErrorHandler = tooManyRequestErrorHandler;
+        this.clock = clock;
     }
 
     /**
      * First for all, get matched policies from the {@code httpServletRequest} by http method and request uri,
-     * iterates on matched policies then, first get the policy`s key generator to generate an identity key,
-     * now inits a {@link RatePolicy} and pass to rate limiter to consume, if after consuming the rate result exceeded
-     * return too many request error.
+     * then get each policy`s key generator to generate an identity key, now pass the keys and policies to
+     * rate limiter to consume them together, if after consuming the decision of a policy is not allowed
+     * materialize its {@link com.github.sajjaadalipour.ratelimit.Rate} and return too many request error, or
+     * park the request if the policy is throttled.
      *
      * @param httpServletRequest  The request to process.
      * @param httpServletResponse The response associated with the request.
@@ -89,30 +223,345 @@ public class RateLimitFilter extends OncePerRequestFilter implements OrderedFilt
             HttpServletRequest httpServletRequest,
             @Nonnull HttpServletResponse httpServletResponse,
             @Nonnull FilterChain filterChain) throws ServletException, IOException {
+        final RateConsumption asyncConsumption = isAsyncDispatch(httpServletRequest) ?
+                (RateConsumption) httpServletRequest.getAttribute(ASYNC_CONSUMPTION_ATTRIBUTE) : null;
+        if (isAsyncDispatch(httpServletRequest) && asyncConsumption == null &&
+                httpServletRequest.getAttribute(THROTTLE_RESUMED_ATTRIBUTE) == null) {
+            filterChain.doFilter(httpServletRequest, httpServletResponse);
+            return;
+        }
+
         List<Policy> matchedPolicies = getMatchedPolicies(httpServletRequest.getRequestURI(), httpServletRequest.getMethod());
 
-        boolean doFilterChain = true;
+        if (asyncConsumption != null) {
+            httpServletRequest.removeAttribute(ASYNC_CONSUMPTION_ATTRIBUTE);
+            if (decide(httpServletRequest, httpServletResponse, matchedPolicies, asyncConsumption.failIfFailed(), null)) {
+                doFilterWithPermits(httpServletRequest, httpServletResponse, filterChain, matchedPolicies, 0, null);
+            }
+            return;
+        }
 
-        for (Policy policy : matchedPolicies) {
-            final RateLimitKeyGenerator rateLimitKeyGenerator = keyGenerators.get(policy.getKeyGenerator());
-            final String generatedKey = rateLimitKeyGenerator.generateKey(httpServletRequest, policy);
-            final RatePolicy ratePolicy = new RatePolicy(
-                    generatedKey,
-                    policy.getDuration(),
-                    policy.getCount(),
-                    (policy.getBlock() != null) ? policy.getBlock().getDuration() : null);
+        if (isAsyncDispatch(httpServletRequest)) {
+            httpServletRequest.removeAttribute(THROTTLE_RESUMED_ATTRIBUTE);
+            doFilterWithPermits(httpServletRequest, httpServletResponse, filterChain, matchedPolicies, 0, null);
+            return;
+        }
+
+        if (loadMonitor != null && loadMonitor.isOverloaded() &&
+                shed(httpServletRequest, httpServletResponse, matchedPolicies)) {
+            return;
+        }
 
-            Rate rate = rateLimiter.consume(ratePolicy);
+        if (rateLimitProperties.isAsync() && httpServletRequest.isAsyncSupported()) {
+            consumePoliciesAsync(httpServletRequest, httpServletResponse, filterChain, matchedPolicies);
+            return;
+        }
+
+        if (consumePolicies(httpServletRequest, httpServletResponse, matchedPolicies, null)) {
+            doFilterWithPermits(httpServletRequest, httpServletResponse, filterChain, matchedPolicies, 0, null);
+        }
+    }
 
-            if (rate.isExceed() || rate.isBlocked()) {
-                tooManyRequestErrorHandler.handle(httpServletResponse, rate);
-                doFilterChain = false;
-                break;
+    /**
+     * Rejects the request if any of the given policies is of the low priority.
+     *
+     * @return {@code true} if the request is rejected.
+     * @throws IOException When write to response.
+     */
+    private boolean shed(HttpServletRequest httpServletRequest,
+                         HttpServletResponse httpServletResponse,
+                         List<Policy> policies) throws IOException {
+        for (int i = 0; i < policies.size(); i++) {
+            final Policy policy = policies.get(i);
+            if (policy.getPriority() == RateLimitPriority.LOW) {
+                final String generatedKey = keyGenerators.get(policy.getKeyGenerator())
+                        .generateKey(new RateLimitKeyContext(httpServletRequest), policy);
+                tooManyRequestErrorHandler.handle(httpServletResponse,
+                        new Rate(generatedKey, Instant.ofEpochMilli(clock.millis()), RATE_EXCEED_STATE));
+                return true;
             }
         }
+        return false;
+    }
 
-        if (doFilterChain) {
-            filterChain.doFilter(httpServletRequest, httpServletResponse);
+    /**
+     * The resumed throttled requests and the asynchronously consumed requests are dispatched asynchronously, so they
+     * should be filtered to apply the decision and acquire the permits of the concurrency policies.
+     */
+    @Override
+    protected boolean shouldNotFilterAsyncDispatch() {
+        return false;
+    }
+
+    /**
+     * Recognizes every asynchronous dispatch by its dispatcher type, since the requests dispatched by this filter
+     * have no concurrent result of Spring MVC.
+     */
+    @Override
+    protected boolean isAsyncDispatch(HttpServletRequest request) {
+        return request.getDispatcherType() == DispatcherType.ASYNC;
+    }
+
+    /**
+     * Acquires a permit of each concurrency policy from the given index, then passes the request to the rest of
+     * the chain and releases the permits after it, or rejects the request by the first policy which has no permit.
+     * If the rest of the chain has started the asynchronous processing, the request is still in flight, so the
+     * permits are released when it completes, fails or times out.
+     *
+     * @param keyContext The key context of the request which is shared by the concurrency policies, or {@code null}
+     *                   if it is not created yet.
+     */
+    private void doFilterWithPermits(HttpServletRequest httpServletRequest,
+                                     HttpServletResponse httpServletResponse,
+                                     FilterChain filterChain,
+                                     List<Policy> policies,
+                                     int from,
+                                     RateLimitKeyContext keyContext) throws ServletException, IOException {
+        for (int i = from; i < policies.size(); i++) {
+            final Policy policy = policies.get(i);
+            final ConcurrencyLimiter limiter = concurrencyLimiterOf(policy);
+            if (limiter == null) {
+                continue;
+            }
+
+            if (keyContext == null) {
+                keyContext = new RateLimitKeyContext(httpServletRequest);
+            }
+            final String generatedKey = keyGenerators.get(policy.getKeyGenerator()).generateKey(keyContext, policy);
+            final Permit permit = limiter.tryAcquire(generatedKey, policy);
+            if (permit == null) {
+                tooManyRequestErrorHandler.handle(httpServletResponse,
+                        new Rate(generatedKey, Instant.ofEpochMilli(clock.millis()), RATE_EXCEED_STATE));
+                return;
+            }
+
+            try {
+                doFilterWithPermits(httpServletRequest, httpServletResponse, filterChain, policies, i + 1, keyContext);
+            } finally {
+                if (httpServletRequest.isAsyncStarted()) {
+                    httpServletRequest.getAsyncContext().addListener(new AsyncPermit(permit));
+                } else {
+                    permit.release();
+                }
+            }
+            return;
+        }
+
+        filterChain.doFilter(httpServletRequest, httpServletResponse);
+    }
+
+    /**
+     * @return The limiter of the given policy, or {@code null} if the policy does not limit the in-flight requests.
+     */
+    private ConcurrencyLimiter concurrencyLimiterOf(Policy policy) {
+        switch (policy.getType()) {
+            case CONCURRENCY:
+                return concurrencyLimiter;
+            case ADAPTIVE_CONCURRENCY:
+                return adaptiveLimiters.computeIfAbsent(policy, it -> new AdaptiveConcurrencyLimiter(
+                        it.getCount(),
+                        it.getAdaptive().getMinLimit(),
+                        it.getAdaptive().getMaxLimit(),
+                        it.getAdaptive().getWindow(),
+                        it.getAdaptive().getTolerance()));
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Consumes the rate policies of the given policies together by {@link RateLimiter#tryConsumeAll}, and rejects
+     * or parks the request by the first policy which does not allow it.
+     *
+     * @param throttledRequest The parked request which is resumed, or {@code null} if the request is not parked.
+     * @return {@code true} if all the policies allow the request.
+     * @throws IOException When write to response.
+     */
+    private boolean consumePolicies(HttpServletRequest httpServletRequest,
+                                    HttpServletResponse httpServletResponse,
+                                    List<Policy> policies,
+                                    ThrottledRequest throttledRequest) throws IOException {
+        final RateConsumption consumption = reusableConsumptions.get();
+        try {
+            if (!collectRatePolicies(httpServletRequest, policies, consumption)) {
+                return true;
+            }
+
+            consumption.rejected = rateLimiter.tryConsumeAll(consumption.keys, consumption.policies, consumption.decisions);
+            return decide(httpServletRequest, httpServletResponse, policies, consumption, throttledRequest);
+        } finally {
+            consumption.clear();
+        }
+    }
+
+    /**
+     * Consumes the rate policies of the given policies together by {@link RateLimiter#tryConsumeAllAsync} while
+     * the request is in the asynchronous mode, then dispatches the request to apply the decision by
+     * {@link #doFilterInternal} on a container thread. A request without any rate policy is passed to the rest of
+     * the chain at once.
+     */
+    private void consumePoliciesAsync(HttpServletRequest httpServletRequest,
+                                      HttpServletResponse httpServletResponse,
+                                      FilterChain filterChain,
+                                      List<Policy> policies) throws ServletException, IOException {
+        final RateConsumption consumption = new RateConsumption();
+        if (!collectRatePolicies(httpServletRequest, policies, consumption)) {
+            doFilterWithPermits(httpServletRequest, httpServletResponse, filterChain, policies, 0, null);
+            return;
+        }
+
+        final AsyncContext asyncContext = httpServletRequest.startAsync(httpServletRequest, httpServletResponse);
+        rateLimiter.tryConsumeAllAsync(consumption.keys, consumption.policies, consumption.decisions)
+                .whenComplete((rejected, error) -> {
+                    if (error != null) {
+                        consumption.error = error instanceof CompletionException && error.getCause() != null ?
+                                error.getCause() : error;
+                    } else {
+                        consumption.rejected = rejected;
+                    }
+
+                    asyncContext.getRequest().setAttribute(ASYNC_CONSUMPTION_ATTRIBUTE, consumption);
+                    asyncContext.dispatch();
+                });
+    }
+
+    /**
+     * Collects the rate policies of the given policies and their generated keys into the given consumption. The
+     * keys are generated by the {@link RateLimitKeyContext} of the consumption, so the parts of the keys which only
+     * depend on the request are read once for all the policies.
+     *
+     * @return {@code false} if there is no rate policy.
+     */
+    private boolean collectRatePolicies(HttpServletRequest httpServletRequest,
+                                        List<Policy> policies,
+                                        RateConsumption consumption) {
+        for (int i = 0; i < policies.size(); i++) {
+            final Policy policy = policies.get(i);
+            if (policy.getType() == RateLimitPolicyType.RATE) {
+                if (consumption.policies.isEmpty()) {
+                    consumption.keyContext.reset(httpServletRequest);
+                }
+                consumption.policies.add(policy);
+                consumption.keys.add(keyGenerators.get(policy.getKeyGenerator()).generateKey(consumption.keyContext, policy));
+            }
+        }
+
+        if (consumption.decisions.length < consumption.policies.size()) {
+            consumption.decisions = new long[consumption.policies.size()];
+        }
+        return !consumption.policies.isEmpty();
+    }
+
+    /**
+     * Rejects or parks the request by the first rate policy which does not allow it.
+     *
+     * @param throttledRequest The parked request which is resumed, or {@code null} if the request is not parked.
+     * @return {@code true} if all the rate policies allow the request.
+     * @throws IOException When write to response.
+     */
+    private boolean decide(HttpServletRequest httpServletRequest,
+                           HttpServletResponse httpServletResponse,
+                           List<Policy> policies,
+                           RateConsumption consumption,
+                           ThrottledRequest throttledRequest) throws IOException {
+        final int rejected = consumption.rejected;
+        if (rejected < 0) {
+            return true;
+        }
+
+        final Policy policy = consumption.policies.get(rejected);
+        final String generatedKey = consumption.keys.get(rejected);
+        final long decision = consumption.decisions[rejected];
+        if (policy.getMode() == RateLimitMode.THROTTLE &&
+                park(httpServletRequest, httpServletResponse, policies, policy, generatedKey, decision, throttledRequest)) {
+            return false;
+        }
+
+        Rate rate = RateDecision.toRate(generatedKey, decision);
+        if (throttledRequest != null) {
+            throttledRequest.reject(rate);
+        } else {
+            tooManyRequestErrorHandler.handle(httpServletResponse, rate);
+        }
+        return false;
+    }
+
+    /**
+     * Parks the request until the rate of the given policy resets, if it resets within the max wait and the
+     * policy`s queue is not full. A resumed request keeps the deadline and the queue slot of its first park.
+     *
+     * @return {@code true} if the request is parked.
+     */
+    private boolean park(HttpServletRequest httpServletRequest,
+                         HttpServletResponse httpServletResponse,
+                         List<Policy> policies,
+                         Policy policy,
+                         String generatedKey,
+                         long decision,
+                         ThrottledRequest throttledRequest) {
+        final long now = clock.millis();
+        final long resumeAt = RateDecision.resetMillis(decision);
+
+        if (throttledRequest == null) {
+            if (!httpServletRequest.isAsyncSupported() || httpServletRequest.isAsyncStarted()) {
+                return false;
+            }
+
+            Policy.Throttle throttle = policy.getThrottle();
+            long maxWaitMillis = throttle.getMaxWait().toMillis();
+            if (resumeAt > now + maxWaitMillis) {
+                return false;
+            }
+
+            AtomicInteger queue = throttleQueues.computeIfAbsent(policy, it -> new AtomicInteger());
+            if (queue.incrementAndGet() > throttle.getMaxQueueDepth()) {
+                queue.decrementAndGet();
+                return false;
+            }
+
+            AsyncContext asyncContext = httpServletRequest.startAsync(httpServletRequest, httpServletResponse);
+            asyncContext.setTimeout(maxWaitMillis + THROTTLE_TIMEOUT_MARGIN_MILLIS);
+            throttledRequest = new ThrottledRequest(asyncContext, policies, queue, now + maxWaitMillis);
+            asyncContext.addListener(throttledRequest);
+        } else if (resumeAt > throttledRequest.deadline) {
+            return false;
+        }
+
+        throttledRequest.rate = RateDecision.toRate(generatedKey, decision);
+        final ThrottledRequest parkedRequest = throttledRequest;
+        getThrottleScheduler().schedule(
+                () -> parkedRequest.asyncContext.start(parkedRequest::resume),
+                Math.max(resumeAt - now, 0),
+                TimeUnit.MILLISECONDS);
+        return true;
+    }
+
+    private ScheduledExecutorService getThrottleScheduler() {
+        ScheduledExecutorService scheduler = throttleScheduler;
+        if (scheduler == null) {
+            synchronized (this) {
+                scheduler = throttleScheduler;
+                if (scheduler == null) {
+                    scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                        Thread thread = new Thread(runnable, "rate-limit-throttle");
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+                    throttleScheduler = scheduler;
+                }
+            }
+        }
+        return scheduler;
+    }
+
+    /**
+     * Stops resuming the parked requests.
+     */
+    @Override
+    public void destroy() {
+        ScheduledExecutorService scheduler = throttleScheduler;
+        if (scheduler != null) {
+            scheduler.shutdownNow();
         }
     }
 
@@ -124,7 +573,7 @@ public class RateLimitFilter extends OncePerRequestFilter implements OrderedFilt
     /**
      * This method get policies of a request according to it's uri and method.
      * The request uri must not be include in Exclude Routes of that policy
-     * and between multiple policy with identical duration, the policy
+     * and between multiple policy with identical type and duration, the policy
      * with minimum duration is selected. eventually between all policy
      * ordering is done.
      *
@@ -133,16 +582,18 @@ public class RateLimitFilter extends OncePerRequestFilter implements OrderedFilt
      * @return A list of policies.
      */
     private List<Policy> getMatchedPolicies(String uri, String method) {
-        List<Policy> policies = Optional.ofNullable(mapOfMatchedPolicies.get(uri + method)).orElse(new ArrayList<>());
-        if (!policies.isEmpty()) return policies;
+        Map<String, List<Policy>> policiesByMethod = mapOfMatchedPolicies.get(uri);
+        List<Policy> cachedPolicies = policiesByMethod != null ? policiesByMethod.get(method) : null;
+        if (cachedPolicies != null) return cachedPolicies;
 
+        List<Policy> policies = new ArrayList<>();
         rateLimitProperties.getPolicies()
                 .stream()
                 .filter(policy ->
                         isNoneMatchPolicyExcludeRoutesWithGivenRequestUriAndMethod(uri, method, policy) &&
                                 isAnyMatchPolicyRoutesWithGivenRequestUriAndMethod(uri, method, policy)
-                ).collect(groupingBy(policy -> policy.getDuration().toMillis()))
-                .forEach((millisecond, policyList) ->
+                ).collect(groupingBy(policy -> policy.getType() + ":" + policy.getDuration().toMillis()))
+                .forEach((typeAndMillisecond, policyList) ->
                         policyList
                                 .stream()
                                 .min(comparing(Policy::getCount))
@@ -152,7 +603,7 @@ public class RateLimitFilter extends OncePerRequestFilter implements OrderedFilt
 
         List<Policy> sortedPolicies = policies.stream().sorted(comparing(Policy::getDuration)).collect(toList());
 
-        mapOfMatchedPolicies.put(uri + method, policies);
+        mapOfMatchedPolicies.computeIfAbsent(uri, it -> new ConcurrentHashMap<>()).put(method, sortedPolicies);
 
         return sortedPolicies;
     }
@@ -174,4 +625,196 @@ public class RateLimitFilter extends OncePerRequestFilter implements OrderedFilt
         }
         return pathMatcher.match(route.getUri(), uri) && route.getMethod().name().equals(method);
     }
+
+    /**
+     * The rate policies of a request, their generated keys and the decisions of consuming them. A consumption of a
+     * synchronously consumed request is cleared and reused by the next request of the thread.
+     */
+    private static final class RateConsumption {
+
+        private final List<Policy> policies = new ArrayList<>();
+
+        private final List<String> keys = new ArrayList<>();
+
+        private final RateLimitKeyContext keyContext = new RateLimitKeyContext(null);
+
+        /**
+         * The decisions of the policies by their order, it may be longer than the policies.
+         */
+        private long[] decisions = new long[4];
+
+        /**
+         * The index of the first policy which does not allow the request, or {@code -1} if all of them allow it.
+         */
+        private int rejected = -1;
+
+        /**
+         * The failure of an asynchronous consumption, it is {@code null} if the policies are consumed.
+         */
+        private Throwable error;
+
+        /**
+         * Drops the request, so the consumption can be reused without referencing it.
+         */
+        void clear() {
+            policies.clear();
+            keys.clear();
+            keyContext.reset(null);
+            rejected = -1;
+            error = null;
+        }
+
+        /**
+         * Throws the failure of the asynchronous consumption on the dispatched thread, like a synchronous
+         * consumption would.
+         *
+         * @return This consumption if it is not failed.
+         */
+        RateConsumption failIfFailed() throws ServletException {
+            if (error instanceof RuntimeException) {
+                throw (RuntimeException) error;
+            }
+            if (error != null) {
+                throw new ServletException("Failed to consume the rate limit policies", error);
+            }
+            return this;
+        }
+    }
+
+    /**
+     * Holds the permit of a request which is processed asynchronously and releases it exactly once when the
+     * asynchronous processing is over.
+     */
+    private static final class AsyncPermit implements AsyncListener {
+
+        private final Permit permit;
+
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        AsyncPermit(Permit permit) {
+            this.permit = permit;
+        }
+
+        private void release() {
+            if (released.compareAndSet(false, true)) {
+                permit.release();
+            }
+        }
+
+        @Override
+        public void onComplete(AsyncEvent event) {
+            release();
+        }
+
+        @Override
+        public void onTimeout(AsyncEvent event) {
+            release();
+        }
+
+        @Override
+        public void onError(AsyncEvent event) {
+            release();
+        }
+
+        /**
+         * The listeners are dropped when the asynchronous processing is started again, e.g. by an asynchronous
+         * dispatch, so the permit registers itself with the new context.
+         */
+        @Override
+        public void onStartAsync(AsyncEvent event) {
+            event.getAsyncContext().addListener(this);
+        }
+    }
+
+    /**
+     * A request which is parked by a throttled policy, it is finished exactly once by either being dispatched to
+     * the rest of the chain, rejected or timed out, which also frees its slot of the queue.
+     */
+    private final class ThrottledRequest implements AsyncListener {
+
+        private final AsyncContext asyncContext;
+
+        private final List<Policy> policies;
+
+        private final AtomicInteger queue;
+
+        /**
+         * The epoch milliseconds which the request may not be parked after.
+         */
+        private final long deadline;
+
+        private final AtomicBoolean finished = new AtomicBoolean();
+
+        /**
+         * The rate which parked the request last, it is used to reject the request on timeout.
+         */
+        private volatile Rate rate;
+
+        ThrottledRequest(AsyncContext asyncContext, List<Policy> policies, AtomicInteger queue, long deadline) {
+            this.asyncContext = asyncContext;
+            this.policies = policies;
+            this.queue = queue;
+            this.deadline = deadline;
+        }
+
+        /**
+         * Consumes the policies again, since none of them is consumed by a rejected request.
+         */
+        void resume() {
+            if (finished.get()) {
+                return;
+            }
+
+            try {
+                if (consumePolicies((HttpServletRequest) asyncContext.getRequest(),
+                        (HttpServletResponse) asyncContext.getResponse(), policies, this) && finish()) {
+                    asyncContext.getRequest().setAttribute(THROTTLE_RESUMED_ATTRIBUTE, Boolean.TRUE);
+                    asyncContext.dispatch();
+                }
+            } catch (IOException | RuntimeException e) {
+                if (finish()) {
+                    asyncContext.complete();
+                }
+            }
+        }
+
+        void reject(Rate rate) throws IOException {
+            if (!finish()) {
+                return;
+            }
+
+            try {
+                tooManyRequestErrorHandler.handle((HttpServletResponse) asyncContext.getResponse(), rate);
+            } finally {
+                asyncContext.complete();
+            }
+        }
+
+        private boolean finish() {
+            if (finished.compareAndSet(false, true)) {
+                queue.decrementAndGet();
+                return true;
+            }
+            return false;
+        }
+
+        @Override
+        public void onTimeout(AsyncEvent event) throws IOException {
+            reject(rate);
+        }
+
+        @Override
+        public void onError(AsyncEvent event) {
+            finish();
+        }
+
+        @Override
+        public void onComplete(AsyncEvent event) {
+            finish();
+        }
+
+        @Override
+        public void onStartAsync(AsyncEvent event) {
+        }
+    }
 }
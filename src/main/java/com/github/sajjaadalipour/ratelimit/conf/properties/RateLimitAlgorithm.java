@@ -0,0 +1,33 @@
+package com.github.sajjaadalipour.ratelimit.conf.properties;
+
+/**
+ * Represents the all supported algorithms to limit the rate of a policy.
+ *
+ * @author Sajjad Alipour
+ */
+public enum RateLimitAlgorithm {
+
+    /**
+     * Allows the count of requests per window of the duration, the window starts by the first request.
+     */
+    FIXED_WINDOW,
+
+    /**
+     * Estimates the requests of the last duration by weighting the count of the previous window by its overlap
+     * with the last duration and adding the count of the current window, so the load is not reset at once
+     * at the window boundaries.
+     */
+    SLIDING_WINDOW,
+
+    /**
+     * Keeps a bucket of the count of tokens which is refilled by one token per duration / count,
+     * each request takes a token.
+     */
+    TOKEN_BUCKET,
+
+    /**
+     * The generic cell rate algorithm, which shapes the requests like {@link #TOKEN_BUCKET} while keeping only
+     * the theoretical arrival time of the next request per key.
+     */
+    GCRA
+}
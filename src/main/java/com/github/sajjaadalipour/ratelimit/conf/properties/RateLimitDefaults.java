@@ -0,0 +1,120 @@
+package com.github.sajjaadalipour.ratelimit.conf.properties;
+
+import java.time.Duration;
+
+/**
+ * Represents the default values of the {@link RateLimitProperties}, which are shared by the rate limit components that
+ * are created without the properties.
+ *
+ * @author Sajjad Alipour
+ */
+public final class RateLimitDefaults {
+
+    /**
+     * The default interval of the expiry sweeper of the in-memory repository.
+     */
+    public static final Duration SWEEP_INTERVAL = Duration.ofSeconds(1);
+
+    /**
+     * The default interval of taking snapshots of the in-memory repository.
+     */
+    public static final Duration SNAPSHOT_INTERVAL = Duration.ofSeconds(30);
+
+    /**
+     * The default number of slots of the off-heap table.
+     */
+    public static final int OFF_HEAP_CAPACITY = 1 << 20;
+
+    /**
+     * The default max duration the concurrent Redis script calls are collected before they are sent as one pipeline.
+     */
+    public static final Duration BATCH_MAX_DELAY = Duration.ofNanos(200_000);
+
+    /**
+     * The default max number of Redis script calls which are sent as one pipeline.
+     */
+    public static final int BATCH_MAX_SIZE = 128;
+
+    /**
+     * The default max number of the rejected keys which are kept by the Redis near-cache.
+     */
+    public static final int NEAR_CACHE_MAX_ENTRIES = 10_000;
+
+    /**
+     * The default duration a quota lease is expected to last by the rate of its key.
+     */
+    public static final Duration LEASE_DURATION = Duration.ofMillis(100);
+
+    /**
+     * The default max share of a policy count which each node may lease at once.
+     */
+    public static final double LEASE_MAX_SHARE = 0.1;
+
+    /**
+     * The default max duration a decision waits for the remote rate limiter.
+     */
+    public static final Duration CIRCUIT_BREAKER_TIMEOUT = Duration.ofMillis(50);
+
+    /**
+     * The default number of consecutive failures which open the breaker.
+     */
+    public static final int CIRCUIT_BREAKER_FAILURE_THRESHOLD = 5;
+
+    /**
+     * The default duration the breaker stays open before it is probed.
+     */
+    public static final Duration CIRCUIT_BREAKER_OPEN_DURATION = Duration.ofSeconds(5);
+
+    /**
+     * The default interval of updating the time of the cached clock.
+     */
+    public static final Duration CLOCK_PRECISION = Duration.ofMillis(10);
+
+    /**
+     * The default interval of sampling the load.
+     */
+    public static final Duration SHEDDING_INTERVAL = Duration.ofMillis(100);
+
+    /**
+     * The default usage of the request thread pool which the process is overloaded at.
+     */
+    public static final double SHEDDING_THREAD_POOL_USAGE = 0.9;
+
+    /**
+     * The default CPU load of the process which the process is overloaded at.
+     */
+    public static final double SHEDDING_CPU_LOAD = 0.9;
+
+    /**
+     * The default max duration a throttled request may be parked.
+     */
+    public static final Duration THROTTLE_MAX_WAIT = Duration.ofSeconds(5);
+
+    /**
+     * The default max number of parked requests of a throttled policy.
+     */
+    public static final int THROTTLE_MAX_QUEUE_DEPTH = 100;
+
+    /**
+     * The default min limit of the in-flight requests of an adaptive concurrency policy.
+     */
+    public static final int ADAPTIVE_MIN_LIMIT = 1;
+
+    /**
+     * The default max limit of the in-flight requests of an adaptive concurrency policy.
+     */
+    public static final int ADAPTIVE_MAX_LIMIT = 1000;
+
+    /**
+     * The default duration of a window of latencies of an adaptive concurrency policy.
+     */
+    public static final Duration ADAPTIVE_WINDOW = Duration.ofSeconds(1);
+
+    /**
+     * The default ratio of the latency to the long term latency which is tolerated before shrinking the limit.
+     */
+    public static final double ADAPTIVE_TOLERANCE = 1.5;
+
+    private RateLimitDefaults() {
+    }
+}
@@ -0,0 +1,24 @@
+package com.github.sajjaadalipour.ratelimit.conf.properties;
+
+/**
+ * Represents the all supported decisions of a policy while its remote repository is unavailable.
+ *
+ * @author Sajjad Alipour
+ */
+public enum RateLimitFallback {
+
+    /**
+     * The requests are limited by each node in memory, by the policy count divided by the number of the nodes.
+     */
+    LOCAL,
+
+    /**
+     * The requests are allowed, so the policy fails open.
+     */
+    ALLOW,
+
+    /**
+     * The requests are rejected, so the policy fails closed.
+     */
+    REJECT
+}
@@ -0,0 +1,21 @@
+package com.github.sajjaadalipour.ratelimit.conf.properties;
+
+/**
+ * Represents the all supported ways to treat the requests which exceed the rate of a policy.
+ *
+ * @author Sajjad Alipour
+ */
+public enum RateLimitMode {
+
+    /**
+     * Rejects the exceeded requests immediately by the too many request error.
+     */
+    REJECT,
+
+    /**
+     * Parks the exceeded requests, without holding a servlet container thread, and resumes them when the rate
+     * of the policy frees up, as long as it is within the max wait and the max queue depth of the policy,
+     * otherwise rejects them by the too many request error.
+     */
+    THROTTLE
+}
@@ -0,0 +1,26 @@
+package com.github.sajjaadalipour.ratelimit.conf.properties;
+
+/**
+ * Represents the all supported types of the rate limit policies.
+ *
+ * @author Sajjad Alipour
+ */
+public enum RateLimitPolicyType {
+
+    /**
+     * Limits the count of requests per duration.
+     */
+    RATE,
+
+    /**
+     * Limits the count of in-flight requests, each request holds a permit until it is done or the duration
+     * is passed.
+     */
+    CONCURRENCY,
+
+    /**
+     * Limits the count of in-flight requests on this node by a limit which is adapted to the observed latency,
+     * the count is the initial limit.
+     */
+    ADAPTIVE_CONCURRENCY
+}
@@ -0,0 +1,19 @@
+package com.github.sajjaadalipour.ratelimit.conf.properties;
+
+/**
+ * Represents the all supported priorities of the routes of a policy under load.
+ *
+ * @author Sajjad Alipour
+ */
+public enum RateLimitPriority {
+
+    /**
+     * The routes are rejected while the process is overloaded, even if the requester is under the limit.
+     */
+    LOW,
+
+    /**
+     * The routes are only limited by the policy.
+     */
+    NORMAL
+}
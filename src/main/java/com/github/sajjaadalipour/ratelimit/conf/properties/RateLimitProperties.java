@@ -7,11 +7,13 @@ import org.springframework.boot.context.properties.ConstructorBinding;
 import org.springframework.boot.context.properties.NestedConfigurationProperty;
 import org.springframework.boot.context.properties.bind.DefaultValue;
 import org.springframework.http.HttpMethod;
+import org.springframework.util.ClassUtils;
 import org.springframework.util.StringUtils;
 import org.springframework.validation.annotation.Validated;
 
 import javax.validation.Valid;
 import javax.validation.constraints.*;
+import java.nio.file.Path;
 import java.time.Duration;
 import java.util.*;
 
@@ -44,6 +46,12 @@ public class RateLimitProperties {
      */
     private final String keyPrefix;
 
+    /**
+     * Represents the rate policies to be consumed while the requests are in the asynchronous mode or not, so no
+     * container thread waits for a remote repository.
+     */
+    private final boolean async;
+
     /**
      * Represents which repository name to use to store rate limitation detail?
      */
@@ -63,6 +71,41 @@ public class RateLimitProperties {
     @NotEmpty(message = "Rate limit key generators is empty")
     private final Set<@Valid KeyGenerator> keyGenerators;
 
+    /**
+     * Encapsulates the properties of the `IN_MEMORY` repository.
+     */
+    @Valid
+    @NestedConfigurationProperty
+    private final InMemory inMemory;
+
+    /**
+     * Encapsulates the properties of the `OFF_HEAP` repository.
+     */
+    @Valid
+    @NestedConfigurationProperty
+    private final OffHeap offHeap;
+
+    /**
+     * Encapsulates the properties of the `REDIS` repository.
+     */
+    @Valid
+    @NestedConfigurationProperty
+    private final Redis redis;
+
+    /**
+     * Encapsulates the properties of the clock which all rate computations are based on.
+     */
+    @Valid
+    @NestedConfigurationProperty
+    private final Clock clock;
+
+    /**
+     * Encapsulates the properties of rejecting the low priority routes while the process is overloaded.
+     */
+    @Valid
+    @NestedConfigurationProperty
+    private final LoadShedding loadShedding;
+
     /**
      * Keeps a map of {@link #keyGenerators} by key generators names.
      */
@@ -74,6 +117,37 @@ public class RateLimitProperties {
         return enabled && !StringUtils.isEmpty(repository);
     }
 
+    /**
+     * Checks the policies of the `OFF_HEAP` repository, which only supports the fixed window algorithm.
+     *
+     * @return false if the repository is `OFF_HEAP` and a policy has another algorithm.
+     */
+    @AssertTrue(message = "Rate limit policy`s algorithm is not supported by the OFF_HEAP repository")
+    public boolean isSupportedPolicyAlgorithm() {
+        return repository != RateLimitRepositoryKey.OFF_HEAP ||
+                policies.stream().allMatch(policy -> policy.algorithm == RateLimitAlgorithm.FIXED_WINDOW);
+    }
+
+    /**
+     * Checks the near-cache invalidation of the `REDIS` repository, which is only published on a single Redis.
+     *
+     * @return false if the near-cache invalidation is enabled along with the Redis shards.
+     */
+    @AssertTrue(message = "Rate limit redis near-cache invalidation is not supported along with the redis shards")
+    public boolean isSupportedNearCacheInvalidation() {
+        return redis.shards.isEmpty() || !redis.nearCache.invalidation;
+    }
+
+    /**
+     * Checks the layout of the `REDIS` repository, the leases are only taken by parts of the string keys.
+     *
+     * @return false if the hash or epoch layout is enabled along with the leasing.
+     */
+    @AssertTrue(message = "Rate limit redis layout is not supported along with the leasing")
+    public boolean isSupportedRedisLayout() {
+        return redis.layout == RateLimitRedisLayout.STRING || !redis.lease.enabled;
+    }
+
     /**
      * Checks the policies items key generator name is valid.
      *
@@ -92,16 +166,38 @@ public class RateLimitProperties {
 
     public RateLimitProperties(Boolean enabled,
                                int filterOrder,
-                               @DefaultValue("RATE_LIMITER_RATES") String keyPrefix,
+                               String keyPrefix,
                                RateLimitRepositoryKey repository,
                                Set<Policy> policies,
                                Set<KeyGenerator> keyGenerators) {
+        this(enabled, filterOrder, keyPrefix, repository, policies, keyGenerators, null, null, null, null, null, null);
+    }
+
+    @ConstructorBinding
+    public RateLimitProperties(Boolean enabled,
+                               int filterOrder,
+                               @DefaultValue("RATE_LIMITER_RATES") String keyPrefix,
+                               RateLimitRepositoryKey repository,
+                               Set<Policy> policies,
+                               Set<KeyGenerator> keyGenerators,
+                               InMemory inMemory,
+                               OffHeap offHeap,
+                               Clock clock,
+                               LoadShedding loadShedding,
+                               Redis redis,
+                               Boolean async) {
         this.enabled = enabled;
         this.keyPrefix = keyPrefix;
         this.repository = repository;
         this.policies = new HashSet<>(policies);
         this.keyGenerators = keyGenerators;
         this.filterOrder = filterOrder;
+        this.inMemory = inMemory != null ? inMemory : new InMemory(null, null);
+        this.offHeap = offHeap != null ? offHeap : new OffHeap(null);
+        this.clock = clock != null ? clock : new Clock(null);
+        this.loadShedding = loadShedding != null ? loadShedding : new LoadShedding(null, null, null, null);
+        this.redis = redis != null ? redis : new Redis(null, null, null, null, null, null);
+        this.async = async != null && async;
     }
 
     public boolean isEnabled() {
@@ -112,6 +208,10 @@ public class RateLimitProperties {
         return filterOrder;
     }
 
+    public boolean isAsync() {
+        return async;
+    }
+
     public String getKeyPrefix() {
         return keyPrefix;
     }
@@ -128,6 +228,467 @@ public class RateLimitProperties {
         return keyGenerators;
     }
 
+    public InMemory getInMemory() {
+        return inMemory;
+    }
+
+    public OffHeap getOffHeap() {
+        return offHeap;
+    }
+
+    public Clock getClock() {
+        return clock;
+    }
+
+    public LoadShedding getLoadShedding() {
+        return loadShedding;
+    }
+
+    public Redis getRedis() {
+        return redis;
+    }
+
+    /**
+     * Encapsulates the properties of the `IN_MEMORY` repository.
+     */
+    public static final class InMemory {
+
+        /**
+         * Determines how often the expired rate limits should be evicted from memory.
+         */
+        private final Duration sweepInterval;
+
+        /**
+         * The max number of rate limits to keep in memory. When it is reached, new keys are only admitted
+         * if they are seen more frequently than the evicted ones. {@code 0} means unbounded.
+         */
+        @PositiveOrZero(message = "Rate limit in-memory max entries is negative")
+        private final int maxEntries;
+
+        /**
+         * Encapsulates the properties of keeping the rate limits in a file across restarts.
+         */
+        @Valid
+        @NestedConfigurationProperty
+        private final Snapshot snapshot;
+
+        public InMemory(Duration sweepInterval, Integer maxEntries) {
+            this(sweepInterval, maxEntries, null);
+        }
+
+        @ConstructorBinding
+        public InMemory(Duration sweepInterval, Integer maxEntries, Snapshot snapshot) {
+            this.sweepInterval = sweepInterval != null ? sweepInterval : RateLimitDefaults.SWEEP_INTERVAL;
+            this.maxEntries = maxEntries != null ? maxEntries : 0;
+            this.snapshot = snapshot != null ? snapshot : new Snapshot(null, null);
+        }
+
+        public Duration getSweepInterval() {
+            return sweepInterval;
+        }
+
+        public int getMaxEntries() {
+            return maxEntries;
+        }
+
+        public Snapshot getSnapshot() {
+            return snapshot;
+        }
+    }
+
+    /**
+     * Encapsulates the snapshot properties of the `IN_MEMORY` repository.
+     */
+    public static final class Snapshot {
+
+        /**
+         * The file to keep the rate limits in, the snapshots are disabled when it is not set.
+         */
+        private final Path path;
+
+        /**
+         * Determines how often a snapshot should be taken.
+         */
+        private final Duration interval;
+
+        public Snapshot(Path path, Duration interval) {
+            this.path = path;
+            this.interval = interval != null ? interval : RateLimitDefaults.SNAPSHOT_INTERVAL;
+        }
+
+        public Path getPath() {
+            return path;
+        }
+
+        public Duration getInterval() {
+            return interval;
+        }
+    }
+
+    /**
+     * Encapsulates the properties of the `OFF_HEAP` repository.
+     */
+    public static final class OffHeap {
+
+        /**
+         * The number of rate limits which fits in the off-heap table, each of them costs
+         * {@value com.github.sajjaadalipour.ratelimit.repositories.OffHeapRateCache#SLOT_SIZE} bytes.
+         */
+        @Positive(message = "Rate limit off-heap capacity is not positive")
+        private final int capacity;
+
+        public OffHeap(Integer capacity) {
+            this.capacity = capacity != null ? capacity : RateLimitDefaults.OFF_HEAP_CAPACITY;
+        }
+
+        public int getCapacity() {
+            return capacity;
+        }
+    }
+
+    /**
+     * Encapsulates the properties of the `REDIS` repository.
+     */
+    public static final class Redis {
+
+        /**
+         * Encapsulates the properties of sending the script calls of the concurrent requests as one pipeline.
+         */
+        @Valid
+        @NestedConfigurationProperty
+        private final Batch batch;
+
+        /**
+         * Encapsulates the properties of remembering the rejected keys on each node.
+         */
+        @Valid
+        @NestedConfigurationProperty
+        private final NearCache nearCache;
+
+        /**
+         * Encapsulates the properties of leasing the fixed window quotas to each node.
+         */
+        @Valid
+        @NestedConfigurationProperty
+        private final Lease lease;
+
+        /**
+         * The URIs of the standalone Redis instances to shard the keys across, e.g. {@code redis://host:6379/0},
+         * instead of the single Redis of the {@code spring.redis} properties.
+         * <b>Its optional.</p>
+         */
+        private final List<String> shards;
+
+        /**
+         * Encapsulates the properties of guarding the Redis rate limiter by a latency budget and a circuit breaker.
+         */
+        @Valid
+        @NestedConfigurationProperty
+        private final CircuitBreaker circuitBreaker;
+
+        /**
+         * The layout of the fixed window rate limits in Redis, {@code HASH} keeps the keys of an identity, their hash
+         * tag, as the fields of a single hash, and {@code EPOCH} keeps a counter per window aligned to the wall clock.
+         */
+        private final RateLimitRedisLayout layout;
+
+        public Redis(Batch batch,
+                     NearCache nearCache,
+                     Lease lease,
+                     List<String> shards,
+                     CircuitBreaker circuitBreaker,
+                     RateLimitRedisLayout layout) {
+            this.batch = batch != null ? batch : new Batch(null, null, null);
+            this.nearCache = nearCache != null ? nearCache : new NearCache(null, null, null);
+            this.lease = lease != null ? lease : new Lease(null, null, null);
+            this.shards = shards != null ? shards : new ArrayList<>();
+            this.circuitBreaker = circuitBreaker != null ? circuitBreaker : new CircuitBreaker(null, null, null, null, null);
+            this.layout = layout != null ? layout : RateLimitRedisLayout.STRING;
+        }
+
+        public Batch getBatch() {
+            return batch;
+        }
+
+        public NearCache getNearCache() {
+            return nearCache;
+        }
+
+        public Lease getLease() {
+            return lease;
+        }
+
+        public List<String> getShards() {
+            return shards;
+        }
+
+        public CircuitBreaker getCircuitBreaker() {
+            return circuitBreaker;
+        }
+
+        public RateLimitRedisLayout getLayout() {
+            return layout;
+        }
+    }
+
+    /**
+     * Encapsulates the batching properties of the `REDIS` repository.
+     */
+    public static final class Batch {
+
+        /**
+         * Represents the batching to be enabled or not.
+         */
+        private final boolean enabled;
+
+        /**
+         * The max duration the concurrent script calls are collected before they are sent as one pipeline.
+         */
+        private final Duration maxDelay;
+
+        /**
+         * The max number of script calls which are sent as one pipeline.
+         */
+        @Positive(message = "Rate limit redis batch max size is not positive")
+        private final int maxSize;
+
+        public Batch(Boolean enabled, Duration maxDelay, Integer maxSize) {
+            this.enabled = enabled != null && enabled;
+            this.maxDelay = maxDelay != null ? maxDelay : RateLimitDefaults.BATCH_MAX_DELAY;
+            this.maxSize = maxSize != null ? maxSize : RateLimitDefaults.BATCH_MAX_SIZE;
+        }
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public Duration getMaxDelay() {
+            return maxDelay;
+        }
+
+        public int getMaxSize() {
+            return maxSize;
+        }
+    }
+
+    /**
+     * Encapsulates the near-cache properties of the `REDIS` repository.
+     */
+    public static final class NearCache {
+
+        /**
+         * Represents the near-cache to be enabled or not.
+         */
+        private final boolean enabled;
+
+        /**
+         * The max number of the rejected keys which are kept on each node.
+         */
+        @Positive(message = "Rate limit redis near-cache max entries is not positive")
+        private final int maxEntries;
+
+        /**
+         * Represents the nodes to evict the keys which are reset by another node or not.
+         */
+        private final boolean invalidation;
+
+        public NearCache(Boolean enabled, Integer maxEntries, Boolean invalidation) {
+            this.enabled = enabled != null && enabled;
+            this.maxEntries = maxEntries != null ? maxEntries : RateLimitDefaults.NEAR_CACHE_MAX_ENTRIES;
+            this.invalidation = invalidation != null && invalidation;
+        }
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public int getMaxEntries() {
+            return maxEntries;
+        }
+
+        public boolean isInvalidation() {
+            return invalidation;
+        }
+    }
+
+    /**
+     * Encapsulates the quota leasing properties of the `REDIS` repository.
+     */
+    public static final class Lease {
+
+        /**
+         * Represents the leasing to be enabled or not.
+         */
+        private final boolean enabled;
+
+        /**
+         * The duration a lease is expected to last by the observed rate of its key, which sizes the leases.
+         */
+        private final Duration duration;
+
+        /**
+         * The max share of a policy count which each node may lease at once, which bounds the over-admission.
+         */
+        @DecimalMin(value = "0.0", inclusive = false, message = "Rate limit redis lease max share is not positive")
+        @DecimalMax(value = "1.0", message = "Rate limit redis lease max share is greater than one")
+        private final double maxShare;
+
+        public Lease(Boolean enabled, Duration duration, Double maxShare) {
+            this.enabled = enabled != null && enabled;
+            this.duration = duration != null ? duration : RateLimitDefaults.LEASE_DURATION;
+            this.maxShare = maxShare != null ? maxShare : RateLimitDefaults.LEASE_MAX_SHARE;
+        }
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public Duration getDuration() {
+            return duration;
+        }
+
+        public double getMaxShare() {
+            return maxShare;
+        }
+    }
+
+    /**
+     * Encapsulates the circuit breaker properties of the `REDIS` repository.
+     */
+    public static final class CircuitBreaker {
+
+        /**
+         * Represents the circuit breaker to be enabled or not.
+         */
+        private final boolean enabled;
+
+        /**
+         * The max duration a decision waits for Redis before it is decided by the fallback of its policy.
+         */
+        private final Duration timeout;
+
+        /**
+         * The number of consecutive failed or timed out decisions which open the breaker.
+         */
+        @Positive(message = "Rate limit redis circuit breaker failure threshold is not positive")
+        private final int failureThreshold;
+
+        /**
+         * The duration the breaker stays open before a decision probes Redis again.
+         */
+        private final Duration openDuration;
+
+        /**
+         * The expected number of nodes, which divides the policy count of the `LOCAL` fallback.
+         */
+        @Positive(message = "Rate limit redis circuit breaker nodes is not positive")
+        private final int nodes;
+
+        public CircuitBreaker(Boolean enabled,
+                              Duration timeout,
+                              Integer failureThreshold,
+                              Duration openDuration,
+                              Integer nodes) {
+            this.enabled = enabled != null && enabled;
+            this.timeout = timeout != null ? timeout : RateLimitDefaults.CIRCUIT_BREAKER_TIMEOUT;
+            this.failureThreshold = failureThreshold != null ?
+                    failureThreshold : RateLimitDefaults.CIRCUIT_BREAKER_FAILURE_THRESHOLD;
+            this.openDuration = openDuration != null ? openDuration : RateLimitDefaults.CIRCUIT_BREAKER_OPEN_DURATION;
+            this.nodes = nodes != null ? nodes : 1;
+        }
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public Duration getTimeout() {
+            return timeout;
+        }
+
+        public int getFailureThreshold() {
+            return failureThreshold;
+        }
+
+        public Duration getOpenDuration() {
+            return openDuration;
+        }
+
+        public int getNodes() {
+            return nodes;
+        }
+    }
+
+    /**
+     * Encapsulates the clock properties.
+     */
+    public static final class Clock {
+
+        /**
+         * Determines how often the cached time is updated, so how far it may lag behind the system clock.
+         */
+        private final Duration precision;
+
+        public Clock(Duration precision) {
+            this.precision = precision != null ? precision : RateLimitDefaults.CLOCK_PRECISION;
+        }
+
+        public Duration getPrecision() {
+            return precision;
+        }
+    }
+
+    /**
+     * Encapsulates the properties of rejecting the low priority routes while the process is overloaded.
+     */
+    public static final class LoadShedding {
+
+        /**
+         * Represents the load shedding to be enabled or not.
+         */
+        private final boolean enabled;
+
+        /**
+         * The usage of the request thread pool, the active threads plus the queued requests by the max threads,
+         * which the process is overloaded at.
+         */
+        @DecimalMin(value = "0.0", inclusive = false, message = "Rate limit load shedding thread pool usage is not positive")
+        private final double threadPoolUsage;
+
+        /**
+         * The CPU load of the process, between 0 and 1, which the process is overloaded at.
+         */
+        @DecimalMin(value = "0.0", inclusive = false, message = "Rate limit load shedding CPU load is not positive")
+        private final double cpuLoad;
+
+        /**
+         * Determines how often the load should be sampled.
+         */
+        private final Duration interval;
+
+        public LoadShedding(Boolean enabled, Double threadPoolUsage, Double cpuLoad, Duration interval) {
+            this.enabled = enabled != null && enabled;
+            this.threadPoolUsage = threadPoolUsage != null ? threadPoolUsage : RateLimitDefaults.SHEDDING_THREAD_POOL_USAGE;
+            this.cpuLoad = cpuLoad != null ? cpuLoad : RateLimitDefaults.SHEDDING_CPU_LOAD;
+            this.interval = interval != null ? interval : RateLimitDefaults.SHEDDING_INTERVAL;
+        }
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public double getThreadPoolUsage() {
+            return threadPoolUsage;
+        }
+
+        public double getCpuLoad() {
+            return cpuLoad;
+        }
+
+        public Duration getInterval() {
+            return interval;
+        }
+    }
+
     /**
      * Encapsulates the key generator properties.
      */
@@ -152,10 +713,49 @@ public class RateLimitProperties {
          */
         private final Set<String> params;
 
+        /**
+         * Passes to the {@link #generator} constructor after the {@link #params} to wrap the requester identity of
+         * the key in a Redis hash tag, so all the policy keys of a requester are placed on the same Redis Cluster
+         * slot or shard.
+         * <b>Its optional.</p>
+         */
+        private final boolean hashTag;
+
+        /**
+         * Represents the generated keys to be encoded by
+         * {@link com.github.sajjaadalipour.ratelimit.generators.HashedKeyGenerator} or not, which keeps a fixed size
+         * digest of each key in the repository instead of the key itself.
+         * <b>Its optional.</p>
+         */
+        private final boolean hashed;
+
         public KeyGenerator(String name, Class<RateLimitKeyGenerator> generator, Set<String> params) {
+            this(name, generator, params, null, null);
+        }
+
+        @ConstructorBinding
+        public KeyGenerator(String name,
+                            Class<RateLimitKeyGenerator> generator,
+                            Set<String> params,
+                            Boolean hashTag,
+                            Boolean hashed) {
             this.name = name;
             this.generator = generator;
             this.params = params == null ? new HashSet<>() : params;
+            this.hashTag = hashTag != null && hashTag;
+            this.hashed = hashed != null && hashed;
+        }
+
+        /**
+         * Checks the {@link #generator} can take the {@link #hashTag}, i.e. it has a constructor of the params and
+         * the hash tag flag, e.g. the {@code HeaderBasedKeyGenerator}.
+         *
+         * @return false if the hash tag is set and the generator does not have such a constructor.
+         */
+        @AssertTrue(message = "Rate limit key generator`s hash-tag is only supported by the generators with a " +
+                "(Set<String> params, boolean hashTag) constructor, e.g. the HeaderBasedKeyGenerator")
+        public boolean isValidHashTag() {
+            return !hashTag || generator == null || ClassUtils.hasConstructor(generator, Set.class, boolean.class);
         }
 
         public String getName() {
@@ -170,6 +770,14 @@ public class RateLimitProperties {
             return params;
         }
 
+        public boolean isHashTag() {
+            return hashTag;
+        }
+
+        public boolean isHashed() {
+            return hashed;
+        }
+
         @Override
         public boolean equals(Object o) {
             if (this == o) return true;
@@ -225,18 +833,140 @@ public class RateLimitProperties {
         @Valid
         private final Block block;
 
+        /**
+         * Represents the algorithm to limit the rate by.
+         */
+        private final RateLimitAlgorithm algorithm;
+
+        /**
+         * Represents what the policy limits, the rate or the in-flight requests.
+         */
+        private final RateLimitPolicyType type;
+
+        /**
+         * Represents how the exceeded requests are treated.
+         */
+        private final RateLimitMode mode;
+
+        /**
+         * Represents the throttling conditions, which are used in the `THROTTLE` mode.
+         */
+        @Valid
+        private final Throttle throttle;
+
+        /**
+         * Represents the adaptive limit conditions, which are used by the `ADAPTIVE_CONCURRENCY` type.
+         */
+        @Valid
+        private final Adaptive adaptive;
+
+        /**
+         * Represents whether the routes are rejected while the process is overloaded.
+         */
+        private final RateLimitPriority priority;
+
+        /**
+         * Represents how the requests are decided while the remote repository is unavailable, which is used by
+         * the `redis.circuit-breaker`.
+         */
+        private final RateLimitFallback fallback;
+
+        /**
+         * The duration and the count of the policy as a segment of the generated keys, e.g. {@code PT1H_3}, which is
+         * computed once since they are constant.
+         */
+        private final String keySegment;
+
         public Policy(Duration duration,
                       Integer count,
                       String keyGenerator,
                       Set<Route> routes,
                       Set<Route> excludeRoutes,
                       Block block) {
+            this(duration, count, keyGenerator, routes, excludeRoutes, block, null);
+        }
+
+        public Policy(Duration duration,
+                      Integer count,
+                      String keyGenerator,
+                      Set<Route> routes,
+                      Set<Route> excludeRoutes,
+                      Block block,
+                      RateLimitAlgorithm algorithm) {
+            this(duration, count, keyGenerator, routes, excludeRoutes, block, algorithm, null, null, null);
+        }
+
+        public Policy(Duration duration,
+                      Integer count,
+                      String keyGenerator,
+                      Set<Route> routes,
+                      Set<Route> excludeRoutes,
+                      Block block,
+                      RateLimitAlgorithm algorithm,
+                      RateLimitPolicyType type,
+                      RateLimitMode mode,
+                      Throttle throttle) {
+            this(duration, count, keyGenerator, routes, excludeRoutes, block, algorithm, type, mode, throttle, null);
+        }
+
+        public Policy(Duration duration,
+                      Integer count,
+                      String keyGenerator,
+                      Set<Route> routes,
+                      Set<Route> excludeRoutes,
+                      Block block,
+                      RateLimitAlgorithm algorithm,
+                      RateLimitPolicyType type,
+                      RateLimitMode mode,
+                      Throttle throttle,
+                      Adaptive adaptive) {
+            this(duration, count, keyGenerator, routes, excludeRoutes, block, algorithm, type, mode, throttle, adaptive, null);
+        }
+
+        public Policy(Duration duration,
+                      Integer count,
+                      String keyGenerator,
+                      Set<Route> routes,
+                      Set<Route> excludeRoutes,
+                      Block block,
+                      RateLimitAlgorithm algorithm,
+                      RateLimitPolicyType type,
+                      RateLimitMode mode,
+                      Throttle throttle,
+                      Adaptive adaptive,
+                      RateLimitPriority priority) {
+            this(duration, count, keyGenerator, routes, excludeRoutes, block, algorithm, type, mode, throttle, adaptive,
+                    priority, null);
+        }
+
+        @ConstructorBinding
+        public Policy(Duration duration,
+                      Integer count,
+                      String keyGenerator,
+                      Set<Route> routes,
+                      Set<Route> excludeRoutes,
+                      Block block,
+                      RateLimitAlgorithm algorithm,
+                      RateLimitPolicyType type,
+                      RateLimitMode mode,
+                      Throttle throttle,
+                      Adaptive adaptive,
+                      RateLimitPriority priority,
+                      RateLimitFallback fallback) {
             this.duration = duration;
             this.count = count;
             this.keyGenerator = trimAllWhitespace(keyGenerator);
             this.routes = routes;
             this.excludeRoutes = excludeRoutes != null ? excludeRoutes : Collections.emptySet();
             this.block = block;
+            this.algorithm = algorithm != null ? algorithm : RateLimitAlgorithm.FIXED_WINDOW;
+            this.type = type != null ? type : RateLimitPolicyType.RATE;
+            this.mode = mode != null ? mode : RateLimitMode.REJECT;
+            this.throttle = throttle != null ? throttle : new Throttle(null, null);
+            this.adaptive = adaptive != null ? adaptive : new Adaptive(null, null, null, null);
+            this.priority = priority != null ? priority : RateLimitPriority.NORMAL;
+            this.fallback = fallback != null ? fallback : RateLimitFallback.LOCAL;
+            this.keySegment = duration + "_" + count;
         }
 
         public Duration getDuration() {
@@ -263,6 +993,38 @@ public class RateLimitProperties {
             return excludeRoutes;
         }
 
+        public RateLimitAlgorithm getAlgorithm() {
+            return algorithm;
+        }
+
+        public RateLimitPolicyType getType() {
+            return type;
+        }
+
+        public RateLimitMode getMode() {
+            return mode;
+        }
+
+        public Throttle getThrottle() {
+            return throttle;
+        }
+
+        public Adaptive getAdaptive() {
+            return adaptive;
+        }
+
+        public RateLimitPriority getPriority() {
+            return priority;
+        }
+
+        public RateLimitFallback getFallback() {
+            return fallback;
+        }
+
+        public String getKeySegment() {
+            return keySegment;
+        }
+
         @Override
         public boolean equals(Object o) {
             if (this == o) return true;
@@ -270,12 +1032,21 @@ public class RateLimitProperties {
             Policy policy = (Policy) o;
             return duration.equals(policy.duration) &&
                     count.equals(policy.count) &&
-                    keyGenerator.equals(policy.keyGenerator);
+                    keyGenerator.equals(policy.keyGenerator) &&
+                    Objects.equals(block, policy.block) &&
+                    algorithm == policy.algorithm &&
+                    type == policy.type &&
+                    mode == policy.mode &&
+                    throttle.equals(policy.throttle) &&
+                    adaptive.equals(policy.adaptive) &&
+                    priority == policy.priority &&
+                    fallback == policy.fallback;
         }
 
         @Override
         public int hashCode() {
-            return Objects.hash(duration, count, keyGenerator);
+            return Objects.hash(duration, count, keyGenerator, block, algorithm, type, mode, throttle, adaptive,
+                    priority, fallback);
         }
 
         /**
@@ -296,6 +1067,139 @@ public class RateLimitProperties {
             public Duration getDuration() {
                 return duration;
             }
+
+            @Override
+            public boolean equals(Object o) {
+                if (this == o) return true;
+                if (o == null || getClass() != o.getClass()) return false;
+                Block block = (Block) o;
+                return Objects.equals(duration, block.duration);
+            }
+
+            @Override
+            public int hashCode() {
+                return Objects.hashCode(duration);
+            }
+        }
+
+        /**
+         * Encapsulates the throttling condition details.
+         */
+        public static final class Throttle {
+
+            /**
+             * Determines how long an exceeded request may be parked until the rate frees up.
+             */
+            private final Duration maxWait;
+
+            /**
+             * Determines how many exceeded requests of the policy may be parked at once.
+             */
+            @Positive(message = "Rate limit policy`s throttle max queue depth is not positive")
+            private final int maxQueueDepth;
+
+            public Throttle(Duration maxWait, Integer maxQueueDepth) {
+                this.maxWait = maxWait != null ? maxWait : RateLimitDefaults.THROTTLE_MAX_WAIT;
+                this.maxQueueDepth = maxQueueDepth != null ? maxQueueDepth : RateLimitDefaults.THROTTLE_MAX_QUEUE_DEPTH;
+            }
+
+            public Duration getMaxWait() {
+                return maxWait;
+            }
+
+            public int getMaxQueueDepth() {
+                return maxQueueDepth;
+            }
+
+            @Override
+            public boolean equals(Object o) {
+                if (this == o) return true;
+                if (o == null || getClass() != o.getClass()) return false;
+                Throttle throttle = (Throttle) o;
+                return maxWait.equals(throttle.maxWait) &&
+                        maxQueueDepth == throttle.maxQueueDepth;
+            }
+
+            @Override
+            public int hashCode() {
+                return Objects.hash(maxWait, maxQueueDepth);
+            }
+        }
+
+        /**
+         * Encapsulates the adaptive limit condition details.
+         */
+        public static final class Adaptive {
+
+            /**
+             * The limit of the in-flight requests never shrinks below it.
+             */
+            @Positive(message = "Rate limit policy`s adaptive min limit is not positive")
+            private final int minLimit;
+
+            /**
+             * The limit of the in-flight requests never grows above it.
+             */
+            @Positive(message = "Rate limit policy`s adaptive max limit is not positive")
+            private final int maxLimit;
+
+            /**
+             * Determines how long the latencies are observed before adapting the limit.
+             */
+            private final Duration window;
+
+            /**
+             * The ratio of the latency to the long term latency which is tolerated before shrinking the limit.
+             */
+            @DecimalMin(value = "1.0", message = "Rate limit policy`s adaptive tolerance is less than 1")
+            private final double tolerance;
+
+            public Adaptive(Integer minLimit, Integer maxLimit, Duration window, Double tolerance) {
+                this.minLimit = minLimit != null ? minLimit : RateLimitDefaults.ADAPTIVE_MIN_LIMIT;
+                this.maxLimit = maxLimit != null ? maxLimit : RateLimitDefaults.ADAPTIVE_MAX_LIMIT;
+                this.window = window != null ? window : RateLimitDefaults.ADAPTIVE_WINDOW;
+                this.tolerance = tolerance != null ? tolerance : RateLimitDefaults.ADAPTIVE_TOLERANCE;
+            }
+
+            /**
+             * @return false if the min limit is greater than the max limit.
+             */
+            @AssertTrue(message = "Rate limit policy`s adaptive min limit is greater than the max limit")
+            public boolean isValidLimits() {
+                return minLimit <= maxLimit;
+            }
+
+            public int getMinLimit() {
+                return minLimit;
+            }
+
+            public int getMaxLimit() {
+                return maxLimit;
+            }
+
+            public Duration getWindow() {
+                return window;
+            }
+
+            public double getTolerance() {
+                return tolerance;
+            }
+
+            @Override
+            public boolean equals(Object o) {
+                if (this == o) return true;
+                if (o == null || getClass() != o.getClass()) return false;
+                Adaptive adaptive = (Adaptive) o;
+                return minLimit == adaptive.minLimit &&
+                        maxLimit == adaptive.maxLimit &&
+                        window.equals(adaptive.window) &&
+                        Double.compare(tolerance, adaptive.tolerance) == 0;
+            }
+
+            @Override
+            public int hashCode() {
+                return Objects.hash(minLimit, maxLimit, window, tolerance);
+            }
         }
 
         /**
@@ -0,0 +1,28 @@
+package com.github.sajjaadalipour.ratelimit.conf.properties;
+
+/**
+ * Represents the all supported ways to lay out the fixed window rate limits in Redis.
+ *
+ * @author Sajjad Alipour
+ */
+public enum RateLimitRedisLayout {
+
+    /**
+     * Each key is kept by its own Redis string, which expires at the end of its window.
+     */
+    STRING,
+
+    /**
+     * The keys of an identity, the hash tag of the keys, are kept as the fields of a single Redis hash, so the
+     * policies of an identity cost a single key and are read and written by a single command. The keys without
+     * a hash tag are still kept by their own Redis strings.
+     */
+    HASH,
+
+    /**
+     * Each window of a key is kept by its own counter, which is named by the index of the window since the epoch,
+     * so the windows are aligned to the wall clock and a request only increments the counter. The keys of
+     * the policies with a block are still kept by their own Redis strings, since a block outlives the window.
+     */
+    EPOCH
+}
@@ -12,6 +12,11 @@ public enum RateLimitRepositoryKey {
      */
     IN_MEMORY,
 
+    /**
+     * Uses the off-heap memory as a data storage.
+     */
+    OFF_HEAP,
+
     /**
      * Uses the redis as a data storage.
      */
@@ -0,0 +1,174 @@
+package com.github.sajjaadalipour.ratelimit.generators;
+
+import com.github.sajjaadalipour.ratelimit.RateLimitKeyContext;
+import com.github.sajjaadalipour.ratelimit.RateLimitKeyGenerator;
+import com.github.sajjaadalipour.ratelimit.conf.properties.RateLimitProperties.Policy;
+
+import javax.servlet.http.HttpServletRequest;
+
+/**
+ * An implementation of {@link RateLimitKeyGenerator} which encodes the keys of another generator into a fixed size
+ * digest, so the repositories keep about 22 chars per key instead of the URI, method, policy and header values.
+ * <p>
+ * The key is hashed by the 128 bit MurmurHash3 and encoded by the URL safe Base64 alphabet, e.g.
+ * {@code /test_GET_PT1H_3_0.0.0.0} becomes {@code zCVmdopyViw0kd9Dk4mBug}. If the key has a Redis hash tag, the content
+ * of the tag is hashed on its own into a tag of the encoded key, e.g. {@code /test_GET_PT1H_3_{0.0.0.0}} becomes
+ * {@code {7SiKd3kAZ7o}-BW96LNTbh8pDtFlBY-3-g}, so the encoded keys of a requester are still placed on the same Redis
+ * Cluster slot or shard.
+ * <p>
+ * The keys are not reversible, so the rate of a key can not be looked up by the requester identity in the repository.
+ *
+ * @author Sajjad Alipour
+ */
+public class HashedKeyGenerator implements RateLimitKeyGenerator {
+
+    private static final char[] ALPHABET =
+            "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789-_".toCharArray();
+
+    private static final long C1 = 0x87c37b91114253d5L;
+    private static final long C2 = 0x4cf5ad432745937fL;
+
+    /**
+     * Generates the keys to encode.
+     */
+    private final RateLimitKeyGenerator delegate;
+
+    public HashedKeyGenerator(RateLimitKeyGenerator delegate) {
+        this.delegate = delegate;
+    }
+
+    /**
+     * Generates the key by the {@link #delegate} and encodes it.
+     *
+     * @param servletRequest Encapsulates the http servlet request.
+     * @param policy         Encapsulates the rate limit policy properties.
+     * @return The encoded key.
+     */
+    @Override
+    public String generateKey(HttpServletRequest servletRequest, Policy policy) {
+        return encode(delegate.generateKey(servletRequest, policy));
+    }
+
+    /**
+     * Generates the key by the {@link #delegate} with the given context and encodes it.
+     *
+     * @param context Encapsulates the http servlet request and the state shared by its policies.
+     * @param policy  Encapsulates the rate limit policy properties.
+     * @return The encoded key.
+     */
+    @Override
+    public String generateKey(RateLimitKeyContext context, Policy policy) {
+        return encode(delegate.generateKey(context, policy));
+    }
+
+    /**
+     * Encodes the given key into its 22 chars digest, preceded by the 11 chars digest of its hash tag if it has one.
+     *
+     * @param key The key to encode.
+     * @return The encoded key.
+     */
+    public static String encode(String key) {
+        final StringBuilder encoded = new StringBuilder(35);
+        final int start = key.indexOf('{');
+        if (start >= 0) {
+            final int end = key.indexOf('}', start + 1);
+            if (end > start + 1) {
+                long[] tag = murmur3(key, start + 1, end);
+                encoded.append('{');
+                append(encoded, tag[0] ^ tag[1]);
+                encoded.append('}');
+            }
+        }
+
+        long[] hash = murmur3(key, 0, key.length());
+        append(encoded, hash[0]);
+        append(encoded, hash[1]);
+        return encoded.toString();
+    }
+
+    /**
+     * Appends the 64 bits of the given value by 11 Base64 chars, 6 bits per char and 4 bits for the last one.
+     */
+    private static void append(StringBuilder encoded, long value) {
+        for (int shift = 58; shift > 0; shift -= 6) {
+            encoded.append(ALPHABET[(int) (value >>> shift) & 0x3f]);
+        }
+        encoded.append(ALPHABET[(int) (value & 0xf) << 2]);
+    }
+
+    /**
+     * The 128 bit MurmurHash3 of the x64 platforms over the given range of chars, four 16 bit chars per 64 bit lane.
+     */
+    private static long[] murmur3(String value, int from, int to) {
+        long h1 = 0;
+        long h2 = 0;
+
+        int i = from;
+        for (; i + 8 <= to; i += 8) {
+            long k1 = lane(value, i);
+            long k2 = lane(value, i + 4);
+
+            h1 ^= mixK1(k1);
+            h1 = Long.rotateLeft(h1, 27);
+            h1 += h2;
+            h1 = h1 * 5 + 0x52dce729;
+
+            h2 ^= mixK2(k2);
+            h2 = Long.rotateLeft(h2, 31);
+            h2 += h1;
+            h2 = h2 * 5 + 0x38495ab5;
+        }
+
+        long k1 = 0;
+        long k2 = 0;
+        for (int j = 0; i + j < to; j++) {
+            long c = value.charAt(i + j);
+            if (j < 4) {
+                k1 |= c << (16 * j);
+            } else {
+                k2 |= c << (16 * (j - 4));
+            }
+        }
+        h1 ^= mixK1(k1);
+        h2 ^= mixK2(k2);
+
+        final long length = 2L * (to - from);
+        h1 ^= length;
+        h2 ^= length;
+        h1 += h2;
+        h2 += h1;
+        h1 = fmix64(h1);
+        h2 = fmix64(h2);
+        h1 += h2;
+        h2 += h1;
+        return new long[]{h1, h2};
+    }
+
+    private static long lane(String value, int index) {
+        return value.charAt(index)
+                | (long) value.charAt(index + 1) << 16
+                | (long) value.charAt(index + 2) << 32
+                | (long) value.charAt(index + 3) << 48;
+    }
+
+    private static long mixK1(long k1) {
+        k1 *= C1;
+        k1 = Long.rotateLeft(k1, 31);
+        return k1 * C2;
+    }
+
+    private static long mixK2(long k2) {
+        k2 *= C2;
+        k2 = Long.rotateLeft(k2, 33);
+        return k2 * C1;
+    }
+
+    private static long fmix64(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
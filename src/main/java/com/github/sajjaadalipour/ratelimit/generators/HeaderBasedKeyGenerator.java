@@ -1,5 +1,6 @@
 package com.github.sajjaadalipour.ratelimit.generators;
 
+import com.github.sajjaadalipour.ratelimit.RateLimitKeyContext;
 import com.github.sajjaadalipour.ratelimit.RateLimitKeyGenerator;
 import com.github.sajjaadalipour.ratelimit.conf.properties.RateLimitProperties.Policy;
 
@@ -21,8 +22,19 @@ public class HeaderBasedKeyGenerator implements RateLimitKeyGenerator {
      */
     private final Set<String> params;
 
+    /**
+     * Whether to wrap the header values of the key in a Redis hash tag, e.g. {@code /test_GET_PT1H_3_{0.0.0.0}},
+     * so all the policy keys of a requester are placed on the same Redis Cluster slot or shard.
+     */
+    private final boolean hashTag;
+
     public HeaderBasedKeyGenerator(Set<String> params) {
+        this(params, false);
+    }
+
+    public HeaderBasedKeyGenerator(Set<String> params, boolean hashTag) {
         this.params = params;
+        this.hashTag = hashTag;
     }
 
     /**
@@ -41,12 +53,46 @@ public class HeaderBasedKeyGenerator implements RateLimitKeyGenerator {
      */
     @Override
     public String generateKey(HttpServletRequest servletRequest, Policy policy) {
-        StringJoiner key = new StringJoiner("_")
-                .add(servletRequest.getRequestURI())
-                .add(servletRequest.getMethod())
-                .add(policy.getDuration().toString())
-                .add(String.valueOf(policy.getCount()));
+        return generateKey(new RateLimitKeyContext(servletRequest), policy);
+    }
+
+    /**
+     * Generates the key like {@link #generateKey(HttpServletRequest, Policy)}, but the header values are only read
+     * and joined once per request, and kept by the context for the other policies of the request.
+     *
+     * @param context Encapsulates the http servlet request and the state shared by its policies.
+     * @param policy  Encapsulates the rate limit policy properties.
+     * @return Generated code.
+     * @throws HeaderNotPresentedException If not present any item of the given {@link #params} from the Http request header.
+     */
+    @Override
+    public String generateKey(RateLimitKeyContext context, Policy policy) {
+        String identity = (String) context.get(this);
+        if (identity == null) {
+            identity = identityOf(context.getRequest());
+            context.put(this, identity);
+        }
 
+        final String requestUri = context.getRequestUri();
+        final String method = context.getMethod();
+        final String keySegment = policy.getKeySegment();
+        final StringBuilder key = new StringBuilder(
+                requestUri.length() + method.length() + keySegment.length() + identity.length() + 3)
+                .append(requestUri).append('_')
+                .append(method).append('_')
+                .append(keySegment);
+        if (!identity.isEmpty()) {
+            key.append('_').append(identity);
+        }
+        return key.toString();
+    }
+
+    /**
+     * @return The header values of the {@link #params} joined by {@code _}, and wrapped in a hash tag if
+     * the {@link #hashTag} is set.
+     */
+    private String identityOf(HttpServletRequest servletRequest) {
+        StringJoiner identity = hashTag ? new StringJoiner("_", "{", "}") : new StringJoiner("_");
         for (String param : params) {
             String header = servletRequest.getHeader(param);
             if (header == null)
@@ -54,9 +100,8 @@ public class HeaderBasedKeyGenerator implements RateLimitKeyGenerator {
                         "` is not presented in the request" + servletRequest.getRequestURI()
                         + " header's parameters.");
 
-            key.add(header);
+            identity.add(header);
         }
-
-        return key.toString();
+        return identity.toString();
     }
 }
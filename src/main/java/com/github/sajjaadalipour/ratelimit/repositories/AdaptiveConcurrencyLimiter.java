@@ -0,0 +1,180 @@
+package com.github.sajjaadalipour.ratelimit.repositories;
+
+import com.github.sajjaadalipour.ratelimit.ConcurrencyLimiter;
+import com.github.sajjaadalipour.ratelimit.conf.properties.RateLimitProperties.Policy;
+
+import javax.annotation.Nonnull;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * An implementation of {@link ConcurrencyLimiter} which adapts the limit of the in-flight requests
+ * by the observed latency, by the gradient algorithm.
+ * <p>
+ * The latencies of the released permits are summed in a window, and when the window is over, its average
+ * latency is compared with a long term average, which follows the latency without load. The limit is multiplied
+ * by the gradient between them, {@code tolerance * longTermLatency / windowLatency} clamped to [0.5, 1],
+ * and a queue of the square root of the limit is added, so the limit grows while the latency is stable and
+ * shrinks as soon as the requests start queueing. The limit only grows when the window has used at least
+ * half of it, so an idle node does not inflate its limit.
+ * <p>
+ * The limit is shared by all the keys of the policy on this node, since the latency is a property of
+ * the node rather than the requester. The latencies are recorded by {@link LongAdder}s and the window is
+ * closed by the single thread which wins a compare-and-set, so recording never blocks the requests.
+ *
+ * @author Sajjad Alipour
+ */
+public class AdaptiveConcurrencyLimiter implements ConcurrencyLimiter {
+
+    /**
+     * The number of windows which the long term latency is averaged over.
+     */
+    private static final int LONG_TERM_WINDOWS = 60;
+
+    /**
+     * The weight of the new limit against the current one.
+     */
+    private static final double SMOOTHING = 0.2;
+
+    private static final double MIN_GRADIENT = 0.5;
+
+    private final int minLimit;
+
+    private final int maxLimit;
+
+    private final long windowNanos;
+
+    private final double tolerance;
+
+    private final LongSupplier nanoTime;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    /**
+     * The max number of in-flight requests in the current window.
+     */
+    private final AtomicInteger windowMaxInFlight = new AtomicInteger();
+
+    private final LongAdder windowLatencyNanos = new LongAdder();
+
+    private final LongAdder windowSamples = new LongAdder();
+
+    /**
+     * The start of the current window, which is moved by the thread that closes the window.
+     */
+    private final AtomicLong windowStart;
+
+    private volatile int limit;
+
+    /**
+     * Guarded by the monitor, which is only taken by the thread that closes a window.
+     */
+    private double estimatedLimit;
+
+    private double longTermLatencyNanos;
+
+    /**
+     * @param initialLimit The limit before the first window is over.
+     * @param minLimit     The limit never shrinks below it.
+     * @param maxLimit     The limit never grows above it.
+     * @param window       How long the latencies are observed before adapting the limit.
+     * @param tolerance    The ratio of the latency to the long term latency which is tolerated.
+     */
+    public AdaptiveConcurrencyLimiter(int initialLimit, int minLimit, int maxLimit, Duration window, double tolerance) {
+        this(initialLimit, minLimit, maxLimit, window, tolerance, System::nanoTime);
+    }
+
+    AdaptiveConcurrencyLimiter(int initialLimit, int minLimit, int maxLimit, Duration window, double tolerance,
+                               LongSupplier nanoTime) {
+        if (minLimit < 1 || maxLimit < minLimit) {
+            throw new IllegalArgumentException("The adaptive limits should be 1 <= min <= max");
+        }
+
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.windowNanos = window.toNanos();
+        this.tolerance = tolerance;
+        this.nanoTime = nanoTime;
+        this.estimatedLimit = Math.min(Math.max(initialLimit, minLimit), maxLimit);
+        this.limit = (int) estimatedLimit;
+        this.windowStart = new AtomicLong(nanoTime.getAsLong());
+    }
+
+    @Override
+    public Permit tryAcquire(@Nonnull String key, @Nonnull Policy policy) {
+        while (true) {
+            int current = inFlight.get();
+            if (current >= limit) {
+                return null;
+            }
+
+            if (inFlight.compareAndSet(current, current + 1)) {
+                windowMaxInFlight.accumulateAndGet(current + 1, Math::max);
+                final long acquiredAt = nanoTime.getAsLong();
+                return () -> release(acquiredAt);
+            }
+        }
+    }
+
+    private void release(long acquiredAt) {
+        inFlight.decrementAndGet();
+
+        final long now = nanoTime.getAsLong();
+        windowLatencyNanos.add(now - acquiredAt);
+        windowSamples.increment();
+
+        long start = windowStart.get();
+        if (now - start >= windowNanos && windowStart.compareAndSet(start, now)) {
+            adapt();
+        }
+    }
+
+    /**
+     * Closes the current window and adapts the limit by its latency.
+     */
+    private synchronized void adapt() {
+        long samples = windowSamples.sumThenReset();
+        long latencySum = windowLatencyNanos.sumThenReset();
+        int maxInFlight = windowMaxInFlight.getAndSet(inFlight.get());
+        if (samples == 0) {
+            return;
+        }
+
+        double latency = Math.max((double) latencySum / samples, 1);
+        if (longTermLatencyNanos == 0) {
+            longTermLatencyNanos = latency;
+        } else {
+            longTermLatencyNanos += (latency - longTermLatencyNanos) / LONG_TERM_WINDOWS;
+            if (longTermLatencyNanos > 2 * latency) {
+                // The load is gone, so the long term latency catches up faster.
+                longTermLatencyNanos = Math.max(longTermLatencyNanos * 0.9, latency);
+            }
+        }
+
+        double gradient = Math.max(MIN_GRADIENT, Math.min(1, tolerance * longTermLatencyNanos / latency));
+        double newLimit = estimatedLimit * gradient + Math.sqrt(estimatedLimit);
+        if (newLimit > estimatedLimit && maxInFlight < estimatedLimit / 2) {
+            newLimit = estimatedLimit;
+        }
+
+        estimatedLimit = Math.min(Math.max(estimatedLimit * (1 - SMOOTHING) + newLimit * SMOOTHING, minLimit), maxLimit);
+        limit = (int) estimatedLimit;
+    }
+
+    /**
+     * @return The current limit of the in-flight requests.
+     */
+    public int getLimit() {
+        return limit;
+    }
+
+    /**
+     * @return The current number of in-flight requests.
+     */
+    public int getInFlight() {
+        return inFlight.get();
+    }
+}
@@ -0,0 +1,413 @@
+package com.github.sajjaadalipour.ratelimit.repositories;
+
+import com.github.sajjaadalipour.ratelimit.Rate;
+import com.github.sajjaadalipour.ratelimit.RateDecision;
+import com.github.sajjaadalipour.ratelimit.RateLimiter;
+import com.github.sajjaadalipour.ratelimit.RatePolicy;
+import com.github.sajjaadalipour.ratelimit.clock.RateClock;
+import com.github.sajjaadalipour.ratelimit.conf.properties.RateLimitFallback;
+import com.github.sajjaadalipour.ratelimit.conf.properties.RateLimitProperties.Policy;
+
+import javax.annotation.Nonnull;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+import static com.github.sajjaadalipour.ratelimit.Rate.RATE_EXCEED_STATE;
+
+/**
+ * An implementation of {@link RateLimiter} which guards a remote rate limiter, e.g. the Redis one, by a latency budget
+ * and a circuit breaker, so an outage of the remote repository does not stall or fail the requests.
+ * <p>
+ * Every decision waits for the remote rate limiter at most the timeout, by its asynchronous variants. A decision which
+ * times out or fails is decided by the {@link RateLimitFallback} of its policy, and after the failure threshold of
+ * consecutive failures the breaker opens, so the decisions are made by the fallbacks without calling the remote rate
+ * limiter. Once the open duration has passed, a single decision probes the remote rate limiter, which closes the
+ * breaker if it succeeds, otherwise the breaker opens again.
+ * <p>
+ * The {@link RateLimitFallback#LOCAL} fallback consumes an {@link InMemoryRateCache} of this node by the policy count
+ * divided by the expected number of nodes, so the cluster keeps about the same limit while each node decides alone.
+ * The decisions of {@link #consume(RatePolicy)} have no policy, so they always fall back locally.
+ *
+ * @author Sajjad Alipour
+ */
+public class CircuitBreakingRateLimiter implements RateLimiter, AutoCloseable {
+
+    /**
+     * The states of the breaker.
+     */
+    public enum State {
+
+        /**
+         * The decisions are made by the remote rate limiter.
+         */
+        CLOSED,
+
+        /**
+         * The decisions are made by the fallbacks until the open duration has passed.
+         */
+        OPEN,
+
+        /**
+         * A single decision is probing the remote rate limiter, the others are made by the fallbacks.
+         */
+        HALF_OPEN
+    }
+
+    private final RateLimiter delegate;
+
+    /**
+     * Decides the policies which fall back locally.
+     */
+    private final InMemoryRateCache fallback;
+
+    private final long timeoutMillis;
+
+    private final int failureThreshold;
+
+    private final long openMillis;
+
+    /**
+     * The expected number of nodes, which divides the policy count of the local fallback.
+     */
+    private final int nodes;
+
+    private final RateClock clock;
+
+    private final AtomicReference<State> state = new AtomicReference<>(State.CLOSED);
+
+    private final AtomicInteger consecutiveFailures = new AtomicInteger();
+
+    /**
+     * The time the open breaker may be probed at, in epoch milliseconds.
+     */
+    private volatile long openUntil;
+
+    /**
+     * The policies of the local fallback by their original policy.
+     */
+    private final ConcurrentHashMap<Policy, Policy> localPolicies = new ConcurrentHashMap<>();
+
+    /**
+     * Falls back the asynchronous decisions which are not completed within the timeout.
+     */
+    private final ScheduledThreadPoolExecutor timer;
+
+    /**
+     * @param delegate         The remote rate limiter.
+     * @param fallback         Decides the policies which fall back locally.
+     * @param timeout          The max duration a decision waits for the remote rate limiter.
+     * @param failureThreshold The number of consecutive failures which open the breaker.
+     * @param openDuration     The duration the breaker stays open before it is probed.
+     * @param nodes            The expected number of nodes, which divides the policy count of the local fallback.
+     * @param clock            The source of the current time.
+     */
+    public CircuitBreakingRateLimiter(@Nonnull RateLimiter delegate,
+                                      @Nonnull InMemoryRateCache fallback,
+                                      @Nonnull Duration timeout,
+                                      int failureThreshold,
+                                      @Nonnull Duration openDuration,
+                                      int nodes,
+                                      @Nonnull RateClock clock) {
+        this.delegate = delegate;
+        this.fallback = fallback;
+        this.timeoutMillis = Math.max(timeout.toMillis(), 1);
+        this.failureThreshold = Math.max(failureThreshold, 1);
+        this.openMillis = openDuration.toMillis();
+        this.nodes = Math.max(nodes, 1);
+        this.clock = clock;
+        this.timer = new ScheduledThreadPoolExecutor(1, runnable -> {
+            Thread thread = new Thread(runnable, "rate-limit-circuit-breaker");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.timer.setRemoveOnCancelPolicy(true);
+    }
+
+    @Override
+    public Rate consume(@Nonnull RatePolicy ratePolicy) {
+        if (!tryAcquire()) {
+            return fallback.consume(localRatePolicyOf(ratePolicy));
+        }
+
+        try {
+            Rate rate = delegate.consumeAsync(ratePolicy).toCompletableFuture().get(timeoutMillis, TimeUnit.MILLISECONDS);
+            onSuccess();
+            return rate;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException | TimeoutException | RuntimeException e) {
+            // Decided by the fallback
+        }
+
+        onFailure();
+        return fallback.consume(localRatePolicyOf(ratePolicy));
+    }
+
+    @Override
+    public long tryConsume(@Nonnull String key, @Nonnull Policy policy) {
+        long[] decisions = new long[1];
+        tryConsumeAll(Collections.singletonList(key), Collections.singletonList(policy), decisions);
+        return decisions[0];
+    }
+
+    @Override
+    public int tryConsumeAll(@Nonnull List<String> keys, @Nonnull List<Policy> policies, @Nonnull long[] decisions) {
+        if (!tryAcquire()) {
+            return fallbackAll(keys, policies, decisions);
+        }
+
+        // The remote consumption may outlive the timeout, so it gets its own copies of the reusable arguments
+        final long[] remote = new long[decisions.length];
+        try {
+            int rejected = delegate.tryConsumeAllAsync(new ArrayList<>(keys), new ArrayList<>(policies), remote)
+                    .toCompletableFuture()
+                    .get(timeoutMillis, TimeUnit.MILLISECONDS);
+            onSuccess();
+            System.arraycopy(remote, 0, decisions, 0, decisions.length);
+            return rejected;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException | TimeoutException | RuntimeException e) {
+            // Decided by the fallback
+        }
+
+        onFailure();
+        return fallbackAll(keys, policies, decisions);
+    }
+
+    @Override
+    public CompletionStage<Rate> consumeAsync(@Nonnull RatePolicy ratePolicy) {
+        final CompletableFuture<Rate> result = new CompletableFuture<>();
+        if (!tryAcquire()) {
+            completeByFallback(result, () -> fallback.consume(localRatePolicyOf(ratePolicy)));
+            return result;
+        }
+
+        final AtomicBoolean decided = new AtomicBoolean();
+        final ScheduledFuture<?> timeout = timer.schedule(() -> {
+            if (decided.compareAndSet(false, true)) {
+                onFailure();
+                completeByFallback(result, () -> fallback.consume(localRatePolicyOf(ratePolicy)));
+            }
+        }, timeoutMillis, TimeUnit.MILLISECONDS);
+
+        remotely(() -> delegate.consumeAsync(ratePolicy)).whenComplete((rate, error) -> {
+            timeout.cancel(false);
+            if (!decided.compareAndSet(false, true)) {
+                return;
+            }
+
+            if (error == null) {
+                onSuccess();
+                result.complete(rate);
+            } else {
+                onFailure();
+                completeByFallback(result, () -> fallback.consume(localRatePolicyOf(ratePolicy)));
+            }
+        });
+        return result;
+    }
+
+    @Override
+    public CompletionStage<Integer> tryConsumeAllAsync(@Nonnull List<String> keys,
+                                                       @Nonnull List<Policy> policies,
+                                                       @Nonnull long[] decisions) {
+        final CompletableFuture<Integer> result = new CompletableFuture<>();
+        if (!tryAcquire()) {
+            completeByFallback(result, () -> fallbackAll(keys, policies, decisions));
+            return result;
+        }
+
+        final AtomicBoolean decided = new AtomicBoolean();
+        final long[] remote = new long[decisions.length];
+        final ScheduledFuture<?> timeout = timer.schedule(() -> {
+            if (decided.compareAndSet(false, true)) {
+                onFailure();
+                completeByFallback(result, () -> fallbackAll(keys, policies, decisions));
+            }
+        }, timeoutMillis, TimeUnit.MILLISECONDS);
+
+        remotely(() -> delegate.tryConsumeAllAsync(keys, policies, remote)).whenComplete((rejected, error) -> {
+            timeout.cancel(false);
+            if (!decided.compareAndSet(false, true)) {
+                return;
+            }
+
+            if (error == null) {
+                onSuccess();
+                System.arraycopy(remote, 0, decisions, 0, decisions.length);
+                result.complete(rejected);
+            } else {
+                onFailure();
+                completeByFallback(result, () -> fallbackAll(keys, policies, decisions));
+            }
+        });
+        return result;
+    }
+
+    /**
+     * @return The remote rate limiter.
+     */
+    public RateLimiter getDelegate() {
+        return delegate;
+    }
+
+    /**
+     * @return The current state of the breaker.
+     */
+    public State getState() {
+        return state.get();
+    }
+
+    /**
+     * Stops the timer, the local fallback and the remote rate limiter, if it is {@link AutoCloseable}.
+     *
+     * @throws IllegalStateException If the remote rate limiter can not be closed.
+     */
+    @Override
+    public void close() {
+        timer.shutdownNow();
+        fallback.close();
+        if (delegate instanceof AutoCloseable) {
+            try {
+                ((AutoCloseable) delegate).close();
+            } catch (RuntimeException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new IllegalStateException("Can not close the remote rate limiter", e);
+            }
+        }
+    }
+
+    /**
+     * @return {@code true} if the decision should be made by the remote rate limiter, i.e. the breaker is closed or
+     * this decision is the probe of the open breaker.
+     */
+    private boolean tryAcquire() {
+        State current = state.get();
+        if (current == State.CLOSED) {
+            return true;
+        }
+        return current == State.OPEN && clock.millis() >= openUntil &&
+                state.compareAndSet(State.OPEN, State.HALF_OPEN);
+    }
+
+    private void onSuccess() {
+        consecutiveFailures.set(0);
+        state.compareAndSet(State.HALF_OPEN, State.CLOSED);
+    }
+
+    private void onFailure() {
+        if (state.get() == State.HALF_OPEN) {
+            open(State.HALF_OPEN);
+        } else if (consecutiveFailures.incrementAndGet() >= failureThreshold) {
+            open(State.CLOSED);
+        }
+    }
+
+    private void open(State from) {
+        openUntil = clock.millis() + openMillis;
+        if (state.compareAndSet(from, State.OPEN)) {
+            consecutiveFailures.set(0);
+        }
+    }
+
+    /**
+     * Decides the given policies by their fallbacks one by one, and stops at the first rejection.
+     */
+    private int fallbackAll(List<String> keys, List<Policy> policies, long[] decisions) {
+        final long now = clock.millis();
+        for (int i = 0; i < policies.size(); i++) {
+            final Policy policy = policies.get(i);
+            switch (policy.getFallback()) {
+                case ALLOW:
+                    decisions[i] = RateDecision.of(policy.getCount(), now + policy.getDuration().toMillis());
+                    break;
+                case REJECT:
+                    decisions[i] = RateDecision.of(RATE_EXCEED_STATE, Math.max(openUntil, now + timeoutMillis));
+                    break;
+                default:
+                    decisions[i] = fallback.tryConsume(keys.get(i), localPolicyOf(policy));
+            }
+
+            if (!RateDecision.isAllowed(decisions[i])) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private Policy localPolicyOf(Policy policy) {
+        if (nodes == 1) {
+            return policy;
+        }
+
+        return localPolicies.computeIfAbsent(policy, it -> new Policy(
+                it.getDuration(),
+                localCountOf(it.getCount()),
+                it.getKeyGenerator(),
+                it.getRoutes(),
+                it.getExcludeRoutes(),
+                it.getBlock(),
+                it.getAlgorithm(),
+                it.getType(),
+                it.getMode(),
+                it.getThrottle(),
+                it.getAdaptive(),
+                it.getPriority(),
+                it.getFallback()));
+    }
+
+    private RatePolicy localRatePolicyOf(RatePolicy ratePolicy) {
+        if (nodes == 1) {
+            return ratePolicy;
+        }
+
+        return new RatePolicy(
+                ratePolicy.getKey(),
+                ratePolicy.getDuration(),
+                localCountOf(ratePolicy.getCount()),
+                ratePolicy.getBlockDuration(),
+                ratePolicy.getAlgorithm());
+    }
+
+    private int localCountOf(int count) {
+        return Math.max((count + nodes - 1) / nodes, 1);
+    }
+
+    /**
+     * Calls the remote rate limiter and turns an exception which it throws instead of failing the stage into
+     * a failed stage.
+     */
+    private static <T> CompletionStage<T> remotely(Supplier<CompletionStage<T>> call) {
+        try {
+            return call.get();
+        } catch (RuntimeException e) {
+            CompletableFuture<T> failed = new CompletableFuture<>();
+            failed.completeExceptionally(e);
+            return failed;
+        }
+    }
+
+    private static <T> void completeByFallback(CompletableFuture<T> result, Supplier<T> fallback) {
+        try {
+            result.complete(fallback.get());
+        } catch (RuntimeException e) {
+            result.completeExceptionally(e);
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package com.github.sajjaadalipour.ratelimit.repositories;
+
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.Consumer;
+import java.util.function.ToLongFunction;
+
+/**
+ * A bucketed expiry queue which groups keys by the tick their expiration falls in.
+ * <p>
+ * Scheduling a key appends it to the bucket of its tick and draining visits every bucket whose tick
+ * has passed, so each scheduled key costs O(1) amortized regardless of how many keys are tracked.
+ * Only distinct ticks are kept in the ordered map, which stays small since expirations are rounded up to the tick.
+ *
+ * @author Sajjad Alipour
+ */
+public final class ExpiryQueue {
+
+    /**
+     * The length of a bucket in milliseconds.
+     */
+    private final long tickMillis;
+
+    /**
+     * Keeps the scheduled keys grouped by their expiration tick.
+     */
+    private final ConcurrentSkipListMap<Long, Queue<String>> buckets = new ConcurrentSkipListMap<>();
+
+    public ExpiryQueue(long tickMillis) {
+        if (tickMillis <= 0) {
+            throw new IllegalArgumentException("The expiry tick should be positive");
+        }
+        this.tickMillis = tickMillis;
+    }
+
+    /**
+     * Schedules the given key to be visited after the given expiration.
+     *
+     * @param key        The key to schedule.
+     * @param expiration The expiration time in epoch milliseconds.
+     */
+    public void schedule(String key, long expiration) {
+        long tick = expiration / tickMillis + 1;
+        buckets.computeIfAbsent(tick, t -> new ConcurrentLinkedQueue<>()).add(key);
+    }
+
+    /**
+     * Removes all buckets which are due at the given time and passes their keys to the given consumer.
+     *
+     * @param now      The current time in epoch milliseconds.
+     * @param consumer Visits the due keys.
+     */
+    public void drain(long now, Consumer<String> consumer) {
+        ConcurrentNavigableMap<Long, Queue<String>> due = buckets.headMap(now / tickMillis, true);
+
+        Map.Entry<Long, Queue<String>> bucket;
+        while ((bucket = due.pollFirstEntry()) != null) {
+            Queue<String> keys = bucket.getValue();
+            String key;
+            while ((key = keys.poll()) != null) {
+                consumer.accept(key);
+            }
+        }
+    }
+
+    /**
+     * Removes the key which is scheduled to expire first. The emptied buckets are left to {@link #drain},
+     * since a bucket which is not due yet may still be receiving keys.
+     *
+     * @return The removed key or {@code null} if nothing is scheduled.
+     */
+    public String pollFirst() {
+        for (Queue<String> keys : buckets.values()) {
+            String key = keys.poll();
+            if (key != null) {
+                return key;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Removes the key which is scheduled to expire first like {@link #pollFirst()}, but skips the stale keys whose
+     * current expiration is after their bucket, since they are scheduled again to a later bucket.
+     *
+     * @param expirationOf The current expiration of a key in epoch milliseconds.
+     * @return The removed key or {@code null} if nothing is scheduled.
+     */
+    public String pollFirst(ToLongFunction<String> expirationOf) {
+        for (Map.Entry<Long, Queue<String>> bucket : buckets.entrySet()) {
+            String key;
+            while ((key = bucket.getValue().poll()) != null) {
+                if (expirationOf.applyAsLong(key) / tickMillis + 1 <= bucket.getKey()) {
+                    return key;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return The number of the scheduled keys, which is counted in O(n).
+     */
+    public int size() {
+        int size = 0;
+        for (Queue<String> keys : buckets.values()) {
+            size += keys.size();
+        }
+        return size;
+    }
+}
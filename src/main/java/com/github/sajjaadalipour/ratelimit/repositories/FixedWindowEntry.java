@@ -0,0 +1,110 @@
+package com.github.sajjaadalipour.ratelimit.repositories;
+
+import com.github.sajjaadalipour.ratelimit.RateDecision;
+import com.github.sajjaadalipour.ratelimit.conf.properties.RateLimitAlgorithm;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
+import static com.github.sajjaadalipour.ratelimit.Rate.RATE_BLOCK_STATE;
+
+/**
+ * A mutable fixed rate limit window of a key, which is also used to block the requesters of any algorithm.
+ * <p>
+ * The expiration of an entry never changes, starting a new window or blocking the requester
+ * replaces the whole entry, so only the {@link #remaining} counter needs to be updated atomically.
+ *
+ * @author Sajjad Alipour
+ */
+final class FixedWindowEntry extends RateEntry {
+
+    static final byte TYPE = 0;
+
+    static final int STATE_SIZE = 8 + 4;
+
+    private static final AtomicIntegerFieldUpdater<FixedWindowEntry> REMAINING =
+            AtomicIntegerFieldUpdater.newUpdater(FixedWindowEntry.class, "remaining");
+
+    /**
+     * The expiration time of the window in epoch milliseconds.
+     */
+    private final long expiration;
+
+    /**
+     * How many requests can be executed by the requester, or one of the rate states.
+     */
+    private volatile int remaining;
+
+    FixedWindowEntry(long expiration, int remaining) {
+        this.expiration = expiration;
+        this.remaining = remaining;
+    }
+
+    static FixedWindowEntry blocked(long expiration) {
+        return new FixedWindowEntry(expiration, RATE_BLOCK_STATE);
+    }
+
+    @Override
+    long getExpiration() {
+        return expiration;
+    }
+
+    int getRemaining() {
+        return remaining;
+    }
+
+    /**
+     * A window is only usable by the fixed window policies, but a block holds for any algorithm.
+     */
+    @Override
+    boolean isUsable(RateLimitAlgorithm algorithm, long now) {
+        return !isExpired(now) && (algorithm == RateLimitAlgorithm.FIXED_WINDOW || remaining == RATE_BLOCK_STATE);
+    }
+
+    /**
+     * Decreases the remaining value by compare-and-set as long as it is not negative.
+     *
+     * @return The decision of the remaining value after consuming, or of the current state if already
+     * exceeded or blocked.
+     */
+    @Override
+    long consume(long now) {
+        int current;
+        do {
+            current = remaining;
+            if (current < 0) {
+                return RateDecision.of(current, expiration);
+            }
+        } while (!REMAINING.compareAndSet(this, current, current - 1));
+
+        return RateDecision.of(current - 1, expiration);
+    }
+
+    /**
+     * Increases the remaining value by compare-and-set unless the requester is blocked.
+     */
+    @Override
+    void refund(long now) {
+        int current;
+        do {
+            current = remaining;
+            if (current == RATE_BLOCK_STATE) {
+                return;
+            }
+        } while (!REMAINING.compareAndSet(this, current, current + 1));
+    }
+
+    @Override
+    byte getType() {
+        return TYPE;
+    }
+
+    @Override
+    void writeState(ByteBuffer buffer) {
+        buffer.putLong(expiration).putInt(remaining);
+    }
+
+    static FixedWindowEntry readState(ByteBuffer buffer) {
+        return new FixedWindowEntry(buffer.getLong(), buffer.getInt());
+    }
+}
@@ -0,0 +1,118 @@
+package com.github.sajjaadalipour.ratelimit.repositories;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A probabilistic estimate of how often each key has been seen recently, used as the admission filter of
+ * the bounded {@link InMemoryRateCache}.
+ * <p>
+ * It is a count-min sketch of 4-bit counters, sixteen of them packed in a long, so it costs 8 bytes per
+ * tracked entry. Every key is counted in four counters and its frequency is the minimum of them.
+ * Once the number of increments reaches ten times the capacity, all counters are halved, so the
+ * frequencies of keys which are not seen anymore fade away.
+ *
+ * @author Sajjad Alipour
+ */
+final class FrequencySketch {
+
+    private static final long RESET_MASK = 0x7777777777777777L;
+
+    private static final long[] SEEDS = {
+            0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L
+    };
+
+    private static final int MAX_FREQUENCY = 15;
+
+    private final AtomicLongArray table;
+
+    private final int tableMask;
+
+    private final int sampleSize;
+
+    private final AtomicInteger additions = new AtomicInteger();
+
+    /**
+     * @param capacity The number of keys which is expected to be tracked.
+     */
+    FrequencySketch(int capacity) {
+        int length = ceilingPowerOfTwo(Math.min(Math.max(capacity, 16), 1 << 30));
+        this.table = new AtomicLongArray(length);
+        this.tableMask = length - 1;
+        this.sampleSize = (int) Math.min(10L * capacity, Integer.MAX_VALUE);
+    }
+
+    /**
+     * @return The estimated frequency of the given key, between 0 and 15.
+     */
+    int frequency(String key) {
+        int hash = spread(key.hashCode());
+        int frequency = MAX_FREQUENCY;
+        for (int i = 0; i < SEEDS.length; i++) {
+            int offset = counterOffset(hash, i);
+            long value = table.get(indexOf(hash, i));
+            frequency = Math.min(frequency, (int) ((value >>> offset) & 0xfL));
+        }
+        return frequency;
+    }
+
+    /**
+     * Increments the counters of the given key if they are not saturated yet.
+     */
+    void increment(String key) {
+        int hash = spread(key.hashCode());
+        boolean added = false;
+        for (int i = 0; i < SEEDS.length; i++) {
+            added |= incrementAt(indexOf(hash, i), counterOffset(hash, i));
+        }
+
+        if (added && additions.incrementAndGet() == sampleSize) {
+            reset();
+        }
+    }
+
+    private boolean incrementAt(int index, int offset) {
+        long mask = 0xfL << offset;
+        long value;
+        do {
+            value = table.get(index);
+            if ((value & mask) == mask) {
+                return false;
+            }
+        } while (!table.compareAndSet(index, value, value + (1L << offset)));
+        return true;
+    }
+
+    /**
+     * Halves all counters. Increments which race with the reset may be lost, that is fine for an estimate.
+     */
+    private void reset() {
+        for (int i = 0; i < table.length(); i++) {
+            table.set(i, (table.get(i) >>> 1) & RESET_MASK);
+        }
+        additions.set(0);
+    }
+
+    private int indexOf(int hash, int row) {
+        long h = (hash + SEEDS[row]) * SEEDS[row];
+        h += h >>> 32;
+        return ((int) h) & tableMask;
+    }
+
+    /**
+     * Each row uses its own group of four counters in a long, so the rows of a key never share a counter.
+     */
+    private static int counterOffset(int hash, int row) {
+        return ((row << 2) + ((hash >>> (row << 3)) & 3)) << 2;
+    }
+
+    private static int spread(int hash) {
+        hash = ((hash >>> 16) ^ hash) * 0x45d9f3b;
+        hash = ((hash >>> 16) ^ hash) * 0x45d9f3b;
+        return (hash >>> 16) ^ hash;
+    }
+
+    private static int ceilingPowerOfTwo(int value) {
+        return 1 << -Integer.numberOfLeadingZeros(value - 1);
+    }
+}
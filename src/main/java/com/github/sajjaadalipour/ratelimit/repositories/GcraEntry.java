@@ -0,0 +1,140 @@
+package com.github.sajjaadalipour.ratelimit.repositories;
+
+import com.github.sajjaadalipour.ratelimit.RateDecision;
+import com.github.sajjaadalipour.ratelimit.conf.properties.RateLimitAlgorithm;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+
+import static com.github.sajjaadalipour.ratelimit.Rate.RATE_EXCEED_STATE;
+
+/**
+ * The state of a key limited by the generic cell rate algorithm, which is only the theoretical arrival time
+ * of the next request, updated by compare-and-set.
+ * <p>
+ * Every request moves the theoretical arrival time forward by the emission interval, the duration / count.
+ * A request is allowed as long as the theoretical arrival time does not get further than the duration
+ * from now, so up to the count of requests can burst and then they are spread evenly.
+ *
+ * @author Sajjad Alipour
+ */
+final class GcraEntry extends RateEntry {
+
+    static final byte TYPE = 1;
+
+    static final int STATE_SIZE = 8 + 8 + 8;
+
+    private static final AtomicLongFieldUpdater<GcraEntry> TAT =
+            AtomicLongFieldUpdater.newUpdater(GcraEntry.class, "tat");
+
+    private static final long RETIRED = Long.MIN_VALUE;
+
+    /**
+     * The duration of the policy in microseconds.
+     */
+    private final long periodMicros;
+
+    /**
+     * The duration of the policy divided by its count in microseconds.
+     */
+    private final long intervalMicros;
+
+    /**
+     * The theoretical arrival time in epoch microseconds, or {@link #RETIRED} if the entry is removed.
+     */
+    private volatile long tat;
+
+    GcraEntry(long now, long durationMillis, int count) {
+        this(durationMillis * 1000, intervalMicros(durationMillis, count), now * 1000);
+    }
+
+    private GcraEntry(long periodMicros, long intervalMicros, long tat) {
+        this.periodMicros = periodMicros;
+        this.intervalMicros = intervalMicros;
+        this.tat = tat;
+    }
+
+    /**
+     * Once the theoretical arrival time is passed, the entry is just like a fresh one.
+     */
+    @Override
+    long getExpiration() {
+        long current = tat;
+        return current == RETIRED ? Long.MIN_VALUE : ceilMillis(current);
+    }
+
+    @Override
+    boolean isUsable(RateLimitAlgorithm algorithm, long now) {
+        return algorithm == RateLimitAlgorithm.GCRA && tat != RETIRED;
+    }
+
+    @Override
+    long consume(long now) {
+        final long nowMicros = now * 1000;
+        while (true) {
+            long current = tat;
+            if (current == RETIRED) {
+                return RETRY;
+            }
+
+            long newTat = Math.max(current, nowMicros) + intervalMicros;
+            long allowAt = newTat - periodMicros;
+            if (allowAt > nowMicros) {
+                return RateDecision.of(RATE_EXCEED_STATE, ceilMillis(allowAt));
+            }
+
+            if (TAT.compareAndSet(this, current, newTat)) {
+                return RateDecision.of((int) ((nowMicros + periodMicros - newTat) / intervalMicros), ceilMillis(newTat));
+            }
+        }
+    }
+
+    /**
+     * Moves the theoretical arrival time back by the emission interval.
+     */
+    @Override
+    void refund(long now) {
+        long current;
+        do {
+            current = tat;
+            if (current == RETIRED) {
+                return;
+            }
+        } while (!TAT.compareAndSet(this, current, current - intervalMicros));
+    }
+
+    @Override
+    boolean isExtendable() {
+        return true;
+    }
+
+    @Override
+    boolean retire(long now) {
+        while (true) {
+            long current = tat;
+            if (current == RETIRED) {
+                return true;
+            }
+            if (now <= ceilMillis(current)) {
+                return false;
+            }
+            if (TAT.compareAndSet(this, current, RETIRED)) {
+                return true;
+            }
+        }
+    }
+
+    @Override
+    byte getType() {
+        return TYPE;
+    }
+
+    @Override
+    void writeState(ByteBuffer buffer) {
+        buffer.putLong(periodMicros).putLong(intervalMicros).putLong(tat);
+    }
+
+    static GcraEntry readState(ByteBuffer buffer) {
+        return new GcraEntry(buffer.getLong(), buffer.getLong(), buffer.getLong());
+    }
+}
@@ -0,0 +1,83 @@
+package com.github.sajjaadalipour.ratelimit.repositories;
+
+import com.github.sajjaadalipour.ratelimit.ConcurrencyLimiter;
+import com.github.sajjaadalipour.ratelimit.conf.properties.RateLimitProperties.Policy;
+
+import javax.annotation.Nonnull;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * An implementation of {@link ConcurrencyLimiter} to keep the in-flight requests of the keys in memory.
+ * <p>
+ * Each key with in-flight requests has a counter which is changed by compare-and-set, and the counter itself
+ * is the permit, so acquiring a permit does not allocate. A counter which drops to zero is retired and removed,
+ * so the idle keys do not hold memory, and a racing acquire of a retired counter retries with a new one.
+ * The permits live as long as the process, so the duration of the policy is not needed to release them.
+ *
+ * @author Sajjad Alipour
+ */
+public class InMemoryConcurrencyLimiter implements ConcurrencyLimiter {
+
+    /**
+     * The value of a counter which is removed from the map.
+     */
+    private static final int RETIRED = -1;
+
+    private final ConcurrentMap<String, Counter> counters = new ConcurrentHashMap<>();
+
+    @Override
+    public Permit tryAcquire(@Nonnull String key, @Nonnull Policy policy) {
+        final int limit = policy.getCount();
+        while (true) {
+            Counter counter = counters.computeIfAbsent(key, Counter::new);
+            int inFlight = counter.get();
+            if (inFlight == RETIRED) {
+                counters.remove(key, counter);
+                continue;
+            }
+
+            if (inFlight >= limit) {
+                return null;
+            }
+
+            if (counter.compareAndSet(inFlight, inFlight + 1)) {
+                return counter;
+            }
+        }
+    }
+
+    /**
+     * @return The number of keys which have in-flight requests.
+     */
+    public int size() {
+        return counters.size();
+    }
+
+    /**
+     * @return The number of in-flight requests of the given key.
+     */
+    public int getInFlight(@Nonnull String key) {
+        Counter counter = counters.get(key);
+        return counter != null ? Math.max(counter.get(), 0) : 0;
+    }
+
+    private final class Counter extends AtomicInteger implements Permit {
+
+        private static final long serialVersionUID = 1L;
+
+        private final String key;
+
+        Counter(String key) {
+            this.key = key;
+        }
+
+        @Override
+        public void release() {
+            if (decrementAndGet() == 0 && compareAndSet(0, RETIRED)) {
+                counters.remove(key, this);
+            }
+        }
+    }
+}
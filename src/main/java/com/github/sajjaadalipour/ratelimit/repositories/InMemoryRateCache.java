@@ -1,59 +1,525 @@
 package com.github.sajjaadalipour.ratelimit.repositories;
 
 import com.github.sajjaadalipour.ratelimit.Rate;
+import com.github.sajjaadalipour.ratelimit.RateDecision;
 import com.github.sajjaadalipour.ratelimit.RateLimiter;
 import com.github.sajjaadalipour.ratelimit.RatePolicy;
+import com.github.sajjaadalipour.ratelimit.clock.RateClock;
+import com.github.sajjaadalipour.ratelimit.conf.properties.RateLimitAlgorithm;
+import com.github.sajjaadalipour.ratelimit.conf.properties.RateLimitDefaults;
+import com.github.sajjaadalipour.ratelimit.conf.properties.RateLimitProperties.Policy;
 
 import javax.annotation.Nonnull;
-import java.time.Instant;
-import java.util.Optional;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+
+import static com.github.sajjaadalipour.ratelimit.Rate.RATE_BLOCK_STATE;
+import static com.github.sajjaadalipour.ratelimit.Rate.RATE_EXCEED_STATE;
 
 /**
  * An implementation of {@link RateLimiter} to cache the rate limit data in memory.
+ * <p>
+ * Every key owns a {@link RateEntry} of its policy`s algorithm, which is updated in place, so consuming a key
+ * never contends with the other keys. The fixed window and GCRA entries are updated by compare-and-set without
+ * taking any lock.
+ * <p>
+ * Expired entries are evicted by a single background sweeper thread which visits the {@link ExpiryQueue}
+ * once per sweep interval, so keys which never come back do not stay in memory. The memory can also be bounded
+ * by a max number of entries, then new keys have to pass a frequency based admission filter, and the keys which are
+ * not admitted share an overflow entry per policy, so a flood of distinct keys is still limited by the policy count.
  *
  * @author Sajjad Alipour
  */
-public class InMemoryRateCache implements RateLimiter {
+public class InMemoryRateCache implements RateLimiter, AutoCloseable {
+
+    /**
+     * How many stale keys can be skipped while looking for an eviction victim.
+     */
+    private static final int MAX_VICTIM_LOOKUPS = 8;
+
+    private final ConcurrentHashMap<String, RateEntry> cache = new ConcurrentHashMap<>();
+
+    /**
+     * The entries shared by the keys which are not admitted while the memory is full, one per algorithm, duration
+     * and count of the policies, so they are bounded by the number of the policies. The array is copied on adding an
+     * entry, so looking an entry up neither locks nor allocates.
+     */
+    private volatile OverflowEntry[] overflow = new OverflowEntry[0];
+
+    /**
+     * The entries which allow a request of {@link #tryConsumeAll} on each thread, reused by the next requests of
+     * the thread, so consuming the policies of a request does not allocate.
+     */
+    private final ThreadLocal<RateEntry[]> consumedEntriesBuffer = ThreadLocal.withInitial(() -> new RateEntry[4]);
+
+    /**
+     * Keeps the keys of the {@link #cache} grouped by their expiration.
+     */
+    private final ExpiryQueue expiryQueue;
+
+    /**
+     * Runs the expiry sweeper.
+     */
+    private final ScheduledExecutorService sweeper;
+
+    /**
+     * The number of entries which are evicted by the sweeper or to make room for a new key.
+     */
+    private final LongAdder evictionCount = new LongAdder();
 
-    private final ConcurrentHashMap<String, Rate> cache = new ConcurrentHashMap<>();
+    /**
+     * The number of new keys which are not admitted since the memory was full of more frequent keys.
+     */
+    private final LongAdder rejectionCount = new LongAdder();
+
+    /**
+     * The max number of entries to keep in memory, {@code 0} means unbounded.
+     */
+    private final int maxEntries;
+
+    /**
+     * The number of entries in the {@link #cache}, tracked apart since {@link ConcurrentHashMap#size()} is not cheap.
+     */
+    private final AtomicInteger entryCount = new AtomicInteger();
+
+    /**
+     * Estimates the recent frequency of keys to decide which key deserves to be kept when the memory is full.
+     * It is {@code null} when the memory is unbounded.
+     */
+    private final FrequencySketch sketch;
+
+    /**
+     * The source of the current time of all rate computations.
+     */
+    private final RateClock clock;
+
+    public InMemoryRateCache() {
+        this(RateLimitDefaults.SWEEP_INTERVAL);
+    }
+
+    /**
+     * @param sweepInterval Determines how often the expired entries should be evicted.
+     */
+    public InMemoryRateCache(@Nonnull Duration sweepInterval) {
+        this(sweepInterval, 0);
+    }
 
     /**
-     * Gets the rate limit by the given {@code key} from the {@link #cache} hash map,
-     * then if result is {@code null}, put the new rate to {@link #cache}, else if rate expired
-     * then remove the item from the {@link #cache}. If the rate remaining value be grater than 0,
-     * decrease rate`s remaining and update item.
+     * @param sweepInterval Determines how often the expired entries should be evicted.
+     * @param maxEntries    The max number of entries to keep in memory, {@code 0} means unbounded.
+     */
+    public InMemoryRateCache(@Nonnull Duration sweepInterval, int maxEntries) {
+        this(sweepInterval, maxEntries, RateClock.SYSTEM);
+    }
+
+    /**
+     * @param sweepInterval Determines how often the expired entries should be evicted.
+     * @param maxEntries    The max number of entries to keep in memory, {@code 0} means unbounded.
+     * @param clock         The source of the current time.
+     */
+    public InMemoryRateCache(@Nonnull Duration sweepInterval, int maxEntries, @Nonnull RateClock clock) {
+        this.clock = clock;
+        long sweepIntervalMillis = sweepInterval.toMillis();
+        this.expiryQueue = new ExpiryQueue(sweepIntervalMillis);
+        this.maxEntries = maxEntries;
+        this.sketch = maxEntries > 0 ? new FrequencySketch(maxEntries) : null;
+        this.sweeper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "rate-limit-expiry-sweeper");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.sweeper.scheduleWithFixedDelay(this::evictExpired, sweepIntervalMillis, sweepIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Consumes the rate limit of the policy`s key by {@link #decide}.
      *
      * @return Encapsulated rate details.
      */
     @Override
-    public synchronized Rate consume(@Nonnull RatePolicy ratePolicy) {
-        Optional<Rate> rateOptional = Optional.ofNullable(cache.get(ratePolicy.getKey()));
-        Rate currentRate;
+    public Rate consume(@Nonnull RatePolicy ratePolicy) {
+        long decision = decide(
+                ratePolicy.getKey(),
+                ratePolicy.getAlgorithm(),
+                ratePolicy.getDuration().toMillis(),
+                ratePolicy.getCount(),
+                blockMillisOf(ratePolicy.getBlockDuration()),
+                null,
+                0);
+
+        return RateDecision.toRate(ratePolicy.getKey(), decision);
+    }
+
+    /**
+     * Consumes the rate limit of the given key by {@link #decide}, without allocating as long as the
+     * key`s window is not renewed.
+     *
+     * @return The decision encoded by {@link RateDecision}.
+     */
+    @Override
+    public long tryConsume(@Nonnull String key, @Nonnull Policy policy) {
+        return decide(
+                key,
+                policy.getAlgorithm(),
+                policy.getDuration().toMillis(),
+                policy.getCount(),
+                blockMillisOf(policy.getBlock() != null ? policy.getBlock().getDuration() : null),
+                null,
+                0);
+    }
 
-        if (!rateOptional.isPresent()) {
-            Instant expiration = Instant.now().plusSeconds(ratePolicy.getDuration().getSeconds());
-            currentRate = new Rate(ratePolicy.getKey(), expiration, ratePolicy.getCount());
-        } else {
-            currentRate = rateOptional.get();
+    /**
+     * Consumes the given policies one by one by {@link #decide}, and when a policy does not allow the request,
+     * gives the request back to the entries of the policies before it. So the other policies of a rejected request
+     * are left as if it was never consumed, although a concurrent request may see them consumed in the meantime.
+     *
+     * @return The index of the first policy which does not allow the request, or {@code -1} if all of them allow it.
+     */
+    @Override
+    public int tryConsumeAll(@Nonnull List<String> keys, @Nonnull List<Policy> policies, @Nonnull long[] decisions) {
+        RateEntry[] consumedEntries = consumedEntriesBuffer.get();
+        if (consumedEntries.length < policies.size()) {
+            consumedEntries = new RateEntry[policies.size()];
+            consumedEntriesBuffer.set(consumedEntries);
         }
 
-        if (currentRate.isExpired()) {
-            cache.remove(ratePolicy.getKey());
-            return currentRate;
+        try {
+            return tryConsumeAll(keys, policies, decisions, consumedEntries);
+        } finally {
+            Arrays.fill(consumedEntries, 0, policies.size(), null);
         }
+    }
+
+    private int tryConsumeAll(List<String> keys, List<Policy> policies, long[] decisions, RateEntry[] consumedEntries) {
+        for (int i = 0; i < policies.size(); i++) {
+            final Policy policy = policies.get(i);
+            decisions[i] = decide(
+                    keys.get(i),
+                    policy.getAlgorithm(),
+                    policy.getDuration().toMillis(),
+                    policy.getCount(),
+                    blockMillisOf(policy.getBlock() != null ? policy.getBlock().getDuration() : null),
+                    consumedEntries,
+                    i);
 
-        Rate newRate = currentRate;
-        if (!currentRate.isExceed()) {
-            newRate = new Rate(currentRate.getKey(), currentRate.getExpiration(), currentRate.getRemaining() - 1);
+            if (!RateDecision.isAllowed(decisions[i])) {
+                final long now = clock.millis();
+                for (int j = 0; j < i; j++) {
+                    if (consumedEntries[j] != null) {
+                        consumedEntries[j].refund(now);
+                    }
+                }
+                return i;
+            }
         }
+        return -1;
+    }
 
-        if (newRate.isExceed() && ratePolicy.getBlockDuration() != null) {
-            Instant blockedExpiration = Instant.now().plusSeconds(ratePolicy.getBlockDuration().getSeconds());
-            newRate = Rate.blocked(currentRate.getKey(), blockedExpiration);
+    /**
+     * Gets the rate entry by the given {@code key} from the {@link #cache} hash map, then if result is
+     * {@code null} or can not decide for the policy`s algorithm anymore, e.g. its fixed window is expired,
+     * atomically replaces it with a fresh entry of the algorithm. Then the entry consumes the request by its own
+     * state. When the request gets exceeded and the policy has a block duration, replaces the entry with
+     * a blocked one.
+     * <p>
+     * When the memory is bounded and full, a new key is only stored if it is seen more frequently than the entry
+     * which is closest to its expiration, otherwise the request is consumed from the overflow entry of the policy,
+     * which all the keys that are not admitted share.
+     *
+     * @param blockMillis     The block duration in milliseconds, a negative value means no blocking.
+     * @param consumedEntries Receives the entry which allows the request at the given index, so it can be refunded,
+     *                        it is {@code null} if the request is never refunded.
+     * @return The decision encoded by {@link RateDecision}.
+     */
+    private long decide(String key,
+                        RateLimitAlgorithm algorithm,
+                        long durationMillis,
+                        int count,
+                        long blockMillis,
+                        RateEntry[] consumedEntries,
+                        int index) {
+        if (sketch != null) {
+            sketch.increment(key);
         }
 
-        cache.put(ratePolicy.getKey(), newRate);
-        return newRate;
+        while (true) {
+            final long now = clock.millis();
+            RateEntry entry = cache.get(key);
+
+            if (entry == null && !admit(key, now)) {
+                return decideOverflow(algorithm, durationMillis, count, consumedEntries, index);
+            }
+
+            if (entry == null || !entry.isUsable(algorithm, now)) {
+                RateEntry freshEntry = RateEntry.create(algorithm, now, durationMillis, count);
+                if (!replace(key, entry, freshEntry)) {
+                    continue;
+                }
+                if (entry == null) {
+                    entryCount.incrementAndGet();
+                }
+                expiryQueue.schedule(key, freshEntry.getExpiration());
+                entry = freshEntry;
+            }
+
+            long decision = entry.consume(now);
+            if (decision == RateEntry.RETRY) {
+                continue;
+            }
+
+            if (RateDecision.isExceed(decision) && blockMillis >= 0) {
+                RateEntry blockedEntry = FixedWindowEntry.blocked(now + blockMillis);
+                if (!cache.replace(key, entry, blockedEntry)) {
+                    continue;
+                }
+                expiryQueue.schedule(key, blockedEntry.getExpiration());
+                decision = RateDecision.of(RATE_BLOCK_STATE, blockedEntry.getExpiration());
+            }
+
+            if (consumedEntries != null && RateDecision.isAllowed(decision)) {
+                consumedEntries[index] = entry;
+            }
+            return decision;
+        }
+    }
+
+    /**
+     * Consumes the request of a key which is not admitted from the overflow entry of the policy, so the requests of
+     * all such keys are limited together by the policy count, e.g. a flood of spoofed requester identities.
+     *
+     * @return The decision encoded by {@link RateDecision}.
+     */
+    private long decideOverflow(RateLimitAlgorithm algorithm,
+                                long durationMillis,
+                                int count,
+                                RateEntry[] consumedEntries,
+                                int index) {
+        final OverflowEntry overflowEntry = overflowEntryOf(algorithm, durationMillis, count);
+        while (true) {
+            final long now = clock.millis();
+            RateEntry entry = overflowEntry.get();
+            if (entry == null || !entry.isUsable(algorithm, now)) {
+                RateEntry freshEntry = RateEntry.create(algorithm, now, durationMillis, count);
+                if (!overflowEntry.compareAndSet(entry, freshEntry)) {
+                    continue;
+                }
+                entry = freshEntry;
+            }
+
+            final long decision = entry.consume(now);
+            if (decision == RateEntry.RETRY) {
+                continue;
+            }
+
+            if (consumedEntries != null && RateDecision.isAllowed(decision)) {
+                consumedEntries[index] = entry;
+            }
+            return decision;
+        }
+    }
+
+    private OverflowEntry overflowEntryOf(RateLimitAlgorithm algorithm, long durationMillis, int count) {
+        OverflowEntry overflowEntry = findOverflowEntry(overflow, algorithm, durationMillis, count);
+        if (overflowEntry != null) {
+            return overflowEntry;
+        }
+
+        synchronized (this) {
+            final OverflowEntry[] entries = overflow;
+            overflowEntry = findOverflowEntry(entries, algorithm, durationMillis, count);
+            if (overflowEntry == null) {
+                overflowEntry = new OverflowEntry(algorithm, durationMillis, count);
+                final OverflowEntry[] newEntries = Arrays.copyOf(entries, entries.length + 1);
+                newEntries[entries.length] = overflowEntry;
+                overflow = newEntries;
+            }
+            return overflowEntry;
+        }
+    }
+
+    private static OverflowEntry findOverflowEntry(OverflowEntry[] entries,
+                                                   RateLimitAlgorithm algorithm,
+                                                   long durationMillis,
+                                                   int count) {
+        for (OverflowEntry entry : entries) {
+            if (entry.algorithm == algorithm && entry.durationMillis == durationMillis && entry.count == count) {
+                return entry;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return The number of entries which are evicted by the expiry sweeper or to make room for new keys so far.
+     */
+    public long getEvictionCount() {
+        return evictionCount.sum();
+    }
+
+    /**
+     * @return The number of new keys which are not admitted since the memory was full so far.
+     */
+    public long getRejectionCount() {
+        return rejectionCount.sum();
+    }
+
+    /**
+     * @return The number of entries which are currently kept in memory.
+     */
+    public int size() {
+        return entryCount.get();
+    }
+
+    /**
+     * Stops the expiry sweeper.
+     */
+    @Override
+    public void close() {
+        sweeper.shutdownNow();
+    }
+
+    /**
+     * @return The current time of the cache`s clock in epoch milliseconds.
+     */
+    long now() {
+        return clock.millis();
+    }
+
+    /**
+     * Visits the entries which are not expired at the given time. The iteration is weakly consistent and
+     * never blocks the concurrent consumers.
+     */
+    void forEachLiving(long now, BiConsumer<String, RateEntry> consumer) {
+        cache.forEach((key, entry) -> {
+            if (!entry.isExpired(now)) {
+                consumer.accept(key, entry);
+            }
+        });
+    }
+
+    /**
+     * Puts back a previously kept rate limit, unless the key already has one or the memory is full.
+     *
+     * @return {@code true} if the rate limit is restored.
+     */
+    boolean restore(String key, RateEntry entry) {
+        if (maxEntries > 0 && entryCount.get() >= maxEntries) {
+            return false;
+        }
+
+        if (cache.putIfAbsent(key, entry) != null) {
+            return false;
+        }
+        entryCount.incrementAndGet();
+        expiryQueue.schedule(key, entry.getExpiration());
+        return true;
+    }
+
+    /**
+     * Visits the keys which are due in the {@link #expiryQueue} and removes their entries if they are
+     * still expired. An entry which is replaced in the meantime has been scheduled on its own, so it is skipped,
+     * but an entry whose expiration is extended in place is scheduled again.
+     */
+    void evictExpired() {
+        final long now = clock.millis();
+        expiryQueue.drain(now, key -> {
+            RateEntry entry = cache.get(key);
+            if (entry == null) {
+                return;
+            }
+
+            if (entry.retire(now)) {
+                evict(key, entry);
+            } else if (entry.isExtendable()) {
+                expiryQueue.schedule(key, entry.getExpiration());
+            }
+        });
+    }
+
+    /**
+     * Decides whether the given new key can be stored. It is admitted if the memory is not full, otherwise
+     * the entry which is closest to its expiration is chosen as the victim and the more frequent key of
+     * the two is kept, TinyLFU style. So a flood of one-off keys can not push out the keys of heavy hitters.
+     *
+     * @return {@code true} if there is room for the key.
+     */
+    private boolean admit(String key, long now) {
+        if (maxEntries <= 0 || entryCount.get() < maxEntries) {
+            return true;
+        }
+
+        int frequency = sketch.frequency(key);
+        for (int i = 0; i < MAX_VICTIM_LOOKUPS; i++) {
+            String victim = expiryQueue.pollFirst();
+            if (victim == null) {
+                return true;
+            }
+
+            RateEntry victimEntry = cache.get(victim);
+            if (victimEntry == null) {
+                continue;
+            }
+
+            if (victimEntry.retire(now) || frequency > sketch.frequency(victim)) {
+                evict(victim, victimEntry);
+                return true;
+            }
+
+            expiryQueue.schedule(victim, victimEntry.getExpiration());
+            break;
+        }
+
+        rejectionCount.increment();
+        return false;
+    }
+
+    private void evict(String key, RateEntry entry) {
+        if (cache.remove(key, entry)) {
+            entryCount.decrementAndGet();
+            evictionCount.increment();
+        }
+    }
+
+    /**
+     * Atomically replaces the {@code expected} entry of the given key with the {@code newEntry}.
+     *
+     * @return {@code false} if another thread has changed the entry in the meantime.
+     */
+    private boolean replace(String key, RateEntry expected, RateEntry newEntry) {
+        if (expected == null) {
+            return cache.putIfAbsent(key, newEntry) == null;
+        }
+        return cache.replace(key, expected, newEntry);
+    }
+
+    private static long blockMillisOf(Duration blockDuration) {
+        return blockDuration != null ? blockDuration.toMillis() : -1;
+    }
+
+    /**
+     * Holds the current overflow entry of an algorithm, duration and count of the policies.
+     */
+    private static final class OverflowEntry extends AtomicReference<RateEntry> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final RateLimitAlgorithm algorithm;
+        private final long durationMillis;
+        private final int count;
+
+        private OverflowEntry(RateLimitAlgorithm algorithm, long durationMillis, int count) {
+            this.algorithm = algorithm;
+            this.durationMillis = durationMillis;
+            this.count = count;
+        }
     }
 }
@@ -0,0 +1,313 @@
+package com.github.sajjaadalipour.ratelimit.repositories;
+
+import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Keeps the rate limits of an {@link InMemoryRateCache} in a file, so the windows and blocks survive a restart.
+ * <p>
+ * The living entries are written periodically to a memory-mapped file in a compact binary format:
+ * a header of the magic number, the format version, the creation time and the number of records,
+ * followed by the records, each of them is the length of the UTF-8 key, the key, the type of the entry
+ * and the state of the entry, e.g. the expiration in epoch milliseconds and the remaining value of
+ * a fixed window. The entries are visited by the weakly consistent iteration of
+ * the cache, so taking a snapshot never pauses the consumers, and the file is written next to the target
+ * then atomically moved in place, so a crash never leaves a partial snapshot behind.
+ * <p>
+ * On {@link #restore()}, the expired records are skipped and the others are put back to the cache.
+ *
+ * @author Sajjad Alipour
+ */
+public class InMemoryRateSnapshot implements AutoCloseable {
+
+    static final int MAGIC = 0x524c5331;
+    static final int VERSION = 2;
+
+    private static final int HEADER_SIZE = 20;
+    private static final int COUNT_OFFSET = 16;
+    private static final int KEY_LENGTH_SIZE = 2;
+    private static final int MAX_KEY_BYTES = 0xffff;
+
+    /**
+     * The size of the file regions which are mapped at once.
+     */
+    private static final int REGION_SIZE = 8 << 20;
+
+    private final InMemoryRateCache cache;
+
+    private final Path path;
+
+    /**
+     * Takes the periodic snapshots, it is {@code null} until {@link #start(Duration)} is called.
+     */
+    private ScheduledExecutorService scheduler;
+
+    /**
+     * The number of periodic snapshots which are failed.
+     */
+    private final LongAdder failureCount = new LongAdder();
+
+    /**
+     * @param cache The cache to take snapshots of and restore to.
+     * @param path  The snapshot file.
+     */
+    public InMemoryRateSnapshot(@Nonnull InMemoryRateCache cache, @Nonnull Path path) {
+        this.cache = cache;
+        this.path = path;
+    }
+
+    /**
+     * Starts taking a snapshot by the given interval.
+     *
+     * @param interval Determines how often a snapshot should be taken.
+     */
+    public synchronized void start(@Nonnull Duration interval) {
+        if (scheduler != null) {
+            throw new IllegalStateException("The rate limit snapshot is already started");
+        }
+
+        long intervalMillis = interval.toMillis();
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "rate-limit-snapshot");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                snapshot();
+            } catch (IOException | UncheckedIOException e) {
+                failureCount.increment();
+            }
+        }, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Writes the living entries of the cache to the snapshot file.
+     *
+     * @return The number of written entries.
+     * @throws IOException If the file can not be written.
+     */
+    public synchronized int snapshot() throws IOException {
+        Path directory = path.toAbsolutePath().getParent();
+        if (directory != null) {
+            Files.createDirectories(directory);
+        }
+
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        final long now = cache.now();
+        int count;
+        try (MappedWriter writer = new MappedWriter(temp)) {
+            writer.ensure(HEADER_SIZE);
+            writer.buffer.putInt(MAGIC).putInt(VERSION).putLong(now).putInt(0);
+
+            cache.forEachLiving(now, (key, entry) -> {
+                byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+                if (keyBytes.length > MAX_KEY_BYTES) {
+                    return;
+                }
+
+                writer.ensure(KEY_LENGTH_SIZE + keyBytes.length + 1 + entry.getStateSize());
+                writer.buffer.putShort((short) keyBytes.length)
+                        .put(keyBytes)
+                        .put(entry.getType());
+                entry.writeState(writer.buffer);
+                writer.records++;
+            });
+            count = writer.records;
+        }
+
+        Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return count;
+    }
+
+    /**
+     * Reads the snapshot file, if exists, and puts the records which are not expired back to the cache.
+     *
+     * @return The number of restored entries.
+     * @throws IOException If the file can not be read or is not a valid snapshot.
+     */
+    public synchronized int restore() throws IOException {
+        if (!Files.exists(path)) {
+            return 0;
+        }
+
+        final long now = cache.now();
+        int restored = 0;
+        try (MappedReader reader = new MappedReader(path)) {
+            reader.ensure(HEADER_SIZE);
+            int version = reader.buffer.getInt() == MAGIC ? reader.buffer.getInt() : -1;
+            if (version != VERSION) {
+                throw new IOException("The file is not a rate limit snapshot: " + path);
+            }
+            reader.buffer.getLong();
+            int count = reader.buffer.getInt();
+
+            byte[] keyBytes = new byte[64];
+            for (int i = 0; i < count; i++) {
+                reader.ensure(KEY_LENGTH_SIZE);
+                int keyLength = reader.buffer.getShort() & MAX_KEY_BYTES;
+                reader.ensure(keyLength + 1);
+                if (keyBytes.length < keyLength) {
+                    keyBytes = new byte[keyLength];
+                }
+                reader.buffer.get(keyBytes, 0, keyLength);
+                RateEntry entry = readEntry(reader.buffer.get(), reader);
+
+                if (!entry.isExpired(now) && cache.restore(new String(keyBytes, 0, keyLength, StandardCharsets.UTF_8), entry)) {
+                    restored++;
+                }
+            }
+        }
+        return restored;
+    }
+
+    private static RateEntry readEntry(byte type, MappedReader reader) throws IOException {
+        try {
+            reader.ensure(RateEntry.stateSize(type));
+            return RateEntry.readState(type, reader.buffer);
+        } catch (IllegalArgumentException e) {
+            throw new IOException("The rate limit snapshot is corrupted", e);
+        }
+    }
+
+    /**
+     * @return The number of periodic snapshots which are failed so far.
+     */
+    public long getFailureCount() {
+        return failureCount.sum();
+    }
+
+    /**
+     * Stops the periodic snapshots and takes the last one.
+     *
+     * @throws IOException If the last snapshot can not be written.
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            if (scheduler != null) {
+                scheduler.shutdownNow();
+            }
+        }
+        snapshot();
+    }
+
+    /**
+     * Writes a file through memory-mapped regions, which are mapped one after another as the writer goes on.
+     */
+    private static final class MappedWriter implements AutoCloseable {
+
+        private final FileChannel channel;
+
+        private MappedByteBuffer buffer;
+
+        /**
+         * The file position of the current region.
+         */
+        private long regionStart;
+
+        private MappedByteBuffer header;
+
+        private int records;
+
+        MappedWriter(Path file) throws IOException {
+            this.channel = FileChannel.open(file,
+                    StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE);
+        }
+
+        /**
+         * Makes sure the given number of bytes fits in the current region, otherwise maps the next region.
+         */
+        void ensure(int bytes) {
+            if (buffer != null && buffer.remaining() >= bytes) {
+                return;
+            }
+
+            try {
+                if (buffer != null) {
+                    regionStart += buffer.position();
+                }
+                buffer = channel.map(FileChannel.MapMode.READ_WRITE, regionStart, Math.max(REGION_SIZE, bytes));
+                if (header == null) {
+                    header = buffer;
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                if (header != null) {
+                    header.putInt(COUNT_OFFSET, records);
+                    header.force();
+                }
+                if (buffer != null) {
+                    buffer.force();
+                    channel.truncate(regionStart + buffer.position());
+                }
+            } finally {
+                channel.close();
+            }
+        }
+    }
+
+    /**
+     * Reads a file through memory-mapped regions, which are mapped one after another as the reader goes on.
+     */
+    private static final class MappedReader implements AutoCloseable {
+
+        private final FileChannel channel;
+
+        private final long size;
+
+        private MappedByteBuffer buffer;
+
+        private long regionStart;
+
+        MappedReader(Path file) throws IOException {
+            this.channel = FileChannel.open(file, StandardOpenOption.READ);
+            this.size = channel.size();
+        }
+
+        /**
+         * Makes sure the given number of bytes can be read from the current region, otherwise maps the next region.
+         *
+         * @throws IOException If the file ends before.
+         */
+        void ensure(int bytes) throws IOException {
+            if (buffer != null && buffer.remaining() >= bytes) {
+                return;
+            }
+
+            if (buffer != null) {
+                regionStart += buffer.position();
+            }
+            long regionSize = Math.min(Math.max(REGION_SIZE, bytes), size - regionStart);
+            if (regionSize < bytes) {
+                throw new IOException("The rate limit snapshot is truncated");
+            }
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, regionStart, regionSize);
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package com.github.sajjaadalipour.ratelimit.repositories;
+
+/**
+ * Hashes rate limit keys to 64 bits, for the stores which keep a hash instead of the key itself.
+ *
+ * @author Sajjad Alipour
+ */
+final class KeyHashing {
+
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private KeyHashing() {
+    }
+
+    /**
+     * Hashes the chars of the given key by FNV-1a and mixes the result by the MurmurHash3 finalizer,
+     * so that every bit of the key affects every bit of the hash.
+     *
+     * @param key The key to hash.
+     * @return The 64-bit hash.
+     */
+    static long hash64(CharSequence key) {
+        long hash = FNV_OFFSET_BASIS;
+        for (int i = 0; i < key.length(); i++) {
+            char c = key.charAt(i);
+            hash = (hash ^ (c & 0xff)) * FNV_PRIME;
+            hash = (hash ^ (c >>> 8)) * FNV_PRIME;
+        }
+        return mix64(hash);
+    }
+
+    static long mix64(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
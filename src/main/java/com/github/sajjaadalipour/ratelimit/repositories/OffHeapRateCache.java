@@ -0,0 +1,354 @@
+package com.github.sajjaadalipour.ratelimit.repositories;
+
+import com.github.sajjaadalipour.ratelimit.Rate;
+import com.github.sajjaadalipour.ratelimit.RateDecision;
+import com.github.sajjaadalipour.ratelimit.RateLimiter;
+import com.github.sajjaadalipour.ratelimit.RatePolicy;
+import com.github.sajjaadalipour.ratelimit.clock.RateClock;
+import com.github.sajjaadalipour.ratelimit.conf.properties.RateLimitAlgorithm;
+import com.github.sajjaadalipour.ratelimit.conf.properties.RateLimitDefaults;
+import com.github.sajjaadalipour.ratelimit.conf.properties.RateLimitProperties.Policy;
+
+import javax.annotation.Nonnull;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+import static com.github.sajjaadalipour.ratelimit.Rate.RATE_BLOCK_STATE;
+import static com.github.sajjaadalipour.ratelimit.Rate.RATE_EXCEED_STATE;
+
+/**
+ * An implementation of {@link RateLimiter} to cache the rate limit data in off-heap memory.
+ * <p>
+ * The rate limits are kept in direct {@link ByteBuffer}s as an open addressing hash table of fixed size slots,
+ * each of them holds the 64-bit hash of the key, the expiration in epoch milliseconds and the remaining value.
+ * So a key costs {@value #SLOT_SIZE} bytes outside of the heap and nothing is left for the garbage collector
+ * to scan, no matter how many keys are tracked. The table is split into segments with their own lock,
+ * so the keys of different segments never contend.
+ * <p>
+ * Since only the hash of a key is kept, two keys with the same 64-bit hash share their rate limit.
+ * The expired slots are reused in place, so the table never needs a sweeper. A key is only probed for in a bounded
+ * number of slots from its home slot, and when all of them are taken by living rate limits, the request is consumed
+ * from an overflow slot of the policy which all such keys share, so a flood of distinct keys is still limited by
+ * the policy count and never costs more than the bounded probe under the segment monitor.
+ * Only the {@link RateLimitAlgorithm#FIXED_WINDOW} algorithm is supported.
+ *
+ * @author Sajjad Alipour
+ */
+public class OffHeapRateCache implements RateLimiter {
+
+    /**
+     * The size of a slot in bytes: key hash, expiration and remaining.
+     */
+    public static final int SLOT_SIZE = 24;
+
+    private static final int HASH_OFFSET = 0;
+    private static final int EXPIRATION_OFFSET = 8;
+    private static final int REMAINING_OFFSET = 16;
+
+    /**
+     * The hash which marks a never used slot.
+     */
+    private static final long EMPTY = 0L;
+
+    private static final int SEGMENT_COUNT = 64;
+
+    /**
+     * The max number of slots which are probed for a key, which bounds the work done under a segment monitor.
+     */
+    static final int MAX_PROBES = 16;
+
+    /**
+     * The number of slots of the {@link #overflow} segment.
+     */
+    private static final int OVERFLOW_SLOTS = 64;
+
+    /**
+     * Marks that a key has no slot within its probes.
+     */
+    private static final long UNTRACKED = Long.MIN_VALUE;
+
+    private final Segment[] segments;
+
+    /**
+     * Keeps the slots shared by the keys which have no slot of their own, one per duration and count of the policies.
+     */
+    private final Segment overflow = new Segment(OVERFLOW_SLOTS);
+
+    /**
+     * The number of new keys which are not stored since their probed slots were full.
+     */
+    private final LongAdder rejectionCount = new LongAdder();
+
+    /**
+     * The source of the current time of all rate computations.
+     */
+    private final RateClock clock;
+
+    public OffHeapRateCache() {
+        this(RateLimitDefaults.OFF_HEAP_CAPACITY);
+    }
+
+    /**
+     * @param capacity The number of keys which should fit in the table, rounded up to a power of two.
+     */
+    public OffHeapRateCache(int capacity) {
+        this(capacity, RateClock.SYSTEM);
+    }
+
+    /**
+     * @param capacity The number of keys which should fit in the table, rounded up to a power of two.
+     * @param clock    The source of the current time.
+     */
+    public OffHeapRateCache(int capacity, @Nonnull RateClock clock) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("The off-heap capacity should be positive");
+        }
+
+        this.clock = clock;
+        int slotsPerSegment = ceilingPowerOfTwo(Math.max(capacity / SEGMENT_COUNT, 1));
+        this.segments = new Segment[SEGMENT_COUNT];
+        for (int i = 0; i < SEGMENT_COUNT; i++) {
+            segments[i] = new Segment(slotsPerSegment);
+        }
+    }
+
+    /**
+     * Consumes the rate limit of the policy`s key by {@link #decide}.
+     *
+     * @param ratePolicy Encapsulates the rate limit policy details.
+     * @return Encapsulated rate details.
+     * @throws UnsupportedOperationException If the policy`s algorithm is not the fixed window.
+     */
+    @Override
+    public Rate consume(@Nonnull RatePolicy ratePolicy) {
+        checkAlgorithm(ratePolicy.getAlgorithm());
+        long decision = decide(
+                ratePolicy.getKey(),
+                ratePolicy.getDuration().toMillis(),
+                ratePolicy.getCount(),
+                blockMillisOf(ratePolicy.getBlockDuration()));
+
+        return RateDecision.toRate(ratePolicy.getKey(), decision);
+    }
+
+    /**
+     * Consumes the rate limit of the given key by {@link #decide}, without allocating.
+     *
+     * @return The decision encoded by {@link RateDecision}.
+     * @throws UnsupportedOperationException If the policy`s algorithm is not the fixed window.
+     */
+    @Override
+    public long tryConsume(@Nonnull String key, @Nonnull Policy policy) {
+        checkAlgorithm(policy.getAlgorithm());
+        return decide(
+                key,
+                policy.getDuration().toMillis(),
+                policy.getCount(),
+                blockMillisOf(policy.getBlock() != null ? policy.getBlock().getDuration() : null));
+    }
+
+    /**
+     * Decides by the slot of the key hash in its segment, or by the overflow slot of the policy if the key has no
+     * slot within its probes. The overflow slots are never blocked, since they are shared by many keys. If even
+     * the overflow segment is full, the request is rejected.
+     *
+     * @param blockMillis The block duration in milliseconds, a negative value means no blocking.
+     * @return The decision encoded by {@link RateDecision}.
+     */
+    private long decide(String key, long durationMillis, int count, long blockMillis) {
+        final long hash = hashOf(key);
+        final long now = clock.millis();
+        long decision = decide(segments[(int) (hash >>> 58) & (SEGMENT_COUNT - 1)], hash, now, durationMillis, count, blockMillis);
+        if (decision != UNTRACKED) {
+            return decision;
+        }
+
+        rejectionCount.increment();
+        decision = decide(overflow, overflowHashOf(durationMillis, count), now, durationMillis, count, -1);
+        return decision != UNTRACKED ? decision : RateDecision.of(RATE_EXCEED_STATE, now + durationMillis);
+    }
+
+    /**
+     * Finds the slot of the key hash in the given segment, if it does not exist or is expired then starts a new
+     * window in the slot, else if the remaining value is greater than 0, decreases it. When the slot gets exceeded
+     * and the policy has a block duration, turns it into a blocked slot.
+     *
+     * @return The decision encoded by {@link RateDecision}, or {@link #UNTRACKED} if the hash has no slot.
+     */
+    private static long decide(Segment segment, long hash, long now, long durationMillis, int count, long blockMillis) {
+        synchronized (segment) {
+            int slot = segment.find(hash, now);
+            if (slot < 0) {
+                return UNTRACKED;
+            }
+
+            ByteBuffer table = segment.table;
+            if (table.getLong(slot + HASH_OFFSET) != hash || table.getLong(slot + EXPIRATION_OFFSET) < now) {
+                table.putLong(slot + HASH_OFFSET, hash);
+                table.putLong(slot + EXPIRATION_OFFSET, now + durationMillis);
+                table.putInt(slot + REMAINING_OFFSET, count);
+            }
+
+            long expiration = table.getLong(slot + EXPIRATION_OFFSET);
+            int remaining = table.getInt(slot + REMAINING_OFFSET);
+            if (remaining >= 0) {
+                table.putInt(slot + REMAINING_OFFSET, --remaining);
+            }
+
+            if (remaining == RATE_EXCEED_STATE && blockMillis >= 0) {
+                expiration = now + blockMillis;
+                remaining = RATE_BLOCK_STATE;
+                table.putLong(slot + EXPIRATION_OFFSET, expiration);
+                table.putInt(slot + REMAINING_OFFSET, remaining);
+            }
+
+            return RateDecision.of(remaining, expiration);
+        }
+    }
+
+    /**
+     * Consumes the given policies one by one by {@link #tryConsume}, and when a policy does not allow the request,
+     * gives the request back to the slots of the policies before it, like {@link InMemoryRateCache#tryConsumeAll}.
+     * So the other policies of a rejected request are left as if it was never consumed, although a concurrent request
+     * may see them consumed in the meantime.
+     *
+     * @return The index of the first policy which does not allow the request, or {@code -1} if all of them allow it.
+     * @throws UnsupportedOperationException If a policy`s algorithm is not the fixed window.
+     */
+    @Override
+    public int tryConsumeAll(@Nonnull List<String> keys, @Nonnull List<Policy> policies, @Nonnull long[] decisions) {
+        for (int i = 0; i < policies.size(); i++) {
+            decisions[i] = tryConsume(keys.get(i), policies.get(i));
+            if (!RateDecision.isAllowed(decisions[i])) {
+                final long now = clock.millis();
+                for (int j = 0; j < i; j++) {
+                    refund(keys.get(j), policies.get(j), decisions[j], now);
+                }
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Gives a request back to the slot of the key, or to the overflow slot of the policy if the key has no slot.
+     *
+     * @param decision The decision which the slot has allowed the request by, see {@link RateDecision}.
+     */
+    private void refund(String key, Policy policy, long decision, long now) {
+        final long hash = hashOf(key);
+        final long expiration = RateDecision.resetMillis(decision);
+        if (!refund(segments[(int) (hash >>> 58) & (SEGMENT_COUNT - 1)], hash, now, expiration)) {
+            refund(overflow, overflowHashOf(policy.getDuration().toMillis(), policy.getCount()), now, expiration);
+        }
+    }
+
+    /**
+     * Increases the remaining value of the slot of the hash in the given segment, unless it is blocked or its window
+     * is not the one of the given expiration anymore, e.g. it is ended and restarted in the meantime.
+     *
+     * @return Whether the hash has a slot in the segment.
+     */
+    private static boolean refund(Segment segment, long hash, long now, long expiration) {
+        synchronized (segment) {
+            int slot = segment.find(hash, now);
+            ByteBuffer table = segment.table;
+            if (slot < 0 || table.getLong(slot + HASH_OFFSET) != hash) {
+                return false;
+            }
+
+            int remaining = table.getInt(slot + REMAINING_OFFSET);
+            if (table.getLong(slot + EXPIRATION_OFFSET) == expiration && remaining != RATE_BLOCK_STATE) {
+                table.putInt(slot + REMAINING_OFFSET, Math.max(remaining, 0) + 1);
+            }
+            return true;
+        }
+    }
+
+    /**
+     * @return The number of new keys which are not stored since their probed slots were full so far.
+     */
+    public long getRejectionCount() {
+        return rejectionCount.sum();
+    }
+
+    /**
+     * @return The number of off-heap bytes allocated by the table.
+     */
+    public long getAllocatedBytes() {
+        long bytes = 0;
+        for (Segment segment : segments) {
+            bytes += segment.table.capacity();
+        }
+        return bytes;
+    }
+
+    private static void checkAlgorithm(RateLimitAlgorithm algorithm) {
+        if (algorithm != RateLimitAlgorithm.FIXED_WINDOW) {
+            throw new UnsupportedOperationException("The off-heap rate limiter only supports the fixed window algorithm");
+        }
+    }
+
+    /**
+     * @return The hash of the overflow slot of the policies of the given duration and count.
+     */
+    private static long overflowHashOf(long durationMillis, int count) {
+        return KeyHashing.mix64(durationMillis * 31 + count) | 1L;
+    }
+
+    private static long hashOf(String key) {
+        long hash = KeyHashing.hash64(key);
+        return hash == EMPTY ? 1L : hash;
+    }
+
+    private static long blockMillisOf(Duration blockDuration) {
+        return blockDuration != null ? blockDuration.toMillis() : -1;
+    }
+
+    private static int ceilingPowerOfTwo(int value) {
+        return 1 << -Integer.numberOfLeadingZeros(value - 1);
+    }
+
+    /**
+     * A part of the table which is guarded by its own monitor.
+     */
+    private static final class Segment {
+
+        private final ByteBuffer table;
+
+        private final int mask;
+
+        Segment(int slots) {
+            this.table = ByteBuffer.allocateDirect(slots * SLOT_SIZE);
+            this.mask = slots - 1;
+        }
+
+        /**
+         * Probes linearly from the home slot of the hash, up to {@link #MAX_PROBES} slots, until the hash or a never
+         * used slot is found. The first expired slot on the way is remembered to be reused when the hash is not there.
+         *
+         * @return The byte offset of the slot to use or {@code -1} if every probed slot is taken by a living rate limit.
+         */
+        int find(long hash, long now) {
+            int reusable = -1;
+            int index = (int) hash & mask;
+            int probes = Math.min(MAX_PROBES, mask + 1);
+            for (int probe = 0; probe < probes; probe++) {
+                int slot = ((index + probe) & mask) * SLOT_SIZE;
+                long slotHash = table.getLong(slot + HASH_OFFSET);
+                if (slotHash == hash) {
+                    return slot;
+                }
+                if (slotHash == EMPTY) {
+                    return reusable >= 0 ? reusable : slot;
+                }
+                if (reusable < 0 && table.getLong(slot + EXPIRATION_OFFSET) < now) {
+                    reusable = slot;
+                }
+            }
+            return reusable;
+        }
+    }
+}
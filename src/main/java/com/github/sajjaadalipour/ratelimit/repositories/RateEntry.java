@@ -0,0 +1,153 @@
+package com.github.sajjaadalipour.ratelimit.repositories;
+
+import com.github.sajjaadalipour.ratelimit.conf.properties.RateLimitAlgorithm;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The rate limit state of a key which is held by {@link InMemoryRateCache}, every algorithm has its own kind
+ * of entry which decides by its own state.
+ *
+ * @author Sajjad Alipour
+ */
+abstract class RateEntry {
+
+    /**
+     * Returned by {@link #consume(long)} when the entry is retired concurrently, so the caller should look
+     * the key up again. It never collides with a decision, since no decision resets at the epoch.
+     */
+    static final long RETRY = Long.MIN_VALUE;
+
+    /**
+     * @return The time in epoch milliseconds after which the entry can be evicted.
+     */
+    abstract long getExpiration();
+
+    boolean isExpired(long now) {
+        return now > getExpiration();
+    }
+
+    /**
+     * @param algorithm The algorithm of the policy to consume.
+     * @param now       The current time in epoch milliseconds.
+     * @return {@code false} if the entry can not decide for the given algorithm anymore and should be
+     * replaced by a fresh one.
+     */
+    abstract boolean isUsable(RateLimitAlgorithm algorithm, long now);
+
+    /**
+     * Consumes a request.
+     *
+     * @param now The current time in epoch milliseconds.
+     * @return The decision encoded by {@link com.github.sajjaadalipour.ratelimit.RateDecision} or {@link #RETRY}.
+     */
+    abstract long consume(long now);
+
+    /**
+     * Gives back a request which is consumed from the entry, since another policy of the same request does not
+     * allow it.
+     *
+     * @param now The current time in epoch milliseconds.
+     */
+    abstract void refund(long now);
+
+    /**
+     * @return {@code true} if the expiration moves forward while consuming, so the entry should be scheduled
+     * again when it is visited before its expiration.
+     */
+    boolean isExtendable() {
+        return false;
+    }
+
+    /**
+     * Marks the entry as removed if it is expired, so the concurrent consumers do not update a removed entry.
+     *
+     * @return {@code true} if the entry is expired and can be removed.
+     */
+    boolean retire(long now) {
+        return isExpired(now);
+    }
+
+    /**
+     * @return The type of the entry in the snapshots.
+     */
+    abstract byte getType();
+
+    /**
+     * @return The number of bytes written by {@link #writeState(ByteBuffer)}.
+     */
+    int getStateSize() {
+        return stateSize(getType());
+    }
+
+    abstract void writeState(ByteBuffer buffer);
+
+    /**
+     * @return The number of bytes of the state of the given type of entry.
+     * @throws IllegalArgumentException If the type is unknown.
+     */
+    static int stateSize(byte type) {
+        switch (type) {
+            case FixedWindowEntry.TYPE:
+                return FixedWindowEntry.STATE_SIZE;
+            case GcraEntry.TYPE:
+                return GcraEntry.STATE_SIZE;
+            case TokenBucketEntry.TYPE:
+                return TokenBucketEntry.STATE_SIZE;
+            case SlidingWindowEntry.TYPE:
+                return SlidingWindowEntry.STATE_SIZE;
+            default:
+                throw new IllegalArgumentException("Unknown rate entry type: " + type);
+        }
+    }
+
+    /**
+     * Reads an entry which is written by {@link #writeState(ByteBuffer)}.
+     *
+     * @throws IllegalArgumentException If the type is unknown.
+     */
+    static RateEntry readState(byte type, ByteBuffer buffer) {
+        switch (type) {
+            case FixedWindowEntry.TYPE:
+                return FixedWindowEntry.readState(buffer);
+            case GcraEntry.TYPE:
+                return GcraEntry.readState(buffer);
+            case TokenBucketEntry.TYPE:
+                return TokenBucketEntry.readState(buffer);
+            case SlidingWindowEntry.TYPE:
+                return SlidingWindowEntry.readState(buffer);
+            default:
+                throw new IllegalArgumentException("Unknown rate entry type: " + type);
+        }
+    }
+
+    /**
+     * Creates the entry of a fresh window of the given algorithm.
+     */
+    static RateEntry create(RateLimitAlgorithm algorithm, long now, long durationMillis, int count) {
+        switch (algorithm) {
+            case TOKEN_BUCKET:
+                return new TokenBucketEntry(now, durationMillis, count);
+            case GCRA:
+                return new GcraEntry(now, durationMillis, count);
+            case SLIDING_WINDOW:
+                return new SlidingWindowEntry(now, durationMillis, count);
+            default:
+                return new FixedWindowEntry(now + durationMillis, count);
+        }
+    }
+
+    /**
+     * @return The emission interval of one request in microseconds, at least one.
+     */
+    static long intervalMicros(long durationMillis, int count) {
+        return Math.max(durationMillis * 1000 / Math.max(count, 1), 1);
+    }
+
+    /**
+     * @return The given microseconds rounded up to milliseconds.
+     */
+    static long ceilMillis(long micros) {
+        return -Math.floorDiv(-micros, 1000);
+    }
+}
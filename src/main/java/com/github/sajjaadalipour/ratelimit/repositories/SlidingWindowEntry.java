@@ -0,0 +1,162 @@
+package com.github.sajjaadalipour.ratelimit.repositories;
+
+import com.github.sajjaadalipour.ratelimit.RateDecision;
+import com.github.sajjaadalipour.ratelimit.conf.properties.RateLimitAlgorithm;
+
+import java.nio.ByteBuffer;
+
+import static com.github.sajjaadalipour.ratelimit.Rate.RATE_EXCEED_STATE;
+
+/**
+ * The state of a key limited by the sliding window counter algorithm, which is only the counters of
+ * the current and the previous windows.
+ * <p>
+ * The windows are aligned to the multiples of the duration. The requests of the last duration are estimated
+ * by the count of the current window plus the count of the previous window weighted by the part of it
+ * which is still in the last duration. The counters change together, so they are guarded by the monitor
+ * of the entry, which is only contended by the requests of the same key.
+ *
+ * @author Sajjad Alipour
+ */
+final class SlidingWindowEntry extends RateEntry {
+
+    static final byte TYPE = 3;
+
+    static final int STATE_SIZE = 8 + 4 + 8 + 4 + 4;
+
+    private final long durationMillis;
+
+    private final int count;
+
+    /**
+     * The start of the current window in epoch milliseconds.
+     */
+    private long windowStart;
+
+    private int previousCount;
+
+    private int currentCount;
+
+    private boolean retired;
+
+    SlidingWindowEntry(long now, long durationMillis, int count) {
+        this(durationMillis, count, windowStartOf(now, durationMillis), 0, 0);
+    }
+
+    private SlidingWindowEntry(long durationMillis, int count, long windowStart, int previousCount, int currentCount) {
+        this.durationMillis = durationMillis;
+        this.count = count;
+        this.windowStart = windowStart;
+        this.previousCount = previousCount;
+        this.currentCount = currentCount;
+    }
+
+    /**
+     * Once the next window is over, both counters are out of the last duration.
+     */
+    @Override
+    synchronized long getExpiration() {
+        return windowStart + 2 * durationMillis;
+    }
+
+    @Override
+    synchronized boolean isUsable(RateLimitAlgorithm algorithm, long now) {
+        return algorithm == RateLimitAlgorithm.SLIDING_WINDOW && !retired;
+    }
+
+    @Override
+    synchronized long consume(long now) {
+        if (retired) {
+            return RETRY;
+        }
+
+        slide(now);
+        double estimated = estimate(now);
+        if (estimated + 1 > count) {
+            return RateDecision.of(RATE_EXCEED_STATE, allowedAt(now));
+        }
+
+        currentCount++;
+        return RateDecision.of((int) (count - estimated - 1), windowStart + durationMillis);
+    }
+
+    /**
+     * Decreases the count of the window which the request is counted by, the previous one if the windows
+     * are moved forward in the meantime.
+     */
+    @Override
+    synchronized void refund(long now) {
+        if (retired) {
+            return;
+        }
+
+        slide(now);
+        if (currentCount > 0) {
+            currentCount--;
+        } else if (previousCount > 0) {
+            previousCount--;
+        }
+    }
+
+    /**
+     * Moves the windows forward to the window of the given time.
+     */
+    private void slide(long now) {
+        long start = windowStartOf(now, durationMillis);
+        if (start == windowStart) {
+            return;
+        }
+
+        previousCount = start - windowStart == durationMillis ? currentCount : 0;
+        currentCount = 0;
+        windowStart = start;
+    }
+
+    private double estimate(long now) {
+        long elapsed = now - windowStart;
+        return previousCount * (double) (durationMillis - elapsed) / durationMillis + currentCount;
+    }
+
+    /**
+     * @return When the estimation drops enough to allow a request, or the end of the current window if the
+     * current count alone exceeds.
+     */
+    private long allowedAt(long now) {
+        long windowEnd = windowStart + durationMillis;
+        if (currentCount + 1 > count || previousCount == 0) {
+            return windowEnd;
+        }
+
+        long elapsed = (long) Math.ceil(durationMillis - (count - currentCount - 1) * (double) durationMillis / previousCount);
+        return Math.min(Math.max(windowStart + elapsed, now), windowEnd);
+    }
+
+    @Override
+    boolean isExtendable() {
+        return true;
+    }
+
+    @Override
+    synchronized boolean retire(long now) {
+        retired = retired || isExpired(now);
+        return retired;
+    }
+
+    @Override
+    byte getType() {
+        return TYPE;
+    }
+
+    @Override
+    synchronized void writeState(ByteBuffer buffer) {
+        buffer.putLong(durationMillis).putInt(count).putLong(windowStart).putInt(previousCount).putInt(currentCount);
+    }
+
+    static SlidingWindowEntry readState(ByteBuffer buffer) {
+        return new SlidingWindowEntry(buffer.getLong(), buffer.getInt(), buffer.getLong(), buffer.getInt(), buffer.getInt());
+    }
+
+    private static long windowStartOf(long now, long durationMillis) {
+        return durationMillis > 0 ? now - Math.floorMod(now, durationMillis) : now;
+    }
+}
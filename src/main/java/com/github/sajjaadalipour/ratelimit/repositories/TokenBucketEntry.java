@@ -0,0 +1,130 @@
+package com.github.sajjaadalipour.ratelimit.repositories;
+
+import com.github.sajjaadalipour.ratelimit.RateDecision;
+import com.github.sajjaadalipour.ratelimit.conf.properties.RateLimitAlgorithm;
+
+import java.nio.ByteBuffer;
+
+import static com.github.sajjaadalipour.ratelimit.Rate.RATE_EXCEED_STATE;
+
+/**
+ * The state of a key limited by the token bucket algorithm: the bucket holds up to the count of tokens,
+ * it is refilled by one token per duration / count and each request takes a token.
+ * <p>
+ * The tokens and the last refill time change together, so they are guarded by the monitor of the entry,
+ * which is only contended by the requests of the same key.
+ *
+ * @author Sajjad Alipour
+ */
+final class TokenBucketEntry extends RateEntry {
+
+    static final byte TYPE = 2;
+
+    static final int STATE_SIZE = 4 + 8 + 4 + 8;
+
+    /**
+     * The max number of tokens of the bucket.
+     */
+    private final int capacity;
+
+    /**
+     * The time to refill a token in microseconds.
+     */
+    private final long intervalMicros;
+
+    private int tokens;
+
+    /**
+     * The time of the last refilled token in epoch microseconds, the time of a partially refilled token is kept
+     * by not moving it forward more than the whole tokens.
+     */
+    private long refilledAt;
+
+    private boolean retired;
+
+    TokenBucketEntry(long now, long durationMillis, int count) {
+        this(count, intervalMicros(durationMillis, count), count, now * 1000);
+    }
+
+    private TokenBucketEntry(int capacity, long intervalMicros, int tokens, long refilledAt) {
+        this.capacity = capacity;
+        this.intervalMicros = intervalMicros;
+        this.tokens = tokens;
+        this.refilledAt = refilledAt;
+    }
+
+    /**
+     * Once the bucket is full again, the entry is just like a fresh one.
+     */
+    @Override
+    synchronized long getExpiration() {
+        return ceilMillis(refilledAt + (capacity - tokens) * intervalMicros);
+    }
+
+    @Override
+    synchronized boolean isUsable(RateLimitAlgorithm algorithm, long now) {
+        return algorithm == RateLimitAlgorithm.TOKEN_BUCKET && !retired;
+    }
+
+    @Override
+    synchronized long consume(long now) {
+        if (retired) {
+            return RETRY;
+        }
+
+        refill(now * 1000);
+        if (tokens == 0) {
+            return RateDecision.of(RATE_EXCEED_STATE, ceilMillis(refilledAt + intervalMicros));
+        }
+
+        tokens--;
+        return RateDecision.of(tokens, ceilMillis(refilledAt + (capacity - tokens) * intervalMicros));
+    }
+
+    @Override
+    synchronized void refund(long now) {
+        if (!retired && tokens < capacity) {
+            tokens++;
+        }
+    }
+
+    private void refill(long nowMicros) {
+        if (nowMicros <= refilledAt) {
+            return;
+        }
+
+        long added = (nowMicros - refilledAt) / intervalMicros;
+        if (tokens + added >= capacity) {
+            tokens = capacity;
+            refilledAt = nowMicros;
+        } else if (added > 0) {
+            tokens += (int) added;
+            refilledAt += added * intervalMicros;
+        }
+    }
+
+    @Override
+    boolean isExtendable() {
+        return true;
+    }
+
+    @Override
+    synchronized boolean retire(long now) {
+        retired = retired || isExpired(now);
+        return retired;
+    }
+
+    @Override
+    byte getType() {
+        return TYPE;
+    }
+
+    @Override
+    synchronized void writeState(ByteBuffer buffer) {
+        buffer.putInt(capacity).putLong(intervalMicros).putInt(tokens).putLong(refilledAt);
+    }
+
+    static TokenBucketEntry readState(ByteBuffer buffer) {
+        return new TokenBucketEntry(buffer.getInt(), buffer.getLong(), buffer.getInt(), buffer.getLong());
+    }
+}
@@ -0,0 +1,188 @@
+package com.github.sajjaadalipour.ratelimit.repositories.redis;
+
+import com.github.sajjaadalipour.ratelimit.RateDecision;
+import com.github.sajjaadalipour.ratelimit.RatePolicy;
+import com.github.sajjaadalipour.ratelimit.clock.RateClock;
+import com.github.sajjaadalipour.ratelimit.conf.properties.RateLimitProperties.Policy;
+import com.github.sajjaadalipour.ratelimit.conf.properties.RateLimitRedisLayout;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The {@link RateLimitRedisLayout#EPOCH} layout, which keeps each window of a fixed window key by its own counter
+ * named by the index of the window since the epoch, e.g. {@code {rate-limit:test}:29456012} for a window of a minute,
+ * so a request is a single {@code INCRBY}. The index of the window is taken by the time of the Redis server, so
+ * the windows of all the nodes are the same. The counters of a key without a hash tag are named by the key wrapped in
+ * a hash tag, so they are on the slot of the key on a Redis Cluster. The policies with a block are kept by strings.
+ *
+ * @author Sajjad Alipour
+ */
+final class EpochFixedWindowLayout extends FixedWindowLayout {
+
+    /**
+     * Consumes a request of a key which is limited by the fixed window, by the counter of the current window of
+     * the key.
+     */
+    private static final RedisScript<List<Object>> FIXED_WINDOW_EPOCH_SCRIPT = ScriptCall.scriptOf("fixed_window_epoch.lua");
+
+    /**
+     * Consumes a request of several keys which are limited by the fixed window together, by the counters of
+     * the current windows of the keys.
+     */
+    private static final RedisScript<List<Object>> FIXED_WINDOWS_EPOCH_SCRIPT = ScriptCall.scriptOf("fixed_windows_epoch.lua");
+
+    /**
+     * The window lengths in milliseconds of the counters consumed by this layout, which are only a few, one per
+     * distinct policy duration, so they are replaced by a copy when a new one is seen.
+     */
+    private volatile long[] epochWindows = new long[0];
+
+    EpochFixedWindowLayout(String redisKeyGroup, RateClock clock) {
+        super(redisKeyGroup, clock);
+    }
+
+    /**
+     * The call of the fixed window script of the counters of the policy`s key, which consumes the counter of
+     * the current window.
+     */
+    @Override
+    ScriptCall callOf(RatePolicy ratePolicy) {
+        if (ratePolicy.getBlockDuration() != null) {
+            return super.callOf(ratePolicy);
+        }
+
+        return new ScriptCall(
+                FIXED_WINDOW_EPOCH_SCRIPT,
+                Collections.singletonList(counterPrefixOf(ratePolicy.getKey())),
+                new String[]{
+                        String.valueOf(ratePolicy.getCount()),
+                        String.valueOf(epochWindowOf(ratePolicy.getDuration())),
+                        "1"},
+                true);
+    }
+
+    /**
+     * The call of the fixed windows script of the counters of the given keys, which consumes the counters of
+     * the current windows. The policies with a block are only consumed together with each other.
+     */
+    @Override
+    ScriptCall callOf(List<String> keys, List<Policy> policies) {
+        if (policies.get(0).getBlock() != null) {
+            return super.callOf(keys, policies);
+        }
+
+        final List<String> redisKeys = new ArrayList<>(keys.size());
+        final String[] args = new String[policies.size() * 2];
+        for (int i = 0; i < policies.size(); i++) {
+            final Policy policy = policies.get(i);
+            redisKeys.add(counterPrefixOf(keys.get(i)));
+            args[i * 2] = String.valueOf(policy.getCount());
+            args[i * 2 + 1] = String.valueOf(epochWindowOf(policy.getDuration()));
+        }
+        return new ScriptCall(FIXED_WINDOWS_EPOCH_SCRIPT, redisKeys, args, false);
+    }
+
+    /**
+     * The call of the refund script of the counter of the window which the request is consumed from, which is
+     * derived from the reset time of the decision.
+     */
+    @Override
+    ScriptCall refundCallOf(String key, Policy policy, long decision) {
+        if (policy.getBlock() != null) {
+            return super.refundCallOf(key, policy, decision);
+        }
+
+        final long window = epochWindowOf(policy.getDuration());
+        return new ScriptCall(
+                REFUND_SCRIPT,
+                Collections.singletonList(epochKeyOf(key, RateDecision.resetMillis(decision) / window - 1)),
+                new String[]{"FIXED_WINDOW_EPOCH"},
+                false);
+    }
+
+    /**
+     * @return Whether some of the policies are kept by the epoch counters and the others are not.
+     */
+    @Override
+    boolean isSplit(List<String> keys, List<Policy> policies) {
+        for (int i = 1; i < policies.size(); i++) {
+            if ((policies.get(i).getBlock() == null) != (policies.get(0).getBlock() == null)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Deletes the string of the given key and its live counters, which are derived from the {@link #epochWindows}.
+     * A counter outlives its window by a second and the clock of this node may lead or lag the time of Redis, so
+     * the counters of the previous and the next windows are deleted besides the current one.
+     */
+    @Override
+    void reset(StringRedisTemplate stringRedisTemplate, String key) {
+        super.reset(stringRedisTemplate, key);
+
+        final long[] windows = epochWindows;
+        if (windows.length == 0) {
+            return;
+        }
+
+        final long now = clock.millis();
+        final List<String> epochKeys = new ArrayList<>(windows.length * 3);
+        for (long window : windows) {
+            final long index = now / window;
+            for (long i = index - 1; i <= index + 1; i++) {
+                epochKeys.add(epochKeyOf(key, i));
+            }
+        }
+        stringRedisTemplate.delete(epochKeys);
+    }
+
+    /**
+     * @return The window length in milliseconds of the given duration, which is recorded in the {@link #epochWindows}
+     * if it is new.
+     */
+    private long epochWindowOf(Duration duration) {
+        final long window = Math.max(duration.toMillis(), 1);
+        for (long epochWindow : epochWindows) {
+            if (epochWindow == window) {
+                return window;
+            }
+        }
+
+        synchronized (this) {
+            final long[] windows = epochWindows;
+            for (long epochWindow : windows) {
+                if (epochWindow == window) {
+                    return window;
+                }
+            }
+            final long[] copy = Arrays.copyOf(windows, windows.length + 1);
+            copy[windows.length] = window;
+            epochWindows = copy;
+        }
+        return window;
+    }
+
+    /**
+     * @return The counter of the given window of the given key.
+     */
+    private String epochKeyOf(String key, long index) {
+        return counterPrefixOf(key) + ":" + index;
+    }
+
+    /**
+     * @return The prefix of the counters of the given key, which is the Redis key if it has a hash tag, otherwise
+     * the Redis key wrapped in a hash tag, so the counters are on the slot of the prefix.
+     */
+    private String counterPrefixOf(String key) {
+        final String redisKey = redisKeyOf(key);
+        return HashFixedWindowLayout.tagOf(redisKey) != null ? redisKey : "{" + redisKey + "}";
+    }
+}
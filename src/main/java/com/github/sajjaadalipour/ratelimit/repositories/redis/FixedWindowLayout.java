@@ -0,0 +1,149 @@
+package com.github.sajjaadalipour.ratelimit.repositories.redis;
+
+import com.github.sajjaadalipour.ratelimit.RatePolicy;
+import com.github.sajjaadalipour.ratelimit.clock.RateClock;
+import com.github.sajjaadalipour.ratelimit.conf.properties.RateLimitAlgorithm;
+import com.github.sajjaadalipour.ratelimit.conf.properties.RateLimitProperties.Policy;
+import com.github.sajjaadalipour.ratelimit.conf.properties.RateLimitRedisLayout;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Builds the script calls of the {@link RateLimitAlgorithm#FIXED_WINDOW} keys of a {@link RedisRateCache} by
+ * the {@link RateLimitRedisLayout#STRING} layout, a string per key. The other layouts extend it and fall back to it
+ * for the keys they do not keep.
+ *
+ * @author Sajjad Alipour
+ */
+class FixedWindowLayout {
+
+    /**
+     * Consumes a request of a key which is limited by {@link RateLimitAlgorithm#FIXED_WINDOW}.
+     */
+    static final RedisScript<List<Object>> FIXED_WINDOW_SCRIPT = ScriptCall.scriptOf("fixed_window.lua");
+
+    /**
+     * Consumes a request of several keys which are limited by {@link RateLimitAlgorithm#FIXED_WINDOW} together.
+     */
+    private static final RedisScript<List<Object>> FIXED_WINDOWS_SCRIPT = ScriptCall.scriptOf("fixed_windows.lua");
+
+    /**
+     * Gives a consumed request back to a key of any algorithm, when another policy of the same request rejects it.
+     */
+    static final RedisScript<List<Object>> REFUND_SCRIPT = ScriptCall.scriptOf("refund.lua");
+
+    final String redisKeyGroup;
+
+    final RateClock clock;
+
+    FixedWindowLayout(String redisKeyGroup, RateClock clock) {
+        this.redisKeyGroup = redisKeyGroup;
+        this.clock = clock;
+    }
+
+    /**
+     * @return The fixed window layout of the given {@link RateLimitRedisLayout}.
+     */
+    static FixedWindowLayout of(RateLimitRedisLayout layout, String redisKeyGroup, RateClock clock) {
+        switch (layout) {
+            case HASH:
+                return new HashFixedWindowLayout(redisKeyGroup, clock);
+            case EPOCH:
+                return new EpochFixedWindowLayout(redisKeyGroup, clock);
+            default:
+                return new FixedWindowLayout(redisKeyGroup, clock);
+        }
+    }
+
+    /**
+     * The call of the fixed window script, which decides by the time of the Redis server and keeps the expiration of
+     * the window, so the window does not slide by the requests and the decision is free of the clock skew of
+     * the nodes.
+     *
+     * @param ratePolicy Encapsulates the rate limit policy details.
+     */
+    ScriptCall callOf(RatePolicy ratePolicy) {
+        final Duration blockDuration = ratePolicy.getBlockDuration();
+        return new ScriptCall(
+                FIXED_WINDOW_SCRIPT,
+                Collections.singletonList(redisKeyOf(ratePolicy.getKey())),
+                new String[]{
+                        String.valueOf(ratePolicy.getCount()),
+                        String.valueOf(ratePolicy.getDuration().toMillis()),
+                        String.valueOf(blockDuration != null ? blockDuration.toMillis() : -1),
+                        "1"},
+                true);
+    }
+
+    /**
+     * The call of the script which consumes the given keys together, it returns the index of the first rejecting
+     * policy, or {@code -1}, followed by the remaining value and the reset time of the rejecting policy, or of each
+     * policy if none of them rejects.
+     */
+    ScriptCall callOf(List<String> keys, List<Policy> policies) {
+        final String[] args = new String[policies.size() * 3];
+        for (int i = 0; i < policies.size(); i++) {
+            final Policy policy = policies.get(i);
+            args[i * 3] = String.valueOf(policy.getCount());
+            args[i * 3 + 1] = String.valueOf(policy.getDuration().toMillis());
+            args[i * 3 + 2] = String.valueOf(policy.getBlock() != null ? policy.getBlock().getDuration().toMillis() : -1);
+        }
+        return callOf(keys, args);
+    }
+
+    /**
+     * The call of the fixed windows script of the given keys.
+     *
+     * @param args The count, the window and the block duration in milliseconds of each key.
+     */
+    ScriptCall callOf(List<String> keys, String[] args) {
+        final List<String> redisKeys = new ArrayList<>(keys.size());
+        for (int i = 0; i < keys.size(); i++) {
+            redisKeys.add(redisKeyOf(keys.get(i)));
+        }
+        return new ScriptCall(FIXED_WINDOWS_SCRIPT, redisKeys, args, false);
+    }
+
+    /**
+     * The call of the refund script which gives a request back to the given key, which has allowed it by the given
+     * decision.
+     */
+    ScriptCall refundCallOf(String key, Policy policy, long decision) {
+        return new ScriptCall(
+                REFUND_SCRIPT,
+                Collections.singletonList(redisKeyOf(key)),
+                new String[]{"FIXED_WINDOW", String.valueOf(policy.getCount())},
+                false);
+    }
+
+    /**
+     * @return The index of the remaining value in the result of the given call, which is preceded by the index of
+     * the rejecting policy in the result of the scripts of several keys.
+     */
+    int offsetOf(ScriptCall call) {
+        return 0;
+    }
+
+    /**
+     * @return Whether the given keys are kept by different layouts, so they can not be consumed by a single script.
+     */
+    boolean isSplit(List<String> keys, List<Policy> policies) {
+        return false;
+    }
+
+    /**
+     * Deletes the state of the given key.
+     */
+    void reset(StringRedisTemplate stringRedisTemplate, String key) {
+        stringRedisTemplate.delete(redisKeyOf(key));
+    }
+
+    String redisKeyOf(String key) {
+        return redisKeyGroup + ":" + key;
+    }
+}
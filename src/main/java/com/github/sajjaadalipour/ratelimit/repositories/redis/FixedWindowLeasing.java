@@ -0,0 +1,93 @@
+package com.github.sajjaadalipour.ratelimit.repositories.redis;
+
+import com.github.sajjaadalipour.ratelimit.RateDecision;
+import com.github.sajjaadalipour.ratelimit.RatePolicy;
+import com.github.sajjaadalipour.ratelimit.clock.RateClock;
+import com.github.sajjaadalipour.ratelimit.conf.properties.RateLimitAlgorithm;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.CompletionStage;
+
+/**
+ * Consumes the {@link RateLimitAlgorithm#FIXED_WINDOW} requests of a {@link RedisRateCache} from the {@link QuotaLeases}
+ * of this node, the fixed window script is only executed to take a new lease, which may grant fewer tokens than asked.
+ *
+ * @author Sajjad Alipour
+ */
+final class FixedWindowLeasing {
+
+    private final QuotaLeases leases;
+
+    /**
+     * Builds the fixed window script calls which take the leases, it is always the string layout.
+     */
+    private final FixedWindowLayout layout;
+
+    private final ScriptCallExecutor executor;
+
+    private final RateClock clock;
+
+    /**
+     * @param leaseDuration The duration a quota lease is expected to last by the rate of its key.
+     * @param leaseMaxShare The max share of a policy count which this node may lease at once.
+     */
+    FixedWindowLeasing(Duration leaseDuration,
+                       double leaseMaxShare,
+                       FixedWindowLayout layout,
+                       ScriptCallExecutor executor,
+                       RateClock clock) {
+        this.leases = new QuotaLeases(leaseDuration.toMillis(), leaseMaxShare);
+        this.layout = layout;
+        this.executor = executor;
+        this.clock = clock;
+    }
+
+    /**
+     * Consumes the request of the policy`s key from the lease of this node.
+     *
+     * @return The decision of the request, see {@link RateDecision}.
+     */
+    long consume(RatePolicy ratePolicy) {
+        final ScriptCall call = layout.callOf(ratePolicy);
+        return leases.consume(call.keys.get(0), ratePolicy.getCount(), clock.millis(),
+                size -> executor.execute(leaseCallOf(call, size)));
+    }
+
+    /**
+     * Consumes the request of the policy`s key from the lease of this node like {@link #consume}, but without
+     * blocking the caller while a new lease is taken.
+     *
+     * @return A stage which is completed by the decision of the request, see {@link RateDecision}.
+     */
+    CompletionStage<Long> consumeAsync(RatePolicy ratePolicy) {
+        final ScriptCall call = layout.callOf(ratePolicy);
+        return leases.consumeAsync(call.keys.get(0), ratePolicy.getCount(), clock.millis(),
+                size -> executor.executeAsync(leaseCallOf(call, size)));
+    }
+
+    /**
+     * @return The call of the fixed window script which leases up to the given number of tokens of the given call.
+     */
+    private static ScriptCall leaseCallOf(ScriptCall call, int size) {
+        String[] args = Arrays.copyOf(call.args, 5);
+        args[3] = String.valueOf(size);
+        args[4] = "1";
+        return new ScriptCall(FixedWindowLayout.FIXED_WINDOW_SCRIPT, call.keys, args, false);
+    }
+
+    /**
+     * Gives a consumed token of the given key back to the lease of this node, e.g. when another policy of the same
+     * request rejects it.
+     */
+    void refund(String key) {
+        leases.refund(layout.redisKeyOf(key), clock.millis());
+    }
+
+    /**
+     * Drops the lease of the given key on this node.
+     */
+    void invalidate(String key) {
+        leases.invalidate(layout.redisKeyOf(key));
+    }
+}
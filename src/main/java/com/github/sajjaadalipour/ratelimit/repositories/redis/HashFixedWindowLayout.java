@@ -0,0 +1,167 @@
+package com.github.sajjaadalipour.ratelimit.repositories.redis;
+
+import com.github.sajjaadalipour.ratelimit.RateDecision;
+import com.github.sajjaadalipour.ratelimit.RatePolicy;
+import com.github.sajjaadalipour.ratelimit.clock.RateClock;
+import com.github.sajjaadalipour.ratelimit.conf.properties.RateLimitProperties.Policy;
+import com.github.sajjaadalipour.ratelimit.conf.properties.RateLimitRedisLayout;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The {@link RateLimitRedisLayout#HASH} layout, which keeps the fixed window keys of an identity, the content of
+ * their hash tag, as the fields of a single Redis hash, e.g. {@code /test_GET_PT1H_3_{0.0.0.0}} is the field
+ * {@code /test_GET_PT1H_3_} of the hash {@code rate-limit:{0.0.0.0}}. The keys without a hash tag are kept by strings.
+ *
+ * @author Sajjad Alipour
+ */
+final class HashFixedWindowLayout extends FixedWindowLayout {
+
+    /**
+     * Consumes a request of several keys of an identity which are limited by the fixed window together, as the fields
+     * of the hash of the identity.
+     */
+    private static final RedisScript<List<Object>> FIXED_WINDOWS_HASH_SCRIPT = ScriptCall.scriptOf("fixed_windows_hash.lua");
+
+    HashFixedWindowLayout(String redisKeyGroup, RateClock clock) {
+        super(redisKeyGroup, clock);
+    }
+
+    @Override
+    ScriptCall callOf(RatePolicy ratePolicy) {
+        if (tagOf(ratePolicy.getKey()) == null) {
+            return super.callOf(ratePolicy);
+        }
+
+        final Duration blockDuration = ratePolicy.getBlockDuration();
+        return callOf(Collections.singletonList(ratePolicy.getKey()), new String[]{
+                String.valueOf(ratePolicy.getCount()),
+                String.valueOf(ratePolicy.getDuration().toMillis()),
+                String.valueOf(blockDuration != null ? blockDuration.toMillis() : -1)});
+    }
+
+    /**
+     * The call of the script of the identity hash if the keys are of the same identity, otherwise of the fixed
+     * windows script. Both of them return the same result.
+     */
+    @Override
+    ScriptCall callOf(List<String> keys, String[] args) {
+        final String identity = identityOf(keys);
+        if (identity == null) {
+            return super.callOf(keys, args);
+        }
+
+        final String[] hashArgs = new String[keys.size() * 4];
+        for (int i = 0; i < keys.size(); i++) {
+            hashArgs[i * 4] = fieldOf(keys.get(i));
+            System.arraycopy(args, i * 3, hashArgs, i * 4 + 1, 3);
+        }
+        return new ScriptCall(FIXED_WINDOWS_HASH_SCRIPT, Collections.singletonList(hashKeyOf(identity)), hashArgs, false);
+    }
+
+    /**
+     * The call of the refund script of the field of the given key, which only gives the request back to the window
+     * it is consumed from, by its reset time.
+     */
+    @Override
+    ScriptCall refundCallOf(String key, Policy policy, long decision) {
+        final String identity = tagOf(key);
+        if (identity == null) {
+            return super.refundCallOf(key, policy, decision);
+        }
+
+        return new ScriptCall(
+                REFUND_SCRIPT,
+                Collections.singletonList(hashKeyOf(identity)),
+                new String[]{
+                        "FIXED_WINDOW_HASH",
+                        String.valueOf(policy.getCount()),
+                        fieldOf(key),
+                        String.valueOf(RateDecision.resetMillis(decision))},
+                false);
+    }
+
+    @Override
+    int offsetOf(ScriptCall call) {
+        return call.script == FIXED_WINDOWS_HASH_SCRIPT ? 1 : 0;
+    }
+
+    /**
+     * @return Whether some of the given keys are kept by the hashes of their identity and the others are not, or by
+     * the hashes of different identities.
+     */
+    @Override
+    boolean isSplit(List<String> keys, List<Policy> policies) {
+        if (identityOf(keys) != null) {
+            return false;
+        }
+
+        for (int i = 0; i < keys.size(); i++) {
+            if (tagOf(keys.get(i)) != null) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    void reset(StringRedisTemplate stringRedisTemplate, String key) {
+        final String identity = tagOf(key);
+        if (identity == null) {
+            super.reset(stringRedisTemplate, key);
+            return;
+        }
+
+        stringRedisTemplate.opsForHash().delete(hashKeyOf(identity), fieldOf(key));
+    }
+
+    /**
+     * @return The hash tag which all the given keys share, or {@code null} if they do not.
+     */
+    private static String identityOf(List<String> keys) {
+        final String identity = tagOf(keys.get(0));
+        if (identity == null) {
+            return null;
+        }
+
+        for (int i = 1; i < keys.size(); i++) {
+            if (!identity.equals(tagOf(keys.get(i)))) {
+                return null;
+            }
+        }
+        return identity;
+    }
+
+    /**
+     * @return The content of the hash tag of the given key by the rules of Redis Cluster, or {@code null} if it has
+     * no hash tag.
+     */
+    static String tagOf(String key) {
+        final int start = key.indexOf('{');
+        if (start < 0) {
+            return null;
+        }
+
+        final int end = key.indexOf('}', start + 1);
+        return end > start + 1 ? key.substring(start + 1, end) : null;
+    }
+
+    /**
+     * @return The field of the given key in the hash of its identity, which is the key without its hash tag.
+     */
+    private static String fieldOf(String key) {
+        final int start = key.indexOf('{');
+        return key.substring(0, start) + key.substring(key.indexOf('}', start + 1) + 1);
+    }
+
+    /**
+     * @return The hash of the given identity, whose hash tag keeps it on the slot of the keys of the identity.
+     */
+    private String hashKeyOf(String identity) {
+        return redisKeyOf("{" + identity + "}");
+    }
+}
@@ -0,0 +1,67 @@
+package com.github.sajjaadalipour.ratelimit.repositories.redis;
+
+import io.lettuce.core.RedisURI;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.data.redis.connection.RedisPassword;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceClientConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The Lettuce connections of the standalone Redis instances which {@link ShardedRedisRateCache} spreads the keys
+ * across, one per Redis URI, e.g. {@code redis://:password@host:6379/0} or {@code rediss://host:6379}. The connections
+ * are closed when the bean is destroyed.
+ *
+ * @author Sajjad Alipour
+ */
+public class LettuceRedisShards implements DisposableBean {
+
+    private final List<LettuceConnectionFactory> connectionFactories = new ArrayList<>();
+
+    private final List<StringRedisTemplate> templates = new ArrayList<>();
+
+    public LettuceRedisShards(List<String> uris) {
+        for (String uri : uris) {
+            LettuceConnectionFactory connectionFactory = connectionFactoryOf(RedisURI.create(uri));
+            connectionFactory.afterPropertiesSet();
+            connectionFactories.add(connectionFactory);
+            templates.add(new StringRedisTemplate(connectionFactory));
+        }
+    }
+
+    /**
+     * @return The templates of the shards by the order of their URIs.
+     */
+    public List<StringRedisTemplate> getTemplates() {
+        return Collections.unmodifiableList(templates);
+    }
+
+    public boolean isEmpty() {
+        return templates.isEmpty();
+    }
+
+    @Override
+    public void destroy() {
+        connectionFactories.forEach(LettuceConnectionFactory::destroy);
+    }
+
+    private static LettuceConnectionFactory connectionFactoryOf(RedisURI uri) {
+        RedisStandaloneConfiguration configuration = new RedisStandaloneConfiguration(uri.getHost(), uri.getPort());
+        configuration.setDatabase(uri.getDatabase());
+        if (uri.getPassword() != null) {
+            configuration.setPassword(RedisPassword.of(uri.getPassword()));
+        }
+
+        LettuceClientConfiguration.LettuceClientConfigurationBuilder clientConfiguration = LettuceClientConfiguration.builder()
+                .commandTimeout(uri.getTimeout());
+        if (uri.isSsl()) {
+            clientConfiguration.useSsl();
+        }
+        return new LettuceConnectionFactory(configuration, clientConfiguration.build());
+    }
+}
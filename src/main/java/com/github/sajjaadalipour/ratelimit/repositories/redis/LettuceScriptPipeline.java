@@ -0,0 +1,88 @@
+package com.github.sajjaadalipour.ratelimit.repositories.redis;
+
+import io.lettuce.core.RedisFuture;
+import io.lettuce.core.ScriptOutputType;
+import io.lettuce.core.api.async.RedisScriptingAsyncCommands;
+import org.springframework.data.redis.RedisSystemException;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.script.RedisScript;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Sends the script calls of a batch by the asynchronous commands of a Lettuce connection, which writes them without
+ * waiting for the replies, and collects the reply of each call on its own. The pipelines of Spring Data Redis fail
+ * as a whole on the first error reply of Lettuce, which hides whether the other calls are executed.
+ * <p>
+ * This class references the Lettuce types, so it should only be loaded if Lettuce is on the classpath.
+ *
+ * @author Sajjad Alipour
+ */
+final class LettuceScriptPipeline {
+
+    private static final long DEFAULT_TIMEOUT_MILLIS = 60_000;
+
+    private LettuceScriptPipeline() {
+    }
+
+    /**
+     * @return Whether the given native connection of a Redis connection is a Lettuce one.
+     */
+    static boolean supports(Object nativeConnection) {
+        return nativeConnection instanceof RedisScriptingAsyncCommands;
+    }
+
+    /**
+     * Executes the given calls and waits for all of their replies.
+     *
+     * @param byBody Whether to send the full script bodies instead of their SHA1 digests.
+     * @return The reply of each call by the order of the calls, the list of values the script returns or the
+     * {@link RuntimeException} of its error reply.
+     */
+    @SuppressWarnings("unchecked")
+    static List<Object> execute(Object nativeConnection, RedisConnectionFactory connectionFactory,
+                                List<RedisScriptBatcher.Eval> evals, boolean byBody) {
+        RedisScriptingAsyncCommands<byte[], byte[]> commands = (RedisScriptingAsyncCommands<byte[], byte[]>) nativeConnection;
+        List<RedisFuture<List<Object>>> futures = new ArrayList<>(evals.size());
+        for (RedisScriptBatcher.Eval eval : evals) {
+            byte[][] keys = Arrays.copyOf(eval.keysAndArgs, eval.numKeys);
+            byte[][] args = Arrays.copyOfRange(eval.keysAndArgs, eval.numKeys, eval.keysAndArgs.length);
+            RedisScript<List<Object>> script = eval.script;
+            futures.add(byBody ?
+                    commands.eval(script.getScriptAsString(), ScriptOutputType.MULTI, keys, args) :
+                    commands.evalsha(script.getSha1(), ScriptOutputType.MULTI, keys, args));
+        }
+
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillisOf(connectionFactory));
+        List<Object> results = new ArrayList<>(futures.size());
+        for (RedisFuture<List<Object>> future : futures) {
+            results.add(await(future, deadline));
+        }
+        return results;
+    }
+
+    private static Object await(RedisFuture<List<Object>> future, long deadline) {
+        try {
+            return future.get(Math.max(deadline - System.nanoTime(), 0), TimeUnit.NANOSECONDS);
+        } catch (ExecutionException e) {
+            return new RedisSystemException(e.getCause().getMessage(), e.getCause());
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            return new RedisSystemException("Redis command timed out", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return new RedisSystemException("Interrupted while waiting for Redis", e);
+        }
+    }
+
+    private static long timeoutMillisOf(RedisConnectionFactory connectionFactory) {
+        return connectionFactory instanceof LettuceConnectionFactory ?
+                ((LettuceConnectionFactory) connectionFactory).getTimeout() : DEFAULT_TIMEOUT_MILLIS;
+    }
+}
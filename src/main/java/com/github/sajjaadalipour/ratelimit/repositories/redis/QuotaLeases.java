@@ -0,0 +1,352 @@
+package com.github.sajjaadalipour.ratelimit.repositories.redis;
+
+import com.github.sajjaadalipour.ratelimit.RateDecision;
+import com.github.sajjaadalipour.ratelimit.repositories.ExpiryQueue;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The slices of the fixed window quotas which this node has leased from Redis, so the requests of a hot key are
+ * consumed by a local atomic counter and only a lease, instead of every request, costs a round trip.
+ * <p>
+ * A lease is only valid until the end of the window it is taken from, the unused tokens just expire by it. The size
+ * of the next lease of a key is the number of requests the key is expected to receive within the lease duration by
+ * the rate of its previous lease, bounded by the max share of the policy count. So a cold key leases one token per
+ * request, which is the same as no leasing, and a hot key takes up to the max share in a single round trip.
+ * <p>
+ * The leased tokens are not available to the other nodes, so a node may keep admitting the requests of a key by its
+ * lease while the key is exceeded or blocked in Redis. Such an over-admission is bounded by the max share of each
+ * node.
+ * <p>
+ * The leased keys are kept in the order of the ends of their leases by an {@link ExpiryQueue}, whose due buckets are
+ * purged on every renewal, so the leases of the ended windows are dropped whether or not there are {@link #MAX_KEYS}.
+ *
+ * @author Sajjad Alipour
+ */
+final class QuotaLeases {
+
+    /**
+     * The number of the keys which are leased at a time, when there are more keys the lease which ends first is
+     * dropped.
+     */
+    static final int MAX_KEYS = 10_000;
+
+    /**
+     * The length of a bucket of the {@link #expiryQueue} in milliseconds.
+     */
+    private static final long EXPIRY_TICK_MILLIS = 1_000;
+
+    /**
+     * Takes a lease from Redis.
+     */
+    @FunctionalInterface
+    interface Leaser {
+
+        /**
+         * @param size The number of tokens to lease, Redis may grant fewer if the remaining quota is less.
+         * @return The remaining value after the lease, or {@code -1} when exceeded and {@code -2} when blocked,
+         * the reset time in epoch milliseconds and the number of granted tokens.
+         */
+        List<?> lease(int size);
+    }
+
+    /**
+     * Takes a lease from Redis without blocking the caller.
+     */
+    @FunctionalInterface
+    interface AsyncLeaser {
+
+        /**
+         * @param size The number of tokens to lease, Redis may grant fewer if the remaining quota is less.
+         * @return A stage which is completed by the same result as {@link Leaser#lease(int)}.
+         */
+        CompletionStage<List<?>> lease(int size);
+    }
+
+    private final ConcurrentHashMap<String, Holder> holders = new ConcurrentHashMap<>();
+
+    /**
+     * Keeps the leased keys in the order of the ends of their leases.
+     */
+    private final ExpiryQueue expiryQueue = new ExpiryQueue(EXPIRY_TICK_MILLIS);
+
+    /**
+     * The duration a lease is expected to last by the rate of its key, in milliseconds.
+     */
+    private final long durationMillis;
+
+    /**
+     * The max share of a policy count which is leased at once.
+     */
+    private final double maxShare;
+
+    QuotaLeases(long durationMillis, double maxShare) {
+        this.durationMillis = Math.max(durationMillis, 1);
+        this.maxShare = maxShare;
+    }
+
+    /**
+     * Consumes a token of the given key from its lease, or takes a new lease if the lease is used up or its window
+     * is ended.
+     *
+     * @param count The count of the policy, bounds the lease size by its max share.
+     * @param now   The current time in epoch milliseconds.
+     * @return The decision encoded by {@link RateDecision}.
+     */
+    long consume(String key, int count, long now, Leaser leaser) {
+        Holder holder = holderOf(key, now);
+        long decision = holder.take(now);
+        if (decision != RejectedKeyCache.NONE) {
+            return decision;
+        }
+
+        synchronized (holder) {
+            decision = holder.take(now);
+            if (decision != RejectedKeyCache.NONE) {
+                return decision;
+            }
+            long endMillis = now;
+            try {
+                decision = holder.renew(leaser.lease(nextSize(holder.lease, count, now)), now);
+                endMillis = RateDecision.resetMillis(decision);
+                return decision;
+            } finally {
+                expiryQueue.schedule(key, endMillis);
+                purge(now);
+            }
+        }
+    }
+
+    /**
+     * Consumes a token of the given key like {@link #consume}, but without blocking the caller while a new lease is
+     * taken. A key only takes a single lease at a time, the requests which find the lease of their key being renewed
+     * wait for the new lease instead of taking their own.
+     *
+     * @param count The count of the policy, bounds the lease size by its max share.
+     * @param now   The current time in epoch milliseconds.
+     * @return A stage which is completed by the decision encoded by {@link RateDecision}.
+     */
+    CompletionStage<Long> consumeAsync(String key, int count, long now, AsyncLeaser leaser) {
+        Holder holder = holderOf(key, now);
+        long decision = holder.take(now);
+        if (decision != RejectedKeyCache.NONE) {
+            return CompletableFuture.completedFuture(decision);
+        }
+
+        synchronized (holder) {
+            decision = holder.take(now);
+            if (decision != RejectedKeyCache.NONE) {
+                return CompletableFuture.completedFuture(decision);
+            }
+            if (holder.renewal != null) {
+                return holder.renewal.thenCompose(renewed -> consumeAsync(key, count, now, leaser));
+            }
+
+            CompletableFuture<Void> renewal = new CompletableFuture<>();
+            holder.renewal = renewal;
+            CompletionStage<Long> result = leaseAsync(leaser, nextSize(holder.lease, count, now))
+                    .thenApply(leased -> {
+                        synchronized (holder) {
+                            return holder.renew(leased, now);
+                        }
+                    });
+            return result.whenComplete((renewed, error) -> {
+                synchronized (holder) {
+                    holder.renewal = null;
+                    expiryQueue.schedule(key, renewed != null ? RateDecision.resetMillis(renewed) : now);
+                    purge(now);
+                }
+                renewal.complete(null);
+            });
+        }
+    }
+
+    /**
+     * @return The stage of the lease, which is completed exceptionally if the leaser throws.
+     */
+    private static CompletionStage<List<?>> leaseAsync(AsyncLeaser leaser, int size) {
+        try {
+            return leaser.lease(size);
+        } catch (RuntimeException e) {
+            CompletableFuture<List<?>> failed = new CompletableFuture<>();
+            failed.completeExceptionally(e);
+            return failed;
+        }
+    }
+
+    /**
+     * Gives a consumed token back to the current lease of the given key, e.g. when another policy of the same
+     * request rejects it.
+     *
+     * @param now The current time in epoch milliseconds.
+     */
+    void refund(String key, long now) {
+        Holder holder = holders.get(key);
+        Lease lease = holder != null ? holder.lease : null;
+        if (lease != null && lease.resetMillis > now) {
+            lease.tokens.incrementAndGet();
+        }
+    }
+
+    /**
+     * Drops the lease of the given key, its unused tokens are not given back to Redis. The key is left in the
+     * {@link #expiryQueue} until its bucket is due.
+     */
+    void invalidate(String key) {
+        holders.remove(key);
+    }
+
+    /**
+     * @return The number of the keys which hold a lease, including the ended ones which are not purged yet.
+     */
+    int size() {
+        return holders.size();
+    }
+
+    /**
+     * @return The number of the keys scheduled by the {@link #expiryQueue}, including the stale ones.
+     */
+    int scheduled() {
+        return expiryQueue.size();
+    }
+
+    /**
+     * @return The holder of the given key, which is added if the key has none, after dropping the lease which ends
+     * first if there are {@link #MAX_KEYS}.
+     */
+    private Holder holderOf(String key, long now) {
+        Holder holder = holders.get(key);
+        if (holder != null) {
+            return holder;
+        }
+
+        if (holders.size() >= MAX_KEYS) {
+            purge(now);
+            for (String first; holders.size() >= MAX_KEYS && (first = expiryQueue.pollFirst(this::endMillisOf)) != null; ) {
+                holders.remove(first);
+            }
+        }
+        return holders.computeIfAbsent(key, k -> new Holder());
+    }
+
+    /**
+     * Drops the leases of the ended windows whose buckets are due.
+     */
+    private void purge(long now) {
+        expiryQueue.drain(now, it -> holders.computeIfPresent(it, (k, h) -> h.isEnded(now) ? null : h));
+    }
+
+    /**
+     * @return The end of the current lease of the given key, or {@link Long#MIN_VALUE} if it has no lease.
+     */
+    private long endMillisOf(String key) {
+        Holder holder = holders.get(key);
+        Lease lease = holder != null ? holder.lease : null;
+        return lease != null ? lease.resetMillis : Long.MIN_VALUE;
+    }
+
+    /**
+     * Estimates the next lease size by the rate the previous lease of the key has been consumed at.
+     */
+    private int nextSize(Lease previous, int count, long now) {
+        if (previous == null) {
+            return 1;
+        }
+
+        long consumed = previous.granted - Math.max(previous.tokens.get(), 0);
+        long elapsed = Math.max(Math.min(now, previous.resetMillis) - previous.leasedAt, 1);
+        long expected = (long) Math.ceil((double) consumed * durationMillis / elapsed);
+        int maxSize = Math.max((int) (count * maxShare), 1);
+        return (int) Math.max(Math.min(expected, maxSize), 1);
+    }
+
+    private static long decisionOf(List<?> result, int requested) {
+        if (result == null || result.size() < 3) {
+            throw new IllegalStateException("Unexpected result of the rate limit script: " + result);
+        }
+
+        int remaining = ((Number) result.get(0)).intValue();
+        long resetMillis = ((Number) result.get(1)).longValue();
+        long granted = ((Number) result.get(2)).longValue();
+        return RateDecision.of(granted > 0 ? remaining + (int) granted - requested : remaining, resetMillis);
+    }
+
+    private static final class Holder {
+
+        private volatile Lease lease;
+
+        /**
+         * Completed when the lease which is being taken by {@link #consumeAsync} is renewed, it is {@code null} if
+         * no lease is being taken asynchronously. Guarded by the lock of the holder.
+         */
+        private CompletableFuture<Void> renewal;
+
+        /**
+         * Takes a token of the current lease.
+         *
+         * @return The decision if a token is taken, otherwise {@link RejectedKeyCache#NONE}.
+         */
+        long take(long now) {
+            Lease current = lease;
+            if (current == null || current.resetMillis <= now) {
+                return RejectedKeyCache.NONE;
+            }
+
+            for (int tokens = current.tokens.get(); tokens > 0; tokens = current.tokens.get()) {
+                if (current.tokens.compareAndSet(tokens, tokens - 1)) {
+                    return RateDecision.of(current.remaining + tokens - 1, current.resetMillis);
+                }
+            }
+            return RejectedKeyCache.NONE;
+        }
+
+        /**
+         * Replaces the lease by the given result of a new lease and takes its first token for the current request,
+         * should be called while holding the lock of the holder.
+         */
+        long renew(List<?> result, long now) {
+            long decision = decisionOf(result, 1);
+            int granted = ((Number) result.get(2)).intValue();
+            lease = granted > 0 ?
+                    new Lease(RateDecision.resetMillis(decision), ((Number) result.get(0)).intValue(), granted, now) :
+                    null;
+            return decision;
+        }
+
+        boolean isEnded(long now) {
+            Lease current = lease;
+            return current == null || current.resetMillis <= now;
+        }
+    }
+
+    private static final class Lease {
+
+        private final long resetMillis;
+
+        /**
+         * The remaining value of the key in Redis after this lease.
+         */
+        private final int remaining;
+
+        private final int granted;
+
+        private final long leasedAt;
+
+        /**
+         * The unused tokens of this lease, the first one is taken by the request which has leased it.
+         */
+        private final AtomicInteger tokens;
+
+        Lease(long resetMillis, int remaining, int granted, long leasedAt) {
+            this.resetMillis = resetMillis;
+            this.remaining = remaining;
+            this.granted = granted;
+            this.leasedAt = leasedAt;
+            this.tokens = new AtomicInteger(granted - 1);
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package com.github.sajjaadalipour.ratelimit.repositories.redis;
+
+import org.springframework.data.redis.connection.ReactiveRedisConnectionFactory;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Executes the scripts by the reactive commands of a connection factory, e.g. the asynchronous commands of Lettuce,
+ * so no thread waits for the round trip.
+ * <p>
+ * This class references the Reactor types, so it should only be loaded if Reactor is on the classpath.
+ *
+ * @author Sajjad Alipour
+ */
+final class ReactiveScriptExecutor {
+
+    private final ReactiveStringRedisTemplate reactiveStringRedisTemplate;
+
+    ReactiveScriptExecutor(ReactiveRedisConnectionFactory reactiveRedisConnectionFactory) {
+        this.reactiveStringRedisTemplate = new ReactiveStringRedisTemplate(reactiveRedisConnectionFactory);
+    }
+
+    /**
+     * @return A future which is completed by the result of the script, the list of values it returns.
+     */
+    CompletableFuture<List<?>> execute(RedisScript<List<Object>> script, List<String> keys, String[] args) {
+        return reactiveStringRedisTemplate.execute(script, keys, Arrays.asList((Object[]) args))
+                .next()
+                .<List<?>>map(result -> result)
+                .toFuture();
+    }
+}
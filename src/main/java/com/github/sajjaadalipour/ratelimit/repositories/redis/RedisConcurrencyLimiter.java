@@ -0,0 +1,72 @@
+package com.github.sajjaadalipour.ratelimit.repositories.redis;
+
+import com.github.sajjaadalipour.ratelimit.ConcurrencyLimiter;
+import com.github.sajjaadalipour.ratelimit.conf.properties.RateLimitProperties.Policy;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+
+import javax.annotation.Nonnull;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An implementation of {@link ConcurrencyLimiter} to keep the in-flight requests of the keys in redis.
+ * <p>
+ * The permits of a key are leases in a sorted set scored by their expiration, which is the duration of
+ * the policy after acquiring by the time of the Redis server, so the leases are free of the clock skew of the nodes.
+ * The expired leases are dropped before counting the in-flight requests, so the permits of a crashed node are freed
+ * once their leases expire instead of leaking forever.
+ *
+ * @author Sajjad Alipour
+ */
+public class RedisConcurrencyLimiter implements ConcurrencyLimiter {
+
+    /**
+     * Drops the expired leases, then adds a lease if the key has less in-flight requests than the count.
+     */
+    private static final RedisScript<List<Object>> ACQUIRE_PERMIT_SCRIPT = ScriptCall.scriptOf("acquire_permit.lua");
+
+    private final String redisKeyGroup;
+
+    /**
+     * Used to persist and retrieve from to redis.
+     */
+    private final StringRedisTemplate stringRedisTemplate;
+
+    /**
+     * Makes the permit ids of this node unique among the nodes.
+     */
+    private final String nodeId = UUID.randomUUID().toString();
+
+    private final AtomicLong permitSequence = new AtomicLong();
+
+    public RedisConcurrencyLimiter(StringRedisTemplate stringRedisTemplate, String redisKeyGroup) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.redisKeyGroup = redisKeyGroup;
+    }
+
+    @Override
+    public Permit tryAcquire(@Nonnull String key, @Nonnull Policy policy) {
+        final String redisKey = assignPrefixKey(key);
+        final String permitId = nodeId + ":" + permitSequence.incrementAndGet();
+
+        List<?> acquired = stringRedisTemplate.execute(
+                ACQUIRE_PERMIT_SCRIPT,
+                Collections.singletonList(redisKey),
+                String.valueOf(policy.getCount()),
+                String.valueOf(Math.max(policy.getDuration().toMillis(), 1)),
+                permitId);
+
+        if (acquired == null || acquired.isEmpty() || ((Number) acquired.get(0)).longValue() == 0) {
+            return null;
+        }
+
+        return () -> stringRedisTemplate.opsForZSet().remove(redisKey, permitId);
+    }
+
+    private String assignPrefixKey(String key) {
+        return redisKeyGroup + ":permits:" + key;
+    }
+}
@@ -1,24 +1,80 @@
 package com.github.sajjaadalipour.ratelimit.repositories.redis;
 
 import com.github.sajjaadalipour.ratelimit.Rate;
+import com.github.sajjaadalipour.ratelimit.RateDecision;
 import com.github.sajjaadalipour.ratelimit.RateLimiter;
 import com.github.sajjaadalipour.ratelimit.RatePolicy;
+import com.github.sajjaadalipour.ratelimit.clock.RateClock;
+import com.github.sajjaadalipour.ratelimit.conf.properties.RateLimitAlgorithm;
+import com.github.sajjaadalipour.ratelimit.conf.properties.RateLimitDefaults;
+import com.github.sajjaadalipour.ratelimit.conf.properties.RateLimitProperties.Policy;
+import com.github.sajjaadalipour.ratelimit.conf.properties.RateLimitRedisLayout;
+import org.springframework.data.redis.connection.ClusterSlotHashUtil;
 import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
 
 import javax.annotation.Nonnull;
 import java.time.Duration;
 import java.time.Instant;
-import java.util.Optional;
-
-import static com.github.sajjaadalipour.ratelimit.Rate.RATE_BLOCK_STATE;
-import static com.github.sajjaadalipour.ratelimit.Rate.RATE_EXCEED_STATE;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.function.Function;
 
 /**
  * An implementation of {@link RateLimiter} to cache the rate limit data in redis.
+ * <p>
+ * All the algorithms are decided by a Lua script per request, so their state is read, modified and written atomically
+ * in a single round trip. The scripts are executed by their SHA1 digest and only sent once to the server.
+ * <p>
+ * The asynchronous variants do not block the caller during the round trip, their scripts are executed by
+ * the reactive commands of the connection factory, e.g. Lettuce, or by the batcher if the batching is enabled.
+ * <p>
+ * If the {@link Builder#batch batching} is enabled, the script calls of the concurrent requests are sent as one
+ * pipeline by a {@link RedisScriptBatcher}, and the concurrent requests of the same
+ * {@link RateLimitAlgorithm#FIXED_WINDOW} key are consumed by a single call.
+ * <p>
+ * If the {@link Builder#nearCache near-cache} is enabled, the exceeded and blocked keys are remembered by
+ * a {@link RejectedKeyCache} until their reset time, so the requests of an abusive requester are rejected by this node
+ * without touching Redis. A requester which is reset by {@link #reset(String)} is evicted from the near-cache of every
+ * node which listens to the {@link #getInvalidationChannel() invalidation channel}.
+ * <p>
+ * If the {@link Builder#lease leasing} is enabled, the {@link RateLimitAlgorithm#FIXED_WINDOW} quotas are leased
+ * from Redis by the {@link FixedWindowLeasing} in slices sized by the observed rate of each key, and the requests are
+ * consumed from the lease of this node without a round trip, bounded by the max share of the policy count each node
+ * may hold.
+ * <p>
+ * The policies of a request which can not be consumed by a single script, e.g. of different algorithms, are consumed
+ * one by one, and when a policy rejects the request, the request is given back to the keys of the policies before it by
+ * the refund script, or to their leases.
+ * <p>
+ * On a Redis Cluster, the keys of a request are only consumed by a single script if they are on the same slot,
+ * e.g. by the hash tag of {@link com.github.sajjaadalipour.ratelimit.generators.HeaderBasedKeyGenerator}. Once
+ * the cluster rejects a script by {@code CROSSSLOT}, the keys on different slots are consumed one by one.
+ * <p>
+ * The {@link RateLimitAlgorithm#FIXED_WINDOW} keys are kept by the {@link Builder#layout layout}, a string per key
+ * by default, the fields of a hash per identity by the {@link HashFixedWindowLayout}, or a counter per window by
+ * the {@link EpochFixedWindowLayout}.
  *
  * @author Sajjad Alipour
  */
-public class RedisRateCache implements RateLimiter {
+public class RedisRateCache implements RateLimiter, AutoCloseable {
+
+    /**
+     * Consumes a request of a key which is limited by {@link RateLimitAlgorithm#GCRA}.
+     */
+    private static final RedisScript<List<Object>> GCRA_SCRIPT = ScriptCall.scriptOf("gcra.lua");
+
+    /**
+     * Consumes a request of a key which is limited by {@link RateLimitAlgorithm#TOKEN_BUCKET}.
+     */
+    private static final RedisScript<List<Object>> TOKEN_BUCKET_SCRIPT = ScriptCall.scriptOf("token_bucket.lua");
+
+    /**
+     * Consumes a request of a key which is limited by {@link RateLimitAlgorithm#SLIDING_WINDOW}.
+     */
+    private static final RedisScript<List<Object>> SLIDING_WINDOW_SCRIPT = ScriptCall.scriptOf("sliding_window.lua");
 
     private final String redisKeyGroup;
 
@@ -27,64 +83,605 @@ public class RedisRateCache implements RateLimiter {
      */
     private final StringRedisTemplate stringRedisTemplate;
 
+    /**
+     * The source of the current time of the near-cache, the leases and the resets, the scripts decide by the time of
+     * the Redis server.
+     */
+    private final RateClock clock;
+
+    /**
+     * Executes the script calls, by the batcher if the batching is enabled.
+     */
+    private final ScriptCallExecutor executor;
+
+    /**
+     * Remembers the rejected keys, it is {@code null} if the near-cache is disabled.
+     */
+    private final RejectedKeyCache nearCache;
+
+    /**
+     * Consumes the fixed window keys from the quotas leased by this node, it is {@code null} if the leasing is
+     * disabled.
+     */
+    private final FixedWindowLeasing leasing;
+
+    /**
+     * Builds the script calls of the {@link RateLimitAlgorithm#FIXED_WINDOW} keys by their layout in Redis.
+     */
+    private final FixedWindowLayout layout;
+
+    /**
+     * Set once Redis has rejected a script by {@code CROSSSLOT}, so the keys of a request are checked to be on
+     * the same cluster slot before they are consumed by a single script.
+     */
+    private volatile boolean slotAware;
+
     public RedisRateCache(StringRedisTemplate stringRedisTemplate, String redisKeyGroup) {
-        this.stringRedisTemplate = stringRedisTemplate;
-        this.redisKeyGroup = redisKeyGroup;
+        this(builder(stringRedisTemplate, redisKeyGroup));
+    }
+
+    private RedisRateCache(Builder builder) {
+        if (builder.layout != RateLimitRedisLayout.STRING && builder.leaseDuration != null) {
+            throw new IllegalArgumentException("The leasing is only supported by the string layout");
+        }
+
+        this.stringRedisTemplate = builder.stringRedisTemplate;
+        this.redisKeyGroup = builder.redisKeyGroup;
+        this.clock = builder.clock;
+        this.executor = new ScriptCallExecutor(stringRedisTemplate, builder.batchMaxDelay, builder.batchMaxSize);
+        this.nearCache = builder.nearCacheMaxEntries > 0 ? new RejectedKeyCache(builder.nearCacheMaxEntries) : null;
+        this.layout = FixedWindowLayout.of(builder.layout, redisKeyGroup, clock);
+        this.leasing = builder.leaseDuration != null ?
+                new FixedWindowLeasing(builder.leaseDuration, builder.leaseMaxShare, layout, executor, clock) :
+                null;
     }
 
     /**
-     * Finds the rate record from Redis by the given {@code key}, if it does not exist then creates a new record
-     * else checks the rate remaining value is greater than 0, decrease rate`s remaining and update item.
+     * @param stringRedisTemplate Used to persist and retrieve from to redis.
+     * @param redisKeyGroup       The prefix of the Redis keys.
+     * @return A builder of a {@link RedisRateCache} which has no batching, near-cache or leasing, and keeps
+     * the {@link RateLimitRedisLayout#STRING} layout, unless they are set.
+     */
+    public static Builder builder(StringRedisTemplate stringRedisTemplate, String redisKeyGroup) {
+        return new Builder(stringRedisTemplate, redisKeyGroup);
+    }
+
+    /**
+     * Consumes the rate limit of the policy`s key by the policy`s algorithm, unless the key is rejected by
+     * the near-cache.
      *
      * @param ratePolicy Encapsulates the rate limit policy details.
      * @return Encapsulated rate details.
      */
     @Override
     public Rate consume(@Nonnull RatePolicy ratePolicy) {
-        String redisKey = assignPrefixKey(ratePolicy.getKey());
-        Optional<String> optionalRate = Optional.ofNullable(stringRedisTemplate.opsForValue().get(redisKey));
+        final Rate cached = cachedRateOf(ratePolicy);
+        if (cached != null) {
+            return cached;
+        }
 
-        if (!optionalRate.isPresent()) {
-            return createRateForFirstTime(ratePolicy);
+        if (leasing != null && ratePolicy.getAlgorithm() == RateLimitAlgorithm.FIXED_WINDOW) {
+            return remember(ratePolicy, RateDecision.toRate(ratePolicy.getKey(), leasing.consume(ratePolicy)));
         }
 
-        int rateRemaining = Integer.parseInt(optionalRate.get());
+        final ScriptCall call = scriptCallOf(ratePolicy);
+        return remember(ratePolicy, rateOf(ratePolicy, call, executor.execute(call)));
+    }
 
-        Instant expiration = Instant.now().plusSeconds(ratePolicy.getDuration().getSeconds());
+    /**
+     * Consumes the rate limit of the policy`s key like {@link #consume(RatePolicy)}, but without blocking the caller
+     * while the script is executed. The script is sent by the {@link RedisScriptBatcher} if the batching is enabled,
+     * otherwise by the reactive commands of the connection factory if it supports them, e.g. Lettuce. A leased
+     * request is consumed from the lease of this node, and a new lease is taken the same way without blocking.
+     *
+     * @param ratePolicy Encapsulates the rate limit policy details.
+     * @return A stage which is completed by the rate details.
+     */
+    @Override
+    public CompletionStage<Rate> consumeAsync(@Nonnull RatePolicy ratePolicy) {
+        final Rate cached = cachedRateOf(ratePolicy);
+        if (cached != null) {
+            return CompletableFuture.completedFuture(cached);
+        }
 
-        if (rateRemaining > RATE_EXCEED_STATE) {
-            rateRemaining--;
-            stringRedisTemplate.opsForValue().setIfPresent(assignPrefixKey(ratePolicy.getKey()),
-                    String.valueOf(rateRemaining),
-                    ratePolicy.getDuration());
+        if (leasing != null && ratePolicy.getAlgorithm() == RateLimitAlgorithm.FIXED_WINDOW) {
+            return leasing.consumeAsync(ratePolicy)
+                    .thenApply(decision -> remember(ratePolicy, RateDecision.toRate(ratePolicy.getKey(), decision)));
         }
 
-        if (ratePolicy.getBlockDuration() != null && rateRemaining == RATE_EXCEED_STATE) {
-            rateRemaining = RATE_BLOCK_STATE;
-            createRedisRecord(redisKey, rateRemaining, ratePolicy.getBlockDuration());
+        final ScriptCall call = scriptCallOf(ratePolicy);
+        return executor.executeAsync(call)
+                .thenApply(result -> remember(ratePolicy, rateOf(ratePolicy, call, result)));
+    }
+
+    /**
+     * @return The rate of the policy`s key which is rejected by the near-cache, or {@code null} if it is not cached.
+     */
+    private Rate cachedRateOf(RatePolicy ratePolicy) {
+        if (nearCache == null) {
+            return null;
         }
 
-        if (rateRemaining == RATE_BLOCK_STATE && ratePolicy.getBlockDuration() != null) {
-            expiration = Instant.now().plusSeconds(ratePolicy.getBlockDuration().getSeconds());
+        final long cached = nearCache.get(layout.redisKeyOf(ratePolicy.getKey()), clock.millis());
+        return cached != RejectedKeyCache.NONE ? RateDecision.toRate(ratePolicy.getKey(), cached) : null;
+    }
+
+    /**
+     * Puts the given rate to the near-cache if it rejects the request.
+     *
+     * @return The given rate.
+     */
+    private Rate remember(RatePolicy ratePolicy, Rate rate) {
+        if (nearCache != null && (rate.isExceed() || rate.isBlocked())) {
+            nearCache.put(layout.redisKeyOf(ratePolicy.getKey()), RateDecision.of(rate), clock.millis());
         }
+        return rate;
+    }
 
-        return new Rate(ratePolicy.getKey(), expiration, rateRemaining);
+    private ScriptCall scriptCallOf(RatePolicy ratePolicy) {
+        switch (ratePolicy.getAlgorithm()) {
+            case GCRA:
+                return scriptCallOf(GCRA_SCRIPT, ratePolicy, durationMicrosOf(ratePolicy), intervalMicrosOf(ratePolicy));
+            case TOKEN_BUCKET:
+                return scriptCallOf(TOKEN_BUCKET_SCRIPT, ratePolicy, ratePolicy.getCount(), intervalMicrosOf(ratePolicy));
+            case SLIDING_WINDOW:
+                return scriptCallOf(SLIDING_WINDOW_SCRIPT, ratePolicy, ratePolicy.getCount(), durationMicrosOf(ratePolicy));
+            default:
+                return layout.callOf(ratePolicy);
+        }
+    }
+
+    /**
+     * Consumes the {@link RateLimitAlgorithm#FIXED_WINDOW} policies of a request together by a single script,
+     * which checks all the keys before consuming any of them. The policies of the other algorithms are consumed
+     * one by one, since their state is not the same as a fixed window, and the request is given back to the policies
+     * before a rejecting one.
+     * <p>
+     * In the {@link RateLimitRedisLayout#HASH} layout, the keys of the same identity are consumed together by
+     * the script of the hash of the identity, the keys of several identities are consumed one by one. In the
+     * {@link RateLimitRedisLayout#EPOCH} layout, the policies with a block are only consumed together with each other.
+     * <p>
+     * If the leasing is enabled, the policies are consumed one by one, and the tokens of the fixed window policies
+     * before a rejecting one are given back to their leases.
+     *
+     * @return The index of the first policy which does not allow the request, or {@code -1} if all of them allow it.
+     */
+    @Override
+    public int tryConsumeAll(@Nonnull List<String> keys, @Nonnull List<Policy> policies, @Nonnull long[] decisions) {
+        if (leasing != null) {
+            return tryConsumeEach(keys, policies, decisions);
+        }
+
+        if (policies.size() == 1) {
+            decisions[0] = tryConsume(keys.get(0), policies.get(0));
+            return RateDecision.isAllowed(decisions[0]) ? -1 : 0;
+        }
+
+        if (!isAllFixedWindow(policies) || layout.isSplit(keys, policies)) {
+            return tryConsumeEach(keys, policies, decisions);
+        }
+
+        final int cached = cachedRejectionOf(keys, decisions);
+        if (cached >= 0) {
+            return cached;
+        }
+
+        final ScriptCall call = layout.callOf(keys, policies);
+        if (slotAware && !isSameSlot(call.keys)) {
+            return tryConsumeEach(keys, policies, decisions);
+        }
+
+        final List<?> result;
+        try {
+            result = executor.execute(call);
+        } catch (RuntimeException e) {
+            if (!isCrossSlot(e)) {
+                throw e;
+            }
+            slotAware = true;
+            return tryConsumeEach(keys, policies, decisions);
+        }
+        return decide(keys, result, decisions);
+    }
+
+    /**
+     * Consumes the policies one by one, and when a policy does not allow the request, gives the request back to
+     * the keys of the policies before it by {@link #refund}.
+     *
+     * @return The index of the first policy which does not allow the request, or {@code -1} if all of them allow it.
+     */
+    private int tryConsumeEach(List<String> keys, List<Policy> policies, long[] decisions) {
+        for (int i = 0; i < policies.size(); i++) {
+            decisions[i] = tryConsume(keys.get(i), policies.get(i));
+            if (!RateDecision.isAllowed(decisions[i])) {
+                for (int j = 0; j < i; j++) {
+                    refund(keys.get(j), policies.get(j), decisions[j]);
+                }
+                return i;
+            }
+        }
+        return -1;
     }
 
-    private Rate createRateForFirstTime(RatePolicy ratePolicy) {
-        Instant expiration = Instant.now().plusSeconds(ratePolicy.getDuration().getSeconds());
-        int remaining = ratePolicy.getCount() - 1;
+    /**
+     * Gives a request which is allowed by the given policy back to its key, e.g. when another policy of the same
+     * request rejects it, or to its lease if it is leased. A key which is blocked, expired or reset in the meantime
+     * is left as it is.
+     *
+     * @param decision The decision which the policy has allowed the request by, see {@link RateDecision}.
+     */
+    void refund(String key, Policy policy, long decision) {
+        if (leasing != null && policy.getAlgorithm() == RateLimitAlgorithm.FIXED_WINDOW) {
+            leasing.refund(key);
+            return;
+        }
+        executor.execute(refundCallOf(key, policy, decision));
+    }
 
-        createRedisRecord(assignPrefixKey(ratePolicy.getKey()), remaining, ratePolicy.getDuration());
+    /**
+     * Gives the request back to the keys of the policies before the given index like {@link #refund}, but without
+     * blocking the caller.
+     */
+    private CompletableFuture<Void> refundAsync(List<String> keys, List<Policy> policies, long[] decisions, int to) {
+        final CompletableFuture<?>[] refunds = new CompletableFuture<?>[to];
+        for (int j = 0; j < to; j++) {
+            if (leasing != null && policies.get(j).getAlgorithm() == RateLimitAlgorithm.FIXED_WINDOW) {
+                leasing.refund(keys.get(j));
+                refunds[j] = CompletableFuture.completedFuture(null);
+            } else {
+                refunds[j] = executor.executeAsync(refundCallOf(keys.get(j), policies.get(j), decisions[j]));
+            }
+        }
+        return CompletableFuture.allOf(refunds);
+    }
 
-        return new Rate(ratePolicy.getKey(), expiration, remaining);
+    private ScriptCall refundCallOf(String key, Policy policy, long decision) {
+        switch (policy.getAlgorithm()) {
+            case GCRA:
+                return refundCallOf(key, "GCRA", intervalMicrosOf(policy.getDuration(), policy.getCount()));
+            case TOKEN_BUCKET:
+                return refundCallOf(key, "TOKEN_BUCKET", policy.getCount());
+            case SLIDING_WINDOW:
+                return refundCallOf(key, "SLIDING_WINDOW", policy.getCount());
+            default:
+                return layout.refundCallOf(key, policy, decision);
+        }
     }
 
-    private void createRedisRecord(String key, int remaining, Duration expiration) {
-        stringRedisTemplate.opsForValue().set(key, String.valueOf(remaining), expiration);
+    /**
+     * The call of the refund script of the given key of an algorithm besides the fixed window.
+     *
+     * @param argument The count of the policy, or the emission interval in microseconds of GCRA.
+     */
+    private ScriptCall refundCallOf(String key, String algorithm, long argument) {
+        return new ScriptCall(
+                FixedWindowLayout.REFUND_SCRIPT,
+                Collections.singletonList(layout.redisKeyOf(key)),
+                new String[]{algorithm, String.valueOf(argument)},
+                false);
     }
 
-    private String assignPrefixKey(String key) {
-        return redisKeyGroup + ":" + key;
+    /**
+     * Consumes all the rate policies of a request together like {@link #tryConsumeAll}, but without blocking
+     * the caller while the scripts are executed. The policies of the other algorithms than
+     * {@link RateLimitAlgorithm#FIXED_WINDOW} are consumed one after another, and the request is given back to
+     * the policies before a rejecting one before the returned stage is completed. If the leasing is enabled, all
+     * the policies are consumed one after another, and the leases are taken without blocking the caller as well.
+     *
+     * @return A stage which is completed by the index of the first policy which does not allow the request,
+     * or {@code -1} if all of them allow it.
+     */
+    @Override
+    public CompletionStage<Integer> tryConsumeAllAsync(@Nonnull List<String> keys,
+                                                       @Nonnull List<Policy> policies,
+                                                       @Nonnull long[] decisions) {
+        if (leasing != null || policies.size() == 1 || !isAllFixedWindow(policies) || layout.isSplit(keys, policies)) {
+            return tryConsumeAsync(keys, policies, decisions, 0);
+        }
+
+        final int cached = cachedRejectionOf(keys, decisions);
+        if (cached >= 0) {
+            return CompletableFuture.completedFuture(cached);
+        }
+
+        final ScriptCall call = layout.callOf(keys, policies);
+        if (slotAware && !isSameSlot(call.keys)) {
+            return tryConsumeAsync(keys, policies, decisions, 0);
+        }
+
+        return executor.executeAsync(call)
+                .handle((result, error) -> {
+                    if (error == null) {
+                        return CompletableFuture.completedFuture(decide(keys, result, decisions));
+                    }
+                    if (!isCrossSlot(error)) {
+                        CompletableFuture<Integer> failed = new CompletableFuture<>();
+                        failed.completeExceptionally(error);
+                        return failed;
+                    }
+                    slotAware = true;
+                    return tryConsumeAsync(keys, policies, decisions, 0);
+                })
+                .thenCompose(Function.identity());
+    }
+
+    /**
+     * Consumes the policies from the given index one after another, and stops at the first rejection, which gives
+     * the request back to the policies before it.
+     */
+    private CompletionStage<Integer> tryConsumeAsync(List<String> keys, List<Policy> policies, long[] decisions, int from) {
+        if (from == policies.size()) {
+            return CompletableFuture.completedFuture(-1);
+        }
+
+        final Policy policy = policies.get(from);
+        return consumeAsync(new RatePolicy(
+                keys.get(from),
+                policy.getDuration(),
+                policy.getCount(),
+                (policy.getBlock() != null) ? policy.getBlock().getDuration() : null,
+                policy.getAlgorithm()))
+                .thenCompose(rate -> {
+                    decisions[from] = RateDecision.of(rate);
+                    return RateDecision.isAllowed(decisions[from]) ?
+                            tryConsumeAsync(keys, policies, decisions, from + 1) :
+                            refundAsync(keys, policies, decisions, from).thenApply(refunded -> from);
+                });
+    }
+
+    private static boolean isAllFixedWindow(List<Policy> policies) {
+        for (int i = 0; i < policies.size(); i++) {
+            if (policies.get(i).getAlgorithm() != RateLimitAlgorithm.FIXED_WINDOW) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return The index of the first key which is rejected by the near-cache, or {@code -1} if none of them is.
+     */
+    private int cachedRejectionOf(List<String> keys, long[] decisions) {
+        if (nearCache == null) {
+            return -1;
+        }
+
+        for (int i = 0; i < keys.size(); i++) {
+            final long cached = nearCache.get(layout.redisKeyOf(keys.get(i)), clock.millis());
+            if (cached != RejectedKeyCache.NONE) {
+                decisions[i] = cached;
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Decodes the result of the fixed windows script to the decisions, and puts the rejected key to the near-cache.
+     *
+     * @return The index of the first policy which does not allow the request, or {@code -1} if all of them allow it.
+     */
+    private int decide(List<String> keys, List<?> result, long[] decisions) {
+        if (result == null || result.isEmpty()) {
+            throw new IllegalStateException("Unexpected result of the rate limit script: " + result);
+        }
+
+        int rejected = ((Number) result.get(0)).intValue();
+        if (rejected >= 0) {
+            decisions[rejected] = decisionOf(result, 1);
+            if (nearCache != null) {
+                nearCache.put(layout.redisKeyOf(keys.get(rejected)), decisions[rejected], clock.millis());
+            }
+            return rejected;
+        }
+
+        for (int i = 0; i < keys.size(); i++) {
+            decisions[i] = decisionOf(result, 1 + i * 2);
+        }
+        return -1;
+    }
+
+    /**
+     * The call of the given script of an algorithm, which receives the limit and an interval of the algorithm in
+     * microseconds besides the block duration in milliseconds, and returns the remaining value and the reset time.
+     * The script decides by the time of the Redis server, so the decision is free of the clock skew of the nodes.
+     *
+     * @param limit          The limit of the algorithm, e.g. the capacity of the token bucket.
+     * @param intervalMicros The interval of the algorithm, e.g. the emission interval of GCRA or the window of
+     *                       the sliding window.
+     */
+    private ScriptCall scriptCallOf(RedisScript<List<Object>> script, RatePolicy ratePolicy, long limit, long intervalMicros) {
+        final Duration blockDuration = ratePolicy.getBlockDuration();
+        return new ScriptCall(
+                script,
+                Collections.singletonList(layout.redisKeyOf(ratePolicy.getKey())),
+                new String[]{
+                        String.valueOf(limit),
+                        String.valueOf(intervalMicros),
+                        String.valueOf(blockDuration != null ? blockDuration.toMillis() : -1)},
+                false);
+    }
+
+    /**
+     * Decodes the remaining value and the reset time of the given result, which are preceded by the index of
+     * the rejecting policy in the result of the script of the identity hash.
+     */
+    private Rate rateOf(RatePolicy ratePolicy, ScriptCall call, List<?> result) {
+        final int offset = layout.offsetOf(call);
+        if (result == null || result.size() < offset + 2) {
+            throw new IllegalStateException("Unexpected result of the rate limit script: " + result);
+        }
+
+        int remaining = ((Number) result.get(offset)).intValue();
+        long resetMillis = ((Number) result.get(offset + 1)).longValue();
+        return new Rate(ratePolicy.getKey(), Instant.ofEpochMilli(resetMillis), remaining);
+    }
+
+    /**
+     * Removes the rate limit of the given key, e.g. to unblock a requester by hand, and publishes the key to
+     * the {@link #getInvalidationChannel() invalidation channel} to evict it from the near-cache and the leases of the
+     * other nodes.
+     *
+     * @param key Unique key that identifies a request.
+     */
+    public void reset(@Nonnull String key) {
+        layout.reset(stringRedisTemplate, key);
+        invalidate(key);
+        if (nearCache != null || leasing != null) {
+            stringRedisTemplate.convertAndSend(getInvalidationChannel(), key);
+        }
+    }
+
+    /**
+     * Evicts the given key from the near-cache and drops its lease on this node, which is called for the keys
+     * published to the {@link #getInvalidationChannel() invalidation channel}.
+     *
+     * @param key Unique key that identifies a request.
+     */
+    public void invalidate(@Nonnull String key) {
+        if (nearCache != null) {
+            nearCache.invalidate(layout.redisKeyOf(key));
+        }
+        if (leasing != null) {
+            leasing.invalidate(key);
+        }
+    }
+
+    /**
+     * @return The Redis channel which the keys reset by {@link #reset(String)} are published to.
+     */
+    public String getInvalidationChannel() {
+        return redisKeyGroup + ":near-cache-invalidations";
+    }
+
+    /**
+     * Stops the batching, if it is enabled.
+     */
+    @Override
+    public void close() {
+        executor.close();
+    }
+
+    private static boolean isSameSlot(List<String> keys) {
+        final int slot = ClusterSlotHashUtil.calculateSlot(keys.get(0));
+        for (int i = 1; i < keys.size(); i++) {
+            if (ClusterSlotHashUtil.calculateSlot(keys.get(i)) != slot) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isCrossSlot(Throwable throwable) {
+        for (Throwable cause = throwable; cause != null; cause = cause.getCause()) {
+            if (cause.getMessage() != null && cause.getMessage().contains("CROSSSLOT")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static long decisionOf(List<?> result, int index) {
+        return RateDecision.of(((Number) result.get(index)).intValue(), ((Number) result.get(index + 1)).longValue());
+    }
+
+    private static long durationMicrosOf(RatePolicy ratePolicy) {
+        return ratePolicy.getDuration().toMillis() * 1000;
+    }
+
+    private static long intervalMicrosOf(RatePolicy ratePolicy) {
+        return intervalMicrosOf(ratePolicy.getDuration(), ratePolicy.getCount());
+    }
+
+    private static long intervalMicrosOf(Duration duration, int count) {
+        return Math.max(duration.toMillis() * 1000 / Math.max(count, 1), 1);
+    }
+
+    /**
+     * Builds a {@link RedisRateCache} by its optional features.
+     */
+    public static final class Builder {
+
+        private final StringRedisTemplate stringRedisTemplate;
+
+        private final String redisKeyGroup;
+
+        private RateClock clock = RateClock.SYSTEM;
+
+        private Duration batchMaxDelay;
+
+        private int batchMaxSize = RateLimitDefaults.BATCH_MAX_SIZE;
+
+        private int nearCacheMaxEntries;
+
+        private Duration leaseDuration;
+
+        private double leaseMaxShare = RateLimitDefaults.LEASE_MAX_SHARE;
+
+        private RateLimitRedisLayout layout = RateLimitRedisLayout.STRING;
+
+        private Builder(StringRedisTemplate stringRedisTemplate, String redisKeyGroup) {
+            this.stringRedisTemplate = stringRedisTemplate;
+            this.redisKeyGroup = redisKeyGroup;
+        }
+
+        /**
+         * @param clock The source of the current time of the near-cache, the leases and the resets.
+         */
+        public Builder clock(RateClock clock) {
+            this.clock = clock;
+            return this;
+        }
+
+        /**
+         * Enables the batching.
+         *
+         * @param maxDelay The max duration the concurrent script calls are collected before they are sent as one
+         *                 pipeline.
+         * @param maxSize  The max number of script calls which are sent as one pipeline.
+         */
+        public Builder batch(Duration maxDelay, int maxSize) {
+            this.batchMaxDelay = maxDelay;
+            this.batchMaxSize = maxSize;
+            return this;
+        }
+
+        /**
+         * Enables the near-cache.
+         *
+         * @param maxEntries The max number of the rejected keys which are kept by the near-cache.
+         */
+        public Builder nearCache(int maxEntries) {
+            this.nearCacheMaxEntries = maxEntries;
+            return this;
+        }
+
+        /**
+         * Enables the leasing, which is only supported by the {@link RateLimitRedisLayout#STRING} layout.
+         *
+         * @param duration The duration a quota lease is expected to last by the rate of its key.
+         * @param maxShare The max share of a policy count which this node may lease at once.
+         */
+        public Builder lease(Duration duration, double maxShare) {
+            this.leaseDuration = duration;
+            this.leaseMaxShare = maxShare;
+            return this;
+        }
+
+        /**
+         * @param layout The layout of the {@link RateLimitAlgorithm#FIXED_WINDOW} keys in Redis.
+         */
+        public Builder layout(RateLimitRedisLayout layout) {
+            this.layout = layout;
+            return this;
+        }
+
+        /**
+         * @throws IllegalArgumentException If the leasing is enabled along with another layout than
+         *                                  {@link RateLimitRedisLayout#STRING}.
+         */
+        public RedisRateCache build() {
+            return new RedisRateCache(this);
+        }
     }
 }
@@ -0,0 +1,345 @@
+package com.github.sajjaadalipour.ratelimit.repositories.redis;
+
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisPipelineException;
+import org.springframework.data.redis.connection.ReturnType;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.util.ClassUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Collects the script calls of the concurrent requests and sends them to Redis as one pipeline, so the requests
+ * are bounded by the round trips of a single connection instead of one round trip per request thread.
+ * <p>
+ * A flusher thread takes the first waiting call, then collects the calls which arrive within the max delay or
+ * until the max size is reached, and sends them together. The calls which arrive while a pipeline is in flight
+ * are sent by the next one.
+ * <p>
+ * The coalescable calls of the same script, keys and arguments are sent as a single call. Such a script takes
+ * the number of requests as its last argument and returns the remaining value after the granted requests,
+ * the reset time and the number of granted requests, which are fanned out to the requests by their order.
+ *
+ * @author Sajjad Alipour
+ */
+final class RedisScriptBatcher implements AutoCloseable {
+
+    private static final boolean LETTUCE_PRESENT =
+            ClassUtils.isPresent("io.lettuce.core.RedisClient", RedisScriptBatcher.class.getClassLoader());
+
+    private final StringRedisTemplate stringRedisTemplate;
+
+    private final long maxDelayNanos;
+
+    private final int maxSize;
+
+    private final BlockingQueue<Call> queue = new LinkedBlockingQueue<>();
+
+    /**
+     * The SHA1 digests of the scripts which are loaded to the server, only used by the flusher thread.
+     */
+    private final Set<String> loadedScripts = new HashSet<>();
+
+    private final Thread flusher;
+
+    private volatile boolean closed;
+
+    RedisScriptBatcher(StringRedisTemplate stringRedisTemplate, Duration maxDelay, int maxSize) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.maxDelayNanos = maxDelay.toNanos();
+        this.maxSize = Math.max(maxSize, 1);
+        this.flusher = new Thread(this::run, "rate-limit-redis-batcher");
+        this.flusher.setDaemon(true);
+        this.flusher.start();
+    }
+
+    /**
+     * Executes the given script by the next pipeline and waits for its result.
+     *
+     * @param coalescable Whether the call can be coalesced with the concurrent calls of the same arguments.
+     * @return The result of the script.
+     * @throws IllegalStateException If the batcher is closed.
+     */
+    List<?> execute(RedisScript<List<Object>> script, List<String> keys, String[] args, boolean coalescable) {
+        try {
+            return submit(script, keys, args, coalescable).join();
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+        }
+    }
+
+    /**
+     * Executes the given script by the next pipeline without waiting for its result.
+     *
+     * @param coalescable Whether the call can be coalesced with the concurrent calls of the same arguments.
+     * @return A future which is completed by the result of the script by the flusher thread.
+     * @throws IllegalStateException If the batcher is closed.
+     */
+    CompletableFuture<List<?>> submit(RedisScript<List<Object>> script, List<String> keys, String[] args, boolean coalescable) {
+        if (closed) {
+            throw new IllegalStateException("Redis script batcher is closed");
+        }
+
+        Call call = new Call(script, keys, args, coalescable);
+        queue.add(call);
+        return call.result;
+    }
+
+    /**
+     * Stops the flusher thread and fails the waiting calls.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        flusher.interrupt();
+    }
+
+    private void run() {
+        List<Call> batch = new ArrayList<>(maxSize);
+        try {
+            while (!closed) {
+                batch.add(queue.take());
+                long deadline = System.nanoTime() + maxDelayNanos;
+                while (batch.size() < maxSize) {
+                    long delay = deadline - System.nanoTime();
+                    Call call = delay > 0 ? queue.poll(delay, TimeUnit.NANOSECONDS) : queue.poll();
+                    if (call == null) {
+                        break;
+                    }
+                    batch.add(call);
+                }
+
+                flush(batch);
+                batch.clear();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        IllegalStateException closedException = new IllegalStateException("Redis script batcher is closed");
+        batch.forEach(call -> call.result.completeExceptionally(closedException));
+        for (Call call = queue.poll(); call != null; call = queue.poll()) {
+            call.result.completeExceptionally(closedException);
+        }
+    }
+
+    /**
+     * Sends the given calls as one pipeline, the coalescable calls of the same arguments as a single call, and
+     * completes them by the results. If the server has lost some scripts, e.g. after a failover, only the calls
+     * which are answered by NOSCRIPT are retried once by their full script body, since the other calls of the
+     * pipeline are already executed and retrying them would consume their requests twice.
+     */
+    private void flush(List<Call> batch) {
+        List<List<Call>> groups = new ArrayList<>(batch.size());
+        Map<String, List<Call>> coalescedGroups = new HashMap<>();
+        for (Call call : batch) {
+            if (call.coalescingKey == null) {
+                groups.add(Collections.singletonList(call));
+                continue;
+            }
+
+            List<Call> group = coalescedGroups.get(call.coalescingKey);
+            if (group == null) {
+                group = new ArrayList<>();
+                coalescedGroups.put(call.coalescingKey, group);
+                groups.add(group);
+            }
+            group.add(call);
+        }
+
+        try {
+            List<Object> results = executeAll(groups, false);
+            retryNoScripts(groups, results);
+
+            for (int i = 0; i < groups.size(); i++) {
+                complete(groups.get(i), results.get(i));
+            }
+        } catch (RuntimeException e) {
+            batch.forEach(call -> call.result.completeExceptionally(e));
+        }
+    }
+
+    /**
+     * Sends the groups which are answered by NOSCRIPT again by their full script body and replaces their results.
+     */
+    private void retryNoScripts(List<List<Call>> groups, List<Object> results) {
+        List<List<Call>> retried = new ArrayList<>();
+        List<Integer> indexes = new ArrayList<>();
+        for (int i = 0; i < results.size(); i++) {
+            if (results.get(i) instanceof Throwable && isNoScript((Throwable) results.get(i))) {
+                loadedScripts.remove(groups.get(i).get(0).script.getSha1());
+                retried.add(groups.get(i));
+                indexes.add(i);
+            }
+        }
+        if (retried.isEmpty()) {
+            return;
+        }
+
+        List<Object> retriedResults = executeAll(retried, true);
+        for (int i = 0; i < indexes.size(); i++) {
+            results.set(indexes.get(i), retriedResults.get(i));
+        }
+    }
+
+    /**
+     * Sends a call per group as one pipeline, by the SHA1 digests of the scripts which are loaded first, or by
+     * the full script bodies if {@code byBody} is {@code true}.
+     *
+     * @return The result of each group by their order, the list of values the script returns or the exception
+     * of its error reply.
+     * @throws RuntimeException If the results of the calls are not known, e.g. the connection is lost.
+     */
+    private List<Object> executeAll(List<List<Call>> groups, boolean byBody) {
+        List<Eval> evals = new ArrayList<>(groups.size());
+        for (List<Call> group : groups) {
+            RedisScript<List<Object>> script = group.get(0).script;
+            if (!byBody && !loadedScripts.contains(script.getSha1())) {
+                stringRedisTemplate.execute((RedisCallback<String>) connection ->
+                        connection.scriptingCommands().scriptLoad(script.getScriptAsString().getBytes(StandardCharsets.UTF_8)));
+                loadedScripts.add(script.getSha1());
+            }
+            evals.add(new Eval(group.get(0), group.size()));
+        }
+
+        List<Object> results = stringRedisTemplate.execute((RedisCallback<List<Object>>) connection ->
+                LETTUCE_PRESENT && LettuceScriptPipeline.supports(connection.getNativeConnection()) ?
+                        LettuceScriptPipeline.execute(connection.getNativeConnection(),
+                                stringRedisTemplate.getRequiredConnectionFactory(), evals, byBody) :
+                        null);
+        if (results != null) {
+            return results;
+        }
+
+        try {
+            return new ArrayList<>(stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                for (Eval eval : evals) {
+                    eval.execute(connection, byBody);
+                }
+                return null;
+            }));
+        } catch (RedisPipelineException e) {
+            if (e.getPipelineResult().size() != evals.size()) {
+                throw e;
+            }
+            return new ArrayList<>(e.getPipelineResult());
+        }
+    }
+
+    /**
+     * Completes the calls of a group by the result of the script, a coalesced result is fanned out to the calls
+     * by their order, the first ones take the granted requests.
+     */
+    private static void complete(List<Call> group, Object result) {
+        if (!(result instanceof List)) {
+            RuntimeException exception = result instanceof RuntimeException ? (RuntimeException) result :
+                    new IllegalStateException("Unexpected result of the rate limit script: " + result);
+            group.forEach(call -> call.result.completeExceptionally(exception));
+            return;
+        }
+
+        List<?> values = (List<?>) result;
+        if (group.get(0).coalescingKey == null) {
+            group.get(0).result.complete(values);
+            return;
+        }
+
+        long remaining = ((Number) values.get(0)).longValue();
+        long reset = ((Number) values.get(1)).longValue();
+        long granted = ((Number) values.get(2)).longValue();
+        long base = Math.max(remaining, 0);
+        for (int i = 0; i < group.size(); i++) {
+            group.get(i).result.complete(i < granted ?
+                    Arrays.asList(base + granted - i - 1, reset) :
+                    Arrays.asList(remaining, reset));
+        }
+    }
+
+    private static boolean isNoScript(Throwable throwable) {
+        for (Throwable cause = throwable; cause != null; cause = cause.getCause()) {
+            if (cause.getMessage() != null && cause.getMessage().contains("NOSCRIPT")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * A script call of a pipeline, the keys and arguments of a call of a group whose last argument is the number
+     * of the requests of the group if the call is coalescable.
+     */
+    static final class Eval {
+
+        final RedisScript<List<Object>> script;
+
+        final int numKeys;
+
+        final byte[][] keysAndArgs;
+
+        Eval(Call call, int requests) {
+            this.script = call.script;
+            this.numKeys = call.keys.size();
+            this.keysAndArgs = new byte[call.keys.size() + call.args.length][];
+            for (int i = 0; i < call.keys.size(); i++) {
+                keysAndArgs[i] = call.keys.get(i).getBytes(StandardCharsets.UTF_8);
+            }
+            for (int i = 0; i < call.args.length; i++) {
+                String arg = call.coalescingKey != null && i == call.args.length - 1 ? String.valueOf(requests) : call.args[i];
+                keysAndArgs[call.keys.size() + i] = arg.getBytes(StandardCharsets.UTF_8);
+            }
+        }
+
+        /**
+         * Executes the script by its SHA1 digest, or by its full body if {@code byBody} is {@code true}.
+         */
+        void execute(RedisConnection connection, boolean byBody) {
+            if (byBody) {
+                connection.scriptingCommands().eval(script.getScriptAsString().getBytes(StandardCharsets.UTF_8),
+                        ReturnType.MULTI, numKeys, keysAndArgs);
+            } else {
+                connection.scriptingCommands().evalSha(script.getSha1(), ReturnType.MULTI, numKeys, keysAndArgs);
+            }
+        }
+    }
+
+    private static final class Call {
+
+        private final RedisScript<List<Object>> script;
+
+        private final List<String> keys;
+
+        private final String[] args;
+
+        /**
+         * The calls of the same coalescing key are sent as a single call, it is {@code null} if the call is not
+         * coalescable.
+         */
+        private final String coalescingKey;
+
+        private final CompletableFuture<List<?>> result = new CompletableFuture<>();
+
+        Call(RedisScript<List<Object>> script, List<String> keys, String[] args, boolean coalescable) {
+            this.script = script;
+            this.keys = keys;
+            this.args = args;
+            this.coalescingKey = coalescable ?
+                    script.getSha1() + keys + Arrays.toString(Arrays.copyOf(args, args.length - 1)) : null;
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package com.github.sajjaadalipour.ratelimit.repositories.redis;
+
+import com.github.sajjaadalipour.ratelimit.RateDecision;
+import com.github.sajjaadalipour.ratelimit.repositories.ExpiryQueue;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A near-cache of the keys which are exceeded or blocked, so their requests are rejected by this node until
+ * the known reset time of their decision, without a round trip to Redis.
+ * <p>
+ * The cache is bounded, the keys are kept in the order of their reset times by an {@link ExpiryQueue}, whose due
+ * buckets are purged on every put, so the queue only holds the decisions which are not reset yet. When the cache is
+ * full the decision which resets first is evicted in O(1) amortized. An evicted key is just decided by Redis as usual.
+ *
+ * @author Sajjad Alipour
+ */
+final class RejectedKeyCache {
+
+    /**
+     * Returned by {@link #get(String, long)} when the key is not cached. It never collides with a decision, since
+     * no decision resets at the epoch.
+     */
+    static final long NONE = Long.MIN_VALUE;
+
+    /**
+     * The length of a bucket of the {@link #expiryQueue} in milliseconds.
+     */
+    private static final long EXPIRY_TICK_MILLIS = 1_000;
+
+    private final ConcurrentHashMap<String, Long> decisions = new ConcurrentHashMap<>();
+
+    /**
+     * Keeps the cached keys in the order of their reset times.
+     */
+    private final ExpiryQueue expiryQueue = new ExpiryQueue(EXPIRY_TICK_MILLIS);
+
+    private final int maxEntries;
+
+    RejectedKeyCache(int maxEntries) {
+        this.maxEntries = maxEntries;
+    }
+
+    /**
+     * @param now The current time in epoch milliseconds.
+     * @return The cached decision of the given key if it is not reset yet, otherwise {@link #NONE}.
+     */
+    long get(String key, long now) {
+        Long decision = decisions.get(key);
+        if (decision == null) {
+            return NONE;
+        }
+
+        if (RateDecision.resetMillis(decision) <= now) {
+            decisions.remove(key, decision);
+            return NONE;
+        }
+        return decision;
+    }
+
+    /**
+     * Caches the given decision if it rejects the request.
+     *
+     * @param now The current time in epoch milliseconds.
+     */
+    void put(String key, long decision, long now) {
+        if (RateDecision.isAllowed(decision) || RateDecision.resetMillis(decision) <= now) {
+            return;
+        }
+
+        expiryQueue.drain(now, it -> decisions.computeIfPresent(it, (k, d) -> RateDecision.resetMillis(d) <= now ? null : d));
+        if (decisions.size() >= maxEntries && !decisions.containsKey(key)) {
+            for (String oldest; decisions.size() >= maxEntries && (oldest = expiryQueue.pollFirst(this::resetMillisOf)) != null; ) {
+                decisions.remove(oldest);
+            }
+        }
+
+        Long previous = decisions.put(key, decision);
+        if (previous == null || RateDecision.resetMillis(previous) != RateDecision.resetMillis(decision)) {
+            expiryQueue.schedule(key, RateDecision.resetMillis(decision));
+        }
+    }
+
+    void invalidate(String key) {
+        decisions.remove(key);
+    }
+
+    int size() {
+        return decisions.size();
+    }
+
+    /**
+     * @return The number of the keys scheduled by the {@link #expiryQueue}, including the stale ones.
+     */
+    int scheduled() {
+        return expiryQueue.size();
+    }
+
+    /**
+     * @return The reset time of the cached decision of the given key, or {@link Long#MIN_VALUE} if it is not cached.
+     */
+    private long resetMillisOf(String key) {
+        Long decision = decisions.get(key);
+        return decision != null ? RateDecision.resetMillis(decision) : Long.MIN_VALUE;
+    }
+}
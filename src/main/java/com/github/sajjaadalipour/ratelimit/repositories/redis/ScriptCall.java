@@ -0,0 +1,45 @@
+package com.github.sajjaadalipour.ratelimit.repositories.redis;
+
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.scripting.support.ResourceScriptSource;
+
+import java.util.List;
+
+/**
+ * The script, keys and arguments of a Redis script call.
+ *
+ * @author Sajjad Alipour
+ */
+final class ScriptCall {
+
+    final RedisScript<List<Object>> script;
+
+    final List<String> keys;
+
+    final String[] args;
+
+    /**
+     * Whether the call can be coalesced with the concurrent calls of the same arguments by the batcher.
+     */
+    final boolean coalescable;
+
+    ScriptCall(RedisScript<List<Object>> script, List<String> keys, String[] args, boolean coalescable) {
+        this.script = script;
+        this.keys = keys;
+        this.args = args;
+        this.coalescable = coalescable;
+    }
+
+    /**
+     * @return The script of the given resource, which is next to the classes of this package.
+     */
+    @SuppressWarnings("unchecked")
+    static RedisScript<List<Object>> scriptOf(String name) {
+        DefaultRedisScript<List<Object>> script = new DefaultRedisScript<>();
+        script.setScriptSource(new ResourceScriptSource(new ClassPathResource(name, ScriptCall.class)));
+        script.setResultType((Class<List<Object>>) (Class<?>) List.class);
+        return script;
+    }
+}
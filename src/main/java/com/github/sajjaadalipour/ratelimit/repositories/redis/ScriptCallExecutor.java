@@ -0,0 +1,94 @@
+package com.github.sajjaadalipour.ratelimit.repositories.redis;
+
+import org.springframework.data.redis.connection.ReactiveRedisConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.util.ClassUtils;
+
+import javax.annotation.Nullable;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Executes the script calls of a {@link RedisRateCache}, by a {@link RedisScriptBatcher} if the batching is enabled,
+ * otherwise by their own round trip.
+ *
+ * @author Sajjad Alipour
+ */
+final class ScriptCallExecutor implements AutoCloseable {
+
+    /**
+     * The reactive commands of the connection factories are based on Reactor, which is only present with Lettuce.
+     */
+    private static final boolean REACTOR_PRESENT =
+            ClassUtils.isPresent("reactor.core.publisher.Mono", ScriptCallExecutor.class.getClassLoader());
+
+    private final StringRedisTemplate stringRedisTemplate;
+
+    /**
+     * Sends the script calls as pipelines, it is {@code null} if the batching is disabled.
+     */
+    private final RedisScriptBatcher batcher;
+
+    /**
+     * Executes the scripts of {@link #executeAsync} without blocking, it is {@code null} if the connection factory
+     * has no reactive commands.
+     */
+    private final ReactiveScriptExecutor reactiveExecutor;
+
+    /**
+     * @param batchMaxDelay The max duration the concurrent script calls are collected before they are sent as one
+     *                      pipeline, {@code null} means no batching.
+     * @param batchMaxSize  The max number of script calls which are sent as one pipeline.
+     */
+    ScriptCallExecutor(StringRedisTemplate stringRedisTemplate, @Nullable Duration batchMaxDelay, int batchMaxSize) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.batcher = batchMaxDelay != null ? new RedisScriptBatcher(stringRedisTemplate, batchMaxDelay, batchMaxSize) : null;
+        this.reactiveExecutor = REACTOR_PRESENT &&
+                stringRedisTemplate.getConnectionFactory() instanceof ReactiveRedisConnectionFactory ?
+                new ReactiveScriptExecutor((ReactiveRedisConnectionFactory) stringRedisTemplate.getConnectionFactory()) :
+                null;
+    }
+
+    /**
+     * Executes the given script call by the {@link #batcher} if the batching is enabled, otherwise by its own round
+     * trip.
+     */
+    List<?> execute(ScriptCall call) {
+        if (batcher != null) {
+            return batcher.execute(call.script, call.keys, call.args, call.coalescable);
+        }
+        return stringRedisTemplate.execute(call.script, call.keys, (Object[]) call.args);
+    }
+
+    /**
+     * Executes the given script call without blocking the caller, by the {@link #batcher} if the batching is enabled,
+     * otherwise by the {@link #reactiveExecutor}. If neither is available, the call is executed synchronously.
+     */
+    CompletableFuture<List<?>> executeAsync(ScriptCall call) {
+        if (batcher != null) {
+            return batcher.submit(call.script, call.keys, call.args, call.coalescable);
+        }
+        if (reactiveExecutor != null) {
+            return reactiveExecutor.execute(call.script, call.keys, call.args);
+        }
+
+        CompletableFuture<List<?>> result = new CompletableFuture<>();
+        try {
+            result.complete(execute(call));
+        } catch (RuntimeException e) {
+            result.completeExceptionally(e);
+        }
+        return result;
+    }
+
+    /**
+     * Stops the batching, if it is enabled.
+     */
+    @Override
+    public void close() {
+        if (batcher != null) {
+            batcher.close();
+        }
+    }
+}
@@ -0,0 +1,199 @@
+package com.github.sajjaadalipour.ratelimit.repositories.redis;
+
+import com.github.sajjaadalipour.ratelimit.Rate;
+import com.github.sajjaadalipour.ratelimit.RateDecision;
+import com.github.sajjaadalipour.ratelimit.RateLimiter;
+import com.github.sajjaadalipour.ratelimit.RatePolicy;
+import com.github.sajjaadalipour.ratelimit.conf.properties.RateLimitProperties.Policy;
+
+import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletionStage;
+
+/**
+ * An implementation of {@link RateLimiter} which spreads the keys across several standalone Redis instances, each
+ * one by its own {@link RedisRateCache}, so the rate limit throughput scales with the number of the instances.
+ * <p>
+ * The keys are routed by a consistent hash ring, so adding an instance only moves its share of the keys, and those
+ * keys start from a fresh window. A key is routed by the content of its hash tag, e.g. {@code 0.0.0.0} of
+ * {@code /test_GET_PT1H_3_{0.0.0.0}}, like a Redis Cluster places it, otherwise by the whole key. So the policies of
+ * a requester whose keys are tagged by the same identity are consumed together by a single script of its shard.
+ *
+ * @author Sajjad Alipour
+ */
+public class ShardedRedisRateCache implements RateLimiter, AutoCloseable {
+
+    /**
+     * The number of the points of each shard on the hash ring, which evens out the share of the shards.
+     */
+    static final int VIRTUAL_NODES = 160;
+
+    private final List<RedisRateCache> shards;
+
+    /**
+     * The sorted points of the hash ring.
+     */
+    private final long[] points;
+
+    /**
+     * The index of the shard which owns each point of {@link #points}.
+     */
+    private final int[] owners;
+
+    public ShardedRedisRateCache(List<RedisRateCache> shards) {
+        if (shards.isEmpty()) {
+            throw new IllegalArgumentException("Rate limit redis shards are empty");
+        }
+
+        this.shards = Collections.unmodifiableList(new ArrayList<>(shards));
+        this.points = new long[shards.size() * VIRTUAL_NODES];
+        this.owners = new int[points.length];
+
+        long[] entries = new long[points.length];
+        for (int shard = 0; shard < shards.size(); shard++) {
+            for (int node = 0; node < VIRTUAL_NODES; node++) {
+                entries[shard * VIRTUAL_NODES + node] = hash("shard-" + shard + "-" + node);
+            }
+        }
+        Integer[] order = new Integer[entries.length];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Long.compare(entries[a], entries[b]));
+        for (int i = 0; i < order.length; i++) {
+            points[i] = entries[order[i]];
+            owners[i] = order[i] / VIRTUAL_NODES;
+        }
+    }
+
+    @Override
+    public Rate consume(@Nonnull RatePolicy ratePolicy) {
+        return shardOf(ratePolicy.getKey()).consume(ratePolicy);
+    }
+
+    @Override
+    public long tryConsume(@Nonnull String key, @Nonnull Policy policy) {
+        return shardOf(key).tryConsume(key, policy);
+    }
+
+    /**
+     * Consumes all the rate policies of a request together by their shard, if all the keys are routed to the same
+     * shard, otherwise one by one by the shard of each key, and when a policy rejects the request, the request is
+     * given back to the keys of the policies before it by their shards.
+     *
+     * @return The index of the first policy which does not allow the request, or {@code -1} if all of them allow it.
+     */
+    @Override
+    public int tryConsumeAll(@Nonnull List<String> keys, @Nonnull List<Policy> policies, @Nonnull long[] decisions) {
+        final RedisRateCache shard = commonShardOf(keys);
+        if (shard != null) {
+            return shard.tryConsumeAll(keys, policies, decisions);
+        }
+
+        for (int i = 0; i < policies.size(); i++) {
+            decisions[i] = tryConsume(keys.get(i), policies.get(i));
+            if (!RateDecision.isAllowed(decisions[i])) {
+                for (int j = 0; j < i; j++) {
+                    shardOf(keys.get(j)).refund(keys.get(j), policies.get(j), decisions[j]);
+                }
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public CompletionStage<Rate> consumeAsync(@Nonnull RatePolicy ratePolicy) {
+        return shardOf(ratePolicy.getKey()).consumeAsync(ratePolicy);
+    }
+
+    @Override
+    public CompletionStage<Integer> tryConsumeAllAsync(@Nonnull List<String> keys,
+                                                       @Nonnull List<Policy> policies,
+                                                       @Nonnull long[] decisions) {
+        final RedisRateCache shard = commonShardOf(keys);
+        return shard != null ?
+                shard.tryConsumeAllAsync(keys, policies, decisions) :
+                RateLimiter.super.tryConsumeAllAsync(keys, policies, decisions);
+    }
+
+    /**
+     * Removes the rate limit of the given key from its shard.
+     */
+    public void reset(@Nonnull String key) {
+        shardOf(key).reset(key);
+    }
+
+    /**
+     * Stops the batching of all the shards.
+     */
+    @Override
+    public void close() {
+        shards.forEach(RedisRateCache::close);
+    }
+
+    /**
+     * @return The shard which the given key is routed to.
+     */
+    RedisRateCache shardOf(String key) {
+        final long hash = routingHashOf(key);
+        int index = Arrays.binarySearch(points, hash);
+        if (index < 0) {
+            index = -index - 1;
+        }
+        return shards.get(owners[index == points.length ? 0 : index]);
+    }
+
+    /**
+     * @return The shard which all the given keys are routed to, or {@code null} if they are routed to several shards.
+     */
+    private RedisRateCache commonShardOf(List<String> keys) {
+        final RedisRateCache shard = shardOf(keys.get(0));
+        for (int i = 1; i < keys.size(); i++) {
+            if (shardOf(keys.get(i)) != shard) {
+                return null;
+            }
+        }
+        return shard;
+    }
+
+    /**
+     * Hashes the content of the first non-empty hash tag of the given key, otherwise the whole key.
+     */
+    private static long routingHashOf(String key) {
+        final int start = key.indexOf('{');
+        if (start >= 0) {
+            final int end = key.indexOf('}', start + 1);
+            if (end > start + 1) {
+                return hash(key, start + 1, end);
+            }
+        }
+        return hash(key, 0, key.length());
+    }
+
+    private static long hash(String value) {
+        return hash(value, 0, value.length());
+    }
+
+    /**
+     * The 64 bit FNV-1a hash of the given range of chars, mixed by the finalizer of MurmurHash3 to spread the close
+     * values, e.g. the sequential identities, across the ring.
+     */
+    private static long hash(String value, int from, int to) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = from; i < to; i++) {
+            hash ^= value.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
@@ -0,0 +1,150 @@
+package com.github.sajjaadalipour.ratelimit.shedding;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.time.Duration;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.DoubleSupplier;
+
+/**
+ * Samples the load of the process by a background thread, so checking whether the process is overloaded
+ * on the hot path is just a volatile read.
+ * <p>
+ * The process is overloaded when the usage of the request thread pool, the active threads plus the queued tasks
+ * by the max pool size, or the CPU load of the process reaches its threshold. The thread pool is only known once
+ * the web server is started, and the CPU load is only known if the JVM provides it.
+ *
+ * @author Sajjad Alipour
+ */
+public class LoadMonitor implements AutoCloseable {
+
+    private final double maxThreadPoolUsage;
+
+    private final double maxCpuLoad;
+
+    /**
+     * Returns the CPU load of the process between 0 and 1, or a negative value if it is not available.
+     */
+    private final DoubleSupplier cpuLoad;
+
+    private volatile ThreadPoolExecutor threadPool;
+
+    private volatile double threadPoolUsage;
+
+    private volatile double lastCpuLoad = -1;
+
+    private volatile boolean overloaded;
+
+    private volatile boolean running = true;
+
+    /**
+     * The background thread, it is {@code null} if the load is only sampled by calling {@link #sample()}.
+     */
+    private final Thread sampler;
+
+    /**
+     * @param maxThreadPoolUsage The usage of the request thread pool which the process is overloaded at.
+     * @param maxCpuLoad         The CPU load of the process which the process is overloaded at.
+     * @param interval           Determines how often the load should be sampled.
+     */
+    public LoadMonitor(double maxThreadPoolUsage, double maxCpuLoad, @Nonnull Duration interval) {
+        this(maxThreadPoolUsage, maxCpuLoad, processCpuLoad(), interval);
+    }
+
+    LoadMonitor(double maxThreadPoolUsage, double maxCpuLoad, DoubleSupplier cpuLoad, @Nullable Duration interval) {
+        this.maxThreadPoolUsage = maxThreadPoolUsage;
+        this.maxCpuLoad = maxCpuLoad;
+        this.cpuLoad = cpuLoad;
+
+        if (interval == null) {
+            this.sampler = null;
+            return;
+        }
+
+        if (interval.isNegative() || interval.isZero()) {
+            throw new IllegalArgumentException("The load sampling interval should be positive");
+        }
+
+        final long intervalNanos = interval.toNanos();
+        this.sampler = new Thread(() -> {
+            while (running) {
+                sample();
+                LockSupport.parkNanos(this, intervalNanos);
+            }
+        }, "rate-limit-load-monitor");
+        this.sampler.setDaemon(true);
+        this.sampler.start();
+    }
+
+    /**
+     * Samples the load and decides whether the process is overloaded.
+     */
+    void sample() {
+        ThreadPoolExecutor pool = threadPool;
+        double usage = 0;
+        if (pool != null && pool.getMaximumPoolSize() > 0) {
+            usage = (double) (pool.getActiveCount() + pool.getQueue().size()) / pool.getMaximumPoolSize();
+        }
+
+        double load = cpuLoad.getAsDouble();
+        threadPoolUsage = usage;
+        lastCpuLoad = load;
+        overloaded = usage >= maxThreadPoolUsage || load >= maxCpuLoad;
+    }
+
+    /**
+     * @param threadPool The thread pool which serves the requests.
+     */
+    public void setThreadPool(@Nullable ThreadPoolExecutor threadPool) {
+        this.threadPool = threadPool;
+    }
+
+    /**
+     * @return Whether the process was overloaded at the last sample.
+     */
+    public boolean isOverloaded() {
+        return overloaded;
+    }
+
+    /**
+     * @return The usage of the request thread pool at the last sample.
+     */
+    public double getThreadPoolUsage() {
+        return threadPoolUsage;
+    }
+
+    /**
+     * @return The CPU load of the process at the last sample, or a negative value if it is not available.
+     */
+    public double getCpuLoad() {
+        return lastCpuLoad;
+    }
+
+    /**
+     * Stops the background thread, the load is not sampled anymore.
+     */
+    @Override
+    public void close() {
+        running = false;
+        if (sampler != null) {
+            LockSupport.unpark(sampler);
+            try {
+                sampler.join(TimeUnit.SECONDS.toMillis(1));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private static DoubleSupplier processCpuLoad() {
+        OperatingSystemMXBean bean = ManagementFactory.getOperatingSystemMXBean();
+        if (bean instanceof com.sun.management.OperatingSystemMXBean) {
+            return ((com.sun.management.OperatingSystemMXBean) bean)::getProcessCpuLoad;
+        }
+        return () -> -1;
+    }
+}
@@ -0,0 +1,26 @@
+-- Acquires a permit of a key limited by the count of in-flight requests, by the time of the Redis server.
+--
+-- KEYS[1]: A sorted set of the permits scored by their lease expiration in epoch milliseconds.
+-- ARGV[1]: The max number of in-flight requests, the count of the policy.
+-- ARGV[2]: The lease of the permit, the duration of the policy, in milliseconds.
+-- ARGV[3]: The unique id of the permit.
+--
+-- Returns { 1 } if the permit is acquired, otherwise { 0 }.
+
+-- Replicates the writes instead of the script, since it reads the server time.
+if redis.replicate_commands then
+    redis.replicate_commands()
+end
+
+local time = redis.call('TIME')
+local now = tonumber(time[1]) * 1000 + math.floor(tonumber(time[2]) / 1000)
+local lease = tonumber(ARGV[2])
+
+redis.call('ZREMRANGEBYSCORE', KEYS[1], '-inf', now)
+if redis.call('ZCARD', KEYS[1]) >= tonumber(ARGV[1]) then
+    return { 0 }
+end
+
+redis.call('ZADD', KEYS[1], string.format('%.0f', now + lease), ARGV[3])
+redis.call('PEXPIRE', KEYS[1], lease)
+return { 1 }
@@ -0,0 +1,61 @@
+-- Consumes the requests of a key limited by the fixed window algorithm, by the time of the Redis server.
+--
+-- KEYS[1]: Holds the remaining value of the current window, or -2 when blocked, and expires at the end of it.
+-- ARGV[1]: The count of the policy.
+-- ARGV[2]: The window, the duration of the policy, in milliseconds.
+-- ARGV[3]: The block duration in milliseconds, a negative value means no blocking.
+-- ARGV[4]: The number of requests to consume, the concurrent requests of the same key may be consumed together.
+-- ARGV[5]: Optional, '1' to grant fewer requests than asked if the remaining value is less, e.g. to lease a quota, the
+--          key is only exceeded if no request is granted.
+--
+-- Returns the remaining value after the granted requests, or -1 when exceeded and -2 when blocked, the reset time in
+-- epoch milliseconds and the number of granted requests.
+
+-- Replicates the writes instead of the script, since it reads the server time.
+if redis.replicate_commands then
+    redis.replicate_commands()
+end
+
+local time = redis.call('TIME')
+local now = tonumber(time[1]) * 1000 + math.floor(tonumber(time[2]) / 1000)
+local count = tonumber(ARGV[1])
+local window = math.max(tonumber(ARGV[2]), 1)
+local block = tonumber(ARGV[3])
+local permits = tonumber(ARGV[4])
+local partial = ARGV[5] == '1'
+
+local remaining, ttl = count, window
+local value = redis.call('GET', KEYS[1])
+if value then
+    remaining = tonumber(value)
+    ttl = redis.call('PTTL', KEYS[1])
+    if ttl < 0 then
+        ttl = window
+        redis.call('PEXPIRE', KEYS[1], ttl)
+    end
+end
+
+local granted = 0
+if remaining > -1 then
+    granted = math.min(permits, remaining)
+    if granted < permits and not (partial and granted > 0) then
+        remaining = -1
+    else
+        remaining = remaining - granted
+    end
+
+    if value and remaining > -1 then
+        -- Keeps the expiration, so the window does not slide by the requests.
+        redis.call('DECRBY', KEYS[1], granted)
+    else
+        redis.call('SET', KEYS[1], remaining, 'PX', ttl)
+    end
+end
+
+if remaining == -1 and block >= 0 then
+    ttl = math.max(block, 1)
+    redis.call('SET', KEYS[1], -2, 'PX', ttl)
+    return { -2, now + ttl, granted }
+end
+
+return { remaining, now + ttl, granted }
@@ -0,0 +1,35 @@
+-- Consumes the requests of a key limited by the fixed window algorithm, by a counter per window which is named by
+-- the index of the window since the epoch by the time of the Redis server, so the windows are aligned to the wall
+-- clock and a request only increments the counter. The counter expires a second after the end of its window.
+--
+-- KEYS[1]: The prefix of the counters of the key, `<prefix>:<index of the window>` holds the number of the requests
+--          of the window, including the exceeding ones. The counters are on the slot of the prefix by its hash tag.
+-- ARGV[1]: The count of the policy.
+-- ARGV[2]: The window, the duration of the policy, in milliseconds.
+-- ARGV[3]: The number of requests to consume, the concurrent requests of the same key may be consumed together.
+--
+-- Returns the remaining value after the granted requests, or -1 when exceeded, the reset time in epoch milliseconds
+-- and the number of granted requests.
+
+-- Replicates the writes instead of the script, since it reads the server time.
+if redis.replicate_commands then
+    redis.replicate_commands()
+end
+
+local time = redis.call('TIME')
+local now = tonumber(time[1]) * 1000 + math.floor(tonumber(time[2]) / 1000)
+local count = tonumber(ARGV[1])
+local window = math.max(tonumber(ARGV[2]), 1)
+local permits = tonumber(ARGV[3])
+
+local index = math.floor(now / window)
+local counter = KEYS[1] .. ':' .. string.format('%.0f', index)
+local reset = (index + 1) * window
+
+local consumed = redis.call('INCRBY', counter, permits)
+if consumed == permits then
+    redis.call('PEXPIREAT', counter, reset + 1000)
+end
+
+local granted = math.max(math.min(permits, count - consumed + permits), 0)
+return { math.max(count - consumed, -1), reset, granted }
@@ -0,0 +1,70 @@
+-- Consumes a request of several keys limited by the fixed window algorithm together, by the time of the Redis server.
+-- The request is only consumed from the keys if all of them allow it, otherwise only the first key which does not
+-- allow it is updated, to exceed or block it, and the others are left untouched.
+--
+-- KEYS[i]:       Holds the remaining value of the current window of the i-th policy, or -2 when blocked, and
+--                expires at the end of it.
+-- ARGV[3i - 2]:  The count of the i-th policy.
+-- ARGV[3i - 1]:  The window, the duration of the i-th policy, in milliseconds.
+-- ARGV[3i]:      The block duration of the i-th policy in milliseconds, a negative value means no blocking.
+--
+-- Returns the zero based index of the first key which does not allow the request and its remaining value and reset
+-- time in epoch milliseconds, or -1 followed by the remaining value and the reset time of every key if all of them
+-- allow the request.
+
+-- Replicates the writes instead of the script, since it reads the server time.
+if redis.replicate_commands then
+    redis.replicate_commands()
+end
+
+local time = redis.call('TIME')
+local now = tonumber(time[1]) * 1000 + math.floor(tonumber(time[2]) / 1000)
+
+local remainings, ttls, stored = {}, {}, {}
+for i, key in ipairs(KEYS) do
+    local count = tonumber(ARGV[3 * i - 2])
+    local window = math.max(tonumber(ARGV[3 * i - 1]), 1)
+    local block = tonumber(ARGV[3 * i])
+
+    local remaining, ttl = count, window
+    local value = redis.call('GET', key)
+    if value then
+        remaining = tonumber(value)
+        ttl = redis.call('PTTL', key)
+        if ttl < 0 then
+            ttl = window
+            redis.call('PEXPIRE', key, ttl)
+        end
+    end
+
+    if remaining < 1 then
+        if not value then
+            remaining = count - 1
+            redis.call('SET', key, remaining, 'PX', ttl)
+        elseif remaining == 0 then
+            remaining = redis.call('DECR', key)
+        end
+
+        if remaining == -1 and block >= 0 then
+            remaining, ttl = -2, math.max(block, 1)
+            redis.call('SET', key, remaining, 'PX', ttl)
+        end
+        return { i - 1, remaining, now + ttl }
+    end
+
+    remainings[i], ttls[i], stored[i] = remaining, ttl, value ~= false
+end
+
+local result = { -1 }
+for i, key in ipairs(KEYS) do
+    local remaining = remainings[i] - 1
+    if stored[i] then
+        -- Keeps the expiration, so the window does not slide by the requests.
+        redis.call('DECR', key)
+    else
+        redis.call('SET', key, remaining, 'PX', ttls[i])
+    end
+    result[2 * i] = remaining
+    result[2 * i + 1] = now + ttls[i]
+end
+return result
@@ -0,0 +1,47 @@
+-- Consumes a request of several policies limited by the fixed window algorithm together, like fixed_windows.lua, but
+-- by a counter per window of each policy like fixed_window_epoch.lua. None of the counters is incremented unless all
+-- the policies allow the request.
+--
+-- KEYS[i]:      The prefix of the counters of the i-th policy, `<prefix>:<index of the window>` holds the number of
+--               the requests of the window.
+-- ARGV[2i - 1]: The count of the i-th policy.
+-- ARGV[2i]:     The window, the duration of the i-th policy, in milliseconds.
+--
+-- Returns the zero based index of the first policy which does not allow the request followed by -1 and its reset time,
+-- or -1 followed by the remaining value and the reset time of every policy if all of them allow the request.
+
+-- Replicates the writes instead of the script, since it reads the server time.
+if redis.replicate_commands then
+    redis.replicate_commands()
+end
+
+local time = redis.call('TIME')
+local now = tonumber(time[1]) * 1000 + math.floor(tonumber(time[2]) / 1000)
+
+local counters, resets = {}, {}
+for i = 1, #KEYS do
+    local window = math.max(tonumber(ARGV[2 * i]), 1)
+    local index = math.floor(now / window)
+    counters[i] = KEYS[i] .. ':' .. string.format('%.0f', index)
+    resets[i] = (index + 1) * window
+end
+
+local values = redis.call('MGET', unpack(counters))
+
+for i = 1, #KEYS do
+    local count = tonumber(ARGV[2 * i - 1])
+    if (tonumber(values[i]) or 0) >= count then
+        return { i - 1, -1, resets[i] }
+    end
+end
+
+local result = { -1 }
+for i = 1, #KEYS do
+    local consumed = redis.call('INCR', counters[i])
+    if consumed == 1 then
+        redis.call('PEXPIREAT', counters[i], resets[i] + 1000)
+    end
+    result[2 * i] = tonumber(ARGV[2 * i - 1]) - consumed
+    result[2 * i + 1] = resets[i]
+end
+return result
@@ -0,0 +1,86 @@
+-- Consumes a request of several policies limited by the fixed window algorithm together, like fixed_windows.lua, but
+-- keeps the windows of all the policies of an identity as the fields of a single hash, by the time of the Redis server.
+-- Redis has no expiration per field, so each field holds the reset time of its window besides its remaining value, and
+-- a field whose window is ended is treated as absent. The hash expires at the latest reset time of its fields.
+--
+-- KEYS[1]:       The hash of the identity, which holds a field per policy of the identity.
+-- ARGV[4i - 3]:  The field of the i-th policy, which holds `<remaining value, or -2 when blocked>:<reset time>`.
+-- ARGV[4i - 2]:  The count of the i-th policy.
+-- ARGV[4i - 1]:  The window, the duration of the i-th policy, in milliseconds.
+-- ARGV[4i]:      The block duration of the i-th policy in milliseconds, a negative value means no blocking.
+--
+-- Returns the zero based index of the first policy which does not allow the request and its remaining value and reset
+-- time in epoch milliseconds, or -1 followed by the remaining value and the reset time of every policy if all of them
+-- allow the request.
+
+-- Replicates the writes instead of the script, since it reads the server time.
+if redis.replicate_commands then
+    redis.replicate_commands()
+end
+
+local time = redis.call('TIME')
+local now = tonumber(time[1]) * 1000 + math.floor(tonumber(time[2]) / 1000)
+local policies = #ARGV / 4
+
+local fields = {}
+for i = 1, policies do
+    fields[i] = ARGV[4 * i - 3]
+end
+local values = redis.call('HMGET', KEYS[1], unpack(fields))
+
+local expiresAt = now
+local ttl = redis.call('PTTL', KEYS[1])
+if ttl > 0 then
+    expiresAt = now + ttl
+end
+
+-- Writes the given fields and extends the expiration of the hash to the latest reset time.
+local function store(updates, resetAt)
+    redis.call('HSET', KEYS[1], unpack(updates))
+    if resetAt > expiresAt then
+        redis.call('PEXPIREAT', KEYS[1], resetAt)
+    end
+end
+
+local remainings, resets = {}, {}
+for i = 1, policies do
+    local count = tonumber(ARGV[4 * i - 2])
+    local window = math.max(tonumber(ARGV[4 * i - 1]), 1)
+    local block = tonumber(ARGV[4 * i])
+
+    local remaining, resetAt = count, now + window
+    local value = values[i]
+    if value then
+        local separator = string.find(value, ':', 1, true)
+        local storedResetAt = tonumber(string.sub(value, separator + 1))
+        if storedResetAt > now then
+            remaining, resetAt = tonumber(string.sub(value, 1, separator - 1)), storedResetAt
+        end
+    end
+
+    if remaining < 1 then
+        if remaining == 0 then
+            remaining = -1
+        end
+
+        if remaining == -1 and block >= 0 then
+            remaining, resetAt = -2, now + math.max(block, 1)
+        end
+        store({ fields[i], remaining .. ':' .. resetAt }, resetAt)
+        return { i - 1, remaining, resetAt }
+    end
+
+    remainings[i], resets[i] = remaining, resetAt
+end
+
+local result, updates, latest = { -1 }, {}, now
+for i = 1, policies do
+    local remaining = remainings[i] - 1
+    updates[2 * i - 1] = fields[i]
+    updates[2 * i] = remaining .. ':' .. resets[i]
+    latest = math.max(latest, resets[i])
+    result[2 * i] = remaining
+    result[2 * i + 1] = resets[i]
+end
+store(updates, latest)
+return result
@@ -0,0 +1,41 @@
+-- Consumes a request of a key limited by the generic cell rate algorithm, by the time of the Redis server.
+--
+-- KEYS[1]: Holds the theoretical arrival time in epoch microseconds, or the negated block expiration.
+-- ARGV[1]: The duration of the policy in microseconds.
+-- ARGV[2]: The emission interval, the duration divided by the count, in microseconds.
+-- ARGV[3]: The block duration in milliseconds, a negative value means no blocking.
+--
+-- Returns the remaining value, or -1 when exceeded and -2 when blocked, and the reset time in epoch milliseconds.
+
+-- Replicates the writes instead of the script, since it reads the server time.
+if redis.replicate_commands then
+    redis.replicate_commands()
+end
+
+local time = redis.call('TIME')
+local now = tonumber(time[1]) * 1000000 + tonumber(time[2])
+local period = tonumber(ARGV[1])
+local interval = tonumber(ARGV[2])
+local block = tonumber(ARGV[3])
+
+local tat = tonumber(redis.call('GET', KEYS[1])) or now
+if tat < 0 then
+    if -tat > now then
+        return { -2, math.ceil(-tat / 1000) }
+    end
+    tat = now
+end
+
+local newTat = math.max(tat, now) + interval
+local allowAt = newTat - period
+if allowAt > now then
+    if block >= 0 then
+        local blockedUntil = now + block * 1000
+        redis.call('SET', KEYS[1], string.format('%.0f', -blockedUntil), 'PX', math.max(block, 1))
+        return { -2, math.ceil(blockedUntil / 1000) }
+    end
+    return { -1, math.ceil(allowAt / 1000) }
+end
+
+redis.call('SET', KEYS[1], string.format('%.0f', newTat), 'PX', math.max(math.ceil((newTat - now) / 1000), 1))
+return { math.floor((now + period - newTat) / interval), math.ceil(newTat / 1000) }
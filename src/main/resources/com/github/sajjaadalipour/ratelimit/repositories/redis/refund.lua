@@ -0,0 +1,95 @@
+-- Gives a request back to a key which has allowed it, when another policy of the same request rejects the request,
+-- so the key is left as if the request was never consumed, although a concurrent request may see it consumed in the
+-- meantime. A blocked key, or a key which is expired or reset in the meantime, is left as it is. The expiration of
+-- the key is kept.
+--
+-- KEYS[1]: The key as it is consumed by the script of its algorithm, or the counter of the consumed window of
+--          the epoch layout.
+-- ARGV[1]: The algorithm of the key, 'FIXED_WINDOW', 'FIXED_WINDOW_HASH', 'FIXED_WINDOW_EPOCH', 'GCRA',
+--          'TOKEN_BUCKET' or 'SLIDING_WINDOW'.
+-- ARGV[2]: The count of the policy, or the emission interval in microseconds of 'GCRA'.
+-- ARGV[3]: The field of the key in the hash of its identity, of 'FIXED_WINDOW_HASH'.
+-- ARGV[4]: The reset time of the consumed window in epoch milliseconds, of 'FIXED_WINDOW_HASH'.
+--
+-- Returns { 1 } if the request is given back, otherwise { 0 }.
+
+local algorithm = ARGV[1]
+
+if algorithm == 'FIXED_WINDOW_EPOCH' then
+    local consumed = tonumber(redis.call('GET', KEYS[1]))
+    if consumed and consumed > 0 then
+        redis.call('DECR', KEYS[1])
+        return { 1 }
+    end
+    return { 0 }
+end
+
+if algorithm == 'FIXED_WINDOW_HASH' then
+    local value = redis.call('HGET', KEYS[1], ARGV[3])
+    if not value then
+        return { 0 }
+    end
+
+    local separator = string.find(value, ':', 1, true)
+    local remaining = tonumber(string.sub(value, 1, separator - 1))
+    local resetAt = string.sub(value, separator + 1)
+    if tonumber(resetAt) ~= tonumber(ARGV[4]) or remaining < -1 or remaining >= tonumber(ARGV[2]) then
+        return { 0 }
+    end
+
+    redis.call('HSET', KEYS[1], ARGV[3], (math.max(remaining, 0) + 1) .. ':' .. resetAt)
+    return { 1 }
+end
+
+local value = redis.call('GET', KEYS[1])
+local ttl = redis.call('PTTL', KEYS[1])
+if not value or ttl <= 0 then
+    return { 0 }
+end
+
+if algorithm == 'FIXED_WINDOW' then
+    local remaining = tonumber(value)
+    if remaining < -1 or remaining >= tonumber(ARGV[2]) then
+        return { 0 }
+    end
+    redis.call('SET', KEYS[1], math.max(remaining, 0) + 1, 'PX', ttl)
+    return { 1 }
+end
+
+if algorithm == 'GCRA' then
+    local tat = tonumber(value)
+    if tat < 0 then
+        return { 0 }
+    end
+    redis.call('SET', KEYS[1], string.format('%.0f', tat - tonumber(ARGV[2])), 'PX', ttl)
+    return { 1 }
+end
+
+if algorithm == 'TOKEN_BUCKET' then
+    local tokens, refilledAt = string.match(value, '^(%-?%d+) (%d+)$')
+    if not tokens or tonumber(tokens) < 0 or tonumber(tokens) >= tonumber(ARGV[2]) then
+        return { 0 }
+    end
+    redis.call('SET', KEYS[1], string.format('%d %s', tonumber(tokens) + 1, refilledAt), 'PX', ttl)
+    return { 1 }
+end
+
+if algorithm == 'SLIDING_WINDOW' then
+    local start, previous, current = string.match(value, '^(%d+) (%d+) (%d+)$')
+    if not start then
+        return { 0 }
+    end
+
+    previous, current = tonumber(previous), tonumber(current)
+    if current > 0 then
+        current = current - 1
+    elseif previous > 0 then
+        previous = previous - 1
+    else
+        return { 0 }
+    end
+    redis.call('SET', KEYS[1], string.format('%s %d %d', start, previous, current), 'PX', ttl)
+    return { 1 }
+end
+
+return { 0 }
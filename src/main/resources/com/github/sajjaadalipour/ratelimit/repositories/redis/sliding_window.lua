@@ -0,0 +1,62 @@
+-- Consumes a request of a key limited by the sliding window counter algorithm, by the time of the Redis server.
+--
+-- KEYS[1]: Holds the start of the current window in epoch microseconds, the count of the previous window and
+--          the count of the current window separated by spaces, or -2 and the block expiration when blocked.
+-- ARGV[1]: The count of the policy.
+-- ARGV[2]: The window, the duration of the policy, in microseconds.
+-- ARGV[3]: The block duration in milliseconds, a negative value means no blocking.
+--
+-- Returns the remaining value, or -1 when exceeded and -2 when blocked, and the reset time in epoch milliseconds.
+
+-- Replicates the writes instead of the script, since it reads the server time.
+if redis.replicate_commands then
+    redis.replicate_commands()
+end
+
+local time = redis.call('TIME')
+local now = tonumber(time[1]) * 1000000 + tonumber(time[2])
+local count = tonumber(ARGV[1])
+local window = tonumber(ARGV[2])
+local block = tonumber(ARGV[3])
+
+local start = now - now % window
+local previous, current = 0, 0
+local value = redis.call('GET', KEYS[1])
+if value then
+    local blockedUntil = string.match(value, '^%-2 (%d+)$')
+    if blockedUntil then
+        blockedUntil = tonumber(blockedUntil)
+        if blockedUntil > now then
+            return { -2, math.ceil(blockedUntil / 1000) }
+        end
+    else
+        local storedStart, storedPrevious, storedCurrent = string.match(value, '^(%d+) (%d+) (%d+)$')
+        if storedStart then
+            storedStart = tonumber(storedStart)
+            if storedStart == start then
+                previous, current = tonumber(storedPrevious), tonumber(storedCurrent)
+            elseif storedStart == start - window then
+                previous = tonumber(storedCurrent)
+            end
+        end
+    end
+end
+
+local estimated = previous * (window - (now - start)) / window + current
+if estimated + 1 > count then
+    if block >= 0 then
+        local blockedUntil = now + block * 1000
+        redis.call('SET', KEYS[1], string.format('-2 %.0f', blockedUntil), 'PX', math.max(block, 1))
+        return { -2, math.ceil(blockedUntil / 1000) }
+    end
+
+    local allowedAt = start + window
+    if current + 1 <= count and previous > 0 then
+        allowedAt = math.min(math.max(start + math.ceil(window - (count - current - 1) * window / previous), now), allowedAt)
+    end
+    return { -1, math.ceil(allowedAt / 1000) }
+end
+
+current = current + 1
+redis.call('SET', KEYS[1], string.format('%.0f %d %d', start, previous, current), 'PX', math.max(math.ceil((start + 2 * window - now) / 1000), 1))
+return { math.floor(count - estimated - 1), math.ceil((start + window) / 1000) }
@@ -0,0 +1,58 @@
+-- Consumes a token of a key limited by the token bucket algorithm, by the time of the Redis server.
+--
+-- KEYS[1]: Holds the tokens and the last refill time in epoch microseconds separated by a space,
+--          or -2 and the block expiration when blocked.
+-- ARGV[1]: The capacity of the bucket, the count of the policy.
+-- ARGV[2]: The time to refill a token, the duration divided by the count, in microseconds.
+-- ARGV[3]: The block duration in milliseconds, a negative value means no blocking.
+--
+-- Returns the remaining tokens, or -1 when exceeded and -2 when blocked, and the reset time in epoch milliseconds.
+
+-- Replicates the writes instead of the script, since it reads the server time.
+if redis.replicate_commands then
+    redis.replicate_commands()
+end
+
+local time = redis.call('TIME')
+local now = tonumber(time[1]) * 1000000 + tonumber(time[2])
+local capacity = tonumber(ARGV[1])
+local interval = tonumber(ARGV[2])
+local block = tonumber(ARGV[3])
+
+local tokens, refilledAt = capacity, now
+local value = redis.call('GET', KEYS[1])
+if value then
+    local storedTokens, storedRefilledAt = string.match(value, '^(%-?%d+) (%d+)$')
+    if storedTokens then
+        tokens, refilledAt = tonumber(storedTokens), tonumber(storedRefilledAt)
+        if tokens == -2 then
+            if refilledAt > now then
+                return { -2, math.ceil(refilledAt / 1000) }
+            end
+            tokens, refilledAt = capacity, now
+        end
+    end
+end
+
+if now > refilledAt then
+    local added = math.floor((now - refilledAt) / interval)
+    if tokens + added >= capacity then
+        tokens, refilledAt = capacity, now
+    elseif added > 0 then
+        tokens, refilledAt = tokens + added, refilledAt + added * interval
+    end
+end
+
+if tokens < 1 then
+    if block >= 0 then
+        local blockedUntil = now + block * 1000
+        redis.call('SET', KEYS[1], string.format('-2 %.0f', blockedUntil), 'PX', math.max(block, 1))
+        return { -2, math.ceil(blockedUntil / 1000) }
+    end
+    return { -1, math.ceil((refilledAt + interval) / 1000) }
+end
+
+tokens = tokens - 1
+local fullAt = refilledAt + (capacity - tokens) * interval
+redis.call('SET', KEYS[1], string.format('%d %.0f', tokens, refilledAt), 'PX', math.max(math.ceil((fullAt - now) / 1000), 1))
+return { tokens, math.ceil(fullAt / 1000) }
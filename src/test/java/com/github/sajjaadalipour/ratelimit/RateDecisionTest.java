@@ -0,0 +1,55 @@
+package com.github.sajjaadalipour.ratelimit;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+
+import static com.github.sajjaadalipour.ratelimit.Rate.RATE_BLOCK_STATE;
+import static com.github.sajjaadalipour.ratelimit.Rate.RATE_EXCEED_STATE;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for {@link RateDecision}.
+ *
+ * @author Sajjad Alipour
+ */
+class RateDecisionTest {
+
+    @Test
+    void of_GivenRemainingAndReset_ShouldDecodeTheSameValues() {
+        long resetMillis = Instant.parse("2100-01-01T00:00:00.123Z").toEpochMilli();
+        long decision = RateDecision.of(42, resetMillis);
+
+        assertEquals(42, RateDecision.remaining(decision));
+        assertEquals(resetMillis, RateDecision.resetMillis(decision));
+        assertTrue(RateDecision.isAllowed(decision));
+    }
+
+    @Test
+    void of_GivenExceedAndBlockStates_ShouldNotBeAllowed() {
+        long exceeded = RateDecision.of(RATE_EXCEED_STATE, 1000);
+        long blocked = RateDecision.of(RATE_BLOCK_STATE, 1000);
+
+        assertTrue(RateDecision.isExceed(exceeded));
+        assertTrue(RateDecision.isBlocked(blocked));
+        assertFalse(RateDecision.isAllowed(exceeded));
+        assertFalse(RateDecision.isAllowed(blocked));
+    }
+
+    @Test
+    void of_GivenTooLargeRemaining_ShouldSaturateIt() {
+        long decision = RateDecision.of(Integer.MAX_VALUE, 1000);
+
+        assertEquals(RateDecision.MAX_REMAINING, RateDecision.remaining(decision));
+        assertEquals(1000, RateDecision.resetMillis(decision));
+    }
+
+    @Test
+    void toRate_ShouldMaterializeTheDecision() {
+        Rate rate = RateDecision.toRate("test", RateDecision.of(RATE_BLOCK_STATE, 5000));
+
+        assertEquals("test", rate.getKey());
+        assertEquals(Instant.ofEpochMilli(5000), rate.getExpiration());
+        assertTrue(rate.isBlocked());
+    }
+}
@@ -0,0 +1,44 @@
+package com.github.sajjaadalipour.ratelimit.clock;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import static org.awaitility.Awaitility.await;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for {@link CachedRateClock}.
+ *
+ * @author Sajjad Alipour
+ */
+class CachedRateClockTest {
+
+    @Test
+    void millis_ShouldFollowTheSystemClock() throws InterruptedException {
+        CachedRateClock clock = new CachedRateClock(Duration.ofMillis(1));
+        long start = clock.millis();
+
+        assertTrue(Math.abs(System.currentTimeMillis() - start) < 1000);
+        await().atMost(2, TimeUnit.SECONDS).until(() -> clock.millis() > start);
+
+        clock.close();
+    }
+
+    @Test
+    void millis_WhenClosed_ShouldNotBeUpdated() throws InterruptedException {
+        CachedRateClock clock = new CachedRateClock(Duration.ofMillis(1));
+        clock.close();
+        long millis = clock.millis();
+
+        TimeUnit.MILLISECONDS.sleep(20);
+
+        assertEquals(millis, clock.millis());
+    }
+
+    @Test
+    void constructor_WhenPrecisionIsNotPositive_ShouldThrowIllegalArgumentException() {
+        assertThrows(IllegalArgumentException.class, () -> new CachedRateClock(Duration.ZERO));
+    }
+}
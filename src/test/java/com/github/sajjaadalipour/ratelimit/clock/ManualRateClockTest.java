@@ -0,0 +1,43 @@
+package com.github.sajjaadalipour.ratelimit.clock;
+
+import com.github.sajjaadalipour.ratelimit.Rate;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.Instant;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for {@link ManualRateClock}.
+ *
+ * @author Sajjad Alipour
+ */
+class ManualRateClockTest {
+
+    @Test
+    void advance_ShouldMoveTheTimeForward() {
+        ManualRateClock clock = new ManualRateClock(1000);
+        clock.advance(Duration.ofSeconds(1));
+
+        assertEquals(2000, clock.millis());
+    }
+
+    @Test
+    void set_ShouldChangeTheTime() {
+        ManualRateClock clock = new ManualRateClock(1000);
+        clock.set(500);
+
+        assertEquals(500, clock.millis());
+    }
+
+    @Test
+    void rateIsExpired_ShouldBeDecidedByTheClock() {
+        ManualRateClock clock = new ManualRateClock(1000);
+        Rate rate = new Rate("test", Instant.ofEpochMilli(2000), 1);
+
+        assertFalse(rate.isExpired(clock));
+        clock.advance(Duration.ofMillis(1001));
+        assertTrue(rate.isExpired(clock));
+    }
+}
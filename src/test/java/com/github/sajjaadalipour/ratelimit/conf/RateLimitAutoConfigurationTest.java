@@ -1,27 +1,53 @@
 package com.github.sajjaadalipour.ratelimit.conf;
 
+import com.github.sajjaadalipour.ratelimit.ConcurrencyLimiter;
 import com.github.sajjaadalipour.ratelimit.Rate;
 import com.github.sajjaadalipour.ratelimit.RateLimiter;
 import com.github.sajjaadalipour.ratelimit.RatePolicy;
+import com.github.sajjaadalipour.ratelimit.clock.CachedRateClock;
+import com.github.sajjaadalipour.ratelimit.clock.RateClock;
 import com.github.sajjaadalipour.ratelimit.conf.RateLimitAutoConfigurationTest.TestAutoConfig.CustomRateLimiter;
 import com.github.sajjaadalipour.ratelimit.conf.RateLimitAutoConfigurationTest.TestAutoConfig.CustomTooManyRequestErrorHandler;
 import com.github.sajjaadalipour.ratelimit.conf.error.TooManyRequestErrorHandler;
 import com.github.sajjaadalipour.ratelimit.conf.filter.RateLimitFilter;
+import com.github.sajjaadalipour.ratelimit.conf.properties.RateLimitDefaults;
+import com.github.sajjaadalipour.ratelimit.conf.properties.RateLimitFallback;
+import com.github.sajjaadalipour.ratelimit.conf.properties.RateLimitPriority;
+import com.github.sajjaadalipour.ratelimit.conf.properties.RateLimitProperties;
+import com.github.sajjaadalipour.ratelimit.conf.properties.RateLimitRedisLayout;
+import com.github.sajjaadalipour.ratelimit.generators.HashedKeyGenerator;
+import com.github.sajjaadalipour.ratelimit.generators.HeaderBasedKeyGenerator;
+import com.github.sajjaadalipour.ratelimit.repositories.CircuitBreakingRateLimiter;
+import com.github.sajjaadalipour.ratelimit.repositories.InMemoryConcurrencyLimiter;
 import com.github.sajjaadalipour.ratelimit.repositories.InMemoryRateCache;
+import com.github.sajjaadalipour.ratelimit.repositories.InMemoryRateSnapshot;
+import com.github.sajjaadalipour.ratelimit.repositories.OffHeapRateCache;
+import com.github.sajjaadalipour.ratelimit.repositories.redis.LettuceRedisShards;
+import com.github.sajjaadalipour.ratelimit.repositories.redis.RedisConcurrencyLimiter;
 import com.github.sajjaadalipour.ratelimit.repositories.redis.RedisRateCache;
+import com.github.sajjaadalipour.ratelimit.repositories.redis.ShardedRedisRateCache;
+import com.github.sajjaadalipour.ratelimit.shedding.LoadMonitor;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 import org.springframework.beans.factory.NoSuchBeanDefinitionException;
 import org.springframework.boot.autoconfigure.AutoConfigurations;
 import org.springframework.boot.autoconfigure.data.redis.RedisAutoConfiguration;
 import org.springframework.boot.autoconfigure.web.ServerProperties;
 import org.springframework.boot.test.context.runner.WebApplicationContextRunner;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
 import org.springframework.context.annotation.Bean;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.test.util.ReflectionTestUtils;
 
 import javax.annotation.Nonnull;
+import javax.servlet.DispatcherType;
 import javax.servlet.http.HttpServletResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.EnumSet;
 
-import static org.junit.jupiter.api.Assertions.assertEquals;
-import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.*;
 
 /**
  * Unit tests for {@link RateLimitAutoConfiguration}.
@@ -56,7 +82,132 @@ class RateLimitAutoConfigurationTest {
                 "rate-limit.keyGenerators[0].name=BY_IP",
                 "rate-limit.keyGenerators[0].generator=com.github.sajjaadalipour.ratelimit.generators.HeaderBasedKeyGenerator",
                 "rate-limit.keyGenerators[0].params[0]=X-FORWARD-FOR"
-        ).run(context -> assertEquals(InMemoryRateCache.class, context.getBean(RateLimiter.class).getClass()));
+        ).run(context -> {
+            assertEquals(InMemoryRateCache.class, context.getBean(RateLimiter.class).getClass());
+            assertEquals(CachedRateClock.class, context.getBean(RateClock.class).getClass());
+            assertEquals(InMemoryConcurrencyLimiter.class, context.getBean(ConcurrencyLimiter.class).getClass());
+        });
+    }
+
+    @Test
+    void whenKeyGeneratorIsHashed_ShouldWrapTheGeneratorByHashedKeyGenerator() {
+        contextRunner.withPropertyValues(
+                "rate-limit.enabled=true",
+                "rate-limit.repository=IN_MEMORY",
+                "rate-limit.policies[0].duration=5s",
+                "rate-limit.policies[0].count=3",
+                "rate-limit.policies[0].keyGenerator= BY_IP",
+                "rate-limit.policies[0].routes[0].uri=/**",
+                "rate-limit.keyGenerators[0].name=BY_IP",
+                "rate-limit.keyGenerators[0].generator=com.github.sajjaadalipour.ratelimit.generators.HeaderBasedKeyGenerator",
+                "rate-limit.keyGenerators[0].params[0]=X-FORWARD-FOR",
+                "rate-limit.keyGenerators[0].hash-tag=true",
+                "rate-limit.keyGenerators[0].hashed=true"
+        ).run(context -> {
+            Object keyGenerator = context.getBean("BY_IP");
+            assertEquals(HashedKeyGenerator.class, keyGenerator.getClass());
+            Object delegate = ReflectionTestUtils.getField(keyGenerator, "delegate");
+            assertEquals(HeaderBasedKeyGenerator.class, delegate.getClass());
+            assertEquals(true, ReflectionTestUtils.getField(delegate, "hashTag"));
+        });
+    }
+
+    @Test
+    void whenAsyncIsEnabled_ShouldRegisterTheFilterForTheAsyncDispatches() {
+        contextRunner.withPropertyValues(
+                "rate-limit.enabled=true",
+                "rate-limit.repository=IN_MEMORY",
+                "rate-limit.async=true",
+                "rate-limit.policies[0].duration=5s",
+                "rate-limit.policies[0].count=3",
+                "rate-limit.policies[0].keyGenerator= BY_IP",
+                "rate-limit.policies[0].routes[0].uri=/**",
+                "rate-limit.keyGenerators[0].name=BY_IP",
+                "rate-limit.keyGenerators[0].generator=com.github.sajjaadalipour.ratelimit.generators.HeaderBasedKeyGenerator",
+                "rate-limit.keyGenerators[0].params[0]=X-FORWARD-FOR"
+        ).run(context -> {
+            assertTrue(context.getBean(RateLimitProperties.class).isAsync());
+            FilterRegistrationBean<?> registration = context.getBean("rateLimitFilterRegistration", FilterRegistrationBean.class);
+            assertSame(context.getBean(RateLimitFilter.class), registration.getFilter());
+            assertEquals(EnumSet.of(DispatcherType.REQUEST, DispatcherType.ASYNC), ReflectionTestUtils.getField(registration, "dispatcherTypes"));
+        });
+    }
+
+    @Test
+    void whenLoadSheddingIsEnabled_ShouldRegisterBeanOfLoadMonitor() {
+        contextRunner.withPropertyValues(
+                "rate-limit.enabled=true",
+                "rate-limit.repository=IN_MEMORY",
+                "rate-limit.load-shedding.enabled=true",
+                "rate-limit.load-shedding.cpu-load=0.75",
+                "rate-limit.policies[0].duration=5s",
+                "rate-limit.policies[0].count=3",
+                "rate-limit.policies[0].keyGenerator= BY_IP",
+                "rate-limit.policies[0].priority=LOW",
+                "rate-limit.policies[0].routes[0].uri=/**",
+                "rate-limit.keyGenerators[0].name=BY_IP",
+                "rate-limit.keyGenerators[0].generator=com.github.sajjaadalipour.ratelimit.generators.HeaderBasedKeyGenerator",
+                "rate-limit.keyGenerators[0].params[0]=X-FORWARD-FOR"
+        ).run(context -> {
+            assertNotNull(context.getBean(LoadMonitor.class));
+            RateLimitProperties properties = context.getBean(RateLimitProperties.class);
+            assertEquals(0.75, properties.getLoadShedding().getCpuLoad());
+            assertEquals(RateLimitPriority.LOW, properties.getPolicies().iterator().next().getPriority());
+        });
+    }
+
+    @Test
+    void whenRateLimitEnabledAndRepositoryIsOffHeap_TheRatLimiterShouldBeInstanceOfOffHeapRateCache() {
+        contextRunner.withPropertyValues(
+                "rate-limit.enabled=true",
+                "rate-limit.repository=OFF_HEAP",
+                "rate-limit.off-heap.capacity=1024",
+                "rate-limit.policies[0].duration=5s",
+                "rate-limit.policies[0].count=3",
+                "rate-limit.policies[0].keyGenerator= BY_IP",
+                "rate-limit.policies[0].routes[0].uri=/**",
+                "rate-limit.keyGenerators[0].name=BY_IP",
+                "rate-limit.keyGenerators[0].generator=com.github.sajjaadalipour.ratelimit.generators.HeaderBasedKeyGenerator",
+                "rate-limit.keyGenerators[0].params[0]=X-FORWARD-FOR"
+        ).run(context -> assertEquals(OffHeapRateCache.class, context.getBean(RateLimiter.class).getClass()));
+    }
+
+    @Test
+    void whenRepositoryIsInMemoryAndSetSweepInterval_ShouldBindTheInMemoryProperties() {
+        contextRunner.withPropertyValues(
+                "rate-limit.enabled=true",
+                "rate-limit.repository=IN_MEMORY",
+                "rate-limit.in-memory.sweep-interval=5s",
+                "rate-limit.policies[0].duration=5s",
+                "rate-limit.policies[0].count=3",
+                "rate-limit.policies[0].keyGenerator= BY_IP",
+                "rate-limit.policies[0].routes[0].uri=/**",
+                "rate-limit.keyGenerators[0].name=BY_IP",
+                "rate-limit.keyGenerators[0].generator=com.github.sajjaadalipour.ratelimit.generators.HeaderBasedKeyGenerator",
+                "rate-limit.keyGenerators[0].params[0]=X-FORWARD-FOR"
+        ).run(context -> assertEquals(Duration.ofSeconds(5), context.getBean(RateLimitProperties.class).getInMemory().getSweepInterval()));
+    }
+
+    @Test
+    void whenRepositoryIsInMemoryAndSetSnapshotPath_ShouldRegisterBeanOfInMemoryRateSnapshot(@TempDir Path directory) {
+        contextRunner.withPropertyValues(
+                "rate-limit.enabled=true",
+                "rate-limit.repository=IN_MEMORY",
+                "rate-limit.in-memory.snapshot.path=" + directory.resolve("rates.snapshot"),
+                "rate-limit.in-memory.snapshot.interval=1m",
+                "rate-limit.policies[0].duration=5s",
+                "rate-limit.policies[0].count=3",
+                "rate-limit.policies[0].keyGenerator= BY_IP",
+                "rate-limit.policies[0].routes[0].uri=/**",
+                "rate-limit.keyGenerators[0].name=BY_IP",
+                "rate-limit.keyGenerators[0].generator=com.github.sajjaadalipour.ratelimit.generators.HeaderBasedKeyGenerator",
+                "rate-limit.keyGenerators[0].params[0]=X-FORWARD-FOR"
+        ).run(context -> {
+            assertNotNull(context.getBean(InMemoryRateSnapshot.class));
+            assertEquals(Duration.ofMinutes(1), context.getBean(RateLimitProperties.class).getInMemory().getSnapshot().getInterval());
+        });
+
+        assertTrue(Files.exists(directory.resolve("rates.snapshot")));
     }
 
     @Test
@@ -74,7 +225,147 @@ class RateLimitAutoConfigurationTest {
                 "rate-limit.keyGenerators[0].generator=com.github.sajjaadalipour.ratelimit.generators.HeaderBasedKeyGenerator",
                 "rate-limit.keyGenerators[0].params[0]=X-FORWARD-FOR"
         ).withConfiguration(AutoConfigurations.of(RedisAutoConfiguration.class))
-                .run(context -> assertEquals(RedisRateCache.class, context.getBean(RateLimiter.class).getClass()));
+                .run(context -> {
+                    assertEquals(RedisRateCache.class, context.getBean(RateLimiter.class).getClass());
+                    assertEquals(RedisConcurrencyLimiter.class, context.getBean(ConcurrencyLimiter.class).getClass());
+                    assertTrue(context.getBeansOfType(LettuceRedisShards.class).isEmpty());
+                });
+    }
+
+    @Test
+    void whenRedisBatchNearCacheAndLeaseAreEnabled_ShouldBindTheirProperties() {
+        contextRunner.withPropertyValues(
+                "rate-limit.enabled=true",
+                "rate-limit.repository=REDIS",
+                "rate-limit.redis.batch.enabled=true",
+                "rate-limit.redis.batch.max-delay=500us",
+                "rate-limit.redis.near-cache.enabled=true",
+                "rate-limit.redis.near-cache.max-entries=100",
+                "rate-limit.redis.lease.enabled=true",
+                "rate-limit.redis.lease.max-share=0.2",
+                "rate-limit.policies[0].duration=5s",
+                "rate-limit.policies[0].count=3",
+                "rate-limit.policies[0].keyGenerator= BY_IP",
+                "rate-limit.policies[0].routes[0].uri=/**",
+                "rate-limit.keyGenerators[0].name=BY_IP",
+                "rate-limit.keyGenerators[0].generator=com.github.sajjaadalipour.ratelimit.generators.HeaderBasedKeyGenerator",
+                "rate-limit.keyGenerators[0].params[0]=X-FORWARD-FOR"
+        ).withConfiguration(AutoConfigurations.of(RedisAutoConfiguration.class))
+                .run(context -> {
+                    assertEquals(RedisRateCache.class, context.getBean(RateLimiter.class).getClass());
+                    RateLimitProperties.Batch batch = context.getBean(RateLimitProperties.class).getRedis().getBatch();
+                    assertTrue(batch.isEnabled());
+                    assertEquals(Duration.ofNanos(500_000), batch.getMaxDelay());
+                    assertEquals(RateLimitDefaults.BATCH_MAX_SIZE, batch.getMaxSize());
+                    RateLimitProperties.NearCache nearCache = context.getBean(RateLimitProperties.class).getRedis().getNearCache();
+                    assertTrue(nearCache.isEnabled());
+                    assertEquals(100, nearCache.getMaxEntries());
+                    assertFalse(nearCache.isInvalidation());
+                    RateLimitProperties.Lease lease = context.getBean(RateLimitProperties.class).getRedis().getLease();
+                    assertTrue(lease.isEnabled());
+                    assertEquals(RateLimitDefaults.LEASE_DURATION, lease.getDuration());
+                    assertEquals(0.2, lease.getMaxShare());
+                });
+    }
+
+    @Test
+    void whenRedisShardsAndHashTagAreSet_ShouldRegisterAShardedRateLimiterAndATaggedKeyGenerator() {
+        contextRunner.withPropertyValues(
+                "rate-limit.enabled=true",
+                "rate-limit.repository=REDIS",
+                "rate-limit.redis.shards=redis://localhost:6379/1,redis://localhost:6379/2",
+                "rate-limit.policies[0].duration=5s",
+                "rate-limit.policies[0].count=3",
+                "rate-limit.policies[0].keyGenerator= BY_IP",
+                "rate-limit.policies[0].routes[0].uri=/**",
+                "rate-limit.keyGenerators[0].name=BY_IP",
+                "rate-limit.keyGenerators[0].generator=com.github.sajjaadalipour.ratelimit.generators.HeaderBasedKeyGenerator",
+                "rate-limit.keyGenerators[0].params[0]=X-FORWARD-FOR",
+                "rate-limit.keyGenerators[0].hash-tag=true"
+        ).withConfiguration(AutoConfigurations.of(RedisAutoConfiguration.class))
+                .run(context -> {
+                    assertEquals(ShardedRedisRateCache.class, context.getBean(RateLimiter.class).getClass());
+                    assertEquals(2, context.getBean(LettuceRedisShards.class).getTemplates().size());
+                    assertEquals(true, ReflectionTestUtils.getField(context.getBean("BY_IP"), "hashTag"));
+                });
+    }
+
+    @Test
+    void whenRedisCircuitBreakerIsEnabled_ShouldGuardTheRedisRateLimiter() {
+        contextRunner.withPropertyValues(
+                "rate-limit.enabled=true",
+                "rate-limit.repository=REDIS",
+                "rate-limit.redis.near-cache.enabled=true",
+                "rate-limit.redis.near-cache.invalidation=true",
+                "rate-limit.redis.circuit-breaker.enabled=true",
+                "rate-limit.redis.circuit-breaker.timeout=20ms",
+                "rate-limit.redis.circuit-breaker.nodes=4",
+                "rate-limit.policies[0].duration=5s",
+                "rate-limit.policies[0].count=3",
+                "rate-limit.policies[0].keyGenerator= BY_IP",
+                "rate-limit.policies[0].routes[0].uri=/**",
+                "rate-limit.policies[0].fallback=reject",
+                "rate-limit.keyGenerators[0].name=BY_IP",
+                "rate-limit.keyGenerators[0].generator=com.github.sajjaadalipour.ratelimit.generators.HeaderBasedKeyGenerator",
+                "rate-limit.keyGenerators[0].params[0]=X-FORWARD-FOR"
+        ).withConfiguration(AutoConfigurations.of(RedisAutoConfiguration.class))
+                .run(context -> {
+                    RateLimiter rateLimiter = context.getBean(RateLimiter.class);
+                    assertEquals(CircuitBreakingRateLimiter.class, rateLimiter.getClass());
+                    assertEquals(RedisRateCache.class, ((CircuitBreakingRateLimiter) rateLimiter).getDelegate().getClass());
+                    assertNotNull(context.getBean(RedisMessageListenerContainer.class));
+                    RateLimitProperties properties = context.getBean(RateLimitProperties.class);
+                    RateLimitProperties.CircuitBreaker circuitBreaker = properties.getRedis().getCircuitBreaker();
+                    assertEquals(Duration.ofMillis(20), circuitBreaker.getTimeout());
+                    assertEquals(RateLimitDefaults.CIRCUIT_BREAKER_FAILURE_THRESHOLD, circuitBreaker.getFailureThreshold());
+                    assertEquals(4, circuitBreaker.getNodes());
+                    assertEquals(RateLimitFallback.REJECT, properties.getPolicies().iterator().next().getFallback());
+                });
+    }
+
+    @Test
+    void whenRedisShardsAndNearCacheInvalidationAreSet_ShouldFailTheValidation() {
+        contextRunner.withPropertyValues(
+                "rate-limit.enabled=true",
+                "rate-limit.repository=REDIS",
+                "rate-limit.redis.shards=redis://localhost:6379/1",
+                "rate-limit.redis.near-cache.enabled=true",
+                "rate-limit.redis.near-cache.invalidation=true"
+        ).withConfiguration(AutoConfigurations.of(RedisAutoConfiguration.class))
+                .run(context -> assertNotNull(context.getStartupFailure()));
+    }
+
+    @Test
+    void whenRedisLayoutIsHash_ShouldBindTheLayout() {
+        contextRunner.withPropertyValues(
+                "rate-limit.enabled=true",
+                "rate-limit.repository=REDIS",
+                "rate-limit.redis.layout=hash",
+                "rate-limit.policies[0].duration=5s",
+                "rate-limit.policies[0].count=3",
+                "rate-limit.policies[0].keyGenerator= BY_IP",
+                "rate-limit.policies[0].routes[0].uri=/**",
+                "rate-limit.keyGenerators[0].name=BY_IP",
+                "rate-limit.keyGenerators[0].generator=com.github.sajjaadalipour.ratelimit.generators.HeaderBasedKeyGenerator",
+                "rate-limit.keyGenerators[0].params[0]=X-FORWARD-FOR",
+                "rate-limit.keyGenerators[0].hash-tag=true"
+        ).withConfiguration(AutoConfigurations.of(RedisAutoConfiguration.class))
+                .run(context -> {
+                    assertEquals(RedisRateCache.class, context.getBean(RateLimiter.class).getClass());
+                    assertEquals(RateLimitRedisLayout.HASH,
+                            context.getBean(RateLimitProperties.class).getRedis().getLayout());
+                });
+    }
+
+    @Test
+    void whenRedisHashLayoutAndLeaseAreSet_ShouldFailTheValidation() {
+        contextRunner.withPropertyValues(
+                "rate-limit.enabled=true",
+                "rate-limit.repository=REDIS",
+                "rate-limit.redis.layout=hash",
+                "rate-limit.redis.lease.enabled=true"
+        ).withConfiguration(AutoConfigurations.of(RedisAutoConfiguration.class))
+                .run(context -> assertNotNull(context.getStartupFailure()));
     }
 
     @Test
@@ -0,0 +1,352 @@
+package com.github.sajjaadalipour.ratelimit.conf.filter;
+
+import com.github.sajjaadalipour.ratelimit.RateLimitKeyContext;
+import com.github.sajjaadalipour.ratelimit.RateLimitKeyGenerator;
+import com.github.sajjaadalipour.ratelimit.conf.error.DefaultTooManyRequestErrorHandler;
+import com.github.sajjaadalipour.ratelimit.conf.properties.RateLimitMode;
+import com.github.sajjaadalipour.ratelimit.conf.properties.RateLimitPolicyType;
+import com.github.sajjaadalipour.ratelimit.conf.properties.RateLimitPriority;
+import com.github.sajjaadalipour.ratelimit.conf.properties.RateLimitProperties;
+import com.github.sajjaadalipour.ratelimit.conf.properties.RateLimitProperties.Policy;
+import com.github.sajjaadalipour.ratelimit.conf.properties.RateLimitProperties.Policy.Adaptive;
+import com.github.sajjaadalipour.ratelimit.conf.properties.RateLimitProperties.Policy.Route;
+import com.github.sajjaadalipour.ratelimit.conf.properties.RateLimitProperties.Policy.Throttle;
+import com.github.sajjaadalipour.ratelimit.clock.RateClock;
+import com.github.sajjaadalipour.ratelimit.repositories.InMemoryConcurrencyLimiter;
+import com.github.sajjaadalipour.ratelimit.repositories.InMemoryRateCache;
+import com.github.sajjaadalipour.ratelimit.shedding.LoadMonitor;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockAsyncContext;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import javax.servlet.DispatcherType;
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static com.github.sajjaadalipour.ratelimit.conf.properties.RateLimitRepositoryKey.IN_MEMORY;
+import static org.awaitility.Awaitility.await;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Unit tests for {@link RateLimitFilter}.
+ *
+ * @author Sajjad Alipour
+ */
+class RateLimitFilterTest {
+
+    private final InMemoryRateCache inMemoryRateCache = new InMemoryRateCache();
+
+    private RateLimitFilter rateLimitFilter;
+
+    @AfterEach
+    void tearDown() {
+        rateLimitFilter.destroy();
+        inMemoryRateCache.close();
+    }
+
+    @Test
+    void doFilter_WhenExceedAndModeIsReject_ShouldRespondTooManyRequests() throws IOException, ServletException {
+        rateLimitFilter = filterOf(new Policy(Duration.ofMinutes(1), 1, "BY_KEY", routes(), null, null));
+        filter();
+
+        MockHttpServletRequest request = request();
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        MockFilterChain chain = new MockFilterChain();
+        rateLimitFilter.doFilter(request, response, chain);
+
+        assertEquals(429, response.getStatus());
+        assertFalse(request.isAsyncStarted());
+        assertNull(chain.getRequest());
+    }
+
+    @Test
+    void doFilter_WhenExceedAndModeIsThrottle_ShouldParkTheRequestUntilTheRateResets() throws IOException, ServletException {
+        rateLimitFilter = filterOf(throttledPolicy(Duration.ofMillis(300), Duration.ofSeconds(2), 10));
+        filter();
+
+        MockHttpServletRequest request = request();
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        MockFilterChain chain = new MockFilterChain();
+        rateLimitFilter.doFilter(request, response, chain);
+
+        assertTrue(request.isAsyncStarted());
+        assertNull(chain.getRequest());
+        assertEquals(200, response.getStatus());
+
+        MockAsyncContext asyncContext = (MockAsyncContext) request.getAsyncContext();
+        await().atMost(2, TimeUnit.SECONDS).until(() -> asyncContext.getDispatchedPath() != null);
+        assertEquals(200, response.getStatus());
+    }
+
+    @Test
+    void doFilter_WhenRateResetsAfterTheMaxWait_ShouldRespondTooManyRequests() throws IOException, ServletException {
+        rateLimitFilter = filterOf(throttledPolicy(Duration.ofMinutes(1), Duration.ofMillis(100), 10));
+        filter();
+
+        MockHttpServletRequest request = request();
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        rateLimitFilter.doFilter(request, response, new MockFilterChain());
+
+        assertEquals(429, response.getStatus());
+        assertFalse(request.isAsyncStarted());
+    }
+
+    @Test
+    void doFilter_WhenQueueIsFull_ShouldRespondTooManyRequests() throws IOException, ServletException {
+        rateLimitFilter = filterOf(throttledPolicy(Duration.ofSeconds(1), Duration.ofSeconds(2), 1));
+        filter();
+
+        MockHttpServletRequest parkedRequest = request();
+        rateLimitFilter.doFilter(parkedRequest, new MockHttpServletResponse(), new MockFilterChain());
+        assertTrue(parkedRequest.isAsyncStarted());
+
+        MockHttpServletRequest request = request();
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        rateLimitFilter.doFilter(request, response, new MockFilterChain());
+
+        assertEquals(429, response.getStatus());
+        assertFalse(request.isAsyncStarted());
+    }
+
+    @Test
+    void doFilter_WhenKeyHasCountInFlightRequests_ShouldRespondTooManyRequestsUntilTheyAreDone() throws IOException, ServletException {
+        rateLimitFilter = filterOf(new Policy(Duration.ofMinutes(1), 1, "BY_KEY", routes(), null, null, null,
+                RateLimitPolicyType.CONCURRENCY, null, null));
+        MockHttpServletResponse concurrentResponse = new MockHttpServletResponse();
+        MockFilterChain chain = new MockFilterChain(new HttpServlet() {
+            @Override
+            protected void service(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
+                rateLimitFilter.doFilter(request(), concurrentResponse, new MockFilterChain());
+            }
+        });
+
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        rateLimitFilter.doFilter(request(), response, chain);
+
+        assertEquals(200, response.getStatus());
+        assertEquals(429, concurrentResponse.getStatus());
+        filter();
+        filter();
+    }
+
+    @Test
+    void doFilter_WhenTheChainStartsAsync_ShouldHoldThePermitUntilTheRequestCompletes() throws IOException, ServletException {
+        rateLimitFilter = filterOf(new Policy(Duration.ofMinutes(1), 1, "BY_KEY", routes(), null, null, null,
+                RateLimitPolicyType.CONCURRENCY, null, null));
+        MockFilterChain chain = new MockFilterChain(new HttpServlet() {
+            @Override
+            protected void service(HttpServletRequest req, HttpServletResponse resp) {
+                req.startAsync();
+            }
+        });
+
+        MockHttpServletRequest request = request();
+        rateLimitFilter.doFilter(request, new MockHttpServletResponse(), chain);
+        assertTrue(request.isAsyncStarted());
+
+        MockHttpServletResponse concurrentResponse = new MockHttpServletResponse();
+        rateLimitFilter.doFilter(request(), concurrentResponse, new MockFilterChain());
+        assertEquals(429, concurrentResponse.getStatus());
+
+        request.getAsyncContext().complete();
+        filter();
+    }
+
+    @Test
+    void doFilter_WhenTheChainOfAnAdaptivePolicyStartsAsync_ShouldMeasureTheRequestUntilItCompletes() throws IOException, ServletException {
+        rateLimitFilter = filterOf(new Policy(Duration.ofMinutes(1), 1, "BY_KEY", routes(), null, null, null,
+                RateLimitPolicyType.ADAPTIVE_CONCURRENCY, null, null, new Adaptive(1, 1, Duration.ofMillis(1), null)));
+        MockFilterChain chain = new MockFilterChain(new HttpServlet() {
+            @Override
+            protected void service(HttpServletRequest req, HttpServletResponse resp) {
+                req.startAsync();
+            }
+        });
+
+        MockHttpServletRequest request = request();
+        rateLimitFilter.doFilter(request, new MockHttpServletResponse(), chain);
+
+        MockHttpServletResponse concurrentResponse = new MockHttpServletResponse();
+        rateLimitFilter.doFilter(request(), concurrentResponse, new MockFilterChain());
+        assertEquals(429, concurrentResponse.getStatus());
+
+        request.getAsyncContext().complete();
+        filter();
+    }
+
+    @Test
+    void doFilter_WhenOverloaded_ShouldRejectOnlyTheLowPriorityPolicies() throws IOException, ServletException {
+        LoadMonitor loadMonitor = mock(LoadMonitor.class);
+        when(loadMonitor.isOverloaded()).thenReturn(true);
+        Policy lowPriorityPolicy = new Policy(Duration.ofMinutes(1), 10, "BY_KEY", routes(), null, null, null,
+                null, null, null, null, RateLimitPriority.LOW);
+        rateLimitFilter = filterOf(lowPriorityPolicy, loadMonitor);
+
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        rateLimitFilter.doFilter(request(), response, new MockFilterChain());
+        assertEquals(429, response.getStatus());
+
+        when(loadMonitor.isOverloaded()).thenReturn(false);
+        filter();
+
+        rateLimitFilter = filterOf(new Policy(Duration.ofMinutes(1), 10, "BY_KEY", routes(), null, null), loadMonitor);
+        when(loadMonitor.isOverloaded()).thenReturn(true);
+        filter();
+    }
+
+    @Test
+    void doFilter_WhenAsync_ShouldDecideInTheAsyncDispatch() throws IOException, ServletException {
+        rateLimitFilter = filterOf(new Policy(Duration.ofMinutes(1), 1, "BY_KEY", routes(), null, null), null, true);
+
+        MockHttpServletRequest request = request();
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        MockFilterChain chain = new MockFilterChain();
+        rateLimitFilter.doFilter(request, response, chain);
+        assertTrue(request.isAsyncStarted());
+        assertNull(chain.getRequest());
+
+        dispatch(request, response, chain);
+        assertNotNull(chain.getRequest());
+        assertEquals(200, response.getStatus());
+
+        request = request();
+        response = new MockHttpServletResponse();
+        chain = new MockFilterChain();
+        rateLimitFilter.doFilter(request, response, chain);
+        dispatch(request, response, chain);
+        assertNull(chain.getRequest());
+        assertEquals(429, response.getStatus());
+    }
+
+    @Test
+    void doFilter_WhenSeveralConcurrencyPoliciesMatch_ShouldGenerateTheirKeysByOneKeyContext() throws IOException, ServletException {
+        Set<Policy> policies = new HashSet<>(Arrays.asList(
+                new Policy(Duration.ofMinutes(1), 1, "BY_CONTEXT", routes(), null, null, null,
+                        RateLimitPolicyType.CONCURRENCY, null, null),
+                new Policy(Duration.ofMinutes(1), 2, "BY_CONTEXT", routes(), null, null, null,
+                        RateLimitPolicyType.CONCURRENCY, null, null)));
+        RateLimitProperties properties = new RateLimitProperties(true, 0, "keyPrefix", IN_MEMORY,
+                policies, Collections.emptySet(), null, null, null, null, null, false);
+        Set<RateLimitKeyContext> contexts = Collections.newSetFromMap(new IdentityHashMap<>());
+        RateLimitKeyGenerator keyGenerator = new RateLimitKeyGenerator() {
+            @Override
+            public String generateKey(HttpServletRequest servletRequest, Policy policy) {
+                throw new AssertionError("The keys of the policies should be generated by the key context");
+            }
+
+            @Override
+            public String generateKey(RateLimitKeyContext context, Policy policy) {
+                contexts.add(context);
+                return context.getRequestUri() + policy.getCount();
+            }
+        };
+        rateLimitFilter = new RateLimitFilter(properties, inMemoryRateCache, new InMemoryConcurrencyLimiter(),
+                Collections.singletonMap("BY_CONTEXT", keyGenerator), new DefaultTooManyRequestErrorHandler(),
+                RateClock.SYSTEM, null);
+
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        rateLimitFilter.doFilter(request(), response, new MockFilterChain());
+
+        assertEquals(200, response.getStatus());
+        assertEquals(1, contexts.size());
+    }
+
+    @Test
+    void doFilterInternal_InSteadyState_ShouldNotAllocate() throws IOException, ServletException {
+        Set<Policy> policies = new HashSet<>(Arrays.asList(
+                new Policy(Duration.ofSeconds(1), Integer.MAX_VALUE, "BY_SEGMENT", routes(), null, null),
+                new Policy(Duration.ofHours(1), Integer.MAX_VALUE, "BY_SEGMENT", routes(), null, null)));
+        RateLimitProperties properties = new RateLimitProperties(true, 0, "keyPrefix", IN_MEMORY,
+                policies, Collections.emptySet(), null, null, null, null, null, false);
+        RateLimitKeyGenerator keyGenerator = (servletRequest, policy) -> policy.getKeySegment();
+        rateLimitFilter = new RateLimitFilter(properties, inMemoryRateCache,
+                Collections.singletonMap("BY_SEGMENT", keyGenerator), new DefaultTooManyRequestErrorHandler());
+
+        MockHttpServletRequest request = request();
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        FilterChain chain = (servletRequest, servletResponse) -> {
+        };
+        for (int i = 0; i < 100_000; i++) {
+            rateLimitFilter.doFilterInternal(request, response, chain);
+        }
+
+        com.sun.management.ThreadMXBean threadMXBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        long before = threadMXBean.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < 100_000; i++) {
+            rateLimitFilter.doFilterInternal(request, response, chain);
+        }
+        long allocated = threadMXBean.getThreadAllocatedBytes(threadId) - before;
+
+        assertEquals(200, response.getStatus());
+        assertTrue(allocated < 1024, "Expected no allocation per request, but allocated " + allocated + " bytes");
+    }
+
+    /**
+     * Dispatches the given request like the container does after {@link MockAsyncContext#dispatch()}.
+     */
+    private void dispatch(MockHttpServletRequest request,
+                          MockHttpServletResponse response,
+                          MockFilterChain chain) throws IOException, ServletException {
+        assertNotNull(((MockAsyncContext) request.getAsyncContext()).getDispatchedPath());
+        request.setAsyncStarted(false);
+        request.setDispatcherType(DispatcherType.ASYNC);
+        rateLimitFilter.doFilter(request, response, chain);
+    }
+
+    private void filter() throws IOException, ServletException {
+        MockFilterChain chain = new MockFilterChain();
+        rateLimitFilter.doFilter(request(), new MockHttpServletResponse(), chain);
+        assertNotNull(chain.getRequest());
+    }
+
+    private RateLimitFilter filterOf(Policy policy) {
+        return filterOf(policy, null);
+    }
+
+    private RateLimitFilter filterOf(Policy policy, LoadMonitor loadMonitor) {
+        return filterOf(policy, loadMonitor, false);
+    }
+
+    private RateLimitFilter filterOf(Policy policy, LoadMonitor loadMonitor, boolean async) {
+        RateLimitProperties properties = new RateLimitProperties(true, 0, "keyPrefix", IN_MEMORY,
+                Collections.singleton(policy), Collections.emptySet(), null, null, null, null, null, async);
+        RateLimitKeyGenerator keyGenerator = (servletRequest, it) -> "key";
+
+        return new RateLimitFilter(properties, inMemoryRateCache, new InMemoryConcurrencyLimiter(),
+                Collections.singletonMap("BY_KEY", keyGenerator), new DefaultTooManyRequestErrorHandler(),
+                RateClock.SYSTEM, loadMonitor);
+    }
+
+    private static Policy throttledPolicy(Duration duration, Duration maxWait, int maxQueueDepth) {
+        return new Policy(duration, 1, "BY_KEY", routes(), null, null, null, null,
+                RateLimitMode.THROTTLE, new Throttle(maxWait, maxQueueDepth));
+    }
+
+    private static Set<Route> routes() {
+        return Collections.singleton(new Route("/**", null));
+    }
+
+    private static MockHttpServletRequest request() {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/resources");
+        request.setAsyncSupported(true);
+        return request;
+    }
+}
@@ -10,6 +10,7 @@ import java.time.Duration;
 import java.util.Collections;
 import java.util.Set;
 
+import static com.github.sajjaadalipour.ratelimit.conf.properties.RateLimitRepositoryKey.OFF_HEAP;
 import static com.github.sajjaadalipour.ratelimit.conf.properties.RateLimitRepositoryKey.REDIS;
 import static org.junit.jupiter.api.Assertions.*;
 import static org.springframework.http.HttpMethod.GET;
@@ -62,6 +63,31 @@ class RateLimitPropertiesTest {
         assertTrue(properties.isValidPolicyKeyGenerator());
     }
 
+    @Test
+    void isSupportedPolicyAlgorithm_WhenRepositoryIsOffHeapAndPolicyIsGcra_ShouldReturnFalse() {
+        Set<Policy> policies = Collections.singleton(
+                new Policy(Duration.ZERO, 1, "BY_IP", Collections.emptySet(), null, null, RateLimitAlgorithm.GCRA));
+        RateLimitProperties properties = new RateLimitProperties(true, 0, "keyPrefix", OFF_HEAP, policies, Collections.emptySet());
+
+        assertFalse(properties.isSupportedPolicyAlgorithm());
+    }
+
+    @Test
+    void isSupportedPolicyAlgorithm_WhenRepositoryIsRedisAndPolicyIsGcra_ShouldReturnTrue() {
+        Set<Policy> policies = Collections.singleton(
+                new Policy(Duration.ZERO, 1, "BY_IP", Collections.emptySet(), null, null, RateLimitAlgorithm.GCRA));
+        RateLimitProperties properties = new RateLimitProperties(true, 0, "keyPrefix", REDIS, policies, Collections.emptySet());
+
+        assertTrue(properties.isSupportedPolicyAlgorithm());
+    }
+
+    @Test
+    void policy_WhenAlgorithmIsNotSet_ShouldBeFixedWindow() {
+        Policy policy = new Policy(Duration.ZERO, 1, "BY_IP", Collections.emptySet(), null, null);
+
+        assertEquals(RateLimitAlgorithm.FIXED_WINDOW, policy.getAlgorithm());
+    }
+
     @Test
     void checkKeyGeneratorEquality_ShouldNotEqual() throws ClassNotFoundException {
         Class<RateLimitKeyGenerator> classType = (Class<RateLimitKeyGenerator>) Class.forName("com.github.sajjaadalipour.ratelimit.generators.HeaderBasedKeyGenerator");
@@ -80,6 +106,16 @@ class RateLimitPropertiesTest {
         assertEquals(keyGenerator1, keyGenerator2);
     }
 
+    @Test
+    void isValidHashTag_WhenGeneratorDoesNotTakeTheHashTag_ShouldReturnFalse() throws ClassNotFoundException {
+        Class<RateLimitKeyGenerator> headerBased = (Class<RateLimitKeyGenerator>) Class.forName("com.github.sajjaadalipour.ratelimit.generators.HeaderBasedKeyGenerator");
+        Class<RateLimitKeyGenerator> hashed = (Class<RateLimitKeyGenerator>) Class.forName("com.github.sajjaadalipour.ratelimit.generators.HashedKeyGenerator");
+
+        assertTrue(new KeyGenerator("a", headerBased, null, true, null).isValidHashTag());
+        assertTrue(new KeyGenerator("a", hashed, null, false, null).isValidHashTag());
+        assertFalse(new KeyGenerator("a", hashed, null, true, null).isValidHashTag());
+    }
+
     @Test
     void checkPolicyEquality1_ShouldNotBeEqual() {
         String generator = "com.github.sajjaadalipour.ratelimit.generators.HeaderBasedKeyGenerator";
@@ -107,6 +143,24 @@ class RateLimitPropertiesTest {
         assertEquals(policy1, policy2);
     }
 
+    @Test
+    void checkPolicyEquality_WhenOnlyTheBehaviourDiffers_ShouldNotEqual() {
+        String generator = "com.github.sajjaadalipour.ratelimit.generators.HeaderBasedKeyGenerator";
+        Policy.Block block = new Policy.Block();
+        block.setDuration(Duration.ofMinutes(1));
+        Policy policy = new Policy(Duration.ZERO, 1, generator, null, null, null);
+
+        assertNotEquals(policy, new Policy(Duration.ZERO, 1, generator, null, null, block));
+        assertNotEquals(policy, new Policy(Duration.ZERO, 1, generator, null, null, null, null, null, null,
+                new Policy.Throttle(Duration.ofSeconds(1), null)));
+        assertNotEquals(policy, new Policy(Duration.ZERO, 1, generator, null, null, null, null, null, null, null,
+                new Policy.Adaptive(2, null, null, null)));
+        assertNotEquals(policy, new Policy(Duration.ZERO, 1, generator, null, null, null, null, null, null, null, null,
+                RateLimitPriority.LOW));
+        assertNotEquals(policy, new Policy(Duration.ZERO, 1, generator, null, null, null, null, null, null, null, null,
+                null, RateLimitFallback.REJECT));
+    }
+
     @Test
     void checkRouteEquality1_ShouldNotEqual() {
         Policy.Route route1 = new Policy.Route("/test", GET);
@@ -130,4 +184,10 @@ class RateLimitPropertiesTest {
 
         Assertions.assertEquals(route1, route2);
     }
+
+    @Test
+    void isValidLimits_WhenAdaptiveMinLimitIsGreaterThanMaxLimit_ShouldReturnFalse() {
+        assertFalse(new Policy.Adaptive(10, 5, null, null).isValidLimits());
+        assertTrue(new Policy.Adaptive(null, null, null, null).isValidLimits());
+    }
 }
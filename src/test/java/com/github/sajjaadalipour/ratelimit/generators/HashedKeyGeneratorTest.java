@@ -0,0 +1,60 @@
+package com.github.sajjaadalipour.ratelimit.generators;
+
+import com.github.sajjaadalipour.ratelimit.conf.properties.RateLimitProperties.Policy;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import javax.servlet.http.HttpServletRequest;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for {@link HashedKeyGenerator}.
+ *
+ * @author Sajjad Alipour
+ */
+class HashedKeyGeneratorTest {
+
+    @Test
+    void generateKey_ShouldEncodeTheKeyOfTheDelegateIntoA22CharsDigest() {
+        HashedKeyGenerator keyGenerator = new HashedKeyGenerator(
+                new HeaderBasedKeyGenerator(Collections.singleton("X-Forwarded-For")));
+        HttpServletRequest httpServletRequestMock = Mockito.mock(HttpServletRequest.class);
+        Mockito.when(httpServletRequestMock.getRequestURI()).thenReturn("/test");
+        Mockito.when(httpServletRequestMock.getMethod()).thenReturn("GET");
+        Mockito.when(httpServletRequestMock.getHeader("X-Forwarded-For")).thenReturn("0.0.0.0");
+
+        Policy policy = new Policy(Duration.ofHours(1), 3, "TEST", null, null, null);
+
+        assertEquals("zCVmdopyViw0kd9Dk4mBug", keyGenerator.generateKey(httpServletRequestMock, policy));
+    }
+
+    @Test
+    void encode_ShouldHaveAFixedSizeAndNoCollisionsForDistinctKeys() {
+        Set<String> encodedKeys = new HashSet<>();
+        for (int i = 0; i < 100_000; i++) {
+            String encoded = HashedKeyGenerator.encode("/api/v1/accounts/" + i + "/transactions_GET_PT1H_1000_10.0.0." + i % 256);
+            assertEquals(22, encoded.length());
+            assertTrue(encoded.matches("[A-Za-z0-9_-]+"));
+            encodedKeys.add(encoded);
+        }
+
+        assertEquals(100_000, encodedKeys.size());
+    }
+
+    @Test
+    void encode_WhenTheKeyHasAHashTag_ShouldKeepTheSameTagForTheKeysOfTheSameRequester() {
+        String perSecond = HashedKeyGenerator.encode("/test_GET_PT1S_10_{0.0.0.0}");
+        String perHour = HashedKeyGenerator.encode("/test_GET_PT1H_100_{0.0.0.0}");
+        String otherRequester = HashedKeyGenerator.encode("/test_GET_PT1S_10_{0.0.0.1}");
+
+        assertEquals(35, perSecond.length());
+        assertEquals(perSecond.substring(0, 13), perHour.substring(0, 13));
+        assertNotEquals(perSecond.substring(13), perHour.substring(13));
+        assertNotEquals(perSecond.substring(0, 13), otherRequester.substring(0, 13));
+    }
+}
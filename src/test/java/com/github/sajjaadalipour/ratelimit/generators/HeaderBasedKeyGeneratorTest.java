@@ -1,5 +1,6 @@
 package com.github.sajjaadalipour.ratelimit.generators;
 
+import com.github.sajjaadalipour.ratelimit.RateLimitKeyContext;
 import com.github.sajjaadalipour.ratelimit.conf.properties.RateLimitProperties.Policy;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
@@ -46,6 +47,19 @@ class HeaderBasedKeyGeneratorTest {
         Assertions.assertEquals(5, generatedKey.split("_").length);
     }
 
+    @Test
+    void generateKey_WhenHashTagIsEnabled_ShouldWrapTheHeadersInAHashTag() {
+        HeaderBasedKeyGenerator keyGenerator = new HeaderBasedKeyGenerator(Collections.singleton("X-Forwarded-For"), true);
+        HttpServletRequest httpServletRequestMock = Mockito.mock(HttpServletRequest.class);
+        Mockito.when(httpServletRequestMock.getRequestURI()).thenReturn("/test");
+        Mockito.when(httpServletRequestMock.getMethod()).thenReturn("GET");
+        Mockito.when(httpServletRequestMock.getHeader("X-Forwarded-For")).thenReturn("0.0.0.0");
+
+        Policy policy = new Policy(Duration.ofHours(1), 3, "TEST", null, null, null);
+
+        assertEquals("/test_GET_PT1H_3_{0.0.0.0}", keyGenerator.generateKey(httpServletRequestMock, policy));
+    }
+
     @Test
     void generateKey_GivenTwoParam_ShouldReturnAKey_WithCombinationOf6Things() {
         HeaderBasedKeyGenerator keyGenerator = new HeaderBasedKeyGenerator(new HashSet<>(Arrays.asList("X-Forwarded-For", "User-Id")));
@@ -61,4 +75,21 @@ class HeaderBasedKeyGeneratorTest {
 
         Assertions.assertEquals(6, generatedKey.split("_").length);
     }
-}
\ No newline at end of file
+
+    @Test
+    void generateKey_GivenAContextOfSeveralPolicies_ShouldReadTheHeadersOncePerRequest() {
+        HeaderBasedKeyGenerator keyGenerator = new HeaderBasedKeyGenerator(Collections.singleton("X-Forwarded-For"), true);
+        HttpServletRequest httpServletRequestMock = Mockito.mock(HttpServletRequest.class);
+        Mockito.when(httpServletRequestMock.getRequestURI()).thenReturn("/test");
+        Mockito.when(httpServletRequestMock.getMethod()).thenReturn("GET");
+        Mockito.when(httpServletRequestMock.getHeader("X-Forwarded-For")).thenReturn("0.0.0.0");
+        RateLimitKeyContext context = new RateLimitKeyContext(httpServletRequestMock);
+
+        assertEquals("/test_GET_PT1S_10_{0.0.0.0}",
+                keyGenerator.generateKey(context, new Policy(Duration.ofSeconds(1), 10, "TEST", null, null, null)));
+        assertEquals("/test_GET_PT1H_3_{0.0.0.0}",
+                keyGenerator.generateKey(context, new Policy(Duration.ofHours(1), 3, "TEST", null, null, null)));
+        Mockito.verify(httpServletRequestMock, Mockito.times(1)).getHeader("X-Forwarded-For");
+        Mockito.verify(httpServletRequestMock, Mockito.times(1)).getRequestURI();
+    }
+}
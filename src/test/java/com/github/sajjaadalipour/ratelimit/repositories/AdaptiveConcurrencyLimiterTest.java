@@ -0,0 +1,97 @@
+package com.github.sajjaadalipour.ratelimit.repositories;
+
+import com.github.sajjaadalipour.ratelimit.ConcurrencyLimiter.Permit;
+import com.github.sajjaadalipour.ratelimit.conf.properties.RateLimitPolicyType;
+import com.github.sajjaadalipour.ratelimit.conf.properties.RateLimitProperties.Policy;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for {@link AdaptiveConcurrencyLimiter}.
+ *
+ * @author Sajjad Alipour
+ */
+class AdaptiveConcurrencyLimiterTest {
+
+    private static final Policy POLICY = new Policy(Duration.ofMinutes(1), 20, "BY_IP", Collections.emptySet(),
+            null, null, null, RateLimitPolicyType.ADAPTIVE_CONCURRENCY, null, null);
+
+    private final AtomicLong nanoTime = new AtomicLong();
+
+    private final AdaptiveConcurrencyLimiter limiter =
+            new AdaptiveConcurrencyLimiter(20, 2, 200, Duration.ofSeconds(1), 1.5, nanoTime::get);
+
+    @Test
+    void tryAcquire_WhenLimitIsReached_ShouldReturnNullUntilAPermitIsReleased() {
+        List<Permit> permits = acquire(20);
+        assertNull(limiter.tryAcquire("test", POLICY));
+        assertEquals(20, limiter.getInFlight());
+
+        permits.get(0).release();
+
+        assertNotNull(limiter.tryAcquire("test", POLICY));
+    }
+
+    @Test
+    void adapt_WhenLatencyIsStableUnderLoad_ShouldGrowTheLimit() {
+        for (int i = 0; i < 10; i++) {
+            window(limiter.getLimit(), 10);
+        }
+
+        assertTrue(limiter.getLimit() > 20, "limit: " + limiter.getLimit());
+    }
+
+    @Test
+    void adapt_WhenLatencyRises_ShouldShrinkTheLimit() {
+        for (int i = 0; i < 10; i++) {
+            window(limiter.getLimit(), 10);
+        }
+        int stableLimit = limiter.getLimit();
+
+        for (int i = 0; i < 20; i++) {
+            window(limiter.getLimit(), 100);
+        }
+
+        assertTrue(limiter.getLimit() < stableLimit / 2, "limit: " + limiter.getLimit());
+        assertTrue(limiter.getLimit() >= 2);
+    }
+
+    @Test
+    void adapt_WhenTheLimitIsNotUsed_ShouldNotGrowTheLimit() {
+        for (int i = 0; i < 10; i++) {
+            window(2, 10);
+        }
+
+        assertEquals(20, limiter.getLimit());
+    }
+
+    /**
+     * Passes a window of the given number of requests which take the given latency.
+     */
+    private void window(int requests, long latencyMillis) {
+        List<Permit> permits = acquire(requests);
+        nanoTime.addAndGet(TimeUnit.MILLISECONDS.toNanos(latencyMillis));
+        permits.forEach(Permit::release);
+
+        nanoTime.addAndGet(TimeUnit.SECONDS.toNanos(1));
+        limiter.tryAcquire("test", POLICY).release();
+    }
+
+    private List<Permit> acquire(int count) {
+        List<Permit> permits = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            Permit permit = limiter.tryAcquire("test", POLICY);
+            assertNotNull(permit);
+            permits.add(permit);
+        }
+        return permits;
+    }
+}
@@ -0,0 +1,157 @@
+package com.github.sajjaadalipour.ratelimit.repositories;
+
+import com.github.sajjaadalipour.ratelimit.Rate;
+import com.github.sajjaadalipour.ratelimit.RateDecision;
+import com.github.sajjaadalipour.ratelimit.RateLimiter;
+import com.github.sajjaadalipour.ratelimit.RatePolicy;
+import com.github.sajjaadalipour.ratelimit.clock.ManualRateClock;
+import com.github.sajjaadalipour.ratelimit.conf.properties.RateLimitDefaults;
+import com.github.sajjaadalipour.ratelimit.conf.properties.RateLimitFallback;
+import com.github.sajjaadalipour.ratelimit.conf.properties.RateLimitProperties.Policy;
+import com.github.sajjaadalipour.ratelimit.repositories.CircuitBreakingRateLimiter.State;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import javax.annotation.Nonnull;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for {@link CircuitBreakingRateLimiter}.
+ *
+ * @author Sajjad Alipour
+ */
+class CircuitBreakingRateLimiterTest {
+
+    private final ManualRateClock clock = new ManualRateClock(1_000_000);
+
+    private final RemoteRateLimiter remote = new RemoteRateLimiter();
+
+    private final CircuitBreakingRateLimiter rateLimiter = new CircuitBreakingRateLimiter(remote,
+            new InMemoryRateCache(RateLimitDefaults.SWEEP_INTERVAL, 0, clock),
+            Duration.ofMillis(20), 2, Duration.ofSeconds(5), 4, clock);
+
+    @AfterEach
+    void close() throws Exception {
+        rateLimiter.close();
+    }
+
+    @Test
+    void tryConsume_WhenRemoteIsHealthy_ShouldDecideByTheRemote() {
+        assertEquals(7, RateDecision.remaining(rateLimiter.tryConsume("key", policyOf(8, null))));
+        assertEquals(1, remote.calls.get());
+        assertEquals(State.CLOSED, rateLimiter.getState());
+    }
+
+    @Test
+    void tryConsume_WhenRemoteIsSlow_ShouldDecideLocallyWithinTheTimeoutByTheCountDividedByTheNodes() {
+        remote.behavior = Behavior.HANG;
+        Policy policy = policyOf(8, RateLimitFallback.LOCAL);
+
+        long start = System.nanoTime();
+        assertEquals(1, RateDecision.remaining(rateLimiter.tryConsume("key", policy)));
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 1_000);
+        assertEquals(0, RateDecision.remaining(rateLimiter.tryConsume("key", policy)));
+        assertTrue(RateDecision.isExceed(rateLimiter.tryConsume("key", policy)));
+    }
+
+    @Test
+    void tryConsume_WhenRemoteFails_ShouldFailOpenOrClosedByThePolicy() {
+        remote.behavior = Behavior.FAIL;
+
+        assertTrue(RateDecision.isAllowed(rateLimiter.tryConsume("key", policyOf(8, RateLimitFallback.ALLOW))));
+        assertTrue(RateDecision.isExceed(rateLimiter.tryConsume("key", policyOf(8, RateLimitFallback.REJECT))));
+    }
+
+    @Test
+    void tryConsume_WhenFailuresReachTheThreshold_ShouldOpenAndStopCallingTheRemote() {
+        remote.behavior = Behavior.FAIL;
+        Policy policy = policyOf(100, RateLimitFallback.LOCAL);
+
+        rateLimiter.tryConsume("key", policy);
+        rateLimiter.tryConsume("key", policy);
+        assertEquals(State.OPEN, rateLimiter.getState());
+
+        rateLimiter.tryConsume("key", policy);
+        assertEquals(2, remote.calls.get());
+    }
+
+    @Test
+    void tryConsume_WhenOpenDurationHasPassed_ShouldProbeTheRemoteAndCloseIfItSucceeds() {
+        remote.behavior = Behavior.FAIL;
+        Policy policy = policyOf(100, RateLimitFallback.LOCAL);
+        rateLimiter.tryConsume("key", policy);
+        rateLimiter.tryConsume("key", policy);
+
+        clock.advance(Duration.ofSeconds(5));
+        rateLimiter.tryConsume("key", policy);
+        assertEquals(3, remote.calls.get());
+        assertEquals(State.OPEN, rateLimiter.getState());
+
+        clock.advance(Duration.ofSeconds(5));
+        remote.behavior = Behavior.SUCCEED;
+        rateLimiter.tryConsume("key", policy);
+        assertEquals(4, remote.calls.get());
+        assertEquals(State.CLOSED, rateLimiter.getState());
+    }
+
+    @Test
+    void tryConsumeAllAsync_WhenRemoteIsSlow_ShouldCompleteByTheFallbackWithinTheTimeout() throws Exception {
+        remote.behavior = Behavior.HANG;
+        long[] decisions = new long[1];
+
+        int rejected = rateLimiter.tryConsumeAllAsync(Collections.singletonList("key"),
+                Collections.singletonList(policyOf(8, RateLimitFallback.REJECT)), decisions)
+                .toCompletableFuture().get(1, TimeUnit.SECONDS);
+
+        assertEquals(0, rejected);
+        assertTrue(RateDecision.isExceed(decisions[0]));
+    }
+
+    private static Policy policyOf(int count, RateLimitFallback fallback) {
+        return new Policy(Duration.ofMinutes(1), count, "TEST", null, null, null,
+                null, null, null, null, null, null, fallback);
+    }
+
+    private enum Behavior {SUCCEED, FAIL, HANG}
+
+    /**
+     * A remote rate limiter which allows every request, fails or never completes.
+     */
+    private static final class RemoteRateLimiter implements RateLimiter {
+
+        private volatile Behavior behavior = Behavior.SUCCEED;
+
+        private final AtomicInteger calls = new AtomicInteger();
+
+        @Override
+        public Rate consume(@Nonnull RatePolicy ratePolicy) {
+            return new Rate(ratePolicy.getKey(), Instant.now().plus(ratePolicy.getDuration()), ratePolicy.getCount() - 1);
+        }
+
+        @Override
+        public CompletionStage<Integer> tryConsumeAllAsync(@Nonnull List<String> keys,
+                                                           @Nonnull List<Policy> policies,
+                                                           @Nonnull long[] decisions) {
+            calls.incrementAndGet();
+            CompletableFuture<Integer> result = new CompletableFuture<>();
+            if (behavior == Behavior.FAIL) {
+                result.completeExceptionally(new IllegalStateException("Redis is down"));
+            } else if (behavior == Behavior.SUCCEED) {
+                for (int i = 0; i < policies.size(); i++) {
+                    decisions[i] = RateDecision.of(policies.get(i).getCount() - 1, 0);
+                }
+                result.complete(-1);
+            }
+            return result;
+        }
+    }
+}
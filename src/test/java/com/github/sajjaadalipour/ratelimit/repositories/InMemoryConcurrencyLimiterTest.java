@@ -0,0 +1,90 @@
+package com.github.sajjaadalipour.ratelimit.repositories;
+
+import com.github.sajjaadalipour.ratelimit.ConcurrencyLimiter.Permit;
+import com.github.sajjaadalipour.ratelimit.conf.properties.RateLimitPolicyType;
+import com.github.sajjaadalipour.ratelimit.conf.properties.RateLimitProperties.Policy;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for {@link InMemoryConcurrencyLimiter}.
+ *
+ * @author Sajjad Alipour
+ */
+class InMemoryConcurrencyLimiterTest {
+
+    private final InMemoryConcurrencyLimiter concurrencyLimiter = new InMemoryConcurrencyLimiter();
+
+    @Test
+    void tryAcquire_WhenKeyHasCountInFlightRequests_ShouldReturnNull() {
+        Policy policy = concurrencyPolicy(2);
+
+        assertNotNull(concurrencyLimiter.tryAcquire("test", policy));
+        assertNotNull(concurrencyLimiter.tryAcquire("test", policy));
+
+        assertNull(concurrencyLimiter.tryAcquire("test", policy));
+        assertEquals(2, concurrencyLimiter.getInFlight("test"));
+        assertNotNull(concurrencyLimiter.tryAcquire("other", policy));
+    }
+
+    @Test
+    void release_ShouldFreeThePermit_AndRemoveTheIdleKey() {
+        Policy policy = concurrencyPolicy(1);
+        Permit permit = concurrencyLimiter.tryAcquire("test", policy);
+        assertNull(concurrencyLimiter.tryAcquire("test", policy));
+
+        permit.release();
+
+        assertEquals(0, concurrencyLimiter.size());
+        assertNotNull(concurrencyLimiter.tryAcquire("test", policy));
+        assertEquals(1, concurrencyLimiter.getInFlight("test"));
+    }
+
+    @Test
+    void tryAcquire_WhenManyThreadsAcquireAndRelease_ShouldNeverExceedTheCount() throws Exception {
+        int threads = 8;
+        Policy policy = concurrencyPolicy(3);
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicInteger maxInFlight = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+
+        for (int thread = 0; thread < threads; thread++) {
+            executor.execute(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = 0; i < 10_000; i++) {
+                    Permit permit = concurrencyLimiter.tryAcquire("test", policy);
+                    if (permit != null) {
+                        maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+                        inFlight.decrementAndGet();
+                        permit.release();
+                    }
+                }
+            });
+        }
+        start.countDown();
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(30, TimeUnit.SECONDS));
+
+        assertTrue(maxInFlight.get() <= 3);
+        assertEquals(0, concurrencyLimiter.getInFlight("test"));
+    }
+
+    private static Policy concurrencyPolicy(int count) {
+        return new Policy(Duration.ofMinutes(1), count, "BY_IP", Collections.emptySet(), null, null, null,
+                RateLimitPolicyType.CONCURRENCY, null, null);
+    }
+}
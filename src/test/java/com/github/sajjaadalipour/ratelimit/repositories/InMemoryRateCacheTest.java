@@ -1,16 +1,31 @@
 package com.github.sajjaadalipour.ratelimit.repositories;
 
 import com.github.sajjaadalipour.ratelimit.Rate;
+import com.github.sajjaadalipour.ratelimit.RateDecision;
 import com.github.sajjaadalipour.ratelimit.RatePolicy;
+import com.github.sajjaadalipour.ratelimit.clock.ManualRateClock;
+import com.github.sajjaadalipour.ratelimit.conf.properties.RateLimitAlgorithm;
+import com.github.sajjaadalipour.ratelimit.conf.properties.RateLimitProperties.Policy;
+import org.junit.jupiter.api.Disabled;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
 
+import java.lang.management.ManagementFactory;
 import java.time.Duration;
 import java.time.Instant;
-import java.util.concurrent.TimeUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
 
 import static com.github.sajjaadalipour.ratelimit.Rate.RATE_BLOCK_STATE;
 import static org.awaitility.Awaitility.await;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
 
 /**
  * Unit tests for {@link InMemoryRateCache}.
@@ -68,4 +83,414 @@ class InMemoryRateCacheTest {
         assertEquals(120, expirationDiff);
         assertEquals(RATE_BLOCK_STATE, rate.getRemaining());
     }
+
+    @Test
+    void consume_WhenBlocked_ShouldRemainBlockedOnNextCalls() {
+        InMemoryRateCache inMemoryRateCache = new InMemoryRateCache();
+        RatePolicy ratePolicy = new RatePolicy("test", Duration.ofMinutes(1), 1, Duration.ofMinutes(2));
+        inMemoryRateCache.consume(ratePolicy);
+        inMemoryRateCache.consume(ratePolicy);
+        Rate rate = inMemoryRateCache.consume(ratePolicy);
+
+        assertTrue(rate.isBlocked());
+    }
+
+    @Test
+    void consume_WhenClockPassesTheBlockDuration_ShouldStartANewWindow() {
+        ManualRateClock clock = new ManualRateClock();
+        InMemoryRateCache inMemoryRateCache = new InMemoryRateCache(Duration.ofDays(1), 0, clock);
+        RatePolicy ratePolicy = new RatePolicy("test", Duration.ofMinutes(1), 1, Duration.ofMinutes(2));
+        inMemoryRateCache.consume(ratePolicy);
+        Rate rate = inMemoryRateCache.consume(ratePolicy);
+
+        assertEquals(clock.millis() + Duration.ofMinutes(2).toMillis(), rate.getExpiration().toEpochMilli());
+
+        clock.advance(Duration.ofMinutes(2));
+        assertTrue(inMemoryRateCache.consume(ratePolicy).isBlocked());
+
+        clock.advance(Duration.ofMillis(1));
+        assertEquals(0, inMemoryRateCache.consume(ratePolicy).getRemaining());
+
+        inMemoryRateCache.close();
+    }
+
+    @Test
+    void consume_WhenAlgorithmIsGcra_ShouldAllowTheBurstThenSpreadTheRequests() {
+        ManualRateClock clock = new ManualRateClock(1_000_000);
+        InMemoryRateCache inMemoryRateCache = new InMemoryRateCache(Duration.ofDays(1), 0, clock);
+        RatePolicy ratePolicy = new RatePolicy("test", Duration.ofSeconds(1), 4, null, RateLimitAlgorithm.GCRA);
+
+        assertEquals(3, inMemoryRateCache.consume(ratePolicy).getRemaining());
+        assertEquals(2, inMemoryRateCache.consume(ratePolicy).getRemaining());
+        assertEquals(1, inMemoryRateCache.consume(ratePolicy).getRemaining());
+        Rate rate = inMemoryRateCache.consume(ratePolicy);
+        assertEquals(0, rate.getRemaining());
+        assertEquals(1_001_000, rate.getExpiration().toEpochMilli());
+
+        Rate exceeded = inMemoryRateCache.consume(ratePolicy);
+        assertTrue(exceeded.isExceed());
+        assertEquals(1_000_250, exceeded.getExpiration().toEpochMilli());
+
+        clock.advance(Duration.ofMillis(250));
+        assertEquals(0, inMemoryRateCache.consume(ratePolicy).getRemaining());
+        assertTrue(inMemoryRateCache.consume(ratePolicy).isExceed());
+
+        inMemoryRateCache.close();
+    }
+
+    @Test
+    void consume_WhenAlgorithmIsTokenBucket_ShouldRefillATokenPerInterval() {
+        ManualRateClock clock = new ManualRateClock(1_000_000);
+        InMemoryRateCache inMemoryRateCache = new InMemoryRateCache(Duration.ofDays(1), 0, clock);
+        RatePolicy ratePolicy = new RatePolicy("test", Duration.ofSeconds(1), 2, null, RateLimitAlgorithm.TOKEN_BUCKET);
+
+        assertEquals(1, inMemoryRateCache.consume(ratePolicy).getRemaining());
+        assertEquals(0, inMemoryRateCache.consume(ratePolicy).getRemaining());
+        Rate exceeded = inMemoryRateCache.consume(ratePolicy);
+        assertTrue(exceeded.isExceed());
+        assertEquals(1_000_500, exceeded.getExpiration().toEpochMilli());
+
+        clock.advance(Duration.ofMillis(499));
+        assertTrue(inMemoryRateCache.consume(ratePolicy).isExceed());
+
+        clock.advance(Duration.ofMillis(1));
+        Rate rate = inMemoryRateCache.consume(ratePolicy);
+        assertEquals(0, rate.getRemaining());
+        assertEquals(1_001_500, rate.getExpiration().toEpochMilli());
+
+        clock.advance(Duration.ofSeconds(10));
+        assertEquals(1, inMemoryRateCache.consume(ratePolicy).getRemaining());
+
+        inMemoryRateCache.close();
+    }
+
+    @Test
+    void consume_WhenAlgorithmIsSlidingWindow_ShouldWeightThePreviousWindowAtTheBoundary() {
+        ManualRateClock clock = new ManualRateClock(1_000_000);
+        InMemoryRateCache inMemoryRateCache = new InMemoryRateCache(Duration.ofDays(1), 0, clock);
+        RatePolicy ratePolicy = new RatePolicy("test", Duration.ofSeconds(1), 3, null, RateLimitAlgorithm.SLIDING_WINDOW);
+
+        assertEquals(2, inMemoryRateCache.consume(ratePolicy).getRemaining());
+        assertEquals(1, inMemoryRateCache.consume(ratePolicy).getRemaining());
+        Rate rate = inMemoryRateCache.consume(ratePolicy);
+        assertEquals(0, rate.getRemaining());
+        assertEquals(1_001_000, rate.getExpiration().toEpochMilli());
+        assertTrue(inMemoryRateCache.consume(ratePolicy).isExceed());
+
+        clock.advance(Duration.ofSeconds(1));
+        assertTrue(inMemoryRateCache.consume(ratePolicy).isExceed());
+
+        clock.advance(Duration.ofMillis(500));
+        rate = inMemoryRateCache.consume(ratePolicy);
+        assertEquals(0, rate.getRemaining());
+        assertEquals(1_002_000, rate.getExpiration().toEpochMilli());
+        Rate exceeded = inMemoryRateCache.consume(ratePolicy);
+        assertTrue(exceeded.isExceed());
+        assertEquals(1_001_667, exceeded.getExpiration().toEpochMilli());
+
+        clock.advance(Duration.ofMillis(167));
+        assertEquals(0, inMemoryRateCache.consume(ratePolicy).getRemaining());
+
+        clock.advance(Duration.ofSeconds(2));
+        assertEquals(2, inMemoryRateCache.consume(ratePolicy).getRemaining());
+
+        inMemoryRateCache.close();
+    }
+
+    @ParameterizedTest
+    @EnumSource(value = RateLimitAlgorithm.class, names = {"TOKEN_BUCKET", "GCRA", "SLIDING_WINDOW"})
+    void consume_WhenExceedAndBlocked_ShouldBlockForAnyAlgorithm(RateLimitAlgorithm algorithm) {
+        ManualRateClock clock = new ManualRateClock(1_000_000);
+        InMemoryRateCache inMemoryRateCache = new InMemoryRateCache(Duration.ofDays(1), 0, clock);
+        RatePolicy ratePolicy = new RatePolicy("test", Duration.ofMinutes(1), 1, Duration.ofMinutes(2), algorithm);
+        inMemoryRateCache.consume(ratePolicy);
+
+        Rate rate = inMemoryRateCache.consume(ratePolicy);
+        assertEquals(RATE_BLOCK_STATE, rate.getRemaining());
+        assertEquals(1_120_000, rate.getExpiration().toEpochMilli());
+
+        clock.advance(Duration.ofMinutes(2));
+        assertTrue(inMemoryRateCache.consume(ratePolicy).isBlocked());
+
+        clock.advance(Duration.ofMillis(1));
+        assertEquals(0, inMemoryRateCache.consume(ratePolicy).getRemaining());
+
+        inMemoryRateCache.close();
+    }
+
+    @ParameterizedTest
+    @EnumSource(RateLimitAlgorithm.class)
+    void tryConsumeAll_WhenALongerPolicyRejects_ShouldNotConsumeTheShorterOnes(RateLimitAlgorithm algorithm) {
+        InMemoryRateCache inMemoryRateCache = new InMemoryRateCache(Duration.ofDays(1), 0, new ManualRateClock(1_000_000));
+        Policy perSecond = new Policy(Duration.ofSeconds(1), 10, "TEST", null, null, null, algorithm);
+        Policy perHour = new Policy(Duration.ofHours(1), 1, "TEST", null, null, null);
+        List<Policy> policies = Arrays.asList(perSecond, perHour);
+        List<String> keys = Arrays.asList("second", "hour");
+        long[] decisions = new long[2];
+
+        assertEquals(-1, inMemoryRateCache.tryConsumeAll(keys, policies, decisions));
+        assertEquals(9, RateDecision.remaining(decisions[0]));
+        assertEquals(0, RateDecision.remaining(decisions[1]));
+
+        assertEquals(1, inMemoryRateCache.tryConsumeAll(keys, policies, decisions));
+        assertTrue(RateDecision.isExceed(decisions[1]));
+        assertEquals(1, inMemoryRateCache.tryConsumeAll(keys, policies, decisions));
+
+        assertEquals(8, RateDecision.remaining(inMemoryRateCache.tryConsume("second", perSecond)));
+        inMemoryRateCache.close();
+    }
+
+    @ParameterizedTest
+    @EnumSource(value = RateLimitAlgorithm.class, names = {"TOKEN_BUCKET", "GCRA"})
+    void evictExpired_WhenStateIsExtendedInPlace_ShouldEvictOnlyAfterTheLastExtension(RateLimitAlgorithm algorithm) {
+        ManualRateClock clock = new ManualRateClock(1_000_000);
+        InMemoryRateCache inMemoryRateCache = new InMemoryRateCache(Duration.ofSeconds(1), 0, clock);
+        RatePolicy ratePolicy = new RatePolicy("test", Duration.ofSeconds(10), 10, null, algorithm);
+        inMemoryRateCache.consume(ratePolicy);
+
+        clock.advance(Duration.ofMillis(900));
+        inMemoryRateCache.consume(ratePolicy);
+        inMemoryRateCache.consume(ratePolicy);
+
+        clock.advance(Duration.ofMillis(1500));
+        inMemoryRateCache.evictExpired();
+        assertEquals(1, inMemoryRateCache.size());
+
+        clock.advance(Duration.ofSeconds(3));
+        inMemoryRateCache.evictExpired();
+        assertEquals(0, inMemoryRateCache.size());
+        assertEquals(1, inMemoryRateCache.getEvictionCount());
+
+        inMemoryRateCache.close();
+    }
+
+    @Test
+    void consume_WhenManyThreadsConsumeTheSameGcraKey_ShouldAllowExactlyTheBurst() throws Exception {
+        InMemoryRateCache inMemoryRateCache = new InMemoryRateCache(Duration.ofDays(1), 0, new ManualRateClock());
+        RatePolicy ratePolicy = new RatePolicy("test", Duration.ofDays(1), 1000, null, RateLimitAlgorithm.GCRA);
+        AtomicInteger allowed = new AtomicInteger();
+
+        runConcurrently(8, 1000, (thread, iteration) -> {
+            if (!inMemoryRateCache.consume(ratePolicy).isExceed()) {
+                allowed.incrementAndGet();
+            }
+        });
+
+        assertEquals(1000, allowed.get());
+        inMemoryRateCache.close();
+    }
+
+    @Test
+    void evictExpired_WhenClockPassesTheExpirations_ShouldEvictTheExpiredRates() {
+        ManualRateClock clock = new ManualRateClock();
+        InMemoryRateCache inMemoryRateCache = new InMemoryRateCache(Duration.ofSeconds(1), 0, clock);
+        for (int i = 0; i < 100; i++) {
+            inMemoryRateCache.consume(new RatePolicy("test-" + i, Duration.ofSeconds(1), 3, null));
+        }
+        inMemoryRateCache.consume(new RatePolicy("long-lived", Duration.ofDays(1), 3, null));
+
+        inMemoryRateCache.evictExpired();
+        assertEquals(101, inMemoryRateCache.size());
+
+        clock.advance(Duration.ofHours(1));
+        inMemoryRateCache.evictExpired();
+
+        assertEquals(100, inMemoryRateCache.getEvictionCount());
+        assertEquals(1, inMemoryRateCache.size());
+
+        inMemoryRateCache.close();
+    }
+
+    @Test
+    void evictExpired_WhenRatesExpired_TheSweeperShouldEvictThemFromMemory() {
+        InMemoryRateCache inMemoryRateCache = new InMemoryRateCache(Duration.ofMillis(50));
+        for (int i = 0; i < 100; i++) {
+            inMemoryRateCache.consume(new RatePolicy("test-" + i, Duration.ofMillis(100), 3, null));
+        }
+        inMemoryRateCache.consume(new RatePolicy("long-lived", Duration.ofDays(1), 3, null));
+
+        await().atMost(2, TimeUnit.SECONDS).untilAsserted(() -> {
+            assertEquals(100, inMemoryRateCache.getEvictionCount());
+            assertEquals(1, inMemoryRateCache.size());
+        });
+
+        inMemoryRateCache.close();
+    }
+
+    @Test
+    void consume_WhenMaxEntriesReachedByOneOffKeys_ShouldKeepTheMemoryBoundedAndTheHeavyHittersLimited() {
+        InMemoryRateCache inMemoryRateCache = new InMemoryRateCache(Duration.ofDays(1), 100);
+        RatePolicy heavyHitter = new RatePolicy("heavy-hitter", Duration.ofDays(1), 10_000, null);
+
+        int heavyHitterRequests = 0;
+        for (int i = 0; i < 10_000; i++) {
+            inMemoryRateCache.consume(new RatePolicy("one-off-" + i, Duration.ofDays(1), 5, null));
+            if (i % 10 == 0) {
+                inMemoryRateCache.consume(heavyHitter);
+                heavyHitterRequests++;
+            }
+        }
+
+        assertTrue(inMemoryRateCache.size() <= 100);
+        assertTrue(inMemoryRateCache.getRejectionCount() > 0);
+        assertEquals(10_000 - heavyHitterRequests - 1, inMemoryRateCache.consume(heavyHitter).getRemaining());
+
+        inMemoryRateCache.close();
+    }
+
+    @Test
+    void consume_WhenMaxEntriesReachedAndFloodedByDistinctKeys_ShouldLimitTheKeysWhichAreNotAdmittedTogether() {
+        InMemoryRateCache inMemoryRateCache = new InMemoryRateCache(Duration.ofDays(1), 10);
+        for (int i = 0; i < 10; i++) {
+            RatePolicy ratePolicy = new RatePolicy("resident-" + i, Duration.ofDays(1), 5, null);
+            inMemoryRateCache.consume(ratePolicy);
+            inMemoryRateCache.consume(ratePolicy);
+        }
+
+        int allowed = 0;
+        for (int i = 0; i < 1_000; i++) {
+            if (!inMemoryRateCache.consume(new RatePolicy("spoofed-" + i, Duration.ofDays(1), 5, null)).isExceed()) {
+                allowed++;
+            }
+        }
+
+        long admitted = 1_000 - inMemoryRateCache.getRejectionCount();
+        assertEquals(5 + admitted, allowed);
+        assertTrue(allowed < 200, "Expected the flood to be rejected, but " + allowed + " requests are allowed");
+        assertEquals(10, inMemoryRateCache.size());
+
+        inMemoryRateCache.close();
+    }
+
+    @Test
+    void consume_WhenMaxEntriesReached_ARepeatedlySeenKeyShouldBeAdmitted() {
+        InMemoryRateCache inMemoryRateCache = new InMemoryRateCache(Duration.ofDays(1), 10);
+        for (int i = 0; i < 10; i++) {
+            inMemoryRateCache.consume(new RatePolicy("one-off-" + i, Duration.ofDays(1), 5, null));
+        }
+
+        RatePolicy newcomer = new RatePolicy("newcomer", Duration.ofDays(1), 5, null);
+        inMemoryRateCache.consume(newcomer);
+        inMemoryRateCache.consume(newcomer);
+        int remaining = inMemoryRateCache.consume(newcomer).getRemaining();
+
+        assertEquals(remaining - 1, inMemoryRateCache.consume(newcomer).getRemaining());
+        assertEquals(10, inMemoryRateCache.size());
+        assertEquals(1, inMemoryRateCache.getEvictionCount());
+
+        inMemoryRateCache.close();
+    }
+
+    @Test
+    void consume_WhenManyThreadsConsumeTheSameKey_ShouldAllowExactlyTheCountOfRequests() throws Exception {
+        InMemoryRateCache inMemoryRateCache = new InMemoryRateCache();
+        RatePolicy ratePolicy = new RatePolicy("test", Duration.ofDays(1), 1000, null);
+        AtomicInteger allowed = new AtomicInteger();
+
+        runConcurrently(8, 500, (thread, i) -> {
+            Rate rate = inMemoryRateCache.consume(ratePolicy);
+            if (!rate.isExceed()) allowed.incrementAndGet();
+        });
+
+        assertEquals(1000, allowed.get());
+    }
+
+    @Test
+    void consume_WhenThreadsConsumeDistinctKeys_ShouldAllowExactlyTheCountOfEachKey() throws Exception {
+        InMemoryRateCache inMemoryRateCache = new InMemoryRateCache();
+        int threads = 8;
+        AtomicIntegerArray allowed = new AtomicIntegerArray(threads);
+
+        runConcurrently(threads, 1_500, (thread, i) -> {
+            Rate rate = inMemoryRateCache.consume(new RatePolicy("test-" + thread % 4, Duration.ofDays(1), 1000, null));
+            if (!rate.isExceed()) allowed.incrementAndGet(thread % 4);
+        });
+
+        for (int key = 0; key < 4; key++) {
+            assertEquals(1000, allowed.get(key));
+        }
+        assertEquals(4, inMemoryRateCache.size());
+
+        inMemoryRateCache.close();
+    }
+
+    /**
+     * A benchmark of the scalability, which depends on the machine, so it is not a part of the unit tests.
+     */
+    @Test
+    @Disabled("A benchmark which depends on the machine, run it manually")
+    void consume_WhenThreadsConsumeDistinctKeys_ThroughputShouldScaleWithCores() throws Exception {
+        int cores = Runtime.getRuntime().availableProcessors();
+        assumeTrue(cores >= 4, "Needs at least 4 cores to measure scalability");
+
+        int iterations = 200_000;
+        List<RatePolicy> policies = new ArrayList<>();
+        for (int i = 0; i < cores; i++) {
+            policies.add(new RatePolicy("test-" + i, Duration.ofDays(1), Integer.MAX_VALUE, null));
+        }
+
+        InMemoryRateCache inMemoryRateCache = new InMemoryRateCache();
+        runConcurrently(cores, iterations, (thread, i) -> inMemoryRateCache.consume(policies.get(thread)));
+
+        long singleThread = runConcurrently(1, iterations * cores, (thread, i) -> inMemoryRateCache.consume(policies.get(i % cores)));
+        long multiThread = runConcurrently(cores, iterations, (thread, i) -> inMemoryRateCache.consume(policies.get(thread)));
+
+        double speedup = (double) singleThread / multiThread;
+        assertTrue(speedup > 1.5, "Expected consume throughput to scale with cores, but the speedup was " + speedup);
+    }
+
+    @Test
+    void tryConsume_InSteadyState_ShouldNotAllocate() {
+        InMemoryRateCache inMemoryRateCache = new InMemoryRateCache();
+        Policy policy = new Policy(Duration.ofDays(1), Integer.MAX_VALUE, "TEST", null, null, null);
+        for (int i = 0; i < 100_000; i++) {
+            inMemoryRateCache.tryConsume("test", policy);
+        }
+
+        com.sun.management.ThreadMXBean threadMXBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        long before = threadMXBean.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < 100_000; i++) {
+            inMemoryRateCache.tryConsume("test", policy);
+        }
+        long allocated = threadMXBean.getThreadAllocatedBytes(threadId) - before;
+
+        assertTrue(allocated < 1024, "Expected no allocation per decision, but allocated " + allocated + " bytes");
+    }
+
+    /**
+     * Runs the given {@code task} on {@code threads} threads, each for {@code iterations} times.
+     *
+     * @return The elapsed time in nanos.
+     */
+    private static long runConcurrently(int threads, int iterations, ConcurrentTask task) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            int thread = t;
+            futures.add(executor.submit(() -> {
+                start.await();
+                for (int i = 0; i < iterations; i++) {
+                    task.run(thread, i);
+                }
+                return null;
+            }));
+        }
+
+        long startTime = System.nanoTime();
+        start.countDown();
+        for (Future<?> future : futures) {
+            future.get(1, TimeUnit.MINUTES);
+        }
+        long elapsed = System.nanoTime() - startTime;
+        executor.shutdown();
+
+        return elapsed;
+    }
+
+    @FunctionalInterface
+    private interface ConcurrentTask {
+        void run(int thread, int iteration);
+    }
 }
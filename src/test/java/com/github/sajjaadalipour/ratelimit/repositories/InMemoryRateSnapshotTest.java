@@ -0,0 +1,191 @@
+package com.github.sajjaadalipour.ratelimit.repositories;
+
+import com.github.sajjaadalipour.ratelimit.Rate;
+import com.github.sajjaadalipour.ratelimit.RatePolicy;
+import com.github.sajjaadalipour.ratelimit.clock.ManualRateClock;
+import com.github.sajjaadalipour.ratelimit.conf.properties.RateLimitAlgorithm;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import static com.github.sajjaadalipour.ratelimit.Rate.RATE_BLOCK_STATE;
+import static org.awaitility.Awaitility.await;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for {@link InMemoryRateSnapshot}.
+ *
+ * @author Sajjad Alipour
+ */
+class InMemoryRateSnapshotTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void restore_WhenFileDoesNotExist_ShouldRestoreNothing() throws IOException {
+        InMemoryRateCache inMemoryRateCache = new InMemoryRateCache();
+        InMemoryRateSnapshot snapshot = new InMemoryRateSnapshot(inMemoryRateCache, directory.resolve("rates.snapshot"));
+
+        assertEquals(0, snapshot.restore());
+        assertEquals(0, inMemoryRateCache.size());
+    }
+
+    @Test
+    void restore_AfterSnapshot_ShouldContinueTheWindows() throws IOException {
+        Path path = directory.resolve("rates.snapshot");
+        RatePolicy ratePolicy = new RatePolicy("test", Duration.ofDays(1), 3, null);
+
+        InMemoryRateCache inMemoryRateCache = new InMemoryRateCache();
+        inMemoryRateCache.consume(ratePolicy);
+        Rate rate = inMemoryRateCache.consume(ratePolicy);
+        assertEquals(1, new InMemoryRateSnapshot(inMemoryRateCache, path).snapshot());
+
+        InMemoryRateCache restartedRateCache = new InMemoryRateCache();
+        assertEquals(1, new InMemoryRateSnapshot(restartedRateCache, path).restore());
+
+        Rate restoredRate = restartedRateCache.consume(ratePolicy);
+        assertEquals(0, restoredRate.getRemaining());
+        assertEquals(rate.getExpiration(), restoredRate.getExpiration());
+    }
+
+    @Test
+    void restore_AfterSnapshotOfBlockedKey_ShouldStayBlocked() throws IOException {
+        Path path = directory.resolve("rates.snapshot");
+        RatePolicy ratePolicy = new RatePolicy("test", Duration.ofMinutes(1), 1, Duration.ofHours(1));
+
+        InMemoryRateCache inMemoryRateCache = new InMemoryRateCache();
+        inMemoryRateCache.consume(ratePolicy);
+        assertTrue(inMemoryRateCache.consume(ratePolicy).isBlocked());
+        new InMemoryRateSnapshot(inMemoryRateCache, path).snapshot();
+
+        InMemoryRateCache restartedRateCache = new InMemoryRateCache();
+        new InMemoryRateSnapshot(restartedRateCache, path).restore();
+
+        assertEquals(RATE_BLOCK_STATE, restartedRateCache.consume(ratePolicy).getRemaining());
+    }
+
+    @ParameterizedTest
+    @EnumSource(value = RateLimitAlgorithm.class, names = {"TOKEN_BUCKET", "GCRA"})
+    void restore_AfterSnapshotOfAlgorithmState_ShouldContinueTheState(RateLimitAlgorithm algorithm) throws IOException {
+        Path path = directory.resolve("rates.snapshot");
+        ManualRateClock clock = new ManualRateClock(1_000_000);
+        RatePolicy ratePolicy = new RatePolicy("test", Duration.ofSeconds(1), 3, null, algorithm);
+
+        InMemoryRateCache inMemoryRateCache = new InMemoryRateCache(Duration.ofDays(1), 0, clock);
+        inMemoryRateCache.consume(ratePolicy);
+        Rate rate = inMemoryRateCache.consume(ratePolicy);
+        new InMemoryRateSnapshot(inMemoryRateCache, path).snapshot();
+
+        InMemoryRateCache restartedRateCache = new InMemoryRateCache(Duration.ofDays(1), 0, clock);
+        assertEquals(1, new InMemoryRateSnapshot(restartedRateCache, path).restore());
+
+        Rate restoredRate = restartedRateCache.consume(ratePolicy);
+        assertEquals(0, restoredRate.getRemaining());
+        assertEquals(rate.getExpiration().plusMillis(333), restoredRate.getExpiration());
+        assertTrue(restartedRateCache.consume(ratePolicy).isExceed());
+    }
+
+    @Test
+    void restore_AfterSnapshotOfSlidingWindow_ShouldContinueTheCounters() throws IOException {
+        Path path = directory.resolve("rates.snapshot");
+        ManualRateClock clock = new ManualRateClock(1_000_000);
+        RatePolicy ratePolicy = new RatePolicy("test", Duration.ofSeconds(1), 3, null, RateLimitAlgorithm.SLIDING_WINDOW);
+
+        InMemoryRateCache inMemoryRateCache = new InMemoryRateCache(Duration.ofDays(1), 0, clock);
+        inMemoryRateCache.consume(ratePolicy);
+        inMemoryRateCache.consume(ratePolicy);
+        new InMemoryRateSnapshot(inMemoryRateCache, path).snapshot();
+
+        InMemoryRateCache restartedRateCache = new InMemoryRateCache(Duration.ofDays(1), 0, clock);
+        assertEquals(1, new InMemoryRateSnapshot(restartedRateCache, path).restore());
+
+        assertEquals(0, restartedRateCache.consume(ratePolicy).getRemaining());
+        assertTrue(restartedRateCache.consume(ratePolicy).isExceed());
+    }
+
+    @Test
+    void restore_WhenFileIsOfAnotherVersion_ShouldThrowIOException() throws IOException {
+        Path path = directory.resolve("rates.snapshot");
+        long expiration = System.currentTimeMillis() + Duration.ofDays(1).toMillis();
+        byte[] key = "test".getBytes(StandardCharsets.UTF_8);
+        ByteBuffer buffer = ByteBuffer.allocate(20 + 2 + key.length + 12)
+                .putInt(InMemoryRateSnapshot.MAGIC).putInt(InMemoryRateSnapshot.VERSION - 1).putLong(0).putInt(1)
+                .putShort((short) key.length).put(key).putLong(expiration).putInt(1);
+        Files.write(path, buffer.array());
+
+        InMemoryRateSnapshot snapshot = new InMemoryRateSnapshot(new InMemoryRateCache(), path);
+        assertThrows(IOException.class, snapshot::restore);
+    }
+
+    @Test
+    void restore_WhenEntriesAreExpired_ShouldSkipThem() throws IOException, InterruptedException {
+        Path path = directory.resolve("rates.snapshot");
+        InMemoryRateCache inMemoryRateCache = new InMemoryRateCache(Duration.ofDays(1));
+        inMemoryRateCache.consume(new RatePolicy("short", Duration.ofMillis(50), 3, null));
+        inMemoryRateCache.consume(new RatePolicy("long", Duration.ofDays(1), 3, null));
+        assertEquals(2, new InMemoryRateSnapshot(inMemoryRateCache, path).snapshot());
+
+        TimeUnit.MILLISECONDS.sleep(100);
+        InMemoryRateCache restartedRateCache = new InMemoryRateCache();
+
+        assertEquals(1, new InMemoryRateSnapshot(restartedRateCache, path).restore());
+        assertEquals(1, restartedRateCache.size());
+    }
+
+    @Test
+    void restore_WhenFileIsNotASnapshot_ShouldThrowIOException() throws IOException {
+        Path path = directory.resolve("rates.snapshot");
+        Files.write(path, "not a snapshot file".getBytes());
+
+        InMemoryRateSnapshot snapshot = new InMemoryRateSnapshot(new InMemoryRateCache(), path);
+
+        assertThrows(IOException.class, snapshot::restore);
+    }
+
+    @Test
+    void start_ShouldTakeSnapshotsPeriodically_AndCloseShouldTakeTheLastOne() throws IOException {
+        Path path = directory.resolve("nested").resolve("rates.snapshot");
+        InMemoryRateCache inMemoryRateCache = new InMemoryRateCache();
+        InMemoryRateSnapshot snapshot = new InMemoryRateSnapshot(inMemoryRateCache, path);
+        inMemoryRateCache.consume(new RatePolicy("first", Duration.ofDays(1), 3, null));
+
+        snapshot.start(Duration.ofMillis(50));
+        await().atMost(2, TimeUnit.SECONDS).until(() -> Files.exists(path));
+
+        inMemoryRateCache.consume(new RatePolicy("second", Duration.ofDays(1), 3, null));
+        snapshot.close();
+
+        assertEquals(2, new InMemoryRateSnapshot(new InMemoryRateCache(), path).restore());
+        assertEquals(0, snapshot.getFailureCount());
+    }
+
+    @Test
+    void restore_OfMillionKeys_ShouldRestoreEveryKey() throws IOException {
+        int keys = 1_000_000;
+        Path path = directory.resolve("rates.snapshot");
+        InMemoryRateCache inMemoryRateCache = new InMemoryRateCache(Duration.ofDays(1));
+        for (int i = 0; i < keys; i++) {
+            inMemoryRateCache.consume(new RatePolicy("/api/v1/resources_GET_PT1H_100_10.0." + i, Duration.ofHours(1), 100, null));
+        }
+
+        new InMemoryRateSnapshot(inMemoryRateCache, path).snapshot();
+        inMemoryRateCache.close();
+
+        InMemoryRateCache restartedRateCache = new InMemoryRateCache(Duration.ofDays(1));
+        int restored = new InMemoryRateSnapshot(restartedRateCache, path).restore();
+
+        assertEquals(keys, restored);
+        assertEquals(keys, restartedRateCache.size());
+        restartedRateCache.close();
+    }
+}
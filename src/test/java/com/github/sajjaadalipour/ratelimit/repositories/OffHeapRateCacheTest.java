@@ -0,0 +1,270 @@
+package com.github.sajjaadalipour.ratelimit.repositories;
+
+import com.github.sajjaadalipour.ratelimit.Rate;
+import com.github.sajjaadalipour.ratelimit.RateDecision;
+import com.github.sajjaadalipour.ratelimit.RatePolicy;
+import com.github.sajjaadalipour.ratelimit.clock.ManualRateClock;
+import com.github.sajjaadalipour.ratelimit.conf.properties.RateLimitAlgorithm;
+import com.github.sajjaadalipour.ratelimit.conf.properties.RateLimitProperties.Policy;
+import org.junit.jupiter.api.Disabled;
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import static com.github.sajjaadalipour.ratelimit.Rate.RATE_BLOCK_STATE;
+import static org.awaitility.Awaitility.await;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for {@link OffHeapRateCache}.
+ *
+ * @author Sajjad Alipour
+ */
+class OffHeapRateCacheTest {
+
+    @Test
+    void consume_CreateRateForFirstTime_TheRateRemainingValueShouldBeEqualWIth2() {
+        OffHeapRateCache offHeapRateCache = new OffHeapRateCache(1024);
+        Rate rate = offHeapRateCache.consume(new RatePolicy("test", Duration.ofDays(1), 3, null));
+
+        assertEquals(2, rate.getRemaining());
+        assertEquals("test", rate.getKey());
+    }
+
+    @Test
+    void consume_WhenDoesNotExceedAndDoesNotBlocked_TheRateRemainingValueShouldBeEqualWIth1() {
+        OffHeapRateCache offHeapRateCache = new OffHeapRateCache(1024);
+        RatePolicy ratePolicy = new RatePolicy("test", Duration.ofDays(1), 3, null);
+        offHeapRateCache.consume(ratePolicy);
+        Rate rate = offHeapRateCache.consume(ratePolicy);
+
+        assertEquals(1, rate.getRemaining());
+    }
+
+    @Test
+    void consume_WhenExceed_ShouldStayExceeded() {
+        OffHeapRateCache offHeapRateCache = new OffHeapRateCache(1024);
+        RatePolicy ratePolicy = new RatePolicy("test", Duration.ofDays(1), 1, null);
+        offHeapRateCache.consume(ratePolicy);
+
+        assertTrue(offHeapRateCache.consume(ratePolicy).isExceed());
+        assertTrue(offHeapRateCache.consume(ratePolicy).isExceed());
+    }
+
+    @Test
+    void consume_WhenExceedAndBlocked_ShouldIncreaseExpiration2MinAndRateBeNegative2() {
+        OffHeapRateCache offHeapRateCache = new OffHeapRateCache(1024);
+        RatePolicy ratePolicy = new RatePolicy("test", Duration.ofMinutes(1), 1, Duration.ofMinutes(2));
+        offHeapRateCache.consume(ratePolicy);
+        Rate rate = offHeapRateCache.consume(ratePolicy);
+
+        long expirationDiff = rate.getExpiration().getEpochSecond() - Instant.now().getEpochSecond();
+
+        assertEquals(120, expirationDiff);
+        assertEquals(RATE_BLOCK_STATE, rate.getRemaining());
+        assertTrue(offHeapRateCache.consume(ratePolicy).isBlocked());
+    }
+
+    @Test
+    void consume_WhenRateRecordExpired_ShouldCreateNewRate_TheRateRemainingValueShouldBeEqualWIth2() {
+        OffHeapRateCache offHeapRateCache = new OffHeapRateCache(1024);
+        RatePolicy ratePolicy = new RatePolicy("test", Duration.ofMillis(100), 3, null);
+        offHeapRateCache.consume(ratePolicy);
+        offHeapRateCache.consume(ratePolicy);
+
+        await().atMost(2, TimeUnit.SECONDS).untilAsserted(
+                () -> assertEquals(2, offHeapRateCache.consume(ratePolicy).getRemaining())
+        );
+    }
+
+    @Test
+    void consume_WhenClockPassesTheWindow_ShouldStartANewWindow() {
+        ManualRateClock clock = new ManualRateClock();
+        OffHeapRateCache offHeapRateCache = new OffHeapRateCache(1024, clock);
+        RatePolicy ratePolicy = new RatePolicy("test", Duration.ofMinutes(1), 1, null);
+        offHeapRateCache.consume(ratePolicy);
+
+        clock.advance(Duration.ofMinutes(1));
+        assertTrue(offHeapRateCache.consume(ratePolicy).isExceed());
+
+        clock.advance(Duration.ofMillis(1));
+        assertEquals(0, offHeapRateCache.consume(ratePolicy).getRemaining());
+    }
+
+    @Test
+    void consume_WhenAlgorithmIsNotFixedWindow_ShouldThrowUnsupportedOperationException() {
+        OffHeapRateCache offHeapRateCache = new OffHeapRateCache(1024);
+        RatePolicy ratePolicy = new RatePolicy("test", Duration.ofDays(1), 3, null, RateLimitAlgorithm.GCRA);
+
+        assertThrows(UnsupportedOperationException.class, () -> offHeapRateCache.consume(ratePolicy));
+    }
+
+    @Test
+    void consume_WhenTableIsFullOfLivingRates_ShouldNotTrackNewKeys() {
+        OffHeapRateCache offHeapRateCache = new OffHeapRateCache(64);
+        for (int i = 0; i < 1000; i++) {
+            offHeapRateCache.consume(new RatePolicy("test-" + i, Duration.ofDays(1), 3, null));
+        }
+
+        assertTrue(offHeapRateCache.getRejectionCount() > 0);
+        assertEquals(64L * OffHeapRateCache.SLOT_SIZE, offHeapRateCache.getAllocatedBytes());
+    }
+
+    @Test
+    void consume_WhenTableIsFullOfExpiredRates_ShouldReuseTheirSlots() {
+        OffHeapRateCache offHeapRateCache = new OffHeapRateCache(64);
+        for (int i = 0; i < 1000; i++) {
+            offHeapRateCache.consume(new RatePolicy("expired-" + i, Duration.ZERO, 3, null));
+        }
+        RatePolicy ratePolicy = new RatePolicy("test", Duration.ofDays(1), 3, null);
+
+        await().atMost(1, TimeUnit.SECONDS).untilAsserted(() -> {
+            assertEquals(2, offHeapRateCache.consume(ratePolicy).getRemaining());
+            assertEquals(1, offHeapRateCache.consume(ratePolicy).getRemaining());
+        });
+    }
+
+    @Test
+    void tryConsumeAll_WhenALongerPolicyRejects_ShouldNotConsumeTheShorterOnes() {
+        OffHeapRateCache offHeapRateCache = new OffHeapRateCache(1024, new ManualRateClock(1_000_000));
+        Policy perSecond = new Policy(Duration.ofSeconds(1), 10, "TEST", null, null, null);
+        Policy perHour = new Policy(Duration.ofHours(1), 1, "TEST", null, null, null);
+        List<Policy> policies = Arrays.asList(perSecond, perHour);
+        List<String> keys = Arrays.asList("second", "hour");
+        long[] decisions = new long[2];
+
+        assertEquals(-1, offHeapRateCache.tryConsumeAll(keys, policies, decisions));
+        assertEquals(9, RateDecision.remaining(decisions[0]));
+        assertEquals(0, RateDecision.remaining(decisions[1]));
+
+        assertEquals(1, offHeapRateCache.tryConsumeAll(keys, policies, decisions));
+        assertTrue(RateDecision.isExceed(decisions[1]));
+        assertEquals(1, offHeapRateCache.tryConsumeAll(keys, policies, decisions));
+
+        assertEquals(8, RateDecision.remaining(offHeapRateCache.tryConsume("second", perSecond)));
+    }
+
+    @Test
+    void tryConsumeAll_WhenTheShorterKeyIsNotTracked_ShouldGiveTheRequestBackToTheOverflowSlot() {
+        OffHeapRateCache offHeapRateCache = new OffHeapRateCache(64, new ManualRateClock(1_000_000));
+        for (int i = 0; i < 1000; i++) {
+            offHeapRateCache.consume(new RatePolicy("resident-" + i, Duration.ofDays(1), 3, null));
+        }
+        Policy perSecond = new Policy(Duration.ofSeconds(1), 10, "TEST", null, null, null);
+        Policy perHour = new Policy(Duration.ofHours(1), 1, "TEST", null, null, null);
+        List<Policy> policies = Arrays.asList(perSecond, perHour);
+        List<String> keys = Arrays.asList("spoofed", "hour");
+        long[] decisions = new long[2];
+
+        assertEquals(-1, offHeapRateCache.tryConsumeAll(keys, policies, decisions));
+        assertEquals(9, RateDecision.remaining(decisions[0]));
+        assertEquals(1, offHeapRateCache.tryConsumeAll(keys, policies, decisions));
+
+        assertEquals(8, RateDecision.remaining(offHeapRateCache.tryConsume("other-spoofed", perSecond)));
+    }
+
+    /**
+     * Takes the least allocation of several rounds, so an allocation of the JIT or the runtime which happens to
+     * fall into a round does not fail the test, but an allocation per decision fails every round.
+     */
+    @Test
+    void tryConsume_InSteadyState_ShouldNotAllocate() {
+        OffHeapRateCache offHeapRateCache = new OffHeapRateCache(1024);
+        Policy policy = new Policy(Duration.ofDays(1), Integer.MAX_VALUE, "TEST", null, null, null);
+        for (int i = 0; i < 100_000; i++) {
+            offHeapRateCache.tryConsume("test", policy);
+        }
+
+        com.sun.management.ThreadMXBean threadMXBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        long allocated = Long.MAX_VALUE;
+        for (int round = 0; round < 5; round++) {
+            long before = threadMXBean.getThreadAllocatedBytes(threadId);
+            for (int i = 0; i < 100_000; i++) {
+                offHeapRateCache.tryConsume("test", policy);
+            }
+            allocated = Math.min(allocated, threadMXBean.getThreadAllocatedBytes(threadId) - before);
+        }
+
+        assertTrue(allocated < 1024, "Expected no allocation per decision, but allocated " + allocated + " bytes");
+    }
+
+    @Test
+    void consume_WhenTableIsFullAndFloodedByDistinctKeys_ShouldLimitTheKeysWhichAreNotTrackedTogether() {
+        OffHeapRateCache offHeapRateCache = new OffHeapRateCache(64);
+        for (int i = 0; i < 64; i++) {
+            offHeapRateCache.consume(new RatePolicy("resident-" + i, Duration.ofDays(1), 3, null));
+        }
+        long rejectedResidents = offHeapRateCache.getRejectionCount();
+
+        int allowed = 0;
+        for (int i = 0; i < 1000; i++) {
+            if (!offHeapRateCache.consume(new RatePolicy("spoofed-" + i, Duration.ofDays(1), 5, null)).isExceed()) {
+                allowed++;
+            }
+        }
+
+        long tracked = 1000 - (offHeapRateCache.getRejectionCount() - rejectedResidents);
+        assertTrue(tracked < 1000);
+        assertTrue(allowed <= 5 + tracked);
+        assertTrue(allowed < 200, "Expected the flood to be limited, but " + allowed + " requests were allowed");
+    }
+
+    /**
+     * A benchmark of the heap retained per key by {@link InMemoryRateCache} and {@link OffHeapRateCache}, which
+     * depends on the garbage collector, so it is not a part of the unit tests.
+     */
+    @Test
+    @Disabled("A benchmark which depends on the garbage collector, run it manually")
+    void memoryPerKey_ShouldRetainAlmostNothingOnHeapComparedToInMemoryRateCache() {
+        int keys = 200_000;
+
+        long before = usedHeapAfterGc();
+        InMemoryRateCache inMemoryRateCache = new InMemoryRateCache(Duration.ofDays(1));
+        fill(inMemoryRateCache::consume, keys);
+        long inMemoryBytes = usedHeapAfterGc() - before;
+
+        before = usedHeapAfterGc();
+        OffHeapRateCache offHeapRateCache = new OffHeapRateCache(keys * 2);
+        fill(offHeapRateCache::consume, keys);
+        long offHeapBytes = usedHeapAfterGc() - before;
+
+        assertEquals(keys, inMemoryRateCache.size());
+        assertTrue(offHeapBytes < inMemoryBytes / 10, "Expected the off-heap cache to retain far less heap per key, but " +
+                "it retained " + offHeapBytes / keys + " bytes against " + inMemoryBytes / keys + " bytes of the " +
+                "in-memory cache, plus " + offHeapRateCache.getAllocatedBytes() / keys + " off-heap bytes");
+
+        inMemoryRateCache.close();
+    }
+
+    @Test
+    void consume_WhenAQuarterOfTheCapacityIsFilled_ShouldTrackEveryKeyWithoutAllocatingMore() {
+        int capacity = 1 << 16;
+        OffHeapRateCache offHeapRateCache = new OffHeapRateCache(capacity);
+        for (int i = 0; i < capacity / 4; i++) {
+            offHeapRateCache.consume(new RatePolicy("/api/v1/resources_GET_PT1H_100_10.0." + i, Duration.ofHours(1), 100, null));
+        }
+
+        assertEquals(0, offHeapRateCache.getRejectionCount());
+        assertEquals((long) capacity * OffHeapRateCache.SLOT_SIZE, offHeapRateCache.getAllocatedBytes());
+    }
+
+    private static void fill(Consumer<RatePolicy> consumer, int keys) {
+        for (int i = 0; i < keys; i++) {
+            consumer.accept(new RatePolicy("/api/v1/resources_GET_PT1H_100_10.0." + i, Duration.ofHours(1), 100, null));
+        }
+    }
+
+    private static long usedHeapAfterGc() {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+}
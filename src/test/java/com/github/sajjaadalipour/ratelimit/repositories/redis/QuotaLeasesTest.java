@@ -0,0 +1,198 @@
+package com.github.sajjaadalipour.ratelimit.repositories.redis;
+
+import com.github.sajjaadalipour.ratelimit.RateDecision;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static com.github.sajjaadalipour.ratelimit.Rate.RATE_EXCEED_STATE;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for {@link QuotaLeases}.
+ *
+ * @author Sajjad Alipour
+ */
+class QuotaLeasesTest {
+
+    private static final String KEY = "key";
+
+    private static final long RESET = 60_000;
+
+    @Test
+    void consume_WhenTheKeyIsHot_ShouldGrowTheLeasesUpToTheMaxShare() {
+        QuotaLeases leases = new QuotaLeases(100, 0.1);
+        FakeQuota quota = new FakeQuota(1000);
+
+        for (int i = 0; i < 200; i++) {
+            assertTrue(RateDecision.isAllowed(leases.consume(KEY, 1000, i / 10, quota)));
+        }
+
+        assertEquals(1, (int) quota.sizes.get(0));
+        assertTrue(quota.sizes.size() < 50);
+        assertEquals(100, quota.sizes.stream().mapToInt(Integer::intValue).max().getAsInt());
+    }
+
+    @Test
+    void consume_WhenTheKeyIsCold_ShouldLeaseOneTokenPerRequest() {
+        QuotaLeases leases = new QuotaLeases(100, 0.1);
+        FakeQuota quota = new FakeQuota(1000);
+
+        for (int i = 0; i < 5; i++) {
+            assertTrue(RateDecision.isAllowed(leases.consume(KEY, 1000, i * 1000, quota)));
+        }
+
+        assertEquals(Arrays.asList(1, 1, 1, 1, 1), quota.sizes);
+    }
+
+    @Test
+    void consume_ShouldReportTheRemainingOfRedisPlusTheUnusedTokens() {
+        QuotaLeases leases = new QuotaLeases(100, 1);
+        FakeQuota quota = new FakeQuota(10);
+
+        long decision = 0;
+        for (int i = 0; i < 10; i++) {
+            decision = leases.consume(KEY, 10, 0, quota);
+            assertEquals(9 - i, RateDecision.remaining(decision));
+        }
+        assertEquals(RESET, RateDecision.resetMillis(decision));
+
+        assertTrue(RateDecision.isExceed(leases.consume(KEY, 10, 0, quota)));
+    }
+
+    @Test
+    void refund_ShouldGiveTheTokenBackToTheCurrentLease() {
+        QuotaLeases leases = new QuotaLeases(100, 1);
+        FakeQuota quota = new FakeQuota(2);
+
+        leases.consume(KEY, 2, 0, quota);
+        leases.consume(KEY, 2, 0, quota);
+        leases.refund(KEY, 0);
+        assertTrue(RateDecision.isAllowed(leases.consume(KEY, 2, 0, quota)));
+    }
+
+    @Test
+    void consume_WhenTheWindowOfTheLeaseIsEnded_ShouldTakeANewLease() {
+        QuotaLeases leases = new QuotaLeases(100, 1);
+        FakeQuota quota = new FakeQuota(10);
+
+        leases.consume(KEY, 10, 0, quota);
+        leases.consume(KEY, 10, 1, quota);
+        int calls = quota.sizes.size();
+
+        leases.consume(KEY, 10, RESET, quota);
+        assertEquals(calls + 1, quota.sizes.size());
+    }
+
+    @Test
+    void consume_WhenMaxKeysAreLeased_ShouldDropTheLeaseWhichEndsFirst() {
+        QuotaLeases leases = new QuotaLeases(100, 1);
+        for (int i = 0; i < QuotaLeases.MAX_KEYS; i++) {
+            leases.consume("key-" + i, 10, 0, new FakeQuota(10, i == 0 ? RESET * 2 : RESET));
+        }
+
+        FakeQuota quota = new FakeQuota(10);
+        leases.consume(KEY, 10, 0, quota);
+        leases.consume(KEY, 10, 0, quota);
+        assertEquals(Arrays.asList(1, 10), quota.sizes);
+
+        FakeQuota dropped = new FakeQuota(10);
+        leases.consume("key-1", 10, 0, dropped);
+        assertEquals(Collections.singletonList(1), dropped.sizes);
+
+        FakeQuota kept = new FakeQuota(10, RESET * 2);
+        leases.consume("key-0", 10, 0, kept);
+        assertEquals(Collections.singletonList(10), kept.sizes);
+    }
+
+    @Test
+    void consume_WhenLeasesAreRenewedAcrossManyWindowsBelowMaxKeys_ShouldKeepTheExpiryQueueBounded() {
+        QuotaLeases leases = new QuotaLeases(100, 1);
+        for (long now = 0; now < 1_000_000; now += 1_000) {
+            for (int i = 0; i < 10; i++) {
+                leases.consume("key-" + i, 10, now, new FakeQuota(10, now + 1_000));
+                if (i % 2 == 0) {
+                    leases.invalidate("key-" + i);
+                }
+            }
+        }
+
+        assertTrue(leases.size() <= 10, "leased " + leases.size());
+        assertTrue(leases.scheduled() <= 30, "scheduled " + leases.scheduled());
+    }
+
+    @Test
+    void consumeAsync_WhenTheLeaseIsBeingRenewed_ShouldWaitForItInsteadOfTakingAnotherOne() throws Exception {
+        QuotaLeases leases = new QuotaLeases(100, 1);
+        FakeQuota quota = new FakeQuota(10);
+        List<CompletableFuture<List<?>>> pending = new ArrayList<>();
+        QuotaLeases.AsyncLeaser leaser = size -> {
+            CompletableFuture<List<?>> lease = new CompletableFuture<>();
+            pending.add(lease);
+            return lease.thenApply(ignored -> quota.lease(size));
+        };
+        assertTrue(RateDecision.isAllowed(leases.consume(KEY, 10, 0, quota)));
+
+        CompletableFuture<Long> first = leases.consumeAsync(KEY, 10, 1, leaser).toCompletableFuture();
+        CompletableFuture<Long> second = leases.consumeAsync(KEY, 10, 1, leaser).toCompletableFuture();
+        assertFalse(first.isDone());
+        assertFalse(second.isDone());
+        assertEquals(1, pending.size());
+
+        pending.get(0).complete(null);
+        assertTrue(RateDecision.isAllowed(first.get(1, TimeUnit.SECONDS)));
+        assertTrue(RateDecision.isAllowed(second.get(1, TimeUnit.SECONDS)));
+        assertEquals(1, pending.size());
+        assertEquals(Arrays.asList(1, 10), quota.sizes);
+    }
+
+    @Test
+    void consumeAsync_WhenTheLeaseFails_ShouldLetTheNextRequestTakeANewOne() {
+        QuotaLeases leases = new QuotaLeases(100, 1);
+        FakeQuota quota = new FakeQuota(10);
+        CompletableFuture<List<?>> failed = new CompletableFuture<>();
+        failed.completeExceptionally(new IllegalStateException("Redis is down"));
+
+        assertTrue(leases.consumeAsync(KEY, 10, 0, size -> failed).toCompletableFuture().isCompletedExceptionally());
+        assertTrue(RateDecision.isAllowed(leases.consumeAsync(KEY, 10, 0,
+                size -> CompletableFuture.completedFuture(quota.lease(size))).toCompletableFuture().join()));
+    }
+
+    /**
+     * Grants the leases like the fixed window script of a single window.
+     */
+    private static final class FakeQuota implements QuotaLeases.Leaser {
+
+        private final List<Integer> sizes = new ArrayList<>();
+
+        private final long reset;
+
+        private int remaining;
+
+        FakeQuota(int count) {
+            this(count, RESET);
+        }
+
+        FakeQuota(int count, long reset) {
+            this.remaining = count;
+            this.reset = reset;
+        }
+
+        @Override
+        public List<?> lease(int size) {
+            sizes.add(size);
+            int granted = Math.min(size, remaining);
+            if (granted == 0) {
+                return Arrays.asList((long) RATE_EXCEED_STATE, reset, 0L);
+            }
+
+            remaining -= granted;
+            return Arrays.asList((long) remaining, reset, (long) granted);
+        }
+    }
+}
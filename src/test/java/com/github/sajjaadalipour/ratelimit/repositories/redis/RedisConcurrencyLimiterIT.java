@@ -0,0 +1,96 @@
+package com.github.sajjaadalipour.ratelimit.repositories.redis;
+
+import com.github.sajjaadalipour.ratelimit.ConcurrencyLimiter;
+import com.github.sajjaadalipour.ratelimit.ConcurrencyLimiter.Permit;
+import com.github.sajjaadalipour.ratelimit.conf.properties.RateLimitPolicyType;
+import com.github.sajjaadalipour.ratelimit.conf.properties.RateLimitProperties.Policy;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.ImportAutoConfiguration;
+import org.springframework.boot.autoconfigure.data.redis.RedisAutoConfiguration;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.connection.RedisServerCommands;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ZSetOperations.TypedTuple;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static org.awaitility.Awaitility.await;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Integration tests for {@link RedisConcurrencyLimiter}.
+ *
+ * @author Sajjad Alipour
+ */
+@SpringBootTest(classes = RedisConcurrencyLimiterIT.ConcurrencyLimitTestConfig.class)
+class RedisConcurrencyLimiterIT {
+
+    private static final String KEY_PREFIX = "REDIS_KEY_PREFIX";
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Autowired
+    private ConcurrencyLimiter redisConcurrencyLimiter;
+
+    @BeforeEach
+    void flushRedis() {
+        stringRedisTemplate.getRequiredConnectionFactory().getConnection().flushDb();
+    }
+
+    @Test
+    void tryAcquire_WhenKeyHasCountInFlightRequests_ShouldReturnNullUntilAPermitIsReleased() {
+        Policy policy = concurrencyPolicy(Duration.ofMinutes(1), 2);
+        Permit permit = redisConcurrencyLimiter.tryAcquire("test", policy);
+        assertNotNull(permit);
+        assertNotNull(redisConcurrencyLimiter.tryAcquire("test", policy));
+        assertNull(redisConcurrencyLimiter.tryAcquire("test", policy));
+
+        permit.release();
+
+        assertEquals(1L, stringRedisTemplate.opsForZSet().zCard(KEY_PREFIX + ":permits:test"));
+        assertNotNull(redisConcurrencyLimiter.tryAcquire("test", policy));
+    }
+
+    @Test
+    void tryAcquire_WhenPermitIsNotReleased_ShouldBeFreedByTheLeaseExpiration() {
+        Policy policy = concurrencyPolicy(Duration.ofMillis(500), 1);
+        assertNotNull(redisConcurrencyLimiter.tryAcquire("test", policy));
+        assertNull(redisConcurrencyLimiter.tryAcquire("test", policy));
+
+        await().atMost(2, TimeUnit.SECONDS).until(() -> redisConcurrencyLimiter.tryAcquire("test", policy) != null);
+    }
+
+    @Test
+    void tryAcquire_ShouldExpireTheLeaseByTheTimeOfRedis() {
+        Long serverTime = stringRedisTemplate.execute((RedisCallback<Long>) RedisServerCommands::time);
+        assertNotNull(redisConcurrencyLimiter.tryAcquire("test", concurrencyPolicy(Duration.ofMinutes(1), 1)));
+
+        Set<TypedTuple<String>> permits =
+                stringRedisTemplate.opsForZSet().rangeWithScores(KEY_PREFIX + ":permits:test", 0, -1);
+        assertEquals(1, permits.size());
+        assertEquals(serverTime + 60_000, permits.iterator().next().getScore(), 1_000);
+    }
+
+    private static Policy concurrencyPolicy(Duration lease, int count) {
+        return new Policy(lease, count, "BY_IP", Collections.emptySet(), null, null, null,
+                RateLimitPolicyType.CONCURRENCY, null, null);
+    }
+
+    @Configuration
+    @ImportAutoConfiguration(RedisAutoConfiguration.class)
+    static class ConcurrencyLimitTestConfig {
+        @Bean
+        public ConcurrencyLimiter redisConcurrencyLimiter(StringRedisTemplate stringRedisTemplate) {
+            return new RedisConcurrencyLimiter(stringRedisTemplate, KEY_PREFIX);
+        }
+    }
+}
@@ -1,21 +1,50 @@
 package com.github.sajjaadalipour.ratelimit.repositories.redis;
 
 import com.github.sajjaadalipour.ratelimit.Rate;
+import com.github.sajjaadalipour.ratelimit.RateDecision;
 import com.github.sajjaadalipour.ratelimit.RateLimiter;
 import com.github.sajjaadalipour.ratelimit.RatePolicy;
+import com.github.sajjaadalipour.ratelimit.conf.properties.RateLimitAlgorithm;
+import com.github.sajjaadalipour.ratelimit.conf.properties.RateLimitDefaults;
+import com.github.sajjaadalipour.ratelimit.conf.properties.RateLimitProperties.Policy;
+import com.github.sajjaadalipour.ratelimit.conf.properties.RateLimitProperties.Policy.Block;
+import com.github.sajjaadalipour.ratelimit.conf.properties.RateLimitRedisLayout;
+import com.github.sajjaadalipour.ratelimit.generators.HashedKeyGenerator;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.SpringBootConfiguration;
 import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
 import org.springframework.boot.test.autoconfigure.data.redis.DataRedisTest;
 import org.springframework.boot.test.context.TestConfiguration;
 import org.springframework.context.annotation.Bean;
+import org.springframework.data.redis.RedisSystemException;
+import org.springframework.data.redis.connection.ClusterSlotHashUtil;
+import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
 
 import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.awaitility.Awaitility.await;
 import static org.junit.jupiter.api.Assertions.*;
@@ -105,10 +134,651 @@ class RedisRateCacheIT {
         assertEquals("0", remaining.get());
     }
 
+    @Test
+    void consume_WhenDoesNotExceed_ShouldKeepTheExpirationOfTheWindow() {
+        RatePolicy ratePolicy = new RatePolicy("test", Duration.ofSeconds(1), 10, null);
+        Instant reset = redisRateCache.consume(ratePolicy).getExpiration();
+
+        await().pollDelay(300, TimeUnit.MILLISECONDS).until(() -> true);
+        Rate rate = redisRateCache.consume(ratePolicy);
+
+        assertEquals(8, rate.getRemaining());
+        assertEquals(reset.toEpochMilli(), rate.getExpiration().toEpochMilli(), 5);
+        assertTrue(stringRedisTemplate.getExpire(KEY_PREFIX + ":test", TimeUnit.MILLISECONDS) <= 700);
+    }
+
+    @Test
+    void consume_WhenExceedAndBlocked_ShouldRemainBlockedUntilTheBlockExpires() {
+        RatePolicy ratePolicy = new RatePolicy("test", Duration.ofMinutes(1), 1, Duration.ofMinutes(2));
+        redisRateCache.consume(ratePolicy);
+
+        assertTrue(redisRateCache.consume(ratePolicy).isBlocked());
+        Rate rate = redisRateCache.consume(ratePolicy);
+        assertTrue(rate.isBlocked());
+        assertEquals(120, rate.getExpiration().getEpochSecond() - Instant.now().getEpochSecond(), 1);
+    }
+
+    @Test
+    void tryConsumeAll_WhenALongerPolicyRejects_ShouldNotConsumeTheShorterOnes() {
+        Policy perSecond = new Policy(Duration.ofSeconds(10), 10, "TEST", null, null, null);
+        Block block = new Block();
+        block.setDuration(Duration.ofMinutes(2));
+        Policy perHour = new Policy(Duration.ofHours(1), 1, "TEST", null, null, block);
+        List<Policy> policies = Arrays.asList(perSecond, perHour);
+        List<String> keys = Arrays.asList("second", "hour");
+        long[] decisions = new long[2];
+
+        assertEquals(-1, redisRateCache.tryConsumeAll(keys, policies, decisions));
+        assertEquals(9, RateDecision.remaining(decisions[0]));
+        assertEquals(0, RateDecision.remaining(decisions[1]));
+
+        assertEquals(1, redisRateCache.tryConsumeAll(keys, policies, decisions));
+        assertTrue(RateDecision.isBlocked(decisions[1]));
+        assertEquals(120, RateDecision.resetMillis(decisions[1]) / 1000 - Instant.now().getEpochSecond(), 1);
+        assertEquals(1, redisRateCache.tryConsumeAll(keys, policies, decisions));
+
+        assertEquals(Optional.of("9"), getValue("second"));
+        assertEquals(Optional.of("-2"), getValue("hour"));
+    }
+
+    @Test
+    void consume_WhenAlgorithmIsGcra_ShouldKeepTheTheoreticalArrivalTimeAndAllowTheBurst() {
+        RatePolicy ratePolicy = new RatePolicy("test", Duration.ofMinutes(1), 3, null, RateLimitAlgorithm.GCRA);
+
+        assertEquals(2, redisRateCache.consume(ratePolicy).getRemaining());
+        assertEquals(1, redisRateCache.consume(ratePolicy).getRemaining());
+        assertEquals(0, redisRateCache.consume(ratePolicy).getRemaining());
+        assertTrue(redisRateCache.consume(ratePolicy).isExceed());
+
+        Optional<String> tat = getValue("test");
+        assertTrue(tat.isPresent());
+        assertTrue(Long.parseLong(tat.get()) > System.currentTimeMillis() * 1000);
+    }
+
+    @Test
+    void consume_WhenAlgorithmIsTokenBucket_ShouldTakeATokenPerRequest() {
+        RatePolicy ratePolicy = new RatePolicy("test", Duration.ofMinutes(1), 2, null, RateLimitAlgorithm.TOKEN_BUCKET);
+
+        assertEquals(1, redisRateCache.consume(ratePolicy).getRemaining());
+        assertEquals(0, redisRateCache.consume(ratePolicy).getRemaining());
+        assertTrue(redisRateCache.consume(ratePolicy).isExceed());
+
+        Optional<String> bucket = getValue("test");
+        assertTrue(bucket.isPresent());
+        assertTrue(bucket.get().startsWith("0 "));
+    }
+
+    @Test
+    void consume_WhenAlgorithmIsSlidingWindow_ShouldKeepTwoCountersInOneKey() {
+        RatePolicy ratePolicy = new RatePolicy("test", Duration.ofHours(1), 3, null, RateLimitAlgorithm.SLIDING_WINDOW);
+
+        redisRateCache.consume(ratePolicy);
+        redisRateCache.consume(ratePolicy);
+        redisRateCache.consume(ratePolicy);
+        assertTrue(redisRateCache.consume(ratePolicy).isExceed());
+
+        Optional<String> counters = getValue("test");
+        assertTrue(counters.isPresent());
+        assertEquals(3, counters.get().split(" ").length);
+    }
+
+    @ParameterizedTest
+    @EnumSource(RateLimitAlgorithm.class)
+    void consume_WhenTheClockOfTheNodeIsSkewed_ShouldDecideByTheTimeOfRedis(RateLimitAlgorithm algorithm) {
+        RedisRateCache skewedRedisRateCache = RedisRateCache.builder(stringRedisTemplate, KEY_PREFIX)
+                .clock(() -> System.currentTimeMillis() - Duration.ofDays(1).toMillis())
+                .layout(RateLimitRedisLayout.EPOCH)
+                .build();
+        RatePolicy ratePolicy = new RatePolicy("test", Duration.ofMinutes(1), 2, null, algorithm);
+
+        Rate rate = skewedRedisRateCache.consume(ratePolicy);
+
+        assertEquals(1, rate.getRemaining());
+        assertEquals(60, rate.getExpiration().getEpochSecond() - Instant.now().getEpochSecond(), 60);
+    }
+
+    @Test
+    void consume_WhenAlgorithmIsGcraAndExceedAndSetBlockPolicy_ShouldBeBlocked() {
+        RatePolicy ratePolicy = new RatePolicy("test", Duration.ofMinutes(1), 1, Duration.ofMinutes(2), RateLimitAlgorithm.GCRA);
+        redisRateCache.consume(ratePolicy);
+        Rate rate = redisRateCache.consume(ratePolicy);
+
+        assertTrue(rate.isBlocked());
+        assertTrue(redisRateCache.consume(ratePolicy).isBlocked());
+        assertEquals(120, rate.getExpiration().getEpochSecond() - Instant.now().getEpochSecond(), 1);
+    }
+
+    @Test
+    void consume_WhenAlgorithmIsTokenBucketAndBucketIsRefilled_ShouldAllowAgain() {
+        RatePolicy ratePolicy = new RatePolicy("test", Duration.ofSeconds(1), 1, null, RateLimitAlgorithm.TOKEN_BUCKET);
+        redisRateCache.consume(ratePolicy);
+
+        await().atMost(2, TimeUnit.SECONDS).untilAsserted(
+                () -> assertEquals(0, redisRateCache.consume(ratePolicy).getRemaining()));
+    }
+
+    @Test
+    void consume_WhenBatchingAndManyThreadsConsumeTheSameKey_ShouldAllowExactlyTheCountOfRequests() throws Exception {
+        RatePolicy ratePolicy = new RatePolicy("test", Duration.ofMinutes(1), 100, null);
+        AtomicInteger allowed = new AtomicInteger();
+        Set<Integer> remainings = ConcurrentHashMap.newKeySet();
+
+        try (RedisRateCache batchingRedisRateCache = batchingRedisRateCache()) {
+            runConcurrently(16, 20, () -> {
+                Rate rate = batchingRedisRateCache.consume(ratePolicy);
+                if (!rate.isExceed()) {
+                    allowed.incrementAndGet();
+                    remainings.add(rate.getRemaining());
+                }
+            });
+        }
+
+        assertEquals(100, allowed.get());
+        assertEquals(100, remainings.size());
+        assertEquals(Optional.of("-1"), getValue("test"));
+    }
+
+    @Test
+    void consume_WhenBatchingAndManyThreadsConsumeDistinctKeys_ShouldDecideEachKeyByItsOwnScript() throws Exception {
+        AtomicInteger allowed = new AtomicInteger();
+
+        try (RedisRateCache batchingRedisRateCache = batchingRedisRateCache()) {
+            runConcurrently(8, 10, () -> {
+                String key = Thread.currentThread().getName();
+                RatePolicy ratePolicy = new RatePolicy(key, Duration.ofMinutes(1), 5, null, RateLimitAlgorithm.GCRA);
+                if (!batchingRedisRateCache.consume(ratePolicy).isExceed()) {
+                    allowed.incrementAndGet();
+                }
+            });
+        }
+
+        assertEquals(8 * 5, allowed.get());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void execute_WhenScriptCacheIsFlushedInTheMiddleOfABatch_ShouldRetryOnlyTheCallsOfTheLostScripts() {
+        Class<List<Object>> resultType = (Class<List<Object>>) (Class<?>) List.class;
+        RedisScript<List<Object>> loaded = new DefaultRedisScript<>("return {redis.call('INCR', KEYS[1])}", resultType);
+        RedisScript<List<Object>> notLoaded = new DefaultRedisScript<>("return {redis.call('INCR', KEYS[1]), 0}", resultType);
+
+        try (RedisScriptBatcher batcher = new RedisScriptBatcher(stringRedisTemplate, Duration.ofMillis(200), 10)) {
+            batcher.execute(loaded, Collections.singletonList("loaded"), new String[0], false);
+            stringRedisTemplate.execute((RedisCallback<Void>) connection -> {
+                connection.scriptingCommands().scriptFlush();
+                return null;
+            });
+
+            CompletableFuture<List<?>> lost = batcher.submit(loaded, Collections.singletonList("loaded"), new String[0], false);
+            CompletableFuture<List<?>> executed = batcher.submit(notLoaded, Collections.singletonList("not-loaded"), new String[0], false);
+
+            assertEquals(2L, lost.join().get(0));
+            assertEquals(1L, executed.join().get(0));
+        }
+
+        assertEquals("2", stringRedisTemplate.opsForValue().get("loaded"));
+        assertEquals("1", stringRedisTemplate.opsForValue().get("not-loaded"));
+    }
+
+    @Test
+    void consume_WhenNearCacheIsEnabledAndBlocked_ShouldRejectWithoutTouchingRedisUntilReset() {
+        RatePolicy ratePolicy = new RatePolicy("test", Duration.ofMinutes(1), 1, Duration.ofHours(1));
+        RedisRateCache nearCachedRedisRateCache = nearCachedRedisRateCache();
+        nearCachedRedisRateCache.consume(ratePolicy);
+        assertTrue(nearCachedRedisRateCache.consume(ratePolicy).isBlocked());
+
+        stringRedisTemplate.delete(KEY_PREFIX + ":test");
+        Rate rate = nearCachedRedisRateCache.consume(ratePolicy);
+        assertTrue(rate.isBlocked());
+        assertEquals(3600, rate.getExpiration().getEpochSecond() - Instant.now().getEpochSecond(), 1);
+        assertFalse(getValue("test").isPresent());
+
+        nearCachedRedisRateCache.reset("test");
+        assertEquals(0, nearCachedRedisRateCache.consume(ratePolicy).getRemaining());
+    }
+
+    @Test
+    void reset_WhenAnotherNodeListensToTheInvalidationChannel_ShouldEvictTheKeyFromItsNearCache() {
+        RatePolicy ratePolicy = new RatePolicy("test", Duration.ofMinutes(1), 1, Duration.ofHours(1));
+        RedisRateCache node = nearCachedRedisRateCache();
+        RedisRateCache otherNode = nearCachedRedisRateCache();
+
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(stringRedisTemplate.getRequiredConnectionFactory());
+        container.addMessageListener((message, pattern) -> otherNode.invalidate(new String(message.getBody())),
+                new ChannelTopic(otherNode.getInvalidationChannel()));
+        container.afterPropertiesSet();
+        container.start();
+
+        try {
+            node.consume(ratePolicy);
+            assertTrue(otherNode.consume(ratePolicy).isBlocked());
+
+            await().atMost(2, TimeUnit.SECONDS).untilAsserted(() -> {
+                node.reset("test");
+                assertFalse(otherNode.consume(ratePolicy).isBlocked());
+            });
+        } finally {
+            container.stop();
+        }
+    }
+
+    @Test
+    void consume_WhenLeasingOnSeveralNodes_ShouldNotAdmitMoreThanTheCountAndStrandAtMostTheMaxShares() throws Exception {
+        RatePolicy ratePolicy = new RatePolicy("test", Duration.ofMinutes(1), 200, null);
+        List<RedisRateCache> nodes = Arrays.asList(leasingRedisRateCache(), leasingRedisRateCache());
+        AtomicInteger allowed = new AtomicInteger();
+
+        runConcurrently(8, 50, () -> {
+            RedisRateCache node = nodes.get(Thread.currentThread().getName().hashCode() & 1);
+            if (!node.consume(ratePolicy).isExceed()) {
+                allowed.incrementAndGet();
+            }
+        });
+
+        assertTrue(allowed.get() <= 200);
+        assertTrue(allowed.get() >= 200 - 2 * 20, "Allowed " + allowed.get());
+    }
+
+    @Test
+    void tryConsumeAll_WhenLeasingAndALongerPolicyRejects_ShouldRefundTheLeaseOfTheShorterOne() {
+        RedisRateCache leasingRedisRateCache = leasingRedisRateCache();
+        List<Policy> policies = Arrays.asList(
+                new Policy(Duration.ofSeconds(10), 10, "TEST", null, null, null),
+                new Policy(Duration.ofMinutes(1), 1, "TEST", null, null, null));
+        List<String> keys = Arrays.asList("second", "minute");
+        long[] decisions = new long[2];
+
+        assertEquals(-1, leasingRedisRateCache.tryConsumeAll(keys, policies, decisions));
+        assertEquals(1, leasingRedisRateCache.tryConsumeAll(keys, policies, decisions));
+        assertEquals(8, RateDecision.remaining(leasingRedisRateCache.tryConsume("second", policies.get(0))));
+    }
+
+    @Test
+    void tryConsumeAllAsync_WhenLeasingAndALongerPolicyRejects_ShouldRefundTheLeaseOfTheShorterOne() throws Exception {
+        RedisRateCache leasingRedisRateCache = leasingRedisRateCache();
+        List<Policy> policies = Arrays.asList(
+                new Policy(Duration.ofSeconds(10), 10, "TEST", null, null, null),
+                new Policy(Duration.ofMinutes(1), 1, "TEST", null, null, null));
+        List<String> keys = Arrays.asList("second", "minute");
+        long[] decisions = new long[2];
+
+        assertEquals(-1, (int) leasingRedisRateCache.tryConsumeAllAsync(keys, policies, decisions)
+                .toCompletableFuture().get(2, TimeUnit.SECONDS));
+        assertEquals(1, (int) leasingRedisRateCache.tryConsumeAllAsync(keys, policies, decisions)
+                .toCompletableFuture().get(2, TimeUnit.SECONDS));
+        assertEquals(8, RateDecision.remaining(leasingRedisRateCache.tryConsume("second", policies.get(0))));
+    }
+
+    @Test
+    void consumeAsync_WhenLeasing_ShouldConsumeFromTheLease() throws Exception {
+        RedisRateCache leasingRedisRateCache = leasingRedisRateCache();
+        RatePolicy ratePolicy = new RatePolicy("test", Duration.ofMinutes(1), 2, null);
+
+        assertEquals(1, leasingRedisRateCache.consumeAsync(ratePolicy).toCompletableFuture().get(2, TimeUnit.SECONDS).getRemaining());
+        assertEquals(0, leasingRedisRateCache.consumeAsync(ratePolicy).toCompletableFuture().get(2, TimeUnit.SECONDS).getRemaining());
+        assertTrue(leasingRedisRateCache.consumeAsync(ratePolicy).toCompletableFuture().get(2, TimeUnit.SECONDS).isExceed());
+    }
+
+    @Test
+    void consumeAsync_ShouldConsumeByTheReactiveCommands() throws Exception {
+        RatePolicy ratePolicy = new RatePolicy("test", Duration.ofMinutes(1), 2, null);
+
+        assertEquals(1, redisRateCache.consumeAsync(ratePolicy).toCompletableFuture().get(2, TimeUnit.SECONDS).getRemaining());
+        assertEquals(0, redisRateCache.consumeAsync(ratePolicy).toCompletableFuture().get(2, TimeUnit.SECONDS).getRemaining());
+        assertTrue(redisRateCache.consumeAsync(ratePolicy).toCompletableFuture().get(2, TimeUnit.SECONDS).isExceed());
+    }
+
+    @Test
+    void tryConsumeAllAsync_WhenALongerPolicyRejects_ShouldNotConsumeTheShorterOnes() throws Exception {
+        List<Policy> policies = Arrays.asList(
+                new Policy(Duration.ofSeconds(10), 10, "TEST", null, null, null),
+                new Policy(Duration.ofMinutes(1), 1, "TEST", null, null, null, RateLimitAlgorithm.GCRA));
+        List<String> keys = Arrays.asList("second", "minute");
+        long[] decisions = new long[2];
+
+        assertEquals(-1, (int) redisRateCache.tryConsumeAllAsync(keys, policies, decisions)
+                .toCompletableFuture().get(2, TimeUnit.SECONDS));
+        assertEquals(1, (int) redisRateCache.tryConsumeAllAsync(keys, policies, decisions)
+                .toCompletableFuture().get(2, TimeUnit.SECONDS));
+        assertTrue(RateDecision.isExceed(decisions[1]));
+
+        policies = Arrays.asList(policies.get(0), new Policy(Duration.ofMinutes(1), 1, "TEST", null, null, null));
+        keys = Arrays.asList("second", "fixed-minute");
+        assertEquals(-1, (int) redisRateCache.tryConsumeAllAsync(keys, policies, decisions)
+                .toCompletableFuture().get(2, TimeUnit.SECONDS));
+        assertEquals(8, RateDecision.remaining(decisions[0]));
+    }
+
+    @ParameterizedTest
+    @EnumSource(RateLimitAlgorithm.class)
+    void tryConsumeAll_WhenTheAlgorithmsAreMixedAndALongerPolicyRejects_ShouldGiveTheRequestBackToTheShorterOne(
+            RateLimitAlgorithm algorithm) throws Exception {
+        Policy shorter = new Policy(Duration.ofMinutes(1), 10, "TEST", null, null, null, algorithm);
+        List<Policy> policies = Arrays.asList(
+                shorter,
+                new Policy(Duration.ofHours(1), 1, "TEST", null, null, null, RateLimitAlgorithm.GCRA));
+        List<String> keys = Arrays.asList("shorter", "hour");
+        long[] decisions = new long[2];
+
+        assertEquals(-1, redisRateCache.tryConsumeAll(keys, policies, decisions));
+        assertEquals(1, redisRateCache.tryConsumeAll(keys, policies, decisions));
+        assertEquals(1, (int) redisRateCache.tryConsumeAllAsync(keys, policies, decisions)
+                .toCompletableFuture().get(2, TimeUnit.SECONDS));
+
+        assertEquals(8, RateDecision.remaining(redisRateCache.tryConsume("shorter", shorter)));
+    }
+
+    @Test
+    void tryConsumeAll_WhenLeasingAndAGcraPolicyIsBeforeTheRejectingOne_ShouldGiveTheRequestBackByTheRefundScript() {
+        RedisRateCache leasingRedisRateCache = leasingRedisRateCache();
+        Policy shorter = new Policy(Duration.ofMinutes(1), 10, "TEST", null, null, null, RateLimitAlgorithm.GCRA);
+        List<Policy> policies = Arrays.asList(shorter, new Policy(Duration.ofHours(1), 1, "TEST", null, null, null));
+        List<String> keys = Arrays.asList("shorter", "hour");
+        long[] decisions = new long[2];
+
+        assertEquals(-1, leasingRedisRateCache.tryConsumeAll(keys, policies, decisions));
+        assertEquals(1, leasingRedisRateCache.tryConsumeAll(keys, policies, decisions));
+        assertEquals(8, RateDecision.remaining(leasingRedisRateCache.tryConsume("shorter", shorter)));
+    }
+
+    @Test
+    void tryConsumeAll_WhenRedisRejectsTheKeysByCrossSlot_ShouldConsumeTheKeysOfDifferentSlotsOneByOne() {
+        AtomicInteger crossSlots = new AtomicInteger();
+        StringRedisTemplate clusterTemplate = new StringRedisTemplate(stringRedisTemplate.getRequiredConnectionFactory()) {
+            @Override
+            public <T> T execute(RedisScript<T> script, List<String> keys, Object... args) {
+                if (keys.stream().map(ClusterSlotHashUtil::calculateSlot).distinct().count() > 1) {
+                    crossSlots.incrementAndGet();
+                    throw new RedisSystemException("CROSSSLOT Keys in request don't hash to the same slot", null);
+                }
+                return super.execute(script, keys, args);
+            }
+        };
+        RedisRateCache clusterRedisRateCache = new RedisRateCache(clusterTemplate, KEY_PREFIX);
+        List<Policy> policies = Arrays.asList(
+                new Policy(Duration.ofSeconds(10), 10, "TEST", null, null, null),
+                new Policy(Duration.ofHours(1), 1, "TEST", null, null, null));
+        long[] decisions = new long[2];
+
+        assertEquals(-1, clusterRedisRateCache.tryConsumeAll(Arrays.asList("second", "hour"), policies, decisions));
+        assertEquals(1, clusterRedisRateCache.tryConsumeAll(Arrays.asList("second", "hour"), policies, decisions));
+        assertEquals(1, crossSlots.get());
+        assertEquals(Optional.of("9"), getValue("second"));
+
+        assertEquals(-1, clusterRedisRateCache.tryConsumeAll(Arrays.asList("{1}second", "{1}hour"), policies, decisions));
+        assertEquals(1, clusterRedisRateCache.tryConsumeAll(Arrays.asList("{1}second", "{1}hour"), policies, decisions));
+        assertEquals(1, crossSlots.get());
+        assertEquals(Optional.of("9"), getValue("{1}second"));
+    }
+
+    @Test
+    void consume_WhenTheKeyIsHashed_ShouldTakeLessRedisMemoryPerKey() {
+        String key = "/api/v1/accounts/2f1c7a52-8d7e-4b8a-9f3e-5c2d1e0a7b64/transactions_GET_PT1H_1000_" +
+                "2f1c7a52-8d7e-4b8a-9f3e-5c2d1e0a7b64_203.0.113.195";
+        String hashedKey = HashedKeyGenerator.encode(key);
+        RatePolicy ratePolicy = new RatePolicy(key, Duration.ofHours(1), 1000, null);
+        RatePolicy hashedRatePolicy = new RatePolicy(hashedKey, Duration.ofHours(1), 1000, null);
+
+        redisRateCache.consume(ratePolicy);
+        redisRateCache.consume(hashedRatePolicy);
+
+        long memory = memoryUsageOf(key);
+        long hashedMemory = memoryUsageOf(hashedKey);
+        assertTrue(hashedMemory > 0);
+        assertTrue(memory - hashedMemory >= key.length() - hashedKey.length() - 16,
+                "The hashed key takes " + hashedMemory + " bytes instead of " + memory);
+    }
+
+    @Test
+    void tryConsumeAll_WhenTheLayoutIsHash_ShouldKeepThePoliciesOfAnIdentityInASingleSmallerHash() {
+        RedisRateCache hashRedisRateCache = hashRedisRateCache();
+        List<Policy> policies = Arrays.asList(
+                new Policy(Duration.ofSeconds(10), 10, "TEST", null, null, null),
+                new Policy(Duration.ofMinutes(1), 100, "TEST", null, null, null),
+                new Policy(Duration.ofHours(1), 1000, "TEST", null, null, null));
+        List<String> keys = Arrays.asList("/test_GET_PT10S_10_{0.0.0.0}", "/test_GET_PT1M_100_{0.0.0.0}",
+                "/test_GET_PT1H_1000_{0.0.0.0}");
+        List<String> stringKeys = Arrays.asList("/test_GET_PT10S_10_{1.1.1.1}", "/test_GET_PT1M_100_{1.1.1.1}",
+                "/test_GET_PT1H_1000_{1.1.1.1}");
+        long[] decisions = new long[3];
+
+        assertEquals(-1, hashRedisRateCache.tryConsumeAll(keys, policies, decisions));
+        assertEquals(-1, redisRateCache.tryConsumeAll(stringKeys, policies, decisions));
+        assertEquals(999, RateDecision.remaining(decisions[2]));
+
+        assertEquals(3, stringRedisTemplate.opsForHash().size(KEY_PREFIX + ":{0.0.0.0}"));
+        assertEquals(4, stringRedisTemplate.keys(KEY_PREFIX + ":*").size());
+        long stringsMemory = stringKeys.stream().mapToLong(this::memoryUsageOf).sum();
+        assertTrue(memoryUsageOf("{0.0.0.0}") < stringsMemory,
+                "The hash takes " + memoryUsageOf("{0.0.0.0}") + " bytes instead of " + stringsMemory);
+        assertTrue(stringRedisTemplate.getExpire(KEY_PREFIX + ":{0.0.0.0}", TimeUnit.SECONDS) > 3590);
+    }
+
+    @Test
+    void tryConsumeAll_WhenTheLayoutIsHashAndALongerPolicyRejects_ShouldNotConsumeTheShorterOnes() throws Exception {
+        RedisRateCache hashRedisRateCache = hashRedisRateCache();
+        Block block = new Block();
+        block.setDuration(Duration.ofMinutes(2));
+        List<Policy> policies = Arrays.asList(
+                new Policy(Duration.ofSeconds(10), 10, "TEST", null, null, null),
+                new Policy(Duration.ofHours(1), 1, "TEST", null, null, block));
+        List<String> keys = Arrays.asList("second_{1}", "hour_{1}");
+        long[] decisions = new long[2];
+
+        assertEquals(-1, hashRedisRateCache.tryConsumeAll(keys, policies, decisions));
+        assertEquals(1, hashRedisRateCache.tryConsumeAll(keys, policies, decisions));
+        assertTrue(RateDecision.isBlocked(decisions[1]));
+        assertEquals(120, RateDecision.resetMillis(decisions[1]) / 1000 - Instant.now().getEpochSecond(), 1);
+        assertEquals(1, (int) hashRedisRateCache.tryConsumeAllAsync(keys, policies, decisions)
+                .toCompletableFuture().get(2, TimeUnit.SECONDS));
+
+        assertEquals(8, RateDecision.remaining(hashRedisRateCache.tryConsume("second_{1}", policies.get(0))));
+        assertTrue(hashRedisRateCache.consume(new RatePolicy("hour_{1}", Duration.ofHours(1), 1, null)).isBlocked());
+    }
+
+    @Test
+    void tryConsumeAll_WhenTheLayoutIsHashAndTheKeysAreSplit_ShouldGiveTheRequestBackToTheFieldOfTheShorterOne()
+            throws Exception {
+        RedisRateCache hashRedisRateCache = hashRedisRateCache();
+        List<Policy> policies = Arrays.asList(
+                new Policy(Duration.ofSeconds(10), 10, "TEST", null, null, null),
+                new Policy(Duration.ofHours(1), 1, "TEST", null, null, null));
+        List<String> keys = Arrays.asList("second_{1}", "hour");
+        long[] decisions = new long[2];
+
+        assertEquals(-1, hashRedisRateCache.tryConsumeAll(keys, policies, decisions));
+        assertEquals(1, hashRedisRateCache.tryConsumeAll(keys, policies, decisions));
+        assertEquals(1, (int) hashRedisRateCache.tryConsumeAllAsync(keys, policies, decisions)
+                .toCompletableFuture().get(2, TimeUnit.SECONDS));
+
+        assertEquals(8, RateDecision.remaining(hashRedisRateCache.tryConsume("second_{1}", policies.get(0))));
+    }
+
+    @Test
+    void consume_WhenTheLayoutIsHashAndAWindowEnds_ShouldRestartItsFieldAndKeepTheOthers() {
+        RedisRateCache hashRedisRateCache = hashRedisRateCache();
+        RatePolicy perSecond = new RatePolicy("second_{1}", Duration.ofSeconds(1), 1, null);
+        RatePolicy perHour = new RatePolicy("hour_{1}", Duration.ofHours(1), 10, null);
+
+        assertEquals(0, hashRedisRateCache.consume(perSecond).getRemaining());
+        assertTrue(hashRedisRateCache.consume(perSecond).isExceed());
+        assertEquals(9, hashRedisRateCache.consume(perHour).getRemaining());
+
+        await().atMost(2, TimeUnit.SECONDS).untilAsserted(() ->
+                assertEquals(0, hashRedisRateCache.consume(perSecond).getRemaining()));
+        assertEquals(8, hashRedisRateCache.consume(perHour).getRemaining());
+
+        hashRedisRateCache.reset("hour_{1}");
+        assertEquals(9, hashRedisRateCache.consume(perHour).getRemaining());
+        assertEquals(1, stringRedisTemplate.keys(KEY_PREFIX + ":*").size());
+    }
+
+    @Test
+    void consume_WhenTheLayoutIsEpoch_ShouldCountTheRequestsOfTheWindowAlignedToTheWallClock() {
+        RedisRateCache epochRedisRateCache = epochRedisRateCache(null);
+        RatePolicy ratePolicy = new RatePolicy("test", Duration.ofHours(1), 2, null);
+        long window = System.currentTimeMillis() / 3_600_000;
+
+        Rate rate = epochRedisRateCache.consume(ratePolicy);
+        assertEquals(1, rate.getRemaining());
+        assertEquals((window + 1) * 3_600_000, rate.getExpiration().toEpochMilli());
+        assertEquals(0, epochRedisRateCache.consume(ratePolicy).getRemaining());
+        assertTrue(epochRedisRateCache.consume(ratePolicy).isExceed());
+
+        assertEquals(Optional.of("3"), getEpochValue("test", window));
+        assertEquals((window + 1) * 3_600_000 + 1000 - System.currentTimeMillis(),
+                stringRedisTemplate.getExpire("{" + KEY_PREFIX + ":test}:" + window, TimeUnit.MILLISECONDS), 100);
+
+        epochRedisRateCache.reset("test");
+        assertFalse(getEpochValue("test", window).isPresent());
+        assertEquals(1, epochRedisRateCache.consume(ratePolicy).getRemaining());
+    }
+
+    @Test
+    void reset_WhenTheLayoutIsEpochAndTheKeyIsConsumedByDifferentWindows_ShouldDeleteTheCounterOfEachWindow() {
+        RedisRateCache epochRedisRateCache = epochRedisRateCache(null);
+        long now = System.currentTimeMillis();
+        epochRedisRateCache.consume(new RatePolicy("test", Duration.ofHours(1), 2, null));
+        epochRedisRateCache.consume(new RatePolicy("test", Duration.ofDays(1), 2, null));
+        stringRedisTemplate.opsForValue().set("{" + KEY_PREFIX + ":test}:other", "1");
+        assertTrue(getEpochValue("test", now / 3_600_000).isPresent());
+        assertTrue(getEpochValue("test", now / 86_400_000).isPresent());
+
+        epochRedisRateCache.reset("test");
+
+        assertFalse(getEpochValue("test", now / 3_600_000).isPresent());
+        assertFalse(getEpochValue("test", now / 86_400_000).isPresent());
+        assertEquals("1", stringRedisTemplate.opsForValue().get("{" + KEY_PREFIX + ":test}:other"));
+    }
+
+    @Test
+    void consume_WhenTheLayoutIsEpochAndBatchingAndManyThreadsConsumeTheSameKey_ShouldAllowExactlyTheCountOfRequests()
+            throws Exception {
+        RatePolicy ratePolicy = new RatePolicy("test", Duration.ofHours(1), 100, null);
+        AtomicInteger allowed = new AtomicInteger();
+        Set<Integer> remainings = ConcurrentHashMap.newKeySet();
+
+        try (RedisRateCache epochRedisRateCache = epochRedisRateCache(RateLimitDefaults.BATCH_MAX_DELAY)) {
+            runConcurrently(16, 20, () -> {
+                Rate rate = epochRedisRateCache.consume(ratePolicy);
+                if (!rate.isExceed()) {
+                    allowed.incrementAndGet();
+                    remainings.add(rate.getRemaining());
+                }
+            });
+        }
+
+        assertEquals(100, allowed.get());
+        assertEquals(100, remainings.size());
+    }
+
+    @Test
+    void tryConsumeAll_WhenTheLayoutIsEpochAndALongerPolicyRejects_ShouldNotConsumeTheShorterOnes() throws Exception {
+        RedisRateCache epochRedisRateCache = epochRedisRateCache(null);
+        List<Policy> policies = Arrays.asList(
+                new Policy(Duration.ofMinutes(10), 10, "TEST", null, null, null),
+                new Policy(Duration.ofHours(1), 1, "TEST", null, null, null));
+        List<String> keys = Arrays.asList("minutes", "hour");
+        long[] decisions = new long[2];
+
+        assertEquals(-1, epochRedisRateCache.tryConsumeAll(keys, policies, decisions));
+        assertEquals(9, RateDecision.remaining(decisions[0]));
+        assertEquals(1, epochRedisRateCache.tryConsumeAll(keys, policies, decisions));
+        assertTrue(RateDecision.isExceed(decisions[1]));
+        assertEquals(1, (int) epochRedisRateCache.tryConsumeAllAsync(keys, policies, decisions)
+                .toCompletableFuture().get(2, TimeUnit.SECONDS));
+
+        assertEquals(8, RateDecision.remaining(epochRedisRateCache.tryConsume("minutes", policies.get(0))));
+    }
+
+    @Test
+    void tryConsumeAll_WhenTheLayoutIsEpochAndAPolicyHasABlock_ShouldKeepItByAString() {
+        RedisRateCache epochRedisRateCache = epochRedisRateCache(null);
+        Block block = new Block();
+        block.setDuration(Duration.ofMinutes(2));
+        List<Policy> policies = Arrays.asList(
+                new Policy(Duration.ofHours(1), 10, "TEST", null, null, null),
+                new Policy(Duration.ofHours(1), 1, "TEST", null, null, block));
+        long[] decisions = new long[2];
+
+        assertEquals(-1, epochRedisRateCache.tryConsumeAll(Arrays.asList("hour", "blocked"), policies, decisions));
+        assertEquals(1, epochRedisRateCache.tryConsumeAll(Arrays.asList("hour", "blocked"), policies, decisions));
+        assertTrue(RateDecision.isBlocked(decisions[1]));
+        assertEquals(Optional.of("-2"), getValue("blocked"));
+        assertEquals(Optional.of("1"), getEpochValue("hour", System.currentTimeMillis() / 3_600_000));
+    }
+
+    private RedisRateCache epochRedisRateCache(Duration batchMaxDelay) {
+        RedisRateCache.Builder builder = RedisRateCache.builder(stringRedisTemplate, KEY_PREFIX)
+                .layout(RateLimitRedisLayout.EPOCH);
+        if (batchMaxDelay != null) {
+            builder.batch(batchMaxDelay, RateLimitDefaults.BATCH_MAX_SIZE);
+        }
+        return builder.build();
+    }
+
+    private RedisRateCache hashRedisRateCache() {
+        return RedisRateCache.builder(stringRedisTemplate, KEY_PREFIX)
+                .layout(RateLimitRedisLayout.HASH)
+                .build();
+    }
+
+    private RedisRateCache leasingRedisRateCache() {
+        return RedisRateCache.builder(stringRedisTemplate, KEY_PREFIX)
+                .lease(RateLimitDefaults.LEASE_DURATION, 0.1)
+                .build();
+    }
+
+    private RedisRateCache nearCachedRedisRateCache() {
+        return RedisRateCache.builder(stringRedisTemplate, KEY_PREFIX)
+                .nearCache(RateLimitDefaults.NEAR_CACHE_MAX_ENTRIES)
+                .build();
+    }
+
+    private RedisRateCache batchingRedisRateCache() {
+        return RedisRateCache.builder(stringRedisTemplate, KEY_PREFIX)
+                .batch(RateLimitDefaults.BATCH_MAX_DELAY, RateLimitDefaults.BATCH_MAX_SIZE)
+                .build();
+    }
+
+    private static void runConcurrently(int threads, int iterations, Runnable task) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            futures.add(executor.submit(() -> {
+                start.await();
+                for (int j = 0; j < iterations; j++) {
+                    task.run();
+                }
+                return null;
+            }));
+        }
+
+        start.countDown();
+        for (Future<?> future : futures) {
+            future.get(10, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+    }
+
+    private long memoryUsageOf(String key) {
+        DefaultRedisScript<Long> script = new DefaultRedisScript<>("return redis.call('MEMORY', 'USAGE', KEYS[1])", Long.class);
+        return stringRedisTemplate.execute(script, Collections.singletonList(KEY_PREFIX + ":" + key));
+    }
+
     private Optional<String> getValue(String key) {
         return Optional.ofNullable(stringRedisTemplate.opsForValue().get(KEY_PREFIX + ":" + key));
     }
 
+    /**
+     * @return The counter of the given window of the given key in the epoch layout.
+     */
+    private Optional<String> getEpochValue(String key, long index) {
+        return Optional.ofNullable(stringRedisTemplate.opsForValue().get("{" + KEY_PREFIX + ":" + key + "}:" + index));
+    }
+
     @TestConfiguration
     static class RateLimitTestConfig {
         @Bean
@@ -0,0 +1,96 @@
+package com.github.sajjaadalipour.ratelimit.repositories.redis;
+
+import com.github.sajjaadalipour.ratelimit.RateDecision;
+import org.junit.jupiter.api.Test;
+
+import static com.github.sajjaadalipour.ratelimit.Rate.RATE_BLOCK_STATE;
+import static com.github.sajjaadalipour.ratelimit.Rate.RATE_EXCEED_STATE;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Unit tests for {@link RejectedKeyCache}.
+ *
+ * @author Sajjad Alipour
+ */
+class RejectedKeyCacheTest {
+
+    @Test
+    void get_WhenTheDecisionIsNotReset_ShouldReturnTheCachedDecisionUntilItResets() {
+        RejectedKeyCache cache = new RejectedKeyCache(10);
+        long decision = RateDecision.of(RATE_BLOCK_STATE, 2_000);
+        cache.put("key", decision, 1_000);
+
+        assertEquals(decision, cache.get("key", 1_999));
+        assertEquals(RejectedKeyCache.NONE, cache.get("key", 2_000));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    void put_WhenTheDecisionAllows_ShouldNotCacheIt() {
+        RejectedKeyCache cache = new RejectedKeyCache(10);
+        cache.put("key", RateDecision.of(0, 2_000), 1_000);
+
+        assertEquals(RejectedKeyCache.NONE, cache.get("key", 1_000));
+    }
+
+    @Test
+    void put_WhenFull_ShouldPurgeTheResetDecisions() {
+        RejectedKeyCache cache = new RejectedKeyCache(2);
+        cache.put("first", RateDecision.of(RATE_EXCEED_STATE, 1_500), 1_000);
+        cache.put("second", RateDecision.of(RATE_EXCEED_STATE, 5_000), 1_000);
+
+        cache.put("third", RateDecision.of(RATE_EXCEED_STATE, 5_000), 3_000);
+        assertEquals(2, cache.size());
+        assertEquals(RateDecision.of(RATE_EXCEED_STATE, 5_000), cache.get("second", 3_000));
+        assertEquals(RateDecision.of(RATE_EXCEED_STATE, 5_000), cache.get("third", 3_000));
+    }
+
+    @Test
+    void put_WhenFullOfDecisionsWhichAreNotReset_ShouldEvictTheOneWhichResetsFirst() {
+        RejectedKeyCache cache = new RejectedKeyCache(2);
+        cache.put("first", RateDecision.of(RATE_EXCEED_STATE, 9_000), 1_000);
+        cache.put("second", RateDecision.of(RATE_EXCEED_STATE, 3_000), 1_000);
+
+        cache.put("third", RateDecision.of(RATE_EXCEED_STATE, 5_000), 1_000);
+        assertEquals(2, cache.size());
+        assertEquals(RejectedKeyCache.NONE, cache.get("second", 1_000));
+        assertEquals(RateDecision.of(RATE_EXCEED_STATE, 9_000), cache.get("first", 1_000));
+        assertEquals(RateDecision.of(RATE_EXCEED_STATE, 5_000), cache.get("third", 1_000));
+    }
+
+    @Test
+    void put_WhenDecisionsResetAcrossManyWindowsBelowCapacity_ShouldKeepTheExpiryQueueBounded() {
+        RejectedKeyCache cache = new RejectedKeyCache(1_000);
+        for (long now = 0; now < 1_000_000; now += 1_000) {
+            for (int i = 0; i < 10; i++) {
+                cache.put("key" + i, RateDecision.of(RATE_EXCEED_STATE, now + 1_000 + i * 100), now);
+            }
+        }
+
+        assertEquals(10, cache.size());
+        assertTrue(cache.scheduled() <= 30, "scheduled " + cache.scheduled());
+    }
+
+    @Test
+    void put_WhenFullAndTheFirstScheduledDecisionIsRenewed_ShouldEvictTheOneWhichResetsFirst() {
+        RejectedKeyCache cache = new RejectedKeyCache(2);
+        cache.put("first", RateDecision.of(RATE_EXCEED_STATE, 3_000), 1_000);
+        cache.put("second", RateDecision.of(RATE_EXCEED_STATE, 5_000), 1_000);
+        cache.put("first", RateDecision.of(RATE_EXCEED_STATE, 9_000), 2_000);
+
+        cache.put("third", RateDecision.of(RATE_EXCEED_STATE, 7_000), 2_000);
+        assertEquals(2, cache.size());
+        assertEquals(RejectedKeyCache.NONE, cache.get("second", 2_000));
+        assertEquals(RateDecision.of(RATE_EXCEED_STATE, 9_000), cache.get("first", 2_000));
+    }
+
+    @Test
+    void invalidate_ShouldEvictTheKey() {
+        RejectedKeyCache cache = new RejectedKeyCache(10);
+        cache.put("key", RateDecision.of(RATE_BLOCK_STATE, 2_000), 1_000);
+        cache.invalidate("key");
+
+        assertEquals(RejectedKeyCache.NONE, cache.get("key", 1_000));
+    }
+}
@@ -0,0 +1,123 @@
+package com.github.sajjaadalipour.ratelimit.repositories.redis;
+
+import com.github.sajjaadalipour.ratelimit.RateDecision;
+import com.github.sajjaadalipour.ratelimit.conf.properties.RateLimitProperties.Policy;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Unit tests for {@link ShardedRedisRateCache}.
+ *
+ * @author Sajjad Alipour
+ */
+class ShardedRedisRateCacheTest {
+
+    private static final int KEYS = 30_000;
+
+    @Test
+    void shardOf_ShouldSpreadTheKeysEvenlyAcrossTheShards() {
+        List<RedisRateCache> shards = shardsOf(3);
+        ShardedRedisRateCache cache = new ShardedRedisRateCache(shards);
+
+        Map<RedisRateCache, Integer> counts = new HashMap<>();
+        for (int i = 0; i < KEYS; i++) {
+            counts.merge(cache.shardOf("/test_GET_PT1H_3_" + i), 1, Integer::sum);
+        }
+
+        assertEquals(3, counts.size());
+        counts.values().forEach(count -> assertEquals(KEYS / 3, count, KEYS / 3 * 0.2));
+    }
+
+    @Test
+    void shardOf_WhenAShardIsAdded_ShouldOnlyMoveItsShareOfTheKeys() {
+        List<RedisRateCache> shards = shardsOf(4);
+        ShardedRedisRateCache three = new ShardedRedisRateCache(shards.subList(0, 3));
+        ShardedRedisRateCache four = new ShardedRedisRateCache(shards);
+
+        int moved = 0;
+        for (int i = 0; i < KEYS; i++) {
+            String key = "/test_GET_PT1H_3_" + i;
+            RedisRateCache shard = four.shardOf(key);
+            if (three.shardOf(key) != shard) {
+                assertSame(shards.get(3), shard);
+                moved++;
+            }
+        }
+        assertEquals(KEYS / 4, moved, KEYS / 4 * 0.2);
+    }
+
+    @Test
+    void shardOf_ShouldRouteTheKeysOfTheSameHashTagToTheSameShard() {
+        ShardedRedisRateCache cache = new ShardedRedisRateCache(shardsOf(8));
+
+        for (int i = 0; i < 100; i++) {
+            RedisRateCache shard = cache.shardOf("/test_GET_PT1S_10_{" + i + "}");
+            assertSame(shard, cache.shardOf("/test_GET_PT1H_100_{" + i + "}"));
+            assertSame(shard, cache.shardOf("/other_POST_PT1M_5_{" + i + "}"));
+        }
+    }
+
+    @Test
+    void tryConsumeAll_WhenTheKeysAreOnTheSameShard_ShouldConsumeThemTogetherByTheShard() {
+        ShardedRedisRateCache cache = new ShardedRedisRateCache(shardsOf(4));
+        List<String> keys = Arrays.asList("/test_GET_PT1S_10_{1}", "/test_GET_PT1H_100_{1}");
+        List<Policy> policies = Arrays.asList(
+                new Policy(Duration.ofSeconds(1), 10, "TEST", null, null, null),
+                new Policy(Duration.ofHours(1), 100, "TEST", null, null, null));
+        long[] decisions = new long[2];
+        RedisRateCache shard = cache.shardOf(keys.get(0));
+        when(shard.tryConsumeAll(keys, policies, decisions)).thenReturn(1);
+
+        assertEquals(1, cache.tryConsumeAll(keys, policies, decisions));
+        verify(shard).tryConsumeAll(keys, policies, decisions);
+    }
+
+    @Test
+    void tryConsumeAll_WhenTheKeysAreOnDifferentShardsAndALongerPolicyRejects_ShouldRefundTheShorterOneByItsShard() {
+        ShardedRedisRateCache cache = new ShardedRedisRateCache(shardsOf(4));
+        String shorterKey = "/test_GET_PT1S_10_{1}";
+        String longerKey = null;
+        for (int i = 2; longerKey == null; i++) {
+            if (cache.shardOf("/test_GET_PT1H_1_{" + i + "}") != cache.shardOf(shorterKey)) {
+                longerKey = "/test_GET_PT1H_1_{" + i + "}";
+            }
+        }
+        List<String> keys = Arrays.asList(shorterKey, longerKey);
+        List<Policy> policies = Arrays.asList(
+                new Policy(Duration.ofSeconds(1), 10, "TEST", null, null, null),
+                new Policy(Duration.ofHours(1), 1, "TEST", null, null, null));
+        long[] decisions = new long[2];
+        RedisRateCache shorter = cache.shardOf(keys.get(0));
+        RedisRateCache longer = cache.shardOf(keys.get(1));
+        long allowed = RateDecision.of(9, 1_000);
+        when(shorter.tryConsume(keys.get(0), policies.get(0))).thenReturn(allowed);
+        when(longer.tryConsume(keys.get(1), policies.get(1))).thenReturn(RateDecision.of(-1, 3_600_000));
+
+        assertEquals(1, cache.tryConsumeAll(keys, policies, decisions));
+        verify(shorter).refund(keys.get(0), policies.get(0), allowed);
+        verify(longer, never()).refund(anyString(), any(), anyLong());
+    }
+
+    private static List<RedisRateCache> shardsOf(int count) {
+        List<RedisRateCache> shards = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            shards.add(Mockito.mock(RedisRateCache.class));
+        }
+        return shards;
+    }
+}
@@ -0,0 +1,53 @@
+package com.github.sajjaadalipour.ratelimit.servlet;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseEntity;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.springframework.boot.test.context.SpringBootTest.WebEnvironment.RANDOM_PORT;
+import static org.springframework.http.HttpMethod.GET;
+import static org.springframework.http.HttpStatus.OK;
+import static org.springframework.http.HttpStatus.TOO_MANY_REQUESTS;
+
+@SpringBootTest(webEnvironment = RANDOM_PORT, properties = "rate-limit.async=true")
+class AsyncServletApplicationIT {
+
+    @Autowired
+    private TestRestTemplate restTemplate;
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+
+    @BeforeEach
+    void flushRedis() {
+        stringRedisTemplate.getRequiredConnectionFactory().getConnection().flushDb();
+    }
+
+    @Test
+    void whenRateExceed_Call2Request_ShouldPassTheFirstAndReturnHttpResponseStatus429ForTheSecond() {
+        HttpHeaders headers = new HttpHeaders();
+        headers.set("Device-Id", "123");
+        HttpEntity<String> entity = new HttpEntity<>("body", headers);
+
+        ResponseEntity<String> first = restTemplate.exchange("/exceed", GET, entity, String.class);
+        ResponseEntity<String> second = restTemplate.exchange("/exceed", GET, entity, String.class);
+
+        assertEquals(OK.value(), first.getStatusCodeValue());
+        assertEquals("Hello World!", first.getBody());
+        assertEquals(TOO_MANY_REQUESTS.value(), second.getStatusCodeValue());
+    }
+
+    @Test
+    void whenNoMatchPolicy_ShouldPassTheRequest() {
+        ResponseEntity<String> exchange = restTemplate.exchange("/noLimit", GET, HttpEntity.EMPTY, String.class);
+
+        assertEquals(OK.value(), exchange.getStatusCodeValue());
+    }
+}
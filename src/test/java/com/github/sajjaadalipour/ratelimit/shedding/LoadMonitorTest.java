@@ -0,0 +1,80 @@
+package com.github.sajjaadalipour.ratelimit.shedding;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.awaitility.Awaitility.await;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for {@link LoadMonitor}.
+ *
+ * @author Sajjad Alipour
+ */
+class LoadMonitorTest {
+
+    @Test
+    void sample_WhenThreadPoolIsSaturated_ShouldBeOverloaded() throws InterruptedException {
+        LoadMonitor loadMonitor = new LoadMonitor(0.9, 0.9, () -> -1, null);
+        ThreadPoolExecutor threadPool = new ThreadPoolExecutor(2, 2, 1, TimeUnit.MINUTES, new LinkedBlockingQueue<>());
+        CountDownLatch release = new CountDownLatch(1);
+        loadMonitor.setThreadPool(threadPool);
+
+        threadPool.execute(() -> awaitQuietly(release));
+        loadMonitor.sample();
+        assertFalse(loadMonitor.isOverloaded());
+        assertEquals(0.5, loadMonitor.getThreadPoolUsage(), 0.01);
+
+        threadPool.execute(() -> awaitQuietly(release));
+        await().atMost(1, TimeUnit.SECONDS).until(() -> threadPool.getActiveCount() == 2);
+        loadMonitor.sample();
+        assertTrue(loadMonitor.isOverloaded());
+
+        release.countDown();
+        threadPool.shutdown();
+        assertTrue(threadPool.awaitTermination(1, TimeUnit.SECONDS));
+        loadMonitor.sample();
+        assertFalse(loadMonitor.isOverloaded());
+    }
+
+    @Test
+    void sample_WhenCpuLoadReachesTheThreshold_ShouldBeOverloaded() {
+        AtomicReference<Double> cpuLoad = new AtomicReference<>(0.5);
+        LoadMonitor loadMonitor = new LoadMonitor(0.9, 0.8, cpuLoad::get, null);
+
+        loadMonitor.sample();
+        assertFalse(loadMonitor.isOverloaded());
+
+        cpuLoad.set(0.85);
+        loadMonitor.sample();
+        assertTrue(loadMonitor.isOverloaded());
+        assertEquals(0.85, loadMonitor.getCpuLoad());
+    }
+
+    @Test
+    void constructor_ShouldSampleByTheBackgroundThread_AndCloseShouldStopIt() throws InterruptedException {
+        LoadMonitor loadMonitor = new LoadMonitor(0.9, 0.8, () -> 0.95, Duration.ofMillis(10));
+
+        await().atMost(1, TimeUnit.SECONDS).until(loadMonitor::isOverloaded);
+        loadMonitor.close();
+    }
+
+    @Test
+    void constructor_WhenIntervalIsNotPositive_ShouldThrowIllegalArgumentException() {
+        assertThrows(IllegalArgumentException.class, () -> new LoadMonitor(0.9, 0.9, Duration.ZERO));
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}